@@ -0,0 +1,61 @@
+package de.philipppixel.tweetkov.core;
+
+import de.philipppixel.tweetkov.jmh.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures how many sentences per second a chain trained with <i>Die Zauberfl&ouml;te</i> generates. The random source
+ * is reset before each iteration, so every iteration generates the same sequence of sentences.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+    private static final long SEED = 42;
+
+    @Param({"1", "2", "3"})
+    int windowSize;
+
+    private TweetkovChain chain;
+    private SplittableRandom random;
+
+    @Setup
+    public void train() {
+        chain = new TweetkovChain(windowSize);
+        chain.train(BenchmarkData.readText());
+        // only a compiled chain is analysed and steers generation without duplicates
+        chain.compile();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetRandom() {
+        random = new SplittableRandom(SEED);
+    }
+
+    @Benchmark
+    public String generate() {
+        return chain.generate(random);
+    }
+
+    @Benchmark
+    public String generateWithoutDuplicates() {
+        return chain.generateWithoutDuplicates(random);
+    }
+}
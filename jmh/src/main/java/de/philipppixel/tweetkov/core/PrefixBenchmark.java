@@ -0,0 +1,85 @@
+package de.philipppixel.tweetkov.core;
+
+import de.philipppixel.tweetkov.jmh.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures the prefix operations that every training step and every lookup performs. The prefixes are those of a
+ * chain trained with <i>Die Zauberfl&ouml;te</i>, and each call takes the next one, so the branches see realistic
+ * data instead of a single prefix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixBenchmark {
+    @Param({"1", "2", "3"})
+    int windowSize;
+
+    private Prefix[] prefixes;
+    private Prefix[] equalPrefixes;
+    private int[] suffixes;
+    private int next;
+
+    @Setup
+    public void collectPrefixes() {
+        TweetkovChain chain = new TweetkovChain(windowSize);
+        chain.train(BenchmarkData.readText());
+        TransitionRepository repository = chain.getTransitions();
+
+        int count = repository.getAllTransitions().size();
+        prefixes = new Prefix[count];
+        equalPrefixes = new Prefix[count];
+        suffixes = new int[count];
+        int i = 0;
+        for (Transition transition : repository.getAllTransitions()) {
+            prefixes[i] = transition.getPrefix();
+            equalPrefixes[i] = transition.getPrefix().copy();
+            suffixes[i] = transition.getUniqueSuffix(0);
+            i++;
+        }
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == prefixes.length ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public int hashCodeOfPrefix() {
+        return prefixes[nextIndex()].hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsOfEqualPrefixes() {
+        int index = nextIndex();
+        return prefixes[index].equals(equalPrefixes[index]);
+    }
+
+    @Benchmark
+    public boolean equalsOfDifferentPrefixes() {
+        int index = nextIndex();
+        return prefixes[index].equals(prefixes[index == 0 ? prefixes.length - 1 : index - 1]);
+    }
+
+    @Benchmark
+    public Prefix shiftWithSuffix() {
+        int index = nextIndex();
+        return prefixes[index].shiftWithSuffix(suffixes[index]);
+    }
+}
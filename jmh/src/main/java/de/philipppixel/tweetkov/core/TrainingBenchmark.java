@@ -0,0 +1,45 @@
+package de.philipppixel.tweetkov.core;
+
+import de.philipppixel.tweetkov.jmh.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures how many times per second a new chain is trained with the whole text of <i>Die Zauberfl&ouml;te</i>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainingBenchmark {
+    @Param({"1", "2", "3"})
+    int windowSize;
+
+    private List<String> lines;
+
+    @Setup
+    public void readText() {
+        lines = BenchmarkData.readText();
+    }
+
+    @Benchmark
+    public TweetkovChain train() {
+        TweetkovChain chain = new TweetkovChain(windowSize);
+        chain.train(lines);
+        return chain;
+    }
+}
@@ -0,0 +1,61 @@
+package de.philipppixel.tweetkov.core;
+
+import de.philipppixel.tweetkov.jmh.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures the transition operations that every generated token performs. The transitions are those of a chain
+ * trained with <i>Die Zauberfl&ouml;te</i>, and each call takes the next one, so transitions with one suffix and
+ * transitions with many suffixes are mixed like during generation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransitionBenchmark {
+    @Param({"1", "2", "3"})
+    int windowSize;
+
+    private Transition[] transitions;
+    private SplittableRandom random;
+    private int next;
+
+    @Setup
+    public void collectTransitions() {
+        TweetkovChain chain = new TweetkovChain(windowSize);
+        chain.train(BenchmarkData.readText());
+        transitions = chain.getTransitions().getAllTransitions().toArray(new Transition[0]);
+        random = new SplittableRandom(42);
+    }
+
+    private Transition nextTransition() {
+        Transition transition = transitions[next];
+        next = next + 1 == transitions.length ? 0 : next + 1;
+        return transition;
+    }
+
+    @Benchmark
+    public int getRandomSuffix() {
+        return nextTransition().getRandomSuffix(random);
+    }
+
+    @Benchmark
+    public int getUniqueSuffixCount() {
+        return nextTransition().getUniqueSuffixCount();
+    }
+}
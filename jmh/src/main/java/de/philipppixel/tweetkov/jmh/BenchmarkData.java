@@ -0,0 +1,84 @@
+package de.philipppixel.tweetkov.jmh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class provides the input data of the benchmarks. All data is either read from the class path or generated from
+ * a fixed seed, so every run measures the same work.
+ */
+public final class BenchmarkData {
+    private static final String TEXT = "/DieZauberfloete.txt";
+    private static final String[] MENTIONS = {"@papageno", "@pamina", "@tamino_official", "@sarastro"};
+    private static final String[] URLS = {"https://t.co/aBcD1234", "http://example.org/zauber#floete"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * returns the lines of <i>Die Zauberfl&ouml;te</i> which the chain is trained with in the benchmarks.
+     *
+     * @return the lines of the text in the order of the file
+     */
+    public static List<String> readText() {
+        try (InputStream in = BenchmarkData.class.getResourceAsStream(TEXT)) {
+            if (in == null) {
+                throw new IllegalStateException("Cannot find " + TEXT + " on the class path");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<>();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * creates raw tweets from the lines of the text. Like in a real archive some tweets are retweets, replies or
+     * links only, and others contain mentions, URLs, HTML entities and several sentences.
+     *
+     * @param count the number of tweets
+     * @return the raw tweets
+     */
+    public static List<String> createTweets(int count) {
+        List<String> lines = readText();
+        List<String> tweets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String line = lines.get(i % lines.size());
+            String next = lines.get((i + 1) % lines.size());
+            switch (i % 8) {
+                case 0:
+                    tweets.add("RT " + MENTIONS[i % MENTIONS.length] + ": " + line);
+                    break;
+                case 1:
+                    tweets.add(MENTIONS[i % MENTIONS.length] + " " + line);
+                    break;
+                case 2:
+                    tweets.add(URLS[i % URLS.length]);
+                    break;
+                case 3:
+                    tweets.add(line + " &amp; " + next + " " + URLS[i % URLS.length]);
+                    break;
+                case 4:
+                    tweets.add(line + " " + MENTIONS[i % MENTIONS.length] + "  &gt;  " + next + "!");
+                    break;
+                case 5:
+                    tweets.add(line + "\n" + next + " /\nwie &lt;3");
+                    break;
+                default:
+                    tweets.add(line + ". " + next + "? Ja.");
+                    break;
+            }
+        }
+        return tweets;
+    }
+}
@@ -0,0 +1,32 @@
+package de.philipppixel.tweetkov.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the benchmarks with the GC profiler, so every benchmark reports its throughput together with its allocation
+ * rate, and writes the results as JSON which can be compared with <code>baseline.json</code>.
+ * <p>
+ * All arguments are passed to JMH, f. i. a regular expression to run only some benchmarks. Without
+ * <code>-rff</code> the results are written to <code>results.json</code>.
+ */
+public class BenchmarkRunner {
+    private static final String RESULT_FILE = "results.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(commandLine.getResult().orElse(RESULT_FILE))
+                .build();
+        new Runner(options).run();
+    }
+}
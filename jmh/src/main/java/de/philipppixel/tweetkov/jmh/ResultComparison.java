@@ -0,0 +1,89 @@
+package de.philipppixel.tweetkov.jmh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * compares two JSON result files of {@link BenchmarkRunner}, usually <code>baseline.json</code> and a new
+ * <code>results.json</code>. For every benchmark that is contained in both files it prints the throughput and the
+ * allocated bytes per operation of both runs and their ratio.
+ * <pre>
+ * java -cp benchmarks.jar de.philipppixel.tweetkov.jmh.ResultComparison baseline.json results.json
+ * </pre>
+ */
+public class ResultComparison {
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+    private static final String ROW_FORMAT = "%-70s %14s %14s %8s %12s %12s %8s%n";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Expected the baseline file and the result file. Given: "
+                    + args.length + " arguments");
+        }
+        Map<String, JsonNode> baseline = readResults(Paths.get(args[0]));
+        Map<String, JsonNode> results = readResults(Paths.get(args[1]));
+
+        System.out.printf(ROW_FORMAT, "benchmark", "baseline ops", "ops", "ratio", "baseline B/op", "B/op", "ratio");
+        for (Map.Entry<String, JsonNode> result : results.entrySet()) {
+            JsonNode before = baseline.get(result.getKey());
+            if (before == null) {
+                continue;
+            }
+            JsonNode after = result.getValue();
+            double throughputBefore = before.path("primaryMetric").path("score").asDouble();
+            double throughputAfter = after.path("primaryMetric").path("score").asDouble();
+            double allocationBefore = getAllocation(before);
+            double allocationAfter = getAllocation(after);
+            System.out.printf(ROW_FORMAT, result.getKey(),
+                    format(throughputBefore), format(throughputAfter), ratio(throughputAfter, throughputBefore),
+                    format(allocationBefore), format(allocationAfter), ratio(allocationAfter, allocationBefore));
+        }
+    }
+
+    /**
+     * reads all results of the given file, keyed by the name of the benchmark and its parameters
+     */
+    private static Map<String, JsonNode> readResults(Path path) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(path.toFile())) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double getAllocation(JsonNode result) {
+        Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+        while (metrics.hasNext()) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            // older JMH versions prefix the names of profiler metrics with a middle dot
+            if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+                return metric.getValue().path("score").asDouble();
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "-" : String.format("%.1f", value);
+    }
+
+    private static String ratio(double after, double before) {
+        if (Double.isNaN(after) || Double.isNaN(before) || before == 0) {
+            return "-";
+        }
+        return String.format("%.2f", after / before);
+    }
+}
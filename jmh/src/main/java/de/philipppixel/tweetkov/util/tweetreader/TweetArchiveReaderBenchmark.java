@@ -0,0 +1,94 @@
+package de.philipppixel.tweetkov.util.tweetreader;
+
+import de.philipppixel.tweetkov.jmh.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures how many times per second a synthetic monthly archive is read. Each tweet of the archive carries the
+ * fields of a real archive besides its text, so the reader has to skip nested objects and arrays as well. Half of the
+ * tweets use the newer layout with the text inside a <code>tweet</code> object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TweetArchiveReaderBenchmark {
+    private static final int TWEET_COUNT = 10_000;
+
+    private Path archive;
+
+    @Setup
+    public void writeArchive() throws IOException {
+        archive = Files.createTempFile("tweetkov-archive", ".js");
+        List<String> tweets = BenchmarkData.createTweets(TWEET_COUNT);
+        try (Writer out = Files.newBufferedWriter(archive, StandardCharsets.UTF_8)) {
+            out.write("Grailbird.data.tweets_2018_03 = \n[ ");
+            for (int i = 0; i < tweets.size(); i++) {
+                if (i > 0) {
+                    out.write(", ");
+                }
+                String fields = "\"source\" : \"<a href=\\\"http://twitter.com\\\" rel=\\\"nofollow\\\">web</a>\",\n"
+                        + "  \"entities\" : { \"user_mentions\" : [ ], \"media\" : [ ], \"hashtags\" : [ ],"
+                        + " \"urls\" : [ { \"url\" : \"https://t.co/aBcD1234\", \"indices\" : [ 0, 23 ] } ] },\n"
+                        + "  \"geo\" : { },\n"
+                        + "  \"id_str\" : \"" + (950000000000000000L + i) + "\",\n"
+                        + "  \"text\" : \"" + escape(tweets.get(i)) + "\",\n"
+                        + "  \"id\" : " + (950000000000000000L + i) + ",\n"
+                        + "  \"created_at\" : \"2018-03-01 12:00:00 +0000\"\n";
+                if (i % 2 == 0) {
+                    out.write("{\n  " + fields + "}");
+                } else {
+                    out.write("{\n  \"tweet\" : {\n  " + fields + "  }\n}");
+                }
+            }
+            out.write(" ]");
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder result = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c == '\n') {
+                result.append("\\n");
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    @TearDown
+    public void deleteArchive() throws IOException {
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public List<String> getTweetTexts() {
+        return new TweetArchiveReader().withArchive(archive.toString()).getTweetTexts();
+    }
+}
@@ -0,0 +1,42 @@
+package de.philipppixel.tweetkov.util.tweetreader;
+
+import de.philipppixel.tweetkov.jmh.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures how many batches of raw tweets per second are turned into sentences. The tweets are generated from the
+ * lines of <i>Die Zauberfl&ouml;te</i> and mix own tweets with retweets, replies, links, mentions and HTML entities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TweetRefinerBenchmark {
+    private static final int TWEET_COUNT = 10_000;
+
+    private List<String> tweets;
+
+    @Setup
+    public void createTweets() {
+        tweets = BenchmarkData.createTweets(TWEET_COUNT);
+    }
+
+    @Benchmark
+    public List<String> process() {
+        return TweetRefiner.process(tweets);
+    }
+}
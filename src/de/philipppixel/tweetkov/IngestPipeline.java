@@ -0,0 +1,365 @@
+package de.philipppixel.tweetkov;
+
+import de.philipppixel.tweetkov.core.TweetkovChain;
+import de.philipppixel.tweetkov.util.tweetreader.TweetArchiveReader;
+import de.philipppixel.tweetkov.util.tweetreader.TweetRefiner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Trains a chain with all tweet archives of a directory. Reading the archives, refining the tweets and training the
+ * chain run as concurrent stages, so disk I/O, the cleanup of the tweets and the dictionary updates overlap:
+ * <pre>
+ * archives -&gt; readers -&gt; [tweets] -&gt; refiners -&gt; [sentences] -&gt; trainers -&gt; chain
+ * </pre>
+ * The stages pass batches of texts through bounded queues. When a stage is slower than the stage before, the queue
+ * between them fills up and the faster stage waits, so memory stays bounded no matter how large the archives are.
+ * <p>
+ * Readers number their batches, and refiners hand the refined batches on in that order, no matter which refiner
+ * finished first. So with one reader and one trainer, the default, the chain is trained in the same order on every
+ * run and ends up the same as if the refined tweets were trained sequentially.
+ * <p>
+ * <code>
+ * new IngestPipeline(chain)
+ * .withRefiners(4)
+ * .ingest(Paths.get("/path/to/monthly/archives/"));
+ * </code>
+ */
+public class IngestPipeline {
+    private static final String ARCHIVE_PATTERN = "*.js";
+    private static final Logger LOG = Logger.getLogger(IngestPipeline.class.getName());
+
+    private final TweetkovChain chain;
+    private int readers = 1;
+    private int refiners = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    private int trainers = 1;
+    private int queueCapacity = 16;
+    private int batchSize = 1000;
+
+    /**
+     * Creates a pipeline that trains the given chain.
+     *
+     * @param chain the chain to train. Only a {@link TweetkovChain#createConcurrent(int) concurrent} chain can be
+     *              trained by more than one trainer.
+     */
+    public IngestPipeline(TweetkovChain chain) {
+        if (chain == null) {
+            throw new IllegalArgumentException("Cannot create pipeline. Chain must not be null");
+        }
+        this.chain = chain;
+    }
+
+    /**
+     * sets the number of threads that read archives. One thread reads one archive at a time. With more than one reader
+     * the batches of several archives interleave in an order that differs from run to run, so the trained chain may
+     * differ, too.
+     *
+     * @param readers at least 1 (one)
+     * @return this pipeline
+     */
+    public IngestPipeline withReaders(int readers) {
+        this.readers = requirePositive(readers, "Number of readers");
+        return this;
+    }
+
+    /**
+     * sets the number of threads that refine tweets into sentences. The refined batches are passed on in the order
+     * they were read, so the number of refiners does not change the trained chain.
+     *
+     * @param refiners at least 1 (one)
+     * @return this pipeline
+     */
+    public IngestPipeline withRefiners(int refiners) {
+        this.refiners = requirePositive(refiners, "Number of refiners");
+        return this;
+    }
+
+    /**
+     * sets the number of threads that train the chain. More than one trainer requires a
+     * {@link TweetkovChain#createConcurrent(int) concurrent} chain. Several trainers train batches in an order that
+     * differs from run to run, so the trained chain may differ, too.
+     *
+     * @param trainers at least 1 (one)
+     * @return this pipeline
+     */
+    public IngestPipeline withTrainers(int trainers) {
+        this.trainers = requirePositive(trainers, "Number of trainers");
+        return this;
+    }
+
+    /**
+     * sets the number of batches each queue between two stages can hold before the stage in front of it waits.
+     *
+     * @param queueCapacity at least 1 (one)
+     * @return this pipeline
+     */
+    public IngestPipeline withQueueCapacity(int queueCapacity) {
+        this.queueCapacity = requirePositive(queueCapacity, "Queue capacity");
+        return this;
+    }
+
+    /**
+     * sets the maximum number of tweets that readers put into one batch.
+     *
+     * @param batchSize at least 1 (one)
+     * @return this pipeline
+     */
+    public IngestPipeline withBatchSize(int batchSize) {
+        this.batchSize = requirePositive(batchSize, "Batch size");
+        return this;
+    }
+
+    /**
+     * returns all tweet archives (<code>*.js</code> files) of the given directory, the latest month first.
+     *
+     * @param directory the directory of the monthly archives
+     * @return all tweet archives of the given directory in descending order of their names
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<Path> discoverArchives(Path directory) throws IOException {
+        List<Path> archives = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, ARCHIVE_PATTERN)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    archives.add(file);
+                }
+            }
+        }
+        archives.sort(Collections.reverseOrder());
+        return archives;
+    }
+
+    /**
+     * trains the chain with all tweet archives of the given directory.
+     *
+     * @param directory the directory of the monthly archives
+     * @return the number of trained sentences
+     * @throws IOException if the directory or an archive cannot be read
+     * @see #discoverArchives(Path)
+     */
+    public long ingest(Path directory) throws IOException {
+        return ingest(discoverArchives(directory));
+    }
+
+    /**
+     * trains the chain with the given tweet archives. The method returns when all archives were trained or as soon as
+     * one stage failed; the other stages are stopped then.
+     *
+     * @param archives the archives to read
+     * @return the number of trained sentences
+     * @throws IOException if an archive cannot be read
+     */
+    public long ingest(List<Path> archives) throws IOException {
+        if (trainers > 1 && !chain.isConcurrent()) {
+            throw new IllegalStateException("Cannot train with " + trainers + " trainers. The chain is not concurrent");
+        }
+
+        Queue<Path> pendingArchives = new ConcurrentLinkedQueue<>(archives);
+        Stage tweets = new Stage(queueCapacity, readers, refiners);
+        Stage sentences = new Stage(queueCapacity, refiners, trainers);
+        AtomicLong trainedSentences = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(readers + refiners + trainers);
+        CompletionService<Void> workers = new ExecutorCompletionService<>(executor);
+        try {
+            for (int i = 0; i < readers; i++) {
+                workers.submit(worker(() -> read(pendingArchives, tweets), tweets));
+            }
+            for (int i = 0; i < refiners; i++) {
+                workers.submit(worker(() -> refine(tweets, sentences), sentences));
+            }
+            for (int i = 0; i < trainers; i++) {
+                workers.submit(() -> {
+                    train(sentences, trainedSentences);
+                    return null;
+                });
+            }
+
+            for (int i = 0; i < readers + refiners + trainers; i++) {
+                workers.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while ingesting archives");
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return trainedSentences.get();
+    }
+
+    /**
+     * wraps the work of a producing stage so that the next stage ends once the last worker is done. A failed worker
+     * does not end the next stage because the whole pipeline is stopped anyway.
+     */
+    private static Callable<Void> worker(Work work, Stage output) {
+        return () -> {
+            work.run();
+            output.finishProducer();
+            return null;
+        };
+    }
+
+    private void read(Queue<Path> pendingArchives, Stage tweets) throws InterruptedException {
+        Path archive;
+        while ((archive = pendingArchives.poll()) != null) {
+            LOG.info("importing " + archive);
+            List<String> batch = new ArrayList<>(batchSize);
+            try (Stream<String> texts = new TweetArchiveReader().withArchive(archive.toString()).streamTweetTexts()) {
+                for (String text : (Iterable<String>) texts::iterator) {
+                    batch.add(text);
+                    if (batch.size() == batchSize) {
+                        tweets.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                tweets.put(batch);
+            }
+        }
+    }
+
+    private static void refine(Stage tweets, Stage sentences) throws InterruptedException {
+        Batch batch;
+        while ((batch = tweets.take()) != null) {
+            sentences.putInTurn(batch.sequence, TweetRefiner.process(batch.texts));
+        }
+    }
+
+    private void train(Stage sentences, AtomicLong trainedSentences) throws InterruptedException {
+        Batch batch;
+        while ((batch = sentences.take()) != null) {
+            chain.train(batch.texts);
+            trainedSentences.addAndGet(batch.texts.size());
+        }
+    }
+
+    private static IOException rethrow(Throwable cause) {
+        if (cause instanceof UncheckedIOException) {
+            return ((UncheckedIOException) cause).getCause();
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IllegalStateException("Error while ingesting archives", cause);
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must not be smaller than 1. Given: " + value);
+        }
+        return value;
+    }
+
+    private interface Work {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * A batch of texts together with its position in the order the batches were read.
+     */
+    private static final class Batch {
+        private final long sequence;
+        private final List<String> texts;
+
+        private Batch(long sequence, List<String> texts) {
+            this.sequence = sequence;
+            this.texts = texts;
+        }
+    }
+
+    /**
+     * The bounded queue between two stages. Once all producers of the queue are finished, each consumer receives an
+     * end marker.
+     * <p>
+     * Batches are numbered in the order they enter the first queue. Producers of the next queue hand them on in the
+     * same order by {@link #putInTurn(long, List)}, where each producer waits until the batch before its own was put.
+     */
+    private static final class Stage {
+        private static final Batch END_OF_STAGE = new Batch(-1, Collections.emptyList());
+
+        private final BlockingQueue<Batch> queue;
+        private final AtomicInteger remainingProducers;
+        private final int consumers;
+        /**
+         * the number of the next batch to put, guarded by this stage
+         */
+        private long nextSequence;
+
+        private Stage(int capacity, int producers, int consumers) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.remainingProducers = new AtomicInteger(producers);
+            this.consumers = consumers;
+        }
+
+        /**
+         * numbers the given batch and puts it into the queue. Batches are taken in the order of their numbers.
+         */
+        private synchronized void put(List<String> texts) throws InterruptedException {
+            queue.put(new Batch(nextSequence++, texts));
+        }
+
+        /**
+         * puts the given batch into the queue once all batches with smaller numbers were put. An empty batch is not
+         * put but still takes its turn.
+         */
+        private void putInTurn(long sequence, List<String> texts) throws InterruptedException {
+            synchronized (this) {
+                while (nextSequence != sequence) {
+                    wait();
+                }
+            }
+            // only the producer whose turn it is gets here, so batches enter the queue in order
+            if (!texts.isEmpty()) {
+                queue.put(new Batch(sequence, texts));
+            }
+            synchronized (this) {
+                nextSequence++;
+                notifyAll();
+            }
+        }
+
+        /**
+         * returns the next batch or <code>null</code> if all producers are finished and all batches were taken.
+         */
+        private Batch take() throws InterruptedException {
+            Batch batch = queue.take();
+            return batch == END_OF_STAGE ? null : batch;
+        }
+
+        private void finishProducer() throws InterruptedException {
+            if (remainingProducers.decrementAndGet() == 0) {
+                for (int i = 0; i < consumers; i++) {
+                    queue.put(END_OF_STAGE);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package de.philipppixel.tweetkov;
 
+import de.philipppixel.tweetkov.core.GenerationOptions;
 import de.philipppixel.tweetkov.core.TweetkovChain;
 
 import java.io.File;
@@ -13,6 +14,7 @@ import java.util.Scanner;
  */
 public class LinekovRunner {
     private static final int NUMBER_OF_SENTENCES = 400;
+    private static final int MIN_NUMBER_OF_WORDS = 5;
     private final TweetkovChain app;
     private final String directory;
 
@@ -40,14 +42,11 @@ public class LinekovRunner {
     private void makeItWeird() {
 //        app.createHistogram();
 
-        for (int i = 0; i < NUMBER_OF_SENTENCES; i++) {
-            String sentence = app.generate();
-            if (sentence.split(" ").length < 5) {
-                i--;
-                continue;
-            }
-            System.out.println(sentence);
-        }
+        GenerationOptions options = GenerationOptions.defaults()
+                .withMinWords(MIN_NUMBER_OF_WORDS);
+        app.sentences(options)
+                .limit(NUMBER_OF_SENTENCES)
+                .forEach(System.out::println);
     }
 
     private List<String> getActs() throws FileNotFoundException {
@@ -0,0 +1,67 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list that can only grow at its end. Elements are stored in chunks of fixed size which are never moved, so readers
+ * never block and never see an element before it was fully added. Writers synchronize among themselves.
+ * <p>
+ * An element with an index smaller than {@link #size()} can always be read, no matter how many elements are added
+ * concurrently.
+ *
+ * @param <T> the type of the elements
+ */
+class AppendOnlyList<T> extends AbstractList<T> implements RandomAccess {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile Object[][] chunks = new Object[1][];
+    private volatile int size;
+
+    /**
+     * appends the given element and returns its index
+     *
+     * @param element the element to append
+     * @return the index of the appended element
+     */
+    synchronized int append(T element) {
+        int index = size;
+        int chunk = index >>> CHUNK_BITS;
+
+        Object[][] currentChunks = chunks;
+        if (chunk == currentChunks.length) {
+            currentChunks = Arrays.copyOf(currentChunks, currentChunks.length * 2);
+        }
+        if (currentChunks[chunk] == null) {
+            currentChunks[chunk] = new Object[CHUNK_SIZE];
+        }
+        currentChunks[chunk][index & CHUNK_MASK] = element;
+
+        chunks = currentChunks;
+        size = index + 1;
+        return index;
+    }
+
+    @Override
+    public boolean add(T element) {
+        append(element);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (T) chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,273 @@
+package de.philipppixel.tweetkov.core;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the measurements of a {@link TweetkovChain}: training throughput, model size, generation latencies, the
+ * number of retries of sentences without duplicates, truncated sentences and empty results.
+ * <p>
+ * The chain stores no end marker: a sentence ends where a prefix of the training sentences has no transitions. So
+ * reaching such a prefix is the regular end and not counted. Attempts that never reach an end are cut at the maximum
+ * sentence length and counted as truncations instead.
+ * <pre>
+ * ChainMetrics metrics = ChainMetrics.attachTo(chain);
+ * metrics.registerMBean("tweets");
+ * </pre>
+ * The metrics can be read directly or through JMX, f. i. with JConsole. Recording a measurement only increments a few
+ * counters and never allocates, and the model size is only counted when it is read.
+ */
+public class ChainMetrics implements MetricsListener, ChainMetricsMXBean {
+    /**
+     * the JMX domain of all metrics
+     */
+    public static final String DOMAIN = "de.philipppixel.tweetkov";
+    /**
+     * enough buckets for latencies of more than a day in microseconds
+     */
+    private static final int LATENCY_BUCKETS = 40;
+
+    private final TweetkovChain chain;
+    private final LongAdder trainedLines = new LongAdder();
+    private final LongAdder trainedTokens = new LongAdder();
+    private final LongAdder trainingNanos = new LongAdder();
+    private final LongAdder generations = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder generationNanos = new LongAdder();
+    private final LongAdder truncations = new LongAdder();
+    private final LongAdder emptyResults = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram(LATENCY_BUCKETS);
+    private final AtomicLongArray duplicateRetries = new AtomicLongArray(TweetkovChain.DUPLICATE_TIMEOUT);
+    private ObjectName registeredName;
+
+    /**
+     * Creates metrics for the given chain. The metrics only receive measurements once they are set as the
+     * {@link TweetkovChain#setMetricsListener(MetricsListener) listener} of the chain.
+     *
+     * @param chain the chain whose model size is reported. It must not be <code>null</code>
+     * @see #attachTo(TweetkovChain)
+     */
+    public ChainMetrics(TweetkovChain chain) {
+        if (chain == null) {
+            throw new IllegalArgumentException("Cannot create metrics. Chain must not be null");
+        }
+        this.chain = chain;
+    }
+
+    /**
+     * creates metrics for the given chain and sets them as its listener. A listener that was set before is replaced.
+     *
+     * @param chain the chain to measure. It must not be <code>null</code>
+     * @return the metrics of the chain
+     */
+    public static ChainMetrics attachTo(TweetkovChain chain) {
+        ChainMetrics metrics = new ChainMetrics(chain);
+        chain.setMetricsListener(metrics);
+        return metrics;
+    }
+
+    /**
+     * registers these metrics at the platform MBean server as
+     * <code>de.philipppixel.tweetkov:type=TweetkovChain,name=&lt;name&gt;</code>.
+     *
+     * @param name the name that tells several chains apart
+     * @return the name of the MBean
+     * @throws IllegalStateException if the metrics cannot be registered, f. i. because the name is already taken
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        if (registeredName != null) {
+            throw new IllegalStateException("Cannot register metrics. Already registered as " + registeredName);
+        }
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=TweetkovChain,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics as " + name, e);
+        }
+    }
+
+    /**
+     * removes these metrics from the platform MBean server. Nothing happens if they are not registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (registeredName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(registeredName)) {
+                server.unregisterMBean(registeredName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister metrics " + registeredName, e);
+        }
+        registeredName = null;
+    }
+
+    @Override
+    public void onTraining(int lines, long tokens, long nanos) {
+        trainedLines.add(lines);
+        trainedTokens.add(tokens);
+        trainingNanos.add(nanos);
+    }
+
+    @Override
+    public void onGeneration(long nanos, int attempts, int truncations, boolean matched, boolean avoidingDuplicates) {
+        generations.increment();
+        this.attempts.add(attempts);
+        generationNanos.add(nanos);
+        latencies.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (truncations > 0) {
+            this.truncations.add(truncations);
+        }
+        if (!matched) {
+            emptyResults.increment();
+        }
+        if (avoidingDuplicates) {
+            int retries = Math.max(0, attempts - 1);
+            duplicateRetries.incrementAndGet(Math.min(retries, duplicateRetries.length() - 1));
+        }
+    }
+
+    @Override
+    public long getTrainedLines() {
+        return trainedLines.sum();
+    }
+
+    @Override
+    public long getTrainedTokens() {
+        return trainedTokens.sum();
+    }
+
+    @Override
+    public double getTrainingLinesPerSecond() {
+        return perSecond(trainedLines.sum(), trainingNanos.sum());
+    }
+
+    @Override
+    public double getTrainingTokensPerSecond() {
+        return perSecond(trainedTokens.sum(), trainingNanos.sum());
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public int getPrefixCount() {
+        return chain.getModelSize().getPrefixCount();
+    }
+
+    @Override
+    public int getStartPrefixCount() {
+        return chain.getModelSize().getStartPrefixCount();
+    }
+
+    @Override
+    public long getSuffixEntryCount() {
+        return chain.getModelSize().getSuffixEntryCount();
+    }
+
+    @Override
+    public long getEstimatedModelBytes() {
+        return chain.getModelSize().getEstimatedBytes();
+    }
+
+    @Override
+    public long getGenerations() {
+        return generations.sum();
+    }
+
+    @Override
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    @Override
+    public double getMeanGenerationMicros() {
+        return ratio(TimeUnit.NANOSECONDS.toMicros(generationNanos.sum()), generations.sum());
+    }
+
+    @Override
+    public long getGenerationLatencyP50Micros() {
+        return latencies.getPercentile(0.5);
+    }
+
+    @Override
+    public long getGenerationLatencyP99Micros() {
+        return latencies.getPercentile(0.99);
+    }
+
+    @Override
+    public long[] getGenerationLatencyHistogram() {
+        return latencies.getCounts();
+    }
+
+    @Override
+    public long[] getDuplicateRetryHistogram() {
+        long[] result = new long[duplicateRetries.length()];
+        for (int retries = 0; retries < result.length; retries++) {
+            result[retries] = duplicateRetries.get(retries);
+        }
+        return result;
+    }
+
+    @Override
+    public double getMeanDuplicateRetries() {
+        long sentences = 0;
+        long retries = 0;
+        for (int i = 0; i < duplicateRetries.length(); i++) {
+            long count = duplicateRetries.get(i);
+            sentences += count;
+            retries += i * count;
+        }
+        return ratio(retries, sentences);
+    }
+
+    @Override
+    public long getTruncations() {
+        return truncations.sum();
+    }
+
+    @Override
+    public double getTruncationRate() {
+        return ratio(truncations.sum(), attempts.sum());
+    }
+
+    @Override
+    public long getEmptyResults() {
+        return emptyResults.sum();
+    }
+
+    @Override
+    public double getEmptyResultRate() {
+        return ratio(emptyResults.sum(), generations.sum());
+    }
+
+    private static double ratio(long count, long total) {
+        return total == 0 ? 0 : (double) count / total;
+    }
+
+    @Override
+    public void reset() {
+        trainedLines.reset();
+        trainedTokens.reset();
+        trainingNanos.reset();
+        generations.reset();
+        attempts.reset();
+        generationNanos.reset();
+        truncations.reset();
+        emptyResults.reset();
+        latencies.reset();
+        for (int i = 0; i < duplicateRetries.length(); i++) {
+            duplicateRetries.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package de.philipppixel.tweetkov.core;
+
+/**
+ * The JMX view of {@link ChainMetrics}. All counts are totals since the metrics were created or {@link #reset()}, except
+ * the model size which is counted whenever it is read.
+ */
+public interface ChainMetricsMXBean {
+    long getTrainedLines();
+
+    long getTrainedTokens();
+
+    /**
+     * returns the number of trained lines per second of training time.
+     *
+     * @return the training throughput in lines per second, 0 (zero) before the first training
+     */
+    double getTrainingLinesPerSecond();
+
+    /**
+     * returns the number of trained tokens per second of training time.
+     *
+     * @return the training throughput in tokens per second, 0 (zero) before the first training
+     */
+    double getTrainingTokensPerSecond();
+
+    /**
+     * returns the number of distinct prefixes, which is also the number of transitions.
+     *
+     * @return the number of distinct prefixes
+     */
+    int getPrefixCount();
+
+    int getStartPrefixCount();
+
+    /**
+     * returns the number of distinct suffixes summed over all transitions.
+     *
+     * @return the number of stored suffix entries
+     */
+    long getSuffixEntryCount();
+
+    /**
+     * returns the estimated memory of the model, see {@link CompactionReport}.
+     *
+     * @return the estimated memory of the model in bytes
+     */
+    long getEstimatedModelBytes();
+
+    /**
+     * returns the number of generated sentences, no matter if they matched their options or not.
+     *
+     * @return the number of generated sentences
+     */
+    long getGenerations();
+
+    /**
+     * returns the number of attempts of all generated sentences. Each retry counts as an attempt.
+     *
+     * @return the number of attempts
+     */
+    long getAttempts();
+
+    double getMeanGenerationMicros();
+
+    long getGenerationLatencyP50Micros();
+
+    long getGenerationLatencyP99Micros();
+
+    /**
+     * returns the number of generations per latency bucket: bucket 0 (zero) counts generations below one microsecond,
+     * bucket <code>i</code> those from <code>2^(i-1)</code> to <code>2^i - 1</code> microseconds.
+     *
+     * @return the number of generations per latency bucket
+     */
+    long[] getGenerationLatencyHistogram();
+
+    /**
+     * returns how many sentences without duplicates needed how many retries: the entry at index <code>i</code> counts
+     * the sentences that needed <code>i</code> retries. Sentences that found no original sentence at all are counted at
+     * the last index.
+     *
+     * @return the number of sentences without duplicates per number of retries
+     */
+    long[] getDuplicateRetryHistogram();
+
+    double getMeanDuplicateRetries();
+
+    /**
+     * returns the number of attempts that were cut at the maximum sentence length because they never reached the end
+     * of a training sentence, f. i. on a cycle of prefixes.
+     *
+     * @return the number of truncated attempts
+     */
+    long getTruncations();
+
+    /**
+     * returns the share of attempts that were cut at the maximum sentence length.
+     *
+     * @return the number of truncations per attempt, 0 (zero) before the first generation
+     */
+    double getTruncationRate();
+
+    long getEmptyResults();
+
+    /**
+     * returns the share of generations that found no sentence which matched their options.
+     *
+     * @return the number of empty results per generation, 0 (zero) before the first generation
+     */
+    double getEmptyResultRate();
+
+    /**
+     * sets all counts to 0 (zero).
+     */
+    void reset();
+}
@@ -0,0 +1,111 @@
+package de.philipppixel.tweetkov.core;
+
+/**
+ * Describes how {@link TweetkovChain#prune(int)} or {@link TweetkovChain#compactToBudget(long)} changed a chain: the
+ * minimum count that was applied and the size of the model before and after.
+ * <p>
+ * Memory is estimated from the number and the size of the entries of the model and of the index of the training
+ * sentences, assuming a 64 bit JVM with compressed references. The estimate is good for comparing models, but it is
+ * not a measurement of the heap.
+ */
+public class CompactionReport {
+    private final int minCount;
+    private final ModelSize before;
+    private final ModelSize after;
+
+    CompactionReport(int minCount, ModelSize before, ModelSize after) {
+        this.minCount = minCount;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * returns the minimum number of times a prefix must have been trained to be kept.
+     *
+     * @return the minimum count, 1 (one) if no transition was removed
+     */
+    public int getMinCount() {
+        return minCount;
+    }
+
+    public int getPrefixCountBefore() {
+        return before.getPrefixCount();
+    }
+
+    public int getPrefixCountAfter() {
+        return after.getPrefixCount();
+    }
+
+    public int getStartPrefixCountBefore() {
+        return before.getStartPrefixCount();
+    }
+
+    public int getStartPrefixCountAfter() {
+        return after.getStartPrefixCount();
+    }
+
+    /**
+     * returns the number of distinct suffixes summed over all transitions before the compaction.
+     *
+     * @return the number of suffix entries before the compaction
+     */
+    public long getSuffixEntryCountBefore() {
+        return before.getSuffixEntryCount();
+    }
+
+    /**
+     * returns the number of distinct suffixes summed over all transitions after the compaction.
+     *
+     * @return the number of suffix entries after the compaction
+     */
+    public long getSuffixEntryCountAfter() {
+        return after.getSuffixEntryCount();
+    }
+
+    /**
+     * returns the number of entries of the vocabulary before the compaction, including the lower case forms of tokens.
+     *
+     * @return the number of entries of the vocabulary before the compaction
+     */
+    public int getTokenCountBefore() {
+        return before.getTokenCount();
+    }
+
+    /**
+     * returns the number of entries of the vocabulary after the compaction. Tokens that only occurred in removed
+     * transitions are removed from the vocabulary, too.
+     *
+     * @return the number of entries of the vocabulary after the compaction
+     */
+    public int getTokenCountAfter() {
+        return after.getTokenCount();
+    }
+
+    public long getEstimatedBytesBefore() {
+        return before.getEstimatedBytes();
+    }
+
+    public long getEstimatedBytesAfter() {
+        return after.getEstimatedBytes();
+    }
+
+    /**
+     * returns the estimated memory that the compaction freed.
+     *
+     * @return the estimated number of reclaimed bytes
+     */
+    public long getReclaimedBytes() {
+        return before.getEstimatedBytes() - after.getEstimatedBytes();
+    }
+
+    @Override
+    public String toString() {
+        return "Removed prefixes trained less than " + minCount + " times: "
+                + "prefixes " + getPrefixCountBefore() + " -> " + getPrefixCountAfter()
+                + ", start prefixes " + getStartPrefixCountBefore() + " -> " + getStartPrefixCountAfter()
+                + ", suffix entries " + getSuffixEntryCountBefore() + " -> " + getSuffixEntryCountAfter()
+                + ", tokens " + getTokenCountBefore() + " -> " + getTokenCountAfter()
+                + ", estimated bytes " + getEstimatedBytesBefore() + " -> " + getEstimatedBytesAfter()
+                + " (" + getReclaimedBytes() + " reclaimed)";
+    }
+}
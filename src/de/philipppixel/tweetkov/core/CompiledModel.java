@@ -0,0 +1,463 @@
+package de.philipppixel.tweetkov.core;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * This class is an immutable, read-optimized copy of a trained {@link TransitionRepository}.
+ * <p>
+ * Every transition becomes a <code>state</code> with an index. All data is stored in flat arrays: the suffixes of a
+ * state are found between <code>suffixOffsets[state]</code> and <code>suffixOffsets[state + 1]</code>, the same
+ * indices are used for the cumulative counts, the guide table and the successor of each suffix. The successor is the
+ * state of the prefix that results from appending the suffix, so walking the chain never needs a hash lookup.
+ * <p>
+ * States are numbered in the iteration order of the repository, so random prefixes are picked in the same way.
+ * <p>
+ * The arrays are accessed through {@link IntBuffer}s, so a model can either live on the heap after
+ * {@link #compile(TransitionRepository) compiling} or be read straight from a memory-mapped file, see
+ * {@link MappedModelFile}.
+ */
+class CompiledModel {
+    /**
+     * how often a suffix that leads into a doomed successor is redrawn before it is taken anyway
+     */
+    private static final int MAX_REDRAWS = 8;
+    /**
+     * the successor of a suffix that leads to a prefix without transitions
+     */
+    static final int DEAD_END = -1;
+
+    /**
+     * the number of tables, see {@link #getTables()}
+     */
+    static final int TABLE_COUNT = 10;
+
+    private final Vocabulary vocabulary;
+    private final IntBuffer prefixOffsets;
+    private final IntBuffer prefixTokens;
+    private final IntBuffer suffixOffsets;
+    private final IntBuffer suffixTokens;
+    private final IntBuffer cumulativeCounts;
+    private final IntBuffer guide;
+    private final IntBuffer successors;
+    private final IntBuffer startStates;
+    private final IntBuffer startCumulativeCounts;
+    private final IntBuffer startGuide;
+
+    private CompiledModel(Vocabulary vocabulary, IntBuffer... tables) {
+        if (tables.length != TABLE_COUNT) {
+            throw new IllegalArgumentException("Expected " + TABLE_COUNT + " tables but got " + tables.length);
+        }
+        this.vocabulary = vocabulary;
+        this.prefixOffsets = tables[0];
+        this.prefixTokens = tables[1];
+        this.suffixOffsets = tables[2];
+        this.suffixTokens = tables[3];
+        this.cumulativeCounts = tables[4];
+        this.guide = tables[5];
+        this.successors = tables[6];
+        this.startStates = tables[7];
+        this.startCumulativeCounts = tables[8];
+        this.startGuide = tables[9];
+    }
+
+    /**
+     * creates a compiled model from tables that were returned by {@link #getTables()}, f. i. after they were written
+     * to a file and mapped into memory again. The tables are used as they are, not copied.
+     *
+     * @param vocabulary the vocabulary which decodes the tokens of the tables
+     * @param tables     the tables in the order of {@link #getTables()}
+     * @return the compiled model
+     */
+    static CompiledModel fromTables(Vocabulary vocabulary, IntBuffer... tables) {
+        return new CompiledModel(vocabulary, tables);
+    }
+
+    /**
+     * returns read-only views of all tables in this order: prefix offsets, prefix tokens, suffix offsets, suffix
+     * tokens, cumulative counts, guide, successors, start states, start cumulative counts and start guide.
+     *
+     * @return read-only views of all tables
+     */
+    IntBuffer[] getTables() {
+        IntBuffer[] tables = {prefixOffsets, prefixTokens, suffixOffsets, suffixTokens, cumulativeCounts, guide,
+                successors, startStates, startCumulativeCounts, startGuide};
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = tables[i].asReadOnlyBuffer();
+            tables[i].clear();
+        }
+        return tables;
+    }
+
+    /**
+     * creates a compiled model from the given repository. The repository is not changed.
+     * <p>
+     * A {@link TransitionRepository#createConcurrent() concurrent} repository may be trained while it is compiled. The
+     * model is then a snapshot of the transitions at some point during compiling: suffixes that lead to transitions
+     * that are not part of the snapshot end the sentence, and start prefixes without a transition are left out.
+     *
+     * @param repository the trained repository
+     * @return the compiled model
+     */
+    static CompiledModel compile(TransitionRepository repository) {
+        List<Transition> transitions = new ArrayList<>(repository.getAllTransitions());
+        int stateCount = transitions.size();
+
+        Map<Prefix, Integer> states = new HashMap<>(stateCount * 2);
+        int prefixTokenCount = 0;
+        int suffixCount = 0;
+        for (Transition transition : transitions) {
+            states.put(transition.getPrefix(), states.size());
+            prefixTokenCount += transition.getPrefix().size();
+            suffixCount += transition.getUniqueSuffixCount();
+        }
+
+        int[] prefixOffsets = new int[stateCount + 1];
+        int[] prefixTokens = new int[prefixTokenCount];
+        int[] suffixOffsets = new int[stateCount + 1];
+        int[] suffixTokens = new int[suffixCount];
+        int[] counts = new int[suffixCount];
+        int[] successors = new int[suffixCount];
+
+        int state = 0;
+        int prefixIndex = 0;
+        int suffixIndex = 0;
+        for (Transition transition : transitions) {
+            Prefix prefix = transition.getPrefix();
+            for (int i = 0; i < prefix.size(); i++) {
+                prefixTokens[prefixIndex++] = prefix.getToken(i);
+            }
+
+            for (int slot = 0; slot < transition.getUniqueSuffixCount(); slot++) {
+                int suffix = transition.getUniqueSuffix(slot);
+                suffixTokens[suffixIndex] = suffix;
+                counts[suffixIndex] = transition.getSuffixCount(slot);
+
+                Integer successor = states.get(prefix.shiftWithSuffix(suffix));
+                successors[suffixIndex] = successor == null ? DEAD_END : successor;
+                suffixIndex++;
+            }
+
+            state++;
+            prefixOffsets[state] = prefixIndex;
+            suffixOffsets[state] = suffixIndex;
+        }
+
+        int[] cumulativeCounts = new int[suffixCount];
+        int[] guide = new int[suffixCount];
+        for (state = 0; state < stateCount; state++) {
+            WeightedTable.buildGuide(counts, cumulativeCounts, guide, suffixOffsets[state], suffixOffsets[state + 1]);
+        }
+
+        StartPrefixTable startPrefixes = repository.getStartPrefixes();
+        int startPrefixCount = startPrefixes.size();
+        int[] startStates = new int[startPrefixCount];
+        int[] startCounts = new int[startPrefixCount];
+        int startStateCount = 0;
+        for (int slot = 0; slot < startPrefixCount; slot++) {
+            Integer startState = states.get(startPrefixes.getPrefix(slot));
+            if (startState != null) {
+                startStates[startStateCount] = startState;
+                startCounts[startStateCount] = startPrefixes.getCount(slot);
+                startStateCount++;
+            }
+        }
+        startStates = Arrays.copyOf(startStates, startStateCount);
+        int[] startCumulativeCounts = new int[startStateCount];
+        int[] startGuide = new int[startStateCount];
+        WeightedTable.buildGuide(startCounts, startCumulativeCounts, startGuide, 0, startStateCount);
+
+        return new CompiledModel(repository.getVocabulary(), IntBuffer.wrap(prefixOffsets), IntBuffer.wrap(prefixTokens),
+                IntBuffer.wrap(suffixOffsets), IntBuffer.wrap(suffixTokens), IntBuffer.wrap(cumulativeCounts),
+                IntBuffer.wrap(guide), IntBuffer.wrap(successors), IntBuffer.wrap(startStates),
+                IntBuffer.wrap(startCumulativeCounts), IntBuffer.wrap(startGuide));
+    }
+
+    /**
+     * walks the chain and collects the tokens into a sentence. It behaves like the generation on a
+     * {@link TransitionRepository} but follows the precomputed successors instead of looking up prefixes.
+     *
+     * @param random        the random source for the start state and all suffixes
+     * @param maxSuffixes   the maximum number of suffixes to append
+     * @param wordDelimiter the string between two tokens
+     * @return the generated sentence
+     */
+    Sentence generateSentence(RandomGenerator random, int maxSuffixes, String wordDelimiter) {
+        Sentence sentence = new Sentence(vocabulary, wordDelimiter);
+        generateSentence(random, maxSuffixes, sentence);
+        return sentence;
+    }
+
+    /**
+     * walks the chain like {@link #generateSentence(RandomGenerator, int, String)} but collects the tokens into the
+     * given sentence, which is cleared first.
+     *
+     * @param random      the random source for the start state and all suffixes
+     * @param maxSuffixes the maximum number of suffixes to append
+     * @param sentence    the sentence to fill. It must use the vocabulary of this model
+     */
+    void generateSentence(RandomGenerator random, int maxSuffixes, Sentence sentence) {
+        generateSentence(random, maxSuffixes, sentence, null);
+    }
+
+    /**
+     * walks the chain like {@link #generateSentence(RandomGenerator, int, Sentence)} but steers away from forced
+     * paths: the first state is picked among states that reach a branch, and at a branch a suffix that leads into a
+     * {@link ForcedPathAnalysis#isDoomed(int) doomed} successor is redrawn a few times.
+     *
+     * @param random      the random source for the start state and all suffixes
+     * @param maxSuffixes the maximum number of suffixes to append
+     * @param sentence    the sentence to fill. It must use the vocabulary of this model
+     * @param forcedPaths the analysis of this model, or <code>null</code> to walk the chain unsteered
+     */
+    void generateSentence(RandomGenerator random, int maxSuffixes, Sentence sentence,
+                          ForcedPathAnalysis forcedPaths) {
+        generateSentence(random, maxSuffixes, sentence, forcedPaths, null, GenerationOptions.defaults());
+    }
+
+    /**
+     * walks the chain like {@link #generateSentence(RandomGenerator, int, Sentence, ForcedPathAnalysis)} and also
+     * steers towards the number of words of the given options: the first state is redrawn a few times if it cannot
+     * lead to a sentence of that length, and each suffix is only drawn among the suffixes that can still lead to a
+     * sentence end within the limits. If no suffix can, all suffixes are considered.
+     *
+     * @param random       the random source for the start state and all suffixes
+     * @param maxSuffixes  the maximum number of suffixes to append
+     * @param sentence     the sentence to fill. It must use the vocabulary of this model
+     * @param forcedPaths  the analysis of this model, or <code>null</code> to ignore forced paths
+     * @param endDistances the distances of this model, or <code>null</code> to ignore the number of words
+     * @param options      the options with the number of words to steer towards
+     */
+    void generateSentence(RandomGenerator random, int maxSuffixes, Sentence sentence, ForcedPathAnalysis forcedPaths,
+                          EndDistances endDistances, GenerationOptions options) {
+        sentence.clear();
+        int minWords = options.getMinWords();
+        int maxWords = options.getMaxWords();
+        int state = pickFirstState(random, forcedPaths);
+        for (int redraw = 0; endDistances != null && redraw < MAX_REDRAWS
+                && !endDistances.canEndWithin(state, getPrefixSize(state), maxSuffixes, minWords, maxWords); redraw++) {
+            state = pickFirstState(random, forcedPaths);
+        }
+        int firstPrefixSize = getPrefixSize(state);
+
+        for (int i = 0; i < maxSuffixes && state != DEAD_END; i++) {
+            int wordsSoFar = i == 0 ? 0 : firstPrefixSize + i;
+            int entry = drawEntry(state, random, endDistances, wordsSoFar, maxSuffixes - i, options);
+            if (forcedPaths != null && getUniqueSuffixCount(state) > 1) {
+                for (int redraw = 0; redraw < MAX_REDRAWS && leadsIntoDoom(entry, forcedPaths); redraw++) {
+                    entry = drawEntry(state, random, endDistances, wordsSoFar, maxSuffixes - i, options);
+                }
+            }
+            int suffix = suffixTokens.get(entry);
+            if (vocabulary.isEmpty(suffix)) {
+                break;
+            }
+
+            if (sentence.isEmpty()) {
+                sentence.addStartPrefix(prefixTokens, prefixOffsets.get(state), prefixOffsets.get(state + 1));
+            }
+            sentence.addSuffix(suffix, getUniqueSuffixCount(state) > 1);
+            if (sentence.hasCopiedSpan()) {
+                break;
+            }
+            state = successors.get(entry);
+            if (i == maxSuffixes - 1 && state != DEAD_END) {
+                sentence.markTruncated();
+            }
+        }
+    }
+
+    private boolean leadsIntoDoom(int entry, ForcedPathAnalysis forcedPaths) {
+        return !vocabulary.isEmpty(suffixTokens.get(entry)) && forcedPaths.isDoomed(successors.get(entry));
+    }
+
+    private int pickFirstState(RandomGenerator random, ForcedPathAnalysis forcedPaths) {
+        return forcedPaths == null ? getFirstState(random) : forcedPaths.pickFirstState(random);
+    }
+
+    private int getFirstState(RandomGenerator random) {
+        int hundredPercent = 100;
+        int originalStartWord = random.nextInt(hundredPercent);
+        if (originalStartWord <= TransitionRepository.ORIGINAL_START_PREFIX_PROBABILITY_IN_PERCENT) {
+            return getRandomStartState(random);
+        }
+
+        if (getStateCount() == 0) {
+            throw new IllegalStateException("Cannot return prefix because there are no prefixes yet.");
+        }
+        return random.nextInt(getStateCount());
+    }
+
+    private int getRandomEntry(int state, RandomGenerator random) {
+        int from = suffixOffsets.get(state);
+        int to = suffixOffsets.get(state + 1);
+        int occurrence = random.nextInt(cumulativeCounts.get(to - 1));
+        return WeightedTable.lookup(cumulativeCounts, guide, from, to, occurrence);
+    }
+
+    /**
+     * draws an entry of the given state. With distances, only the entries that can still lead to a sentence end within
+     * the number of words of the given options are considered. Their weights are kept, so the draw is the same as
+     * {@link #getRandomEntry(int, RandomGenerator)} restricted to the matching entries.
+     *
+     * @param wordsSoFar        the number of words of the sentence, 0 (zero) before the first suffix
+     * @param remainingSuffixes the number of suffixes that may still be appended, including the drawn one
+     */
+    private int drawEntry(int state, RandomGenerator random, EndDistances endDistances, int wordsSoFar,
+                          int remainingSuffixes, GenerationOptions options) {
+        if (endDistances == null) {
+            return getRandomEntry(state, random);
+        }
+
+        int from = suffixOffsets.get(state);
+        int to = suffixOffsets.get(state + 1);
+        int words = wordsSoFar == 0 ? getPrefixSize(state) + 1 : wordsSoFar + 1;
+
+        int total = 0;
+        for (int entry = from; entry < to; entry++) {
+            if (canEndWithin(entry, wordsSoFar, words, remainingSuffixes - 1, endDistances, options)) {
+                total += getCount(entry, from);
+            }
+        }
+        if (total == 0) {
+            return getRandomEntry(state, random);
+        }
+
+        int occurrence = random.nextInt(total);
+        for (int entry = from; entry < to; entry++) {
+            if (canEndWithin(entry, wordsSoFar, words, remainingSuffixes - 1, endDistances, options)) {
+                occurrence -= getCount(entry, from);
+                if (occurrence < 0) {
+                    return entry;
+                }
+            }
+        }
+        throw new IllegalStateException("Cannot draw suffix of state " + state);
+    }
+
+    /**
+     * returns true if taking the given entry might end the sentence within the number of words of the given options.
+     * An empty suffix ends the sentence with the words it has so far, any other suffix adds a word.
+     */
+    private boolean canEndWithin(int entry, int wordsSoFar, int words, int remainingSuffixes,
+                                 EndDistances endDistances, GenerationOptions options) {
+        if (vocabulary.isEmpty(suffixTokens.get(entry))) {
+            return wordsSoFar >= options.getMinWords() && wordsSoFar <= options.getMaxWords();
+        }
+        return endDistances.canEndWithin(successors.get(entry), words, remainingSuffixes, options.getMinWords(),
+                options.getMaxWords());
+    }
+
+    private int getCount(int entry, int from) {
+        return cumulativeCounts.get(entry) - (entry == from ? 0 : cumulativeCounts.get(entry - 1));
+    }
+
+    Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    int getStateCount() {
+        return suffixOffsets.limit() - 1;
+    }
+
+    int getUniqueSuffixCount(int state) {
+        return suffixOffsets.get(state + 1) - suffixOffsets.get(state);
+    }
+
+    /**
+     * returns the prefix of the given state as string
+     *
+     * @param state the index of the state
+     * @return the prefix of the given state as string
+     */
+    String getPrefixString(int state) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < getPrefixSize(state); i++) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append(vocabulary.decode(getPrefixToken(state, i)));
+        }
+        return result.toString();
+    }
+
+    /**
+     * returns the state that follows the given suffix of the given state.
+     *
+     * @param state the index of the state
+     * @param slot  the position of the suffix within the state
+     * @return the successor state or {@link #DEAD_END}
+     */
+    int getSuccessor(int state, int slot) {
+        return successors.get(suffixOffsets.get(state) + slot);
+    }
+
+    int getUniqueSuffix(int state, int slot) {
+        return suffixTokens.get(suffixOffsets.get(state) + slot);
+    }
+
+    /**
+     * returns how often the suffix in the given slot was trained.
+     *
+     * @param state the index of the state
+     * @param slot  the position of the suffix within the state
+     * @return how often the suffix in the given slot was trained
+     */
+    int getSuffixCount(int state, int slot) {
+        int entry = suffixOffsets.get(state) + slot;
+        int previous = slot == 0 ? 0 : cumulativeCounts.get(entry - 1);
+        return cumulativeCounts.get(entry) - previous;
+    }
+
+    int getPrefixSize(int state) {
+        return prefixOffsets.get(state + 1) - prefixOffsets.get(state);
+    }
+
+    int getPrefixToken(int state, int index) {
+        return prefixTokens.get(prefixOffsets.get(state) + index);
+    }
+
+    /**
+     * returns a start state with the probability of the share of sentences its prefix started.
+     *
+     * @param random the random source. Exactly one <code>nextInt</code> is drawn.
+     * @return the index of a start state
+     */
+    int getRandomStartState(RandomGenerator random) {
+        int size = startStates.limit();
+        if (size == 0) {
+            throw new IllegalStateException("Cannot return start prefix because there are no prefixes yet.");
+        }
+        int occurrence = random.nextInt(startCumulativeCounts.get(size - 1));
+        return startStates.get(WeightedTable.lookup(startCumulativeCounts, startGuide, 0, size, occurrence));
+    }
+
+    /**
+     * returns how many sentences were started by the prefix of the start state at the given index.
+     *
+     * @param index the index in {@link #getStartStates()}
+     * @return the number of sentences
+     */
+    int getStartCount(int index) {
+        int previous = index == 0 ? 0 : startCumulativeCounts.get(index - 1);
+        return startCumulativeCounts.get(index) - previous;
+    }
+
+    /**
+     * returns the distinct states of all start prefixes in the order they first started a sentence.
+     *
+     * @return a copy of the start states
+     */
+    int[] getStartStates() {
+        int[] result = new int[startStates.limit()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = startStates.get(i);
+        }
+        return result;
+    }
+}
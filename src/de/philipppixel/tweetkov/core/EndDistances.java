@@ -0,0 +1,136 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.Arrays;
+
+/**
+ * This class stores for each state of a {@link CompiledModel} the minimum and the maximum number of suffixes that can
+ * still be appended before a sentence ends. A sentence ends with an empty suffix, with a suffix that leads to a
+ * {@link CompiledModel#DEAD_END dead end} or when the maximum number of suffixes per sentence is reached. Therefore both
+ * distances are capped at that maximum, and states on a cycle without an exit reach it, too.
+ * <p>
+ * With these tables a sentence of a given length can be generated in a single pass: every suffix that cannot lead to a
+ * sentence end within the requested number of words is left out before the suffix is drawn, instead of generating
+ * complete sentences and rejecting those with the wrong length. The distances are only bounds, not every length in
+ * between must be reachable, so a generated sentence may still miss the target in rare cases.
+ * <p>
+ * The tables are immutable and may be used by any number of threads.
+ */
+class EndDistances {
+    private final CompiledModel model;
+    private final int maxSuffixes;
+    private final byte[] minDistances;
+    private final byte[] maxDistances;
+
+    private EndDistances(CompiledModel model, int maxSuffixes, byte[] minDistances, byte[] maxDistances) {
+        this.model = model;
+        this.maxSuffixes = maxSuffixes;
+        this.minDistances = minDistances;
+        this.maxDistances = maxDistances;
+    }
+
+    /**
+     * computes the distances of all states of the given model. Each pass over the states finds all sentence ends that
+     * are one suffix further away, so this takes at most <code>maxSuffixes + 1</code> passes.
+     *
+     * @param model       the model to analyse
+     * @param maxSuffixes the maximum number of suffixes per sentence, between 1 (one) and 127
+     * @return the distances of all states
+     */
+    static EndDistances compute(CompiledModel model, int maxSuffixes) {
+        if (maxSuffixes < 1 || maxSuffixes > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum number of suffixes must be between 1 and " + Byte.MAX_VALUE
+                    + ". Given: " + maxSuffixes);
+        }
+
+        int stateCount = model.getStateCount();
+        byte[] minDistances = new byte[stateCount];
+        byte[] maxDistances = new byte[stateCount];
+        Arrays.fill(minDistances, (byte) maxSuffixes);
+
+        boolean changed = true;
+        for (int pass = 0; changed && pass <= maxSuffixes; pass++) {
+            changed = false;
+            for (int state = 0; state < stateCount; state++) {
+                int min = maxSuffixes;
+                int max = 0;
+                for (int slot = 0; slot < model.getUniqueSuffixCount(state); slot++) {
+                    min = Math.min(min, distanceVia(model, state, slot, minDistances, maxSuffixes));
+                    max = Math.max(max, distanceVia(model, state, slot, maxDistances, maxSuffixes));
+                }
+                if (min != minDistances[state] || max != maxDistances[state]) {
+                    minDistances[state] = (byte) min;
+                    maxDistances[state] = (byte) max;
+                    changed = true;
+                }
+            }
+        }
+        return new EndDistances(model, maxSuffixes, minDistances, maxDistances);
+    }
+
+    /**
+     * returns the distance to the sentence end if the suffix in the given slot is taken, according to the given table
+     */
+    private static int distanceVia(CompiledModel model, int state, int slot, byte[] distances, int maxSuffixes) {
+        if (model.getVocabulary().isEmpty(model.getUniqueSuffix(state, slot))) {
+            return 0;
+        }
+        int successor = model.getSuccessor(state, slot);
+        if (successor == CompiledModel.DEAD_END) {
+            return 1;
+        }
+        return Math.min(maxSuffixes, 1 + distances[successor]);
+    }
+
+    CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * returns the maximum number of suffixes per sentence that the distances are capped at.
+     *
+     * @return the maximum number of suffixes per sentence
+     */
+    int getMaxSuffixes() {
+        return maxSuffixes;
+    }
+
+    /**
+     * returns the smallest number of suffixes that can be appended from the given state until the sentence ends.
+     *
+     * @param state the index of the state
+     * @return the minimum distance to a sentence end
+     */
+    int getMinDistance(int state) {
+        return minDistances[state];
+    }
+
+    /**
+     * returns the largest number of suffixes that can be appended from the given state until the sentence ends.
+     *
+     * @param state the index of the state
+     * @return the maximum distance to a sentence end, at most {@link #getMaxSuffixes()}
+     */
+    int getMaxDistance(int state) {
+        return maxDistances[state];
+    }
+
+    /**
+     * returns true if a sentence which reached the given state with the given number of words might end with a number
+     * of words in the given range.
+     *
+     * @param state             the index of the state or {@link CompiledModel#DEAD_END}
+     * @param words             the number of words of the sentence so far
+     * @param remainingSuffixes the number of suffixes that may still be appended
+     * @param minWords          the minimum number of words
+     * @param maxWords          the maximum number of words
+     * @return true if the sentence might end within the given range
+     */
+    boolean canEndWithin(int state, int words, int remainingSuffixes, int minWords, int maxWords) {
+        if (state == CompiledModel.DEAD_END || remainingSuffixes <= 0) {
+            return words >= minWords && words <= maxWords;
+        }
+        long shortest = (long) words + Math.min(minDistances[state], remainingSuffixes);
+        long longest = (long) words + Math.min(maxDistances[state], remainingSuffixes);
+        return longest >= minWords && shortest <= maxWords;
+    }
+}
@@ -0,0 +1,222 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.random.RandomGenerator;
+
+/**
+ * This class finds the <em>forced paths</em> of a {@link CompiledModel}: chains of states which have only one distinct
+ * suffix each. A forced path repeats the training text it was learned from token by token, because every occurrence
+ * of its prefixes was followed by the same suffix. For each state the analysis stores
+ * <ul>
+ * <li>the number of suffixes that are forced until a state with a choice (a <em>branch</em>) is reached or the
+ * sentence ends, and</li>
+ * <li>whether a branch can be reached at all.</li>
+ * </ul>
+ * From that it derives which states are <em>doomed</em>:
+ * <ul>
+ * <li>A first state is doomed if no branch can be reached. The whole sentence is then the end of a training
+ * sentence.</li>
+ * <li>A successor is doomed if no branch can be reached and its prefix together with the forced suffixes is at least
+ * as long as a copied span of the {@link OriginalityIndex}.</li>
+ * </ul>
+ * Generation that avoids duplicates uses this to skip doomed start states and to redraw suffixes that lead into doomed
+ * successors, so most attempts produce an original sentence instead of being rejected after a few tokens.
+ * <p>
+ * The analysis is immutable and may be used by any number of threads.
+ */
+class ForcedPathAnalysis {
+    /**
+     * the length of a forced path that runs into a cycle and therefore never reaches a branch or an end
+     */
+    static final int ENDLESS = Integer.MAX_VALUE;
+
+    private static final byte UNVISITED = 0;
+    private static final byte ON_PATH = 1;
+    private static final byte DONE = 2;
+
+    private final CompiledModel model;
+    private final int[] forcedRuns;
+    private final BitSet reachesBranch;
+    private final BitSet doomedSuccessors;
+    private final int[] viableStartStates;
+    private final int[] viableStartCumulativeCounts;
+    private final int[] viableStartGuide;
+    private final int[] viableStates;
+
+    private ForcedPathAnalysis(CompiledModel model, int[] forcedRuns, BitSet reachesBranch, BitSet doomedSuccessors,
+                               int[] viableStartStates, int[] viableStartCounts, int[] viableStates) {
+        this.model = model;
+        this.forcedRuns = forcedRuns;
+        this.reachesBranch = reachesBranch;
+        this.doomedSuccessors = doomedSuccessors;
+        this.viableStartStates = viableStartStates;
+        this.viableStartCumulativeCounts = new int[viableStartStates.length];
+        this.viableStartGuide = new int[viableStartStates.length];
+        WeightedTable.buildGuide(viableStartCounts, viableStartCumulativeCounts, viableStartGuide, 0,
+                viableStartStates.length);
+        this.viableStates = viableStates;
+    }
+
+    /**
+     * analyses all states of the given model in linear time.
+     *
+     * @param model      the model to analyse
+     * @param spanLength the number of tokens of a span that counts as a copy, see
+     *                   {@link OriginalityIndex#getSpanLength()}
+     * @return the analysis of the model
+     */
+    static ForcedPathAnalysis analyse(CompiledModel model, int spanLength) {
+        if (spanLength < 1) {
+            throw new IllegalArgumentException("Span length must not be smaller than 1. Given: " + spanLength);
+        }
+
+        int stateCount = model.getStateCount();
+        int[] forcedRuns = new int[stateCount];
+        BitSet reachesBranch = new BitSet(stateCount);
+        byte[] marks = new byte[stateCount];
+        int[] path = new int[16];
+
+        for (int first = 0; first < stateCount; first++) {
+            int pathLength = 0;
+            int state = first;
+            // follow the single suffixes until a state is known, has a choice or ends the sentence
+            while (state != CompiledModel.DEAD_END && marks[state] == UNVISITED && isForced(model, state)) {
+                if (pathLength == path.length) {
+                    path = Arrays.copyOf(path, path.length * 2);
+                }
+                path[pathLength++] = state;
+                marks[state] = ON_PATH;
+                state = model.getSuccessor(state, 0);
+            }
+
+            int run;
+            boolean branch;
+            if (state == CompiledModel.DEAD_END) {
+                run = 0;
+                branch = false;
+            } else if (marks[state] == ON_PATH) {
+                run = ENDLESS;
+                branch = false;
+            } else if (marks[state] == DONE) {
+                run = forcedRuns[state];
+                branch = reachesBranch.get(state);
+            } else {
+                marks[state] = DONE;
+                branch = model.getUniqueSuffixCount(state) > 1;
+                run = 0;
+                reachesBranch.set(state, branch);
+            }
+
+            for (int i = pathLength - 1; i >= 0; i--) {
+                run = run == ENDLESS ? ENDLESS : run + 1;
+                forcedRuns[path[i]] = run;
+                reachesBranch.set(path[i], branch);
+                marks[path[i]] = DONE;
+            }
+        }
+
+        BitSet doomedSuccessors = new BitSet(stateCount);
+        int[] viableStates = new int[stateCount];
+        int viableStateCount = 0;
+        for (int state = 0; state < stateCount; state++) {
+            if (reachesBranch.get(state)) {
+                viableStates[viableStateCount++] = state;
+            } else if (forcedRuns[state] == ENDLESS
+                    || model.getPrefixSize(state) + (long) forcedRuns[state] >= spanLength) {
+                doomedSuccessors.set(state);
+            }
+        }
+
+        int[] startStates = model.getStartStates();
+        int[] viableStartStates = new int[startStates.length];
+        int[] viableStartCounts = new int[startStates.length];
+        int viableStartStateCount = 0;
+        for (int i = 0; i < startStates.length; i++) {
+            if (reachesBranch.get(startStates[i])) {
+                viableStartStates[viableStartStateCount] = startStates[i];
+                viableStartCounts[viableStartStateCount] = model.getStartCount(i);
+                viableStartStateCount++;
+            }
+        }
+
+        return new ForcedPathAnalysis(model, forcedRuns, reachesBranch, doomedSuccessors,
+                Arrays.copyOf(viableStartStates, viableStartStateCount), viableStartCounts,
+                Arrays.copyOf(viableStates, viableStateCount));
+    }
+
+    /**
+     * a state is forced if its only suffix continues the sentence
+     */
+    private static boolean isForced(CompiledModel model, int state) {
+        return model.getUniqueSuffixCount(state) == 1
+                && !model.getVocabulary().isEmpty(model.getUniqueSuffix(state, 0));
+    }
+
+    CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * returns the number of suffixes that are forced from the given state on, until a branch is reached or the
+     * sentence ends. For a state that {@link #reachesBranch(int) reaches a branch} this is the distance to the branch.
+     *
+     * @param state the index of the state
+     * @return the number of forced suffixes, 0 (zero) for a branch, or {@link #ENDLESS}
+     */
+    int getForcedRun(int state) {
+        return forcedRuns[state];
+    }
+
+    /**
+     * returns true if a state with more than one distinct suffix can be reached from the given state, the state itself
+     * included.
+     *
+     * @param state the index of the state
+     * @return true if a branch can be reached from the given state
+     */
+    boolean reachesBranch(int state) {
+        return reachesBranch.get(state);
+    }
+
+    /**
+     * returns true if walking into the given successor copies a span of a training sentence no matter which suffixes
+     * are drawn afterwards.
+     *
+     * @param successor the index of the state or {@link CompiledModel#DEAD_END}
+     * @return true if the successor can only lead to a copied span
+     */
+    boolean isDoomed(int successor) {
+        return successor != CompiledModel.DEAD_END && doomedSuccessors.get(successor);
+    }
+
+    /**
+     * picks the first state like {@link TransitionRepository#getFirstPrefixToken(RandomGenerator)} but only among
+     * states that reach a branch. Start states keep their weights. If there is no such start state (or no such state
+     * at all), all start states (or all states) are considered.
+     *
+     * @param random the random source
+     * @return the index of the first state
+     */
+    int pickFirstState(RandomGenerator random) {
+        int hundredPercent = 100;
+        int originalStartWord = random.nextInt(hundredPercent);
+        if (originalStartWord <= TransitionRepository.ORIGINAL_START_PREFIX_PROBABILITY_IN_PERCENT) {
+            int size = viableStartStates.length;
+            if (size > 0) {
+                int occurrence = random.nextInt(viableStartCumulativeCounts[size - 1]);
+                return viableStartStates[WeightedTable.lookup(viableStartCumulativeCounts, viableStartGuide, 0, size,
+                        occurrence)];
+            }
+            return model.getRandomStartState(random);
+        }
+
+        if (viableStates.length > 0) {
+            return viableStates[random.nextInt(viableStates.length)];
+        }
+        if (model.getStateCount() == 0) {
+            throw new IllegalStateException("Cannot return prefix because there are no prefixes yet.");
+        }
+        return random.nextInt(model.getStateCount());
+    }
+}
@@ -0,0 +1,116 @@
+package de.philipppixel.tweetkov.core;
+
+/**
+ * This class describes which sentences are acceptable when generating many sentences at once, f. i. with
+ * {@link TweetkovChain#generate(int, GenerationOptions)}. Options are immutable, each <code>with</code> method returns
+ * a changed copy:
+ * <pre>
+ * GenerationOptions options = GenerationOptions.defaults()
+ *         .withMinWords(5)
+ *         .withoutDuplicates();
+ * </pre>
+ * Only on a {@link TweetkovChain#compile() compiled} model, which includes an analysed version of a
+ * {@link SnapshotChain}, is a limited number of words reached by only drawing suffixes that can still lead to a
+ * sentence end within the limits, see {@link EndDistances}. Everything else, f. i. a chain that can still be trained or
+ * a {@link MultiOrderChain}, generates without steering and rejects sentences of the wrong length.
+ */
+public final class GenerationOptions {
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+    private static final GenerationOptions DEFAULTS = new GenerationOptions(1, UNLIMITED, false);
+
+    private final int minWords;
+    private final int maxWords;
+    private final boolean avoidDuplicates;
+
+    private GenerationOptions(int minWords, int maxWords, boolean avoidDuplicates) {
+        if (minWords > maxWords) {
+            throw new IllegalArgumentException("Minimum number of words " + minWords
+                    + " must not be larger than maximum number of words " + maxWords);
+        }
+        this.minWords = minWords;
+        this.maxWords = maxWords;
+        this.avoidDuplicates = avoidDuplicates;
+    }
+
+    /**
+     * returns options that accept every non-empty sentence, including duplicates.
+     *
+     * @return options that accept every non-empty sentence
+     */
+    public static GenerationOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * returns a copy of these options that only accepts sentences with at least the given number of words.
+     *
+     * @param minWords the minimum number of words. It must be at least 1 (one) and not larger than the maximum number
+     *                 of words; otherwise an exception is thrown
+     * @return a copy of these options with the given minimum number of words
+     */
+    public GenerationOptions withMinWords(int minWords) {
+        if (minWords < 1) {
+            throw new IllegalArgumentException("Minimum number of words must be at least 1 but was " + minWords);
+        }
+        return new GenerationOptions(minWords, maxWords, avoidDuplicates);
+    }
+
+    /**
+     * returns a copy of these options that only accepts sentences with at most the given number of words.
+     *
+     * @param maxWords the maximum number of words. It must not be smaller than the minimum number of words; otherwise
+     *                 an exception is thrown
+     * @return a copy of these options with the given maximum number of words
+     */
+    public GenerationOptions withMaxWords(int maxWords) {
+        return new GenerationOptions(minWords, maxWords, avoidDuplicates);
+    }
+
+    /**
+     * returns a copy of these options that rejects sentences which copy a training sentence or a long span of one.
+     *
+     * @return a copy of these options that rejects duplicates
+     * @see TweetkovChain#generateWithoutDuplicates()
+     */
+    public GenerationOptions withoutDuplicates() {
+        return new GenerationOptions(minWords, maxWords, true);
+    }
+
+    int getMinWords() {
+        return minWords;
+    }
+
+    int getMaxWords() {
+        return maxWords;
+    }
+
+    /**
+     * returns true if these options limit the number of words in any way.
+     *
+     * @return true if the minimum number of words is larger than 1 (one) or there is a maximum number of words
+     */
+    boolean isLimitingWords() {
+        return minWords > 1 || maxWords != UNLIMITED;
+    }
+
+    boolean isAvoidingDuplicates() {
+        return avoidDuplicates;
+    }
+
+    /**
+     * returns true if the given sentence is acceptable for these options.
+     *
+     * @param sentence the generated sentence
+     * @return true if the given sentence is acceptable for these options
+     */
+    boolean accepts(Sentence sentence) {
+        int wordCount = sentence.getWordCount();
+        return wordCount >= minWords && wordCount <= maxWords && !(avoidDuplicates && !sentence.isOriginal());
+    }
+
+    @Override
+    public String toString() {
+        return "GenerationOptions{minWords=" + minWords + ", maxWords=" + maxWords
+                + ", avoidDuplicates=" + avoidDuplicates + "}";
+    }
+}
@@ -0,0 +1,98 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts values in buckets of powers of two: bucket 0 (zero) counts the value 0 (zero) and bucket
+ * <code>i</code> counts the values from <code>2^(i-1)</code> to <code>2^i - 1</code>. The last bucket counts all larger
+ * values, too. So a few dozen buckets cover everything from microseconds to hours with a relative error of at most
+ * two, and recording a value is a single atomic increment without allocation.
+ * <p>
+ * The histogram is thread-safe.
+ */
+class LatencyHistogram {
+    private final AtomicLongArray counts;
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param bucketCount the number of buckets, at least 1 (one)
+     */
+    LatencyHistogram(int bucketCount) {
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("Bucket count must not be smaller than 1. Given: " + bucketCount);
+        }
+        this.counts = new AtomicLongArray(bucketCount);
+    }
+
+    /**
+     * counts the given value. Negative values are counted as 0 (zero).
+     *
+     * @param value the value to count
+     */
+    void record(long value) {
+        int bucket = value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+        counts.incrementAndGet(Math.min(bucket, counts.length() - 1));
+    }
+
+    /**
+     * returns a copy of the counts of all buckets.
+     *
+     * @return the count of each bucket
+     */
+    long[] getCounts() {
+        long[] result = new long[counts.length()];
+        for (int bucket = 0; bucket < result.length; bucket++) {
+            result[bucket] = counts.get(bucket);
+        }
+        return result;
+    }
+
+    /**
+     * returns the largest value of the bucket that contains the given percentile, f. i. 0.99 for the value that 99 %
+     * of all counted values do not exceed.
+     *
+     * @param percentile a value between 0 (exclusive) and 1 (one, inclusive)
+     * @return the upper bound of the percentile or 0 (zero) if nothing was counted
+     */
+    long getPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be greater than 0 and not greater than 1. Given: "
+                    + percentile);
+        }
+        long[] snapshot = getCounts();
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int bucket = 0; bucket < snapshot.length; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank && seen > 0) {
+                return getUpperBound(bucket);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * returns the largest value that is counted in the given bucket. For the last bucket this is only the largest value
+     * that belongs to it by its size; larger values are counted in it, too.
+     *
+     * @param bucket the index of the bucket
+     * @return the largest value of the bucket
+     */
+    static long getUpperBound(int bucket) {
+        return bucket >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * sets all counts to 0 (zero).
+     */
+    void reset() {
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            counts.set(bucket, 0);
+        }
+    }
+}
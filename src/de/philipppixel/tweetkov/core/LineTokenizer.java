@@ -0,0 +1,159 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.Arrays;
+
+/**
+ * This class splits training lines into encoded tokens. A line is scanned once: tokens are separated by single spaces
+ * exactly like <code>String.split(" ")</code> does, so consecutive spaces lead to empty tokens and trailing empty
+ * tokens are dropped.
+ * <p>
+ * Entities (<code>&amp;amp;</code>, <code>&amp;gt;</code>, <code>&amp;lt;</code>) and <code>...</code> are only
+ * decoded in tokens that contain <code>&amp;</code> or <code>..</code>. All other tokens are looked up in a cache by
+ * their characters, so a token that was seen before is encoded without creating a string. The token ids of a line are
+ * stored in a buffer that is reused for the next line.
+ * <p>
+ * This class is not thread-safe. Each training thread should use its own tokenizer.
+ */
+class LineTokenizer {
+    private static final int INITIAL_CAPACITY = 32;
+    private static final int NO_ENTRY = -1;
+
+    private final Vocabulary vocabulary;
+    private int[] tokens = new int[INITIAL_CAPACITY];
+    /**
+     * open addressing hash table from the characters of a token to its id. Only tokens which are stored in the
+     * vocabulary unchanged are cached.
+     */
+    private int[] cache = newCache(INITIAL_CAPACITY * 2);
+    private int cachedTokens;
+
+    /**
+     * Creates a tokenizer that encodes tokens with the given vocabulary.
+     *
+     * @param vocabulary the vocabulary which encodes the tokens
+     */
+    LineTokenizer(Vocabulary vocabulary) {
+        this.vocabulary = vocabulary;
+    }
+
+    /**
+     * splits the given line into tokens and encodes them. The ids can be read by {@link #getToken(int)} until the
+     * next line is tokenized.
+     *
+     * @param line the line to tokenize
+     * @return the number of tokens
+     */
+    int tokenize(String line) {
+        if (line.isEmpty()) {
+            return addToken(0, line, 0, 0);
+        }
+
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+
+        int count = 0;
+        int start = 0;
+        while (start < end) {
+            int tokenEnd = line.indexOf(' ', start);
+            if (tokenEnd < 0 || tokenEnd > end) {
+                tokenEnd = end;
+            }
+            count = addToken(count, line, start, tokenEnd);
+            start = tokenEnd + 1;
+        }
+        return count;
+    }
+
+    /**
+     * returns the id of the token at the given index of the last tokenized line.
+     *
+     * @param index a value between 0 (inclusive) and the result of {@link #tokenize(String)} (exclusive)
+     * @return the id of the token
+     */
+    int getToken(int index) {
+        return tokens[index];
+    }
+
+    private int addToken(int count, String line, int start, int end) {
+        if (count == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        tokens[count] = encode(line, start, end);
+        return count + 1;
+    }
+
+    private int encode(String line, int start, int end) {
+        int hash = 0;
+        boolean needsDecoding = false;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            hash = 31 * hash + c;
+            needsDecoding |= c == '&' || (c == '.' && i + 1 < end && line.charAt(i + 1) == '.');
+        }
+
+        if (needsDecoding) {
+            return vocabulary.encode(decode(line.substring(start, end)));
+        }
+
+        int mask = cache.length - 1;
+        int slot = mix(hash) & mask;
+        for (int id = cache[slot]; id != NO_ENTRY; id = cache[slot]) {
+            String token = vocabulary.decode(id);
+            if (token.length() == end - start && token.regionMatches(0, line, start, end - start)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = vocabulary.encode(line.substring(start, end));
+        cache[slot] = id;
+        cachedTokens++;
+        if (cachedTokens * 2 > cache.length) {
+            growCache();
+        }
+        return id;
+    }
+
+    private void growCache() {
+        int[] oldCache = cache;
+        cache = newCache(oldCache.length * 2);
+        int mask = cache.length - 1;
+        for (int id : oldCache) {
+            if (id == NO_ENTRY) {
+                continue;
+            }
+            int slot = mix(vocabulary.decode(id).hashCode()) & mask;
+            while (cache[slot] != NO_ENTRY) {
+                slot = (slot + 1) & mask;
+            }
+            cache[slot] = id;
+        }
+    }
+
+    private static int[] newCache(int capacity) {
+        int[] result = new int[capacity];
+        Arrays.fill(result, NO_ENTRY);
+        return result;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * decodes the entities <code>&amp;amp;</code>, <code>&amp;gt;</code> and <code>&amp;lt;</code> one after another
+     * and replaces <code>...</code> with an ellipsis.
+     *
+     * @param token the raw token
+     * @return the decoded token
+     */
+    static String decode(String token) {
+        return token
+                .replace("&amp;", "&")
+                .replace("&gt;", ">")
+                .replace("&lt;", "<")
+                .replace("...", "\u2026");
+    }
+}
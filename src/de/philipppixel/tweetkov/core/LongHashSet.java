@@ -0,0 +1,247 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of <code>long</code> values that stores them in a single array with open addressing and linear probing. A value
+ * takes 8 bytes of the table instead of a boxed {@link Long} and a node of a {@link java.util.HashSet}. The table is
+ * kept at most two thirds full and doubled when that is reached, so it needs 12 to 24 bytes per value.
+ * <p>
+ * A set created with <code>concurrent = true</code> can be changed by several threads while other threads read it.
+ * Writers synchronize among themselves. Readers never block: a value is written to its slot of an atomic array with
+ * release semantics, and a grown table is only published after all values were copied into it. A reader may miss a
+ * value that is added while it reads, but it never sees a value that was not added. Any other set keeps its values in
+ * a plain <code>long[]</code>, so probing it needs no memory barriers; it is not thread-safe while it is changed.
+ */
+class LongHashSet {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+    /**
+     * marks a free slot. The value itself is remembered outside the table.
+     */
+    private static final long FREE = 0;
+
+    private final boolean concurrent;
+    /**
+     * the table of a set that is not concurrent, <code>null</code> for a concurrent set
+     */
+    private long[] plainTable;
+    /**
+     * the table of a concurrent set, <code>null</code> for any other set
+     */
+    private volatile AtomicLongArray atomicTable;
+    private volatile boolean containsFree;
+    private volatile int size;
+
+    /**
+     * Creates an empty set.
+     *
+     * @param concurrent true if several threads change the set while others read it
+     */
+    LongHashSet(boolean concurrent) {
+        this.concurrent = concurrent;
+        if (concurrent) {
+            atomicTable = new AtomicLongArray(INITIAL_CAPACITY);
+        } else {
+            plainTable = new long[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * adds the given value.
+     *
+     * @param value any value
+     * @return true if the value was not contained before
+     */
+    boolean add(long value) {
+        if (!concurrent) {
+            return addUnsynchronized(value);
+        }
+        synchronized (this) {
+            return addUnsynchronized(value);
+        }
+    }
+
+    private boolean addUnsynchronized(long value) {
+        if (value == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+
+        boolean added;
+        if (concurrent) {
+            AtomicLongArray current = atomicTable;
+            if (isFull(current.length())) {
+                current = grow(current);
+                atomicTable = current;
+            }
+            added = insert(current, value);
+        } else {
+            if (isFull(plainTable.length)) {
+                plainTable = grow(plainTable);
+            }
+            added = insert(plainTable, value);
+        }
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    /**
+     * returns true if adding one more value would fill a table of the given capacity more than two thirds.
+     */
+    private boolean isFull(int capacity) {
+        return (size + 1) * 3L > capacity * 2L;
+    }
+
+    /**
+     * returns true if the given value was added.
+     *
+     * @param value any value
+     * @return true if the given value was added
+     */
+    boolean contains(long value) {
+        if (value == FREE) {
+            return containsFree;
+        }
+        if (!concurrent) {
+            return contains(plainTable, value);
+        }
+
+        AtomicLongArray current = atomicTable;
+        int mask = current.length() - 1;
+        for (int slot = firstSlot(value, mask); ; slot = (slot + 1) & mask) {
+            long stored = current.getAcquire(slot);
+            if (stored == value) {
+                return true;
+            }
+            if (stored == FREE) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * returns the number of values
+     *
+     * @return the number of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * returns the number of slots of the table. Together with {@link #size()} it tells how much memory the set needs.
+     *
+     * @return the number of slots of the table
+     */
+    int capacity() {
+        return concurrent ? atomicTable.length() : plainTable.length;
+    }
+
+    /**
+     * returns all values in ascending order. While a concurrent set is changed, the result contains at least the values
+     * that were added before this method was called.
+     *
+     * @return a new array of all values in ascending order
+     */
+    long[] toSortedArray() {
+        long[] current = concurrent ? toArray(atomicTable) : plainTable;
+        long[] result = new long[current.length + 1];
+        int count = 0;
+        if (containsFree) {
+            result[count++] = FREE;
+        }
+        for (long stored : current) {
+            if (stored != FREE) {
+                result[count++] = stored;
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static long[] toArray(AtomicLongArray table) {
+        long[] result = new long[table.length()];
+        for (int slot = 0; slot < result.length; slot++) {
+            result[slot] = table.getAcquire(slot);
+        }
+        return result;
+    }
+
+    private static boolean contains(long[] table, long value) {
+        int mask = table.length - 1;
+        for (int slot = firstSlot(value, mask); ; slot = (slot + 1) & mask) {
+            long stored = table[slot];
+            if (stored == value) {
+                return true;
+            }
+            if (stored == FREE) {
+                return false;
+            }
+        }
+    }
+
+    private static long[] grow(long[] current) {
+        long[] result = new long[current.length * 2];
+        for (long stored : current) {
+            if (stored != FREE) {
+                insert(result, stored);
+            }
+        }
+        return result;
+    }
+
+    private static boolean insert(long[] table, long value) {
+        int mask = table.length - 1;
+        for (int slot = firstSlot(value, mask); ; slot = (slot + 1) & mask) {
+            long stored = table[slot];
+            if (stored == value) {
+                return false;
+            }
+            if (stored == FREE) {
+                table[slot] = value;
+                return true;
+            }
+        }
+    }
+
+    private static AtomicLongArray grow(AtomicLongArray current) {
+        AtomicLongArray result = new AtomicLongArray(current.length() * 2);
+        for (int slot = 0; slot < current.length(); slot++) {
+            long stored = current.getPlain(slot);
+            if (stored != FREE) {
+                insert(result, stored);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * puts the given value into the first free slot of its probe sequence unless it is found before.
+     */
+    private static boolean insert(AtomicLongArray table, long value) {
+        int mask = table.length() - 1;
+        for (int slot = firstSlot(value, mask); ; slot = (slot + 1) & mask) {
+            long stored = table.getPlain(slot);
+            if (stored == value) {
+                return false;
+            }
+            if (stored == FREE) {
+                table.setRelease(slot, value);
+                return true;
+            }
+        }
+    }
+
+    private static int firstSlot(long value, int mask) {
+        return (int) ((value * SPREAD) >>> 32) & mask;
+    }
+}
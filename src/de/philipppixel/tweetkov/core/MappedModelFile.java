@@ -0,0 +1,235 @@
+package de.philipppixel.tweetkov.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class writes compiled models in a format that can be mapped into memory and used without reading it. All
+ * numbers are little-endian <code>int</code>s unless stated otherwise:
+ * <pre>
+ * header   magic number "TKOC", format version, window size, number of tokens, number of token bytes, span length
+ *          and number of hashes of the originality index and the length of each of the
+ *          {@link CompiledModel#TABLE_COUNT} tables of the compiled model
+ * tables   the tables of the compiled model in the order of {@link CompiledModel#getTables()}
+ * index    the hashes of the originality index as <code>long</code>s in ascending order
+ * tokens   the folded id of each token, the {@link Vocabulary#foldedHash(int) folded hash} of each token, the offset
+ *          of each token and the UTF-8 bytes of all tokens
+ * </pre>
+ * Mapping a file only reads its header, so it takes nearly constant time no matter how large the model is. The
+ * operating system loads the pages when generating sentences touches them, and several processes that map the same
+ * file share them in the page cache.
+ * <p>
+ * Each section is mapped on its own, so a single section must not be larger than 2 GB. Mapped files are not validated
+ * beyond their header and size; they are expected to be written by
+ * {@link #write(Path, int, CompiledModel, OriginalityIndex)}.
+ */
+class MappedModelFile {
+    private static final int MAGIC = 0x544B4F43;
+    static final int VERSION = 4;
+    private static final int TABLE_LENGTHS_OFFSET = 7;
+    private static final int HEADER_INTS = TABLE_LENGTHS_OFFSET + CompiledModel.TABLE_COUNT;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final int windowSize;
+    private final CompiledModel model;
+    private final OriginalityIndex originalityIndex;
+
+    private MappedModelFile(int windowSize, CompiledModel model, OriginalityIndex originalityIndex) {
+        this.windowSize = windowSize;
+        this.model = model;
+        this.originalityIndex = originalityIndex;
+    }
+
+    int getWindowSize() {
+        return windowSize;
+    }
+
+    CompiledModel getModel() {
+        return model;
+    }
+
+    OriginalityIndex getOriginalityIndex() {
+        return originalityIndex;
+    }
+
+    /**
+     * writes the given compiled model to the given file.
+     *
+     * @param path       the file to write. An existing file is overwritten.
+     * @param windowSize the window size of the chain
+     * @param model      the compiled model to write
+     * @param index      the index of the training sentences
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path path, int windowSize, CompiledModel model, OriginalityIndex index) throws IOException {
+        Vocabulary vocabulary = model.getVocabulary();
+        int tokenCount = vocabulary.size();
+        byte[][] tokens = new byte[tokenCount][];
+        int tokenByteCount = 0;
+        for (int id = 0; id < tokenCount; id++) {
+            tokens[id] = vocabulary.decode(id).getBytes(StandardCharsets.UTF_8);
+            tokenByteCount = Math.addExact(tokenByteCount, tokens[id].length);
+        }
+        IntBuffer[] tables = model.getTables();
+        LongBuffer keys = index.getSortedKeys();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            putInt(channel, buffer, MAGIC);
+            putInt(channel, buffer, VERSION);
+            putInt(channel, buffer, windowSize);
+            putInt(channel, buffer, tokenCount);
+            putInt(channel, buffer, tokenByteCount);
+            putInt(channel, buffer, index.getSpanLength());
+            putInt(channel, buffer, keys.limit());
+            for (IntBuffer table : tables) {
+                putInt(channel, buffer, table.limit());
+            }
+
+            for (IntBuffer table : tables) {
+                for (int i = 0; i < table.limit(); i++) {
+                    putInt(channel, buffer, table.get(i));
+                }
+            }
+            while (keys.hasRemaining()) {
+                putLong(channel, buffer, keys.get());
+            }
+
+            for (int id = 0; id < tokenCount; id++) {
+                putInt(channel, buffer, vocabulary.foldedId(id));
+            }
+            for (int id = 0; id < tokenCount; id++) {
+                putInt(channel, buffer, vocabulary.foldedHash(id));
+            }
+            int offset = 0;
+            for (int id = 0; id < tokenCount; id++) {
+                putInt(channel, buffer, offset);
+                offset += tokens[id].length;
+            }
+            putInt(channel, buffer, offset);
+            for (byte[] token : tokens) {
+                putBytes(channel, buffer, token);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * maps a file that was written by {@link #write(Path, int, CompiledModel, OriginalityIndex)} into memory. The
+     * returned model and index read all tables, hashes and tokens from the mapped file.
+     *
+     * @param path the file to map
+     * @return the window size and the compiled model of the file
+     * @throws IOException if the file cannot be read or is not a mapped model file
+     */
+    static MappedModelFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long headerSize = (long) HEADER_INTS * Integer.BYTES;
+            if (channel.size() < headerSize) {
+                throw new IOException("Cannot map model. " + path + " is not a mapped model file");
+            }
+            IntBuffer header = map(channel, 0, HEADER_INTS);
+            if (header.get(0) != MAGIC) {
+                throw new IOException("Cannot map model. " + path + " is not a mapped model file");
+            }
+            if (header.get(1) != VERSION) {
+                throw new IOException("Cannot map model. Unsupported version " + header.get(1) + ", expected "
+                        + VERSION);
+            }
+            int windowSize = header.get(2);
+            int tokenCount = header.get(3);
+            int tokenByteCount = header.get(4);
+            int spanLength = header.get(5);
+            int keyCount = header.get(6);
+
+            long position = headerSize;
+            IntBuffer[] tables = new IntBuffer[CompiledModel.TABLE_COUNT];
+            for (int i = 0; i < tables.length; i++) {
+                int length = header.get(TABLE_LENGTHS_OFFSET + i);
+                checkSection(channel, path, position, length * (long) Integer.BYTES);
+                tables[i] = map(channel, position, length);
+                position += length * (long) Integer.BYTES;
+            }
+
+            checkSection(channel, path, position, keyCount * (long) Long.BYTES);
+            LongBuffer keys = channel.map(FileChannel.MapMode.READ_ONLY, position, keyCount * (long) Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asLongBuffer();
+            position += keyCount * (long) Long.BYTES;
+
+            checkSection(channel, path, position, tokenCount * (long) Integer.BYTES);
+            IntBuffer foldedIds = map(channel, position, tokenCount);
+            position += tokenCount * (long) Integer.BYTES;
+            checkSection(channel, path, position, tokenCount * (long) Integer.BYTES);
+            IntBuffer foldedHashes = map(channel, position, tokenCount);
+            position += tokenCount * (long) Integer.BYTES;
+            checkSection(channel, path, position, (tokenCount + 1L) * Integer.BYTES);
+            IntBuffer tokenOffsets = map(channel, position, tokenCount + 1);
+            position += (tokenCount + 1L) * Integer.BYTES;
+            checkSection(channel, path, position, tokenByteCount);
+            ByteBuffer tokenBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, tokenByteCount);
+            if (position + tokenByteCount != channel.size()) {
+                throw new IOException("Cannot map model. " + path + " has an unexpected size");
+            }
+
+            Vocabulary vocabulary = new MappedVocabulary(foldedIds, foldedHashes, tokenOffsets, tokenBytes);
+            return new MappedModelFile(windowSize, CompiledModel.fromTables(vocabulary, tables),
+                    OriginalityIndex.fromSortedKeys(spanLength, keys));
+        }
+    }
+
+    private static IntBuffer map(FileChannel channel, long position, int intCount) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, intCount * (long) Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer();
+    }
+
+    private static void checkSection(FileChannel channel, Path path, long position, long size) throws IOException {
+        if (size < 0 || size > Integer.MAX_VALUE || position + size > channel.size()) {
+            throw new IOException("Cannot map model. " + path + " is corrupt");
+        }
+    }
+
+    private static void putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            flush(channel, buffer);
+        }
+        buffer.putInt(value);
+    }
+
+    private static void putLong(FileChannel channel, ByteBuffer buffer, long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            flush(channel, buffer);
+        }
+        buffer.putLong(value);
+    }
+
+    private static void putBytes(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+        int written = 0;
+        while (written < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush(channel, buffer);
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - written);
+            buffer.put(bytes, written, length);
+            written += length;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
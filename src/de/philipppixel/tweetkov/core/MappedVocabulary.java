@@ -0,0 +1,94 @@
+package de.philipppixel.tweetkov.core;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is a read-only vocabulary that decodes tokens straight from buffers, f. i. from a memory-mapped file.
+ * Nothing is copied when the vocabulary is created, a token is only read when it is decoded. Comparing and hashing
+ * tokens reads precomputed <code>int</code>s and allocates nothing, so only rendering a sentence creates strings.
+ * <p>
+ * The UTF-8 bytes of all tokens are stored one after another. The bytes of the token with the id <code>id</code> are
+ * found between <code>tokenOffsets[id]</code> and <code>tokenOffsets[id + 1]</code>.
+ */
+class MappedVocabulary extends Vocabulary {
+    private final IntBuffer foldedIds;
+    private final IntBuffer foldedHashes;
+    private final IntBuffer tokenOffsets;
+    private final ByteBuffer tokenBytes;
+
+    /**
+     * Creates a vocabulary that reads from the given buffers. The buffers are used as they are, not copied.
+     *
+     * @param foldedIds    the id of the lower case form of each token
+     * @param foldedHashes the {@link Vocabulary#foldedHash(int) folded hash} of each token
+     * @param tokenOffsets the start of each token in <code>tokenBytes</code>, followed by the end of the last token
+     * @param tokenBytes   the UTF-8 bytes of all tokens
+     */
+    MappedVocabulary(IntBuffer foldedIds, IntBuffer foldedHashes, IntBuffer tokenOffsets, ByteBuffer tokenBytes) {
+        if (tokenOffsets.limit() != foldedIds.limit() + 1) {
+            throw new IllegalArgumentException("Expected " + (foldedIds.limit() + 1) + " token offsets but got "
+                    + tokenOffsets.limit());
+        }
+        if (foldedHashes.limit() != foldedIds.limit()) {
+            throw new IllegalArgumentException("Expected " + foldedIds.limit() + " folded hashes but got "
+                    + foldedHashes.limit());
+        }
+        this.foldedIds = foldedIds;
+        this.foldedHashes = foldedHashes;
+        this.tokenOffsets = tokenOffsets;
+        this.tokenBytes = tokenBytes;
+    }
+
+    /**
+     * A mapped vocabulary cannot learn new tokens.
+     *
+     * @throws IllegalStateException always
+     */
+    @Override
+    int encode(String token) {
+        throw new IllegalStateException("Cannot encode token '" + token + "'. A mapped vocabulary is read-only");
+    }
+
+    @Override
+    String decode(int id) {
+        checkId(id);
+        int from = tokenOffsets.get(id);
+        byte[] token = new byte[tokenOffsets.get(id + 1) - from];
+        tokenBytes.get(from, token);
+        return new String(token, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    int foldedId(int id) {
+        checkId(id);
+        return foldedIds.get(id);
+    }
+
+    @Override
+    int foldedHash(int id) {
+        checkId(id);
+        return foldedHashes.get(id);
+    }
+
+    @Override
+    boolean isEmpty(int id) {
+        if (id == NO_TOKEN) {
+            return true;
+        }
+        checkId(id);
+        return tokenOffsets.get(id) == tokenOffsets.get(id + 1);
+    }
+
+    @Override
+    int size() {
+        return foldedIds.limit();
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size()) {
+            throw new IllegalArgumentException("Unknown token id " + id + ". Vocabulary size: " + size());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package de.philipppixel.tweetkov.core;
+
+/**
+ * Receives the measurements of a {@link TweetkovChain}, see {@link TweetkovChain#setMetricsListener(MetricsListener)}.
+ * A chain without a listener does not measure at all, so monitoring costs nothing unless it is enabled.
+ * <p>
+ * The methods are called synchronously by the thread that trained or generated, so implementations must be
+ * thread-safe and fast. All methods do nothing by default. {@link ChainMetrics} is an implementation which aggregates
+ * the measurements and exposes them through JMX.
+ */
+public interface MetricsListener {
+    /**
+     * called after each call of one of the <code>train</code> methods.
+     *
+     * @param lines  the number of trained lines
+     * @param tokens the number of tokens of all trained lines
+     * @param nanos  the duration of the call in nanoseconds
+     */
+    default void onTraining(int lines, long tokens, long nanos) {
+    }
+
+    /**
+     * called after each generated sentence, including each sentence of a list or a stream.
+     *
+     * @param nanos              the duration of the generation in nanoseconds, including all attempts
+     * @param attempts           the number of sentences that were generated until one matched, at least 1 (one)
+     * @param truncations        the number of attempts that were cut at the maximum sentence length instead of
+     *                           reaching the end of a training sentence
+     * @param matched            false if no attempt matched and an empty result was returned or left out
+     * @param avoidingDuplicates true if the sentence had to be original like in
+     *                           {@link TweetkovChain#generateWithoutDuplicates()}
+     */
+    default void onGeneration(long nanos, int attempts, int truncations, boolean matched,
+                              boolean avoidingDuplicates) {
+    }
+}
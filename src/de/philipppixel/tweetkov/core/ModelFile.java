@@ -0,0 +1,278 @@
+package de.philipppixel.tweetkov.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads and writes trained chains in a compact binary format. All numbers except the header are written as
+ * variable-length integers, 7 bits per byte:
+ * <pre>
+ * int      magic number "TKOV"
+ * int      format version
+ * varint   window size
+ * varint   number of tokens, followed by each token as UTF-8 (varint length, bytes) in the order of their ids
+ * varint   number of transitions, followed by each transition:
+ *          varint prefix size, prefix token ids, varint number of distinct suffixes, (suffix id, count) pairs
+ * varint   number of distinct start prefixes, followed by (transition index, count) pairs
+ * varint   span length of the originality index
+ * varint   number of hashes of the originality index, followed by each hash as long in ascending order
+ * </pre>
+ * Transitions are written in the iteration order of the dictionary and tokens are written in the order of their ids.
+ * Reading a file therefore restores the same ids and the same order of transitions, suffixes and start prefixes, so the
+ * loaded chain generates the same sentences for the same seed.
+ * <p>
+ * Like in a {@link CompiledModel} start prefixes are stored as the transition they start. A start prefix that only
+ * differs in case from the prefix of its transition is therefore restored with the case of the transition.
+ */
+class ModelFile {
+    private static final int MAGIC = 0x544B4F56;
+    static final int VERSION = 3;
+
+    private final int windowSize;
+    private final TransitionRepository repository;
+    private final OriginalityIndex originalityIndex;
+
+    private ModelFile(int windowSize, TransitionRepository repository, OriginalityIndex originalityIndex) {
+        this.windowSize = windowSize;
+        this.repository = repository;
+        this.originalityIndex = originalityIndex;
+    }
+
+    int getWindowSize() {
+        return windowSize;
+    }
+
+    TransitionRepository getRepository() {
+        return repository;
+    }
+
+    OriginalityIndex getOriginalityIndex() {
+        return originalityIndex;
+    }
+
+    /**
+     * writes the given dictionary to the given file. The dictionary should not be trained while it is written;
+     * otherwise start prefixes that were trained during the write may be missing.
+     *
+     * @param path       the file to write. An existing file is overwritten.
+     * @param windowSize the window size of the chain
+     * @param repository the dictionary to write
+     * @param index      the index of the training sentences
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path path, int windowSize, TransitionRepository repository, OriginalityIndex index)
+            throws IOException {
+        List<Transition> transitions = new ArrayList<>(repository.getAllTransitions());
+        Map<Transition, Integer> states = new IdentityHashMap<>(transitions.size());
+
+        try (DataOutputStream out = openForWriting(path)) {
+            writeHeader(out, windowSize, repository.getVocabulary());
+
+            writeVarInt(out, transitions.size());
+            for (Transition transition : transitions) {
+                states.put(transition, states.size());
+                Prefix prefix = transition.getPrefix();
+                writeVarInt(out, prefix.size());
+                for (int i = 0; i < prefix.size(); i++) {
+                    writeVarInt(out, prefix.getToken(i));
+                }
+
+                writeVarInt(out, transition.getUniqueSuffixCount());
+                for (int slot = 0; slot < transition.getUniqueSuffixCount(); slot++) {
+                    writeVarInt(out, transition.getUniqueSuffix(slot));
+                    writeVarInt(out, transition.getSuffixCount(slot));
+                }
+            }
+
+            StartPrefixTable startPrefixes = repository.getStartPrefixes();
+            List<int[]> startStates = new ArrayList<>(startPrefixes.size());
+            for (int slot = 0; slot < startPrefixes.size(); slot++) {
+                Integer state = states.get(repository.get(startPrefixes.getPrefix(slot)));
+                if (state != null) {
+                    startStates.add(new int[]{state, startPrefixes.getCount(slot)});
+                }
+            }
+            writeVarInt(out, startStates.size());
+            for (int[] stateAndCount : startStates) {
+                writeVarInt(out, stateAndCount[0]);
+                writeVarInt(out, stateAndCount[1]);
+            }
+            writeOriginalityIndex(out, index);
+        }
+    }
+
+    /**
+     * writes the given compiled model to the given file. The file is the same as if the dictionary was written before
+     * it was compiled.
+     *
+     * @param path       the file to write. An existing file is overwritten.
+     * @param windowSize the window size of the chain
+     * @param model      the compiled model to write
+     * @param index      the index of the training sentences
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path path, int windowSize, CompiledModel model, OriginalityIndex index) throws IOException {
+        try (DataOutputStream out = openForWriting(path)) {
+            writeHeader(out, windowSize, model.getVocabulary());
+
+            writeVarInt(out, model.getStateCount());
+            for (int state = 0; state < model.getStateCount(); state++) {
+                writeVarInt(out, model.getPrefixSize(state));
+                for (int i = 0; i < model.getPrefixSize(state); i++) {
+                    writeVarInt(out, model.getPrefixToken(state, i));
+                }
+
+                writeVarInt(out, model.getUniqueSuffixCount(state));
+                for (int slot = 0; slot < model.getUniqueSuffixCount(state); slot++) {
+                    writeVarInt(out, model.getUniqueSuffix(state, slot));
+                    writeVarInt(out, model.getSuffixCount(state, slot));
+                }
+            }
+
+            int[] startStates = model.getStartStates();
+            writeVarInt(out, startStates.length);
+            for (int i = 0; i < startStates.length; i++) {
+                writeVarInt(out, startStates[i]);
+                writeVarInt(out, model.getStartCount(i));
+            }
+            writeOriginalityIndex(out, index);
+        }
+    }
+
+    /**
+     * reads a chain that was written by one of the <code>write</code> methods into a new, not thread-safe dictionary
+     * and originality index.
+     *
+     * @param path the file to read
+     * @return the window size, the dictionary and the originality index of the file
+     * @throws IOException if the file cannot be read or is not a valid model file
+     */
+    static ModelFile read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Cannot read model. " + path + " is not a model file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Cannot read model. Unsupported version " + version + ", expected " + VERSION);
+            }
+
+            int windowSize = readVarInt(in);
+            TransitionRepository repository = new TransitionRepository();
+            Vocabulary vocabulary = repository.getVocabulary();
+
+            int tokenCount = readVarInt(in);
+            for (int id = 0; id < tokenCount; id++) {
+                byte[] token = new byte[readVarInt(in)];
+                in.readFully(token);
+                if (vocabulary.encode(new String(token, StandardCharsets.UTF_8)) != id) {
+                    throw new IOException("Cannot read model. Token " + id + " is out of order");
+                }
+            }
+
+            Prefix[] prefixes = new Prefix[readVarInt(in)];
+            for (int state = 0; state < prefixes.length; state++) {
+                int prefixSize = readVarInt(in);
+                Prefix prefix = new Prefix(vocabulary, prefixSize);
+                for (int i = 0; i < prefixSize; i++) {
+                    prefix.appendToken(readToken(in, tokenCount));
+                }
+                prefixes[state] = prefix;
+
+                int uniqueSuffixCount = readVarInt(in);
+                for (int slot = 0; slot < uniqueSuffixCount; slot++) {
+                    int suffix = readToken(in, tokenCount);
+                    repository.train(prefix, suffix, readVarInt(in));
+                }
+            }
+
+            int startPrefixCount = readVarInt(in);
+            for (int i = 0; i < startPrefixCount; i++) {
+                int state = readVarInt(in);
+                if (state >= prefixes.length) {
+                    throw new IOException("Cannot read model. Unknown transition " + state);
+                }
+                repository.addToStartTokens(prefixes[state], readVarInt(in));
+            }
+
+            OriginalityIndex index = OriginalityIndex.create(readVarInt(in), false);
+            int keyCount = readVarInt(in);
+            for (int i = 0; i < keyCount; i++) {
+                index.addKey(in.readLong());
+            }
+            return new ModelFile(windowSize, repository, index);
+        } catch (IllegalArgumentException | EOFException e) {
+            throw new IOException("Cannot read model. " + path + " is corrupt", e);
+        }
+    }
+
+    private static DataOutputStream openForWriting(Path path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+    }
+
+    private static void writeHeader(DataOutputStream out, int windowSize, Vocabulary vocabulary) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeVarInt(out, windowSize);
+
+        int tokenCount = vocabulary.size();
+        writeVarInt(out, tokenCount);
+        for (int id = 0; id < tokenCount; id++) {
+            byte[] token = vocabulary.decode(id).getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, token.length);
+            out.write(token);
+        }
+    }
+
+    private static void writeOriginalityIndex(DataOutputStream out, OriginalityIndex index) throws IOException {
+        LongBuffer keys = index.getSortedKeys();
+        writeVarInt(out, index.getSpanLength());
+        writeVarInt(out, keys.remaining());
+        while (keys.hasRemaining()) {
+            out.writeLong(keys.get());
+        }
+    }
+
+    private static int readToken(DataInputStream in, int tokenCount) throws IOException {
+        int token = readVarInt(in);
+        if (token >= tokenCount) {
+            throw new IOException("Cannot read model. Unknown token id " + token);
+        }
+        return token;
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int current = in.readUnsignedByte();
+            value |= (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Cannot read model. Negative number " + value);
+                }
+                return value;
+            }
+        }
+        throw new IOException("Cannot read model. Number is too long");
+    }
+}
@@ -0,0 +1,307 @@
+package de.philipppixel.tweetkov.core;
+
+import java.nio.IntBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class counts the entries of a trained dictionary or a compiled model together with the index of the training
+ * sentences. Counting visits every transition once, so it is meant for monitoring, not for every generated sentence.
+ * <p>
+ * The memory of a model is estimated from the number and the size of its entries, assuming a 64 bit JVM with
+ * compressed references. The estimate is meant for comparing models and for memory budgets, it is not a measurement.
+ */
+class ModelSize {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int INT = 4;
+    private static final int LONG = 8;
+    private static final int ALIGNMENT = 8;
+    /**
+     * a node of a hash map: the hash, the key, the value and the next node
+     */
+    private static final int MAP_ENTRY = align(OBJECT_HEADER + INT + 3 * REFERENCE);
+    private static final int MAP = align(OBJECT_HEADER + 4 * INT + 4 * REFERENCE);
+    private static final int BOXED_INTEGER = align(OBJECT_HEADER + INT);
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int PREFIX = align(OBJECT_HEADER + 2 * REFERENCE + 3 * INT);
+    private static final int TRANSITION = align(OBJECT_HEADER + 5 * REFERENCE + INT + 1);
+    private static final int WEIGHTED_TABLE = align(OBJECT_HEADER + 3 * REFERENCE + 2 * INT);
+    private static final int STRING = align(OBJECT_HEADER + REFERENCE + 2 * INT);
+    private static final int VOCABULARY_ENTRY = align(OBJECT_HEADER + REFERENCE + INT);
+    private static final int ORIGINALITY_INDEX = align(OBJECT_HEADER + INT + LONG + 2 * REFERENCE);
+    /**
+     * the object which holds the hashes of an index: a buffer of a frozen index, or a {@link LongHashSet} of a
+     * trainable one
+     */
+    private static final int KEY_CONTAINER = align(OBJECT_HEADER + 5 * INT + LONG + 2 * REFERENCE + 1);
+
+    private final int prefixCount;
+    private final int startPrefixCount;
+    private final long suffixEntryCount;
+    private final int tokenCount;
+    private final long estimatedBytes;
+
+    private ModelSize(int prefixCount, int startPrefixCount, long suffixEntryCount, int tokenCount,
+                      long estimatedBytes) {
+        this.prefixCount = prefixCount;
+        this.startPrefixCount = startPrefixCount;
+        this.suffixEntryCount = suffixEntryCount;
+        this.tokenCount = tokenCount;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * counts the entries of the given dictionary and estimates its memory together with the given index. A concurrent
+     * dictionary may be trained meanwhile; the counts then contain at least the entries that were trained before
+     * counting started.
+     *
+     * @param repository       the dictionary to count
+     * @param originalityIndex the index of the sentences the dictionary was trained with
+     * @return the size of the dictionary and the index
+     */
+    static ModelSize of(TransitionRepository repository, OriginalityIndex originalityIndex) {
+        int prefixCount = 0;
+        long suffixEntryCount = 0;
+        long transitionBytes = 0;
+        for (Transition transition : repository.getAllTransitions()) {
+            prefixCount++;
+            suffixEntryCount += transition.getUniqueSuffixCount();
+            transitionBytes += estimateBytes(transition, repository.isConcurrent());
+        }
+        long estimatedBytes = transitionBytes + estimateTableBytes(prefixCount)
+                + estimateStartPrefixBytes(repository.getStartPrefixes(), repository.isConcurrent())
+                + estimateBytes(repository.getVocabulary()) + estimateBytes(originalityIndex);
+        return new ModelSize(prefixCount, repository.getStartPrefixes().size(), suffixEntryCount,
+                repository.getVocabulary().size(), estimatedBytes);
+    }
+
+    /**
+     * counts the entries of the given chain for several orders and estimates its memory together with its index. The
+     * highest order is counted like a dictionary. Each lower order adds the transitions it trained itself, its start
+     * prefixes, its end counts and its groups of the shared transitions; its prefixes are counted once each, no matter
+     * how many shared transitions they stand for.
+     *
+     * @param chain the chain to count
+     * @return the size of all orders and the index
+     */
+    static ModelSize of(MultiOrderChain chain) {
+        int maxOrder = chain.getMaxOrder();
+        ModelSize highest = of(chain.getOwnTransitions(maxOrder), chain.getOriginalityIndex());
+        int prefixCount = highest.prefixCount;
+        int startPrefixCount = highest.startPrefixCount;
+        long suffixEntryCount = highest.suffixEntryCount;
+        long estimatedBytes = highest.estimatedBytes
+                + estimateEndCountBytes(chain.getEndPrefixCount(maxOrder), maxOrder);
+        if (maxOrder > 1) {
+            // the sorted shared transitions and the sum of their counts
+            estimatedBytes += referenceArray(highest.prefixCount) + intArray(highest.prefixCount + 1);
+        }
+        for (int order = 1; order < maxOrder; order++) {
+            TransitionRepository own = chain.getOwnTransitions(order);
+            for (Transition transition : own.getAllTransitions()) {
+                suffixEntryCount += transition.getUniqueSuffixCount();
+                estimatedBytes += estimateBytes(transition, false);
+            }
+            int groupCount = chain.getGroupCount(order);
+            int orderPrefixCount = chain.getPrefixCount(order);
+            estimatedBytes += estimateTableBytes(own.getAllTransitions().size())
+                    + estimateStartPrefixBytes(own.getStartPrefixes(), false)
+                    + estimateEndCountBytes(chain.getEndPrefixCount(order), order)
+                    + intArray(groupCount + 1) + intArray(groupCount) + referenceArray(orderPrefixCount - groupCount);
+            prefixCount += orderPrefixCount;
+            startPrefixCount += own.getStartPrefixes().size();
+        }
+        return new ModelSize(prefixCount, startPrefixCount, suffixEntryCount, highest.tokenCount, estimatedBytes);
+    }
+
+    /**
+     * estimates a map from the given number of prefixes of the given size to their counts.
+     */
+    private static long estimateEndCountBytes(int prefixCount, int prefixSize) {
+        return MAP + referenceArray(tableSize(prefixCount))
+                + (long) prefixCount * (MAP_ENTRY + BOXED_INTEGER + PREFIX + intArray(prefixSize));
+    }
+
+    /**
+     * counts the entries of the given model and estimates its memory together with the given index. The tables and the
+     * index are estimated by their capacity, even if they are mapped from a file.
+     *
+     * @param model            the model to count
+     * @param originalityIndex the index of the sentences the model was trained with
+     * @return the size of the model and the index
+     */
+    static ModelSize of(CompiledModel model, OriginalityIndex originalityIndex) {
+        long suffixEntryCount = 0;
+        for (int state = 0; state < model.getStateCount(); state++) {
+            suffixEntryCount += model.getUniqueSuffixCount(state);
+        }
+        long estimatedBytes = estimateBytes(model.getVocabulary()) + estimateBytes(originalityIndex);
+        for (IntBuffer table : model.getTables()) {
+            estimatedBytes += (long) table.capacity() * INT;
+        }
+        return new ModelSize(model.getStateCount(), model.getStartStates().length, suffixEntryCount,
+                model.getVocabulary().size(), estimatedBytes);
+    }
+
+    /**
+     * returns the smallest number of times a prefix must have been trained so that the dictionary fits into the given
+     * number of bytes after all less frequent prefixes were {@link TransitionRepository#pruned(int) pruned}. Only the
+     * transitions are assumed to shrink; the start prefixes and the vocabulary are estimated at their current size, so
+     * the pruned dictionary rather ends up below the budget. The given index is not pruned, so its whole size counts
+     * against the budget.
+     *
+     * @param repository       the dictionary to prune
+     * @param originalityIndex the index of the sentences the dictionary was trained with
+     * @param maxBytes         the memory budget in bytes
+     * @return the minimum count, 1 (one) if the dictionary fits already, or -1 if even a dictionary without any
+     * transitions exceeds the budget
+     */
+    static int minCountForBudget(TransitionRepository repository, OriginalityIndex originalityIndex, long maxBytes) {
+        // for each total count: the estimated bytes and the number of transitions with that count
+        TreeMap<Integer, long[]> bytesByCount = new TreeMap<>();
+        long keptBytes = 0;
+        int keptPrefixes = 0;
+        for (Transition transition : repository.getAllTransitions()) {
+            long bytes = estimateBytes(transition, repository.isConcurrent());
+            long[] group = bytesByCount.computeIfAbsent(transition.getTotalSuffixCount(), count -> new long[2]);
+            group[0] += bytes;
+            group[1]++;
+            keptBytes += bytes;
+            keptPrefixes++;
+        }
+        long fixedBytes = estimateStartPrefixBytes(repository.getStartPrefixes(), repository.isConcurrent())
+                + estimateBytes(repository.getVocabulary()) + estimateBytes(originalityIndex);
+
+        int minCount = 1;
+        for (Map.Entry<Integer, long[]> group : bytesByCount.entrySet()) {
+            if (fixedBytes + keptBytes + estimateTableBytes(keptPrefixes) <= maxBytes) {
+                return minCount;
+            }
+            keptBytes -= group.getValue()[0];
+            keptPrefixes -= (int) group.getValue()[1];
+            minCount = group.getKey() + 1;
+        }
+        return fixedBytes + keptBytes + estimateTableBytes(keptPrefixes) <= maxBytes ? minCount : -1;
+    }
+
+    /**
+     * estimates a transition together with its prefix and its entries in the map and the list of prefixes of a
+     * dictionary. A transition of a concurrent dictionary also keeps a published version for readers.
+     */
+    private static long estimateBytes(Transition transition, boolean concurrent) {
+        int slots = transition.getUniqueSuffixCount();
+        long bytes = MAP_ENTRY + REFERENCE + TRANSITION + PREFIX + intArray(transition.getPrefix().size())
+                + intArray(slots) + WEIGHTED_TABLE + 3 * intArray(slots);
+        if (slots > Transition.LINEAR_SEARCH_LIMIT) {
+            bytes += MAP + referenceArray(tableSize(slots)) + (long) slots * (MAP_ENTRY + 2 * BOXED_INTEGER);
+        }
+        if (concurrent) {
+            bytes += TRANSITION + intArray(slots) + WEIGHTED_TABLE + 3 * intArray(slots);
+        }
+        return bytes;
+    }
+
+    /**
+     * estimates the start prefixes. A concurrent table also keeps a published copy of its counts for readers.
+     */
+    private static long estimateStartPrefixBytes(StartPrefixTable startPrefixes, boolean concurrent) {
+        int size = startPrefixes.size();
+        long bytes = MAP + referenceArray(tableSize(size)) + intArray(size);
+        if (concurrent) {
+            bytes += WEIGHTED_TABLE + 3 * intArray(size);
+        }
+        for (int slot = 0; slot < size; slot++) {
+            bytes += MAP_ENTRY + BOXED_INTEGER + REFERENCE + PREFIX + intArray(startPrefixes.getPrefix(slot).size());
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(Vocabulary vocabulary) {
+        int size = vocabulary.size();
+        long bytes = MAP + referenceArray(tableSize(size));
+        for (int id = 0; id < size; id++) {
+            bytes += MAP_ENTRY + BOXED_INTEGER + REFERENCE + VOCABULARY_ENTRY + STRING
+                    + align(ARRAY_HEADER + (long) vocabulary.decode(id).length());
+        }
+        return bytes;
+    }
+
+    /**
+     * estimates the hashes of the given index by the number of hashes it has room for.
+     */
+    private static long estimateBytes(OriginalityIndex originalityIndex) {
+        return ORIGINALITY_INDEX + KEY_CONTAINER + align(ARRAY_HEADER + (long) originalityIndex.capacity() * LONG);
+    }
+
+    /**
+     * estimates the hash table of a dictionary with the given number of prefixes. Its entries are part of the estimate
+     * of each transition.
+     */
+    private static long estimateTableBytes(int prefixCount) {
+        return MAP + referenceArray(tableSize(prefixCount));
+    }
+
+    private static int tableSize(int entries) {
+        int minimum = (int) Math.ceil(entries / LOAD_FACTOR);
+        return minimum <= 1 ? 1 : Integer.highestOneBit(minimum - 1) << 1;
+    }
+
+    private static long intArray(int length) {
+        return align(ARRAY_HEADER + (long) length * INT);
+    }
+
+    private static long referenceArray(int length) {
+        return align(ARRAY_HEADER + (long) length * REFERENCE);
+    }
+
+    private static int align(int bytes) {
+        return (int) align((long) bytes);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * returns the number of distinct prefixes. Every prefix has exactly one transition, so this is the number of
+     * transitions, too.
+     *
+     * @return the number of distinct prefixes
+     */
+    int getPrefixCount() {
+        return prefixCount;
+    }
+
+    int getStartPrefixCount() {
+        return startPrefixCount;
+    }
+
+    /**
+     * returns the number of distinct suffixes summed over all transitions, i. e. the number of stored suffix entries.
+     *
+     * @return the number of suffix entries
+     */
+    long getSuffixEntryCount() {
+        return suffixEntryCount;
+    }
+
+    /**
+     * returns the number of entries of the vocabulary, including the lower case forms of tokens.
+     *
+     * @return the number of entries of the vocabulary
+     */
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * returns the estimated memory of the model in bytes.
+     *
+     * @return the estimated memory of the model in bytes
+     */
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+}
@@ -0,0 +1,626 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.random.RandomGenerator;
+
+/**
+ * A chain that is trained once for all window sizes (orders) up to a maximum and generates sentences at any of them.
+ * Trying window sizes 1, 2 and 3 with a {@link TweetkovChain} means training three chains; this class tokenizes each
+ * sentence once and trains all orders from the same tokens. The orders share the vocabulary, the index of the training
+ * sentences and the transitions.
+ * <p>
+ * Only the highest order N keeps a complete dictionary. A suffix that follows at least N tokens of its sentence is
+ * counted there, and every lower order takes its counts from the transitions of order N whose prefix ends with its own
+ * prefix. A lower order only trains the transitions of the first N tokens of each sentence itself, which no prefix of
+ * order N covers, and it counts its start prefixes and sentence ends. After each training the transitions of order N
+ * are sorted by their prefix read backwards, so the transitions whose prefix ends with the same tokens are next to
+ * each other for every order, and one sorted table serves all lower orders. So the chain needs little more memory
+ * than a chain with the maximum window size, rather than as much as N chains.
+ * <pre>
+ * MultiOrderChain chain = new MultiOrderChain(3);
+ * chain.train(sentences);
+ * String strict = chain.generate(3, false, random);
+ * String loose = chain.generate(3, true, random);
+ * </pre>
+ * Without back-off, generating at the highest order yields the same sentences as a {@link TweetkovChain} with that
+ * window size for the same random source. A lower order picks every prefix and suffix with the same probability as a
+ * chain with its window size, but it draws them in a different way, so it yields other sentences for the same random
+ * source. The chain stores no end marker, so a sentence ends where its prefix has no transition, which mostly happens
+ * at the end of a training sentence. With back-off, such a prefix does not end the sentence right away. Instead, the
+ * longest shorter prefix that was seen in training decides, and it ends the sentence with the share of its
+ * occurrences that ended a training sentence. So a high order can continue past the end of the training sentence it
+ * copied, where a lower order knows how to go on.
+ * <p>
+ * This class is not thread-safe while it is trained. Once trained, any number of threads can generate sentences as
+ * long as each thread uses its own random source. Sorting the transitions takes time proportional to the whole
+ * dictionary after each call of {@link #train(Iterable)}, so sentences should be trained in batches.
+ */
+public class MultiOrderChain {
+    private static final Logger LOG = Logger.getLogger(MultiOrderChain.class.getName());
+    /**
+     * marks a group of shared transitions which have more than one distinct suffix among them
+     */
+    private static final int SEVERAL_SUFFIXES = -2;
+
+    private final Vocabulary vocabulary = new Vocabulary();
+    private final Order[] orders;
+    /**
+     * the index of the training sentences. Its spans are as long as for the maximum order, so lower orders are checked
+     * more leniently than by a chain with their window size.
+     */
+    private final OriginalityIndex originalityIndex;
+    private final Random random = new Random();
+    /**
+     * the transitions of the highest order, sorted by their prefix read backwards. A lower order finds the transitions
+     * whose prefix ends with its own prefix as a range of this table.
+     */
+    private Transition[] sharedTransitions = new Transition[0];
+    /**
+     * the sum of the total suffix counts of the shared transitions before each index, one entry more than there are
+     * shared transitions
+     */
+    private int[] sharedCumulativeCounts = {0};
+
+    /**
+     * Creates an empty chain for the orders 1 (one) to the given maximum.
+     *
+     * @param maxOrder the largest window size, at least 1 (one); otherwise an exception is thrown
+     */
+    public MultiOrderChain(int maxOrder) {
+        if (maxOrder < 1) {
+            throw new IllegalArgumentException("Maximum order must not be smaller than 1. Given: " + maxOrder);
+        }
+        this.orders = new Order[maxOrder];
+        for (int order = 1; order <= maxOrder; order++) {
+            orders[order - 1] = new Order(vocabulary, order, maxOrder);
+        }
+        this.originalityIndex = OriginalityIndex.forWindowSize(maxOrder, false);
+    }
+
+    /**
+     * returns the largest order this chain can generate at.
+     *
+     * @return the largest window size
+     */
+    public int getMaxOrder() {
+        return orders.length;
+    }
+
+    /**
+     * Takes a collection or array of sentences and trains all orders with them. Each sentence is tokenized only once.
+     * Afterwards the transitions of the highest order are sorted again for the lower orders.
+     *
+     * @param sentences a collection or array of sentences
+     */
+    public void train(Iterable<String> sentences) {
+        LineTokenizer tokenizer = new LineTokenizer(vocabulary);
+        OriginalityIndex.Tracker originality = originalityIndex.newTracker();
+        for (String sentence : sentences) {
+            int tokenCount = tokenizer.tokenize(sentence);
+            TweetkovChain.recordSpans(tokenizer, tokenCount, vocabulary, originality);
+            for (Order order : orders) {
+                order.train(tokenizer, tokenCount);
+            }
+        }
+        shareTransitions();
+    }
+
+    /**
+     * sorts the transitions of the highest order by their prefix read backwards and groups them for each lower order.
+     */
+    private void shareTransitions() {
+        if (orders.length == 1) {
+            return;
+        }
+        Transition[] sorted = getHighestOrder().repository.getAllTransitions().toArray(new Transition[0]);
+        Arrays.sort(sorted, (left, right) -> compareBackwards(left.getPrefix(), right.getPrefix(), orders.length));
+        int[] cumulativeCounts = new int[sorted.length + 1];
+        for (int i = 0; i < sorted.length; i++) {
+            cumulativeCounts[i + 1] = cumulativeCounts[i] + sorted[i].getTotalSuffixCount();
+        }
+        sharedTransitions = sorted;
+        sharedCumulativeCounts = cumulativeCounts;
+        for (int order = 1; order < orders.length; order++) {
+            orders[order - 1].group(sorted);
+        }
+    }
+
+    /**
+     * compares the last tokens of two prefixes, starting with the last one. Tokens are compared ignoring case like
+     * prefixes are.
+     *
+     * @param length the number of tokens to compare, at most the size of the smaller prefix
+     */
+    private static int compareBackwards(Prefix left, Prefix right, int length) {
+        Vocabulary vocabulary = left.getVocabulary();
+        for (int i = 1; i <= length; i++) {
+            int result = Integer.compare(vocabulary.foldedId(left.getToken(left.size() - i)),
+                    vocabulary.foldedId(right.getToken(right.size() - i)));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a sentence at the given order that is generated with the pseudo-random generator of this chain.
+     *
+     * @param order   the window size to generate at, between 1 (one) and {@link #getMaxOrder()}
+     * @param backOff true if a prefix without transitions should back off to a lower order instead of ending the
+     *                sentence
+     * @return a sentence
+     * @see #generate(int, boolean, RandomGenerator)
+     */
+    public String generate(int order, boolean backOff) {
+        return generate(order, backOff, random);
+    }
+
+    /**
+     * Returns a sentence at the given order that is generated with the given random source.
+     *
+     * @param order   the window size to generate at, between 1 (one) and {@link #getMaxOrder()}
+     * @param backOff true if a prefix without transitions should back off to a lower order instead of ending the
+     *                sentence
+     * @param random  the random source for the start prefix and all suffixes. It must not be <code>null</code>
+     * @return a sentence
+     */
+    public String generate(int order, boolean backOff, RandomGenerator random) {
+        requireOrder(order);
+        requireRandom(random);
+        Sentence sentence = new Sentence(vocabulary, TweetkovChain.WORD_DELIMITER);
+        generateSentence(order, backOff, random, sentence);
+        return sentence.create();
+    }
+
+    /**
+     * Returns a sentence at the given order that matches the given options. Sentences are generated until one matches;
+     * unlike {@link TweetkovChain#generate(int, GenerationOptions)} the number of words is not steered while
+     * generating.
+     * <p>
+     * This method may return an empty string when there have been attempted {@link TweetkovChain#DUPLICATE_TIMEOUT}
+     * retries without success.
+     *
+     * @param order   the window size to generate at, between 1 (one) and {@link #getMaxOrder()}
+     * @param backOff true if a prefix without transitions should back off to a lower order instead of ending the
+     *                sentence
+     * @param options the options that the sentence must match. It must not be <code>null</code>
+     * @param random  the random source for all attempts. It must not be <code>null</code>
+     * @return a sentence that matches the given options
+     */
+    public String generate(int order, boolean backOff, GenerationOptions options, RandomGenerator random) {
+        requireOrder(order);
+        requireRandom(random);
+        if (options == null) {
+            throw new IllegalArgumentException("Cannot generate sentences. Options must not be null");
+        }
+
+        Sentence sentence = new Sentence(vocabulary, TweetkovChain.WORD_DELIMITER);
+        if (options.isAvoidingDuplicates()) {
+            sentence.trackOriginality(originalityIndex);
+        }
+        for (int attempt = 0; attempt < TweetkovChain.DUPLICATE_TIMEOUT; attempt++) {
+            generateSentence(order, backOff, random, sentence);
+            if (options.accepts(sentence)) {
+                return sentence.create();
+            }
+        }
+        LOG.warning("Could not generate sentence at order " + order + " for " + options
+                + ". Returning empty string.");
+        return "";
+    }
+
+    /**
+     * generates a sentence into the given sentence, which is cleared first. Without back-off this walks the
+     * transitions of the highest order exactly like an uncompiled {@link TweetkovChain} with that window size.
+     */
+    private void generateSentence(int order, boolean backOff, RandomGenerator random, Sentence sentence) {
+        sentence.clear();
+        Order current = orders[order - 1];
+        Prefix prefix = getFirstPrefixToken(current, random).copy();
+
+        for (int i = 0; i < TweetkovChain.MAX_NUMBER_OF_WORDS_PER_SENTENCE; i++) {
+            Context context = find(current, prefix);
+            if (context == null && backOff) {
+                context = backOff(prefix, random);
+            }
+            int suffix = context == null ? Vocabulary.NO_TOKEN : context.getRandomSuffix(random);
+            if (context != null) {
+                sentence.addBridge(suffix, context.prefix, context.hasSeveralSuffixes());
+            }
+
+            if (vocabulary.isEmpty(suffix) || sentence.hasCopiedSpan()) {
+                break;
+            }
+            prefix.shift(suffix);
+            if (i == TweetkovChain.MAX_NUMBER_OF_WORDS_PER_SENTENCE - 1 && find(current, prefix) != null) {
+                sentence.markTruncated();
+            }
+        }
+    }
+
+    /**
+     * returns the prefix to start a sentence with, picked like {@link TransitionRepository#getFirstPrefixToken} does
+     * for a chain with the window size of the given order.
+     */
+    private Prefix getFirstPrefixToken(Order order, RandomGenerator random) {
+        if (order == getHighestOrder()) {
+            return order.repository.getFirstPrefixToken(random);
+        }
+        int hundredPercent = 100;
+        int originalStartWord = random.nextInt(hundredPercent);
+        if (originalStartWord <= TransitionRepository.ORIGINAL_START_PREFIX_PROBABILITY_IN_PERCENT) {
+            return order.repository.getRandomStartPrefix(random);
+        }
+        return order.getRandomPrefix(sharedTransitions, random);
+    }
+
+    /**
+     * returns the transitions of the given prefix at the given order, or <code>null</code> if the prefix was not
+     * trained at that order.
+     */
+    private Context find(Order order, Prefix prefix) {
+        Transition own = order.repository.get(prefix);
+        int group = order == getHighestOrder() ? -1 : order.findGroup(sharedTransitions, prefix);
+        if (group < 0) {
+            return own == null ? null : new Context(prefix, own, 0, 0, SEVERAL_SUFFIXES);
+        }
+        return new Context(prefix, own, order.groupStarts[group], order.groupStarts[group + 1],
+                order.groupSuffixes[group]);
+    }
+
+    /**
+     * returns the transitions of the longest shorter prefix that was seen in training, or <code>null</code> if the
+     * sentence ends. A seen prefix ends the sentence with the share of its occurrences that ended a training sentence.
+     *
+     * @param prefix a prefix without transitions
+     * @param random the random source which decides whether the sentence ends
+     */
+    private Context backOff(Prefix prefix, RandomGenerator random) {
+        for (int order = prefix.size() - 1; order >= 1; order--) {
+            Order lower = orders[order - 1];
+            Prefix shorter = lower.shorten(prefix);
+            Context context = find(lower, shorter);
+            int ends = lower.getEndCount(shorter);
+            if (context == null && ends == 0) {
+                continue;
+            }
+            if (context == null || random.nextInt(context.getTotalSuffixCount() + ends) < ends) {
+                return null;
+            }
+            return context;
+        }
+        return null;
+    }
+
+    private Order getHighestOrder() {
+        return orders[orders.length - 1];
+    }
+
+    private void requireOrder(int order) {
+        if (order < 1 || order > orders.length) {
+            throw new IllegalArgumentException("Order must be between 1 and " + orders.length + ". Given: " + order);
+        }
+    }
+
+    private static void requireRandom(RandomGenerator random) {
+        if (random == null) {
+            throw new IllegalArgumentException("Cannot generate sentence. Random source must not be null");
+        }
+    }
+
+    /**
+     * returns the dictionary of the given order. The dictionary of the highest order is returned as it is. The
+     * dictionary of a lower order is built from the shared transitions, which takes time proportional to the whole
+     * model. Its transitions, suffixes and start prefixes have the same counts as those of a chain with that window
+     * size, but they may be in a different order.
+     *
+     * @param order the window size, between 1 (one) and {@link #getMaxOrder()}
+     * @return the dictionary of the given order
+     */
+    TransitionRepository getTransitions(int order) {
+        requireOrder(order);
+        Order selected = orders[order - 1];
+        if (selected == getHighestOrder()) {
+            return selected.repository;
+        }
+
+        TransitionRepository result = new TransitionRepository(vocabulary);
+        for (Transition transition : selected.repository.getAllTransitions()) {
+            trainAll(result, transition.getPrefix(), transition);
+        }
+        for (Transition transition : sharedTransitions) {
+            trainAll(result, selected.shorten(transition.getPrefix()), transition);
+        }
+        StartPrefixTable startPrefixes = selected.repository.getStartPrefixes();
+        for (int slot = 0; slot < startPrefixes.size(); slot++) {
+            result.addToStartTokens(startPrefixes.getPrefix(slot), startPrefixes.getCount(slot));
+        }
+        return result;
+    }
+
+    private static void trainAll(TransitionRepository repository, Prefix prefix, Transition transition) {
+        for (int slot = 0; slot < transition.getUniqueSuffixCount(); slot++) {
+            repository.train(prefix, transition.getUniqueSuffix(slot), transition.getSuffixCount(slot));
+        }
+    }
+
+    /**
+     * returns a random suffix of the given prefix at the order of its size, drawn like generating without back-off
+     * does.
+     *
+     * @param prefix a prefix of any order up to {@link #getMaxOrder()}
+     * @param random the random source
+     * @return the id of a random suffix or {@link Vocabulary#NO_TOKEN} if the prefix was not trained at its order
+     */
+    int getRandomSuffix(Prefix prefix, RandomGenerator random) {
+        Context context = find(orders[prefix.size() - 1], prefix);
+        return context == null ? Vocabulary.NO_TOKEN : context.getRandomSuffix(random);
+    }
+
+    /**
+     * returns how many training sentences ended with the given prefix.
+     *
+     * @param prefix a prefix of any order up to {@link #getMaxOrder()}
+     * @return the number of training sentences that ended with the given prefix
+     */
+    int getEndCount(Prefix prefix) {
+        return orders[prefix.size() - 1].getEndCount(prefix);
+    }
+
+    /**
+     * returns the transitions the given order trained itself: all transitions of the highest order, only those of the
+     * first tokens of each sentence for a lower order.
+     *
+     * @param order the window size, between 1 (one) and {@link #getMaxOrder()}
+     * @return the transitions the given order trained itself
+     */
+    TransitionRepository getOwnTransitions(int order) {
+        requireOrder(order);
+        return orders[order - 1].repository;
+    }
+
+    /**
+     * returns the number of distinct prefixes which ended a training sentence at the given order.
+     *
+     * @param order the window size, between 1 (one) and {@link #getMaxOrder()}
+     * @return the number of distinct prefixes which ended a training sentence
+     */
+    int getEndPrefixCount(int order) {
+        requireOrder(order);
+        return orders[order - 1].endCounts.size();
+    }
+
+    /**
+     * returns the number of groups of shared transitions of the given lower order, which is the number of its distinct
+     * prefixes that are followed by a suffix after the first tokens of a sentence.
+     *
+     * @param order the window size, between 1 (one) and {@link #getMaxOrder()} (exclusive)
+     * @return the number of groups of shared transitions
+     */
+    int getGroupCount(int order) {
+        requireOrder(order);
+        return orders[order - 1].groupSuffixes.length;
+    }
+
+    /**
+     * returns the number of distinct prefixes of the given order, as many as a chain with that window size has.
+     *
+     * @param order the window size, between 1 (one) and {@link #getMaxOrder()}
+     * @return the number of distinct prefixes of the given order
+     */
+    int getPrefixCount(int order) {
+        requireOrder(order);
+        Order selected = orders[order - 1];
+        if (selected == getHighestOrder()) {
+            return selected.repository.getAllTransitions().size();
+        }
+        return selected.groupSuffixes.length + selected.ownOnlyPrefixes.length;
+    }
+
+    OriginalityIndex getOriginalityIndex() {
+        return originalityIndex;
+    }
+
+    /**
+     * The prefix of one order with its transitions: the transition the order trained itself, if any, and the range of
+     * the shared transitions whose prefix ends with the prefix. A suffix is drawn with the probability of the share of
+     * its counts in all of them.
+     */
+    private final class Context {
+        private final Prefix prefix;
+        private final Transition own;
+        private final int from;
+        private final int to;
+        /**
+         * the only suffix of the shared transitions or {@link #SEVERAL_SUFFIXES}
+         */
+        private final int sharedSuffix;
+
+        private Context(Prefix prefix, Transition own, int from, int to, int sharedSuffix) {
+            this.prefix = prefix;
+            this.own = own;
+            this.from = from;
+            this.to = to;
+            this.sharedSuffix = sharedSuffix;
+        }
+
+        private int getTotalSuffixCount() {
+            int ownCount = own == null ? 0 : own.getTotalSuffixCount();
+            return ownCount + sharedCumulativeCounts[to] - sharedCumulativeCounts[from];
+        }
+
+        private int getRandomSuffix(RandomGenerator random) {
+            if (from == to) {
+                return own.getRandomSuffix(random);
+            }
+            int ownCount = own == null ? 0 : own.getTotalSuffixCount();
+            int occurrence = random.nextInt(getTotalSuffixCount());
+            if (occurrence < ownCount) {
+                return own.getSuffixOf(occurrence);
+            }
+
+            int sharedOccurrence = occurrence - ownCount + sharedCumulativeCounts[from];
+            int low = from;
+            int high = to - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (sharedCumulativeCounts[middle] <= sharedOccurrence) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return sharedTransitions[low].getSuffixOf(sharedOccurrence - sharedCumulativeCounts[low]);
+        }
+
+        private boolean hasSeveralSuffixes() {
+            if (own != null && own.getUniqueSuffixCount() > 1) {
+                return true;
+            }
+            if (from == to) {
+                return false;
+            }
+            return sharedSuffix == SEVERAL_SUFFIXES || own != null && sharedSuffix != own.getUniqueSuffix(0);
+        }
+    }
+
+    /**
+     * The transitions one order trains itself together with the number of training sentences that ended with each
+     * prefix. The highest order trains all of its transitions. A lower order only trains the suffixes among the first
+     * tokens of each sentence, as many as the highest order has, and keeps where the transitions of the highest order
+     * whose prefix ends with the same tokens are in the sorted shared table. The end counts are only needed for
+     * backing off, because a prefix without transitions ends a sentence otherwise.
+     */
+    private static final class Order {
+        private final int size;
+        private final int maxOrder;
+        private final TransitionRepository repository;
+        private final Map<Prefix, Integer> endCounts = new HashMap<>();
+        private final Prefix window;
+        /**
+         * the index of the first shared transition of each group and the end of the last group
+         */
+        private int[] groupStarts = {0};
+        /**
+         * the only suffix of the shared transitions of each group or {@link #SEVERAL_SUFFIXES}
+         */
+        private int[] groupSuffixes = new int[0];
+        /**
+         * the prefixes this order trained itself which have no group, so a random prefix can be picked among all
+         */
+        private Prefix[] ownOnlyPrefixes = new Prefix[0];
+
+        private Order(Vocabulary vocabulary, int size, int maxOrder) {
+            this.size = size;
+            this.maxOrder = maxOrder;
+            this.repository = new TransitionRepository(vocabulary);
+            this.window = new Prefix(vocabulary, size);
+        }
+
+        private void train(LineTokenizer tokenizer, int tokenCount) {
+            int trainedTokens = size == maxOrder ? tokenCount : Math.min(tokenCount, maxOrder);
+            TweetkovChain.trainWindows(tokenizer, trainedTokens, size, repository, window);
+            if (tokenCount >= size) {
+                window.clear();
+                for (int i = tokenCount - size; i < tokenCount; i++) {
+                    window.appendToken(tokenizer.getToken(i));
+                }
+                // the window is reused for the next sentence, so the map must keep a copy as its key
+                endCounts.merge(window.copy(), 1, Integer::sum);
+            }
+        }
+
+        /**
+         * groups the sorted shared transitions by the last tokens of their prefix, as many as this order has.
+         */
+        private void group(Transition[] sharedTransitions) {
+            int[] starts = new int[sharedTransitions.length + 1];
+            int[] suffixes = new int[sharedTransitions.length];
+            int groupCount = 0;
+            for (int i = 0; i < sharedTransitions.length; i++) {
+                Transition transition = sharedTransitions[i];
+                int onlySuffix = transition.getUniqueSuffixCount() == 1
+                        ? transition.getUniqueSuffix(0) : SEVERAL_SUFFIXES;
+                if (groupCount > 0 && compareBackwards(sharedTransitions[i - 1].getPrefix(), transition.getPrefix(),
+                        size) == 0) {
+                    if (suffixes[groupCount - 1] != onlySuffix) {
+                        suffixes[groupCount - 1] = SEVERAL_SUFFIXES;
+                    }
+                    continue;
+                }
+                starts[groupCount] = i;
+                suffixes[groupCount] = onlySuffix;
+                groupCount++;
+            }
+            starts[groupCount] = sharedTransitions.length;
+            groupStarts = Arrays.copyOf(starts, groupCount + 1);
+            groupSuffixes = Arrays.copyOf(suffixes, groupCount);
+
+            List<Prefix> ownOnly = new ArrayList<>();
+            for (Transition transition : repository.getAllTransitions()) {
+                if (findGroup(sharedTransitions, transition.getPrefix()) < 0) {
+                    ownOnly.add(transition.getPrefix());
+                }
+            }
+            ownOnlyPrefixes = ownOnly.toArray(new Prefix[0]);
+        }
+
+        /**
+         * returns the group of the shared transitions whose prefix ends with the given prefix, or -1 if there is none.
+         */
+        private int findGroup(Transition[] sharedTransitions, Prefix prefix) {
+            int low = 0;
+            int high = groupSuffixes.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int result = compareBackwards(sharedTransitions[groupStarts[middle]].getPrefix(), prefix, size);
+                if (result < 0) {
+                    low = middle + 1;
+                } else if (result > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * returns any prefix of this order with the same probability.
+         */
+        private Prefix getRandomPrefix(Transition[] sharedTransitions, RandomGenerator random) {
+            int groupCount = groupSuffixes.length;
+            int size = groupCount + ownOnlyPrefixes.length;
+            if (size == 0) {
+                throw new IllegalStateException("Cannot return prefix because there are no prefixes yet.");
+            }
+            int index = random.nextInt(size);
+            if (index < groupCount) {
+                return shorten(sharedTransitions[groupStarts[index]].getPrefix());
+            }
+            return ownOnlyPrefixes[index - groupCount];
+        }
+
+        private int getEndCount(Prefix prefix) {
+            return endCounts.getOrDefault(prefix, 0);
+        }
+
+        /**
+         * returns a new prefix of this order with the last tokens of the given longer prefix.
+         */
+        private Prefix shorten(Prefix prefix) {
+            Prefix result = new Prefix(repository.getVocabulary(), size);
+            for (int i = prefix.size() - size; i < prefix.size(); i++) {
+                result.appendToken(prefix.getToken(i));
+            }
+            return result;
+        }
+    }
+}
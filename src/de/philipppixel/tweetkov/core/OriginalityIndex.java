@@ -0,0 +1,404 @@
+package de.philipppixel.tweetkov.core;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * This class remembers which token sequences occur in the training sentences, so generated sentences can be checked
+ * for copies of them. Two kinds of sequences are stored as 64 bit hashes of the lower case tokens:
+ * <ul>
+ * <li>every <em>span</em> of {@link #getSpanLength()} consecutive tokens of a training sentence and</li>
+ * <li>every <em>end</em> of a training sentence that is shorter than a span, including short sentences as a whole.</li>
+ * </ul>
+ * A generated sentence copies a training sentence if it contains one of the spans or if it is shorter than a span and
+ * equals one of the ends. Since every prefix is generated from the end of a sentence or from a random state, a short
+ * generated sentence can only be a verbatim copy if it is an end of a training sentence.
+ * <p>
+ * The hashes are rolled forward token by token with a {@link Tracker}, so a sentence is checked while it is generated
+ * and generation can stop as soon as the first copied span appears. Tokens enter the hashes by their
+ * {@link Vocabulary#foldedHash(int) folded hash} rather than their id, so indexes that were trained with different
+ * vocabularies can be merged. Hash collisions are possible but rare; they only cause an original sentence to be
+ * rejected.
+ * <p>
+ * A trainable index keeps its hashes in a {@link LongHashSet}, which stores them as primitive <code>long</code>s. A
+ * {@link #freeze() frozen} index keeps them in a sorted buffer which may also be mapped from a file. A frozen index
+ * returned by {@link #union(OriginalityIndex)} may keep only its newest hashes and check the rest in a shared base.
+ */
+class OriginalityIndex {
+    /**
+     * Consecutive transitions copy <code>window size + 1</code> tokens of a training sentence by design. The shortest
+     * span that counts as a copy is a few tokens longer, so sentences are not rejected for every common phrase.
+     */
+    private static final int SPAN_LENGTH_ABOVE_WINDOW_SIZE = 3;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    /**
+     * A union keeps its new hashes in a layer over a shared base as long as the base has at least this many hashes per
+     * hash of the layer. Otherwise it is compacted into a single sorted buffer.
+     */
+    private static final int BASE_KEYS_PER_LAYER_KEY = 8;
+
+    private final int spanLength;
+    private final long highestPower;
+    private final LongHashSet keys;
+    private final LongBuffer sortedKeys;
+    /**
+     * the frozen index whose hashes this index contains besides its sorted keys, <code>null</code> unless this index is
+     * a layered union
+     */
+    private final OriginalityIndex base;
+
+    private OriginalityIndex(int spanLength, LongHashSet keys, LongBuffer sortedKeys) {
+        this(spanLength, keys, sortedKeys, null);
+    }
+
+    private OriginalityIndex(int spanLength, LongHashSet keys, LongBuffer sortedKeys, OriginalityIndex base) {
+        if (spanLength < 1) {
+            throw new IllegalArgumentException("Span length must not be smaller than 1. Given: " + spanLength);
+        }
+        this.spanLength = spanLength;
+        this.highestPower = power(spanLength - 1);
+        this.keys = keys;
+        this.sortedKeys = sortedKeys;
+        this.base = base;
+    }
+
+    /**
+     * Creates an empty index for a chain with the given window size.
+     *
+     * @param windowSize the window size of the chain
+     * @param concurrent true if several threads train the index while others check sentences
+     * @return an empty trainable index
+     */
+    static OriginalityIndex forWindowSize(int windowSize, boolean concurrent) {
+        return create(windowSize + SPAN_LENGTH_ABOVE_WINDOW_SIZE, concurrent);
+    }
+
+    /**
+     * Creates an empty index with the given span length.
+     *
+     * @param spanLength the number of tokens of a span that counts as a copy
+     * @param concurrent true if several threads train the index while others check sentences
+     * @return an empty trainable index
+     */
+    static OriginalityIndex create(int spanLength, boolean concurrent) {
+        return new OriginalityIndex(spanLength, new LongHashSet(concurrent), null);
+    }
+
+    /**
+     * Creates a frozen index from hashes that were returned by {@link #getSortedKeys()}.
+     *
+     * @param spanLength the span length of the index that returned the hashes
+     * @param sortedKeys the hashes in ascending order
+     * @return a frozen index
+     */
+    static OriginalityIndex fromSortedKeys(int spanLength, LongBuffer sortedKeys) {
+        return new OriginalityIndex(spanLength, null, sortedKeys);
+    }
+
+    /**
+     * returns the number of tokens of a span that counts as a copy.
+     *
+     * @return the number of tokens of a span that counts as a copy
+     */
+    int getSpanLength() {
+        return spanLength;
+    }
+
+    /**
+     * returns the number of stored hashes.
+     *
+     * @return the number of stored hashes
+     */
+    int size() {
+        if (!isFrozen()) {
+            return keys.size();
+        }
+        return base == null ? sortedKeys.limit() : base.size() + sortedKeys.limit();
+    }
+
+    /**
+     * returns the number of hashes this index has room for without growing. A trainable index keeps free slots in its
+     * hash table, a frozen index has exactly as much room as it has hashes.
+     *
+     * @return the number of hashes this index has room for
+     */
+    int capacity() {
+        if (!isFrozen()) {
+            return keys.capacity();
+        }
+        return base == null ? sortedKeys.capacity() : base.capacity() + sortedKeys.capacity();
+    }
+
+    boolean isFrozen() {
+        return keys == null;
+    }
+
+    /**
+     * returns an index with the same hashes that cannot be trained anymore but needs much less memory and no locking.
+     *
+     * @return a frozen index, this index if it is frozen already
+     */
+    OriginalityIndex freeze() {
+        if (isFrozen()) {
+            return this;
+        }
+        return new OriginalityIndex(spanLength, null, LongBuffer.wrap(keys.toSortedArray()));
+    }
+
+    /**
+     * returns all hashes in ascending order, f. i. for writing them to a file.
+     *
+     * @return a read-only buffer of all hashes in ascending order
+     */
+    LongBuffer getSortedKeys() {
+        if (base != null) {
+            return LongBuffer.wrap(mergeSorted(base.getSortedKeys(), ownSortedKeys())).asReadOnlyBuffer();
+        }
+        return freeze().ownSortedKeys();
+    }
+
+    private LongBuffer ownSortedKeys() {
+        return sortedKeys.asReadOnlyBuffer().clear();
+    }
+
+    /**
+     * returns the index whose hashes this index shares with other unions: the base of a layered union, this index
+     * otherwise.
+     *
+     * @return the base of this index or this index
+     */
+    OriginalityIndex getBase() {
+        return base == null ? this : base;
+    }
+
+    /**
+     * adds all hashes of the given index to this index.
+     *
+     * @param partial an index with the same span length. It is not changed.
+     */
+    void merge(OriginalityIndex partial) {
+        requireTrainable();
+        if (partial.spanLength != spanLength) {
+            throw new IllegalArgumentException("Cannot merge index with span length " + partial.spanLength
+                    + " into index with span length " + spanLength);
+        }
+        LongBuffer partialKeys = partial.getSortedKeys();
+        while (partialKeys.hasRemaining()) {
+            keys.add(partialKeys.get());
+        }
+    }
+
+    /**
+     * returns a frozen index with the hashes of this index and the given index. Neither index is changed, so other
+     * threads may keep checking sentences against this index meanwhile.
+     * <p>
+     * If this index is frozen, the new index usually shares it, or its base, as its base and only stores the hashes of
+     * the given index and of the layer of this index that the base does not contain. This takes time and memory
+     * proportional to the layer, which holds at most one hash per eight hashes of the base. Otherwise both sorted hash
+     * lists are merged in a single pass into a new list, which takes time and memory proportional to the size of both
+     * indices.
+     *
+     * @param partial an index with the same span length
+     * @return a new frozen index
+     */
+    OriginalityIndex union(OriginalityIndex partial) {
+        if (partial.spanLength != spanLength) {
+            throw new IllegalArgumentException("Cannot merge index with span length " + partial.spanLength
+                    + " into index with span length " + spanLength);
+        }
+        OriginalityIndex sharedBase = getBase();
+        long layerSize = (long) (base == null ? 0 : sortedKeys.limit()) + partial.size();
+        if (!isFrozen() || layerSize * BASE_KEYS_PER_LAYER_KEY > sharedBase.size()) {
+            return new OriginalityIndex(spanLength, null,
+                    LongBuffer.wrap(mergeSorted(getSortedKeys(), partial.getSortedKeys())));
+        }
+
+        LongBuffer partialKeys = partial.getSortedKeys();
+        long[] newKeys = new long[partialKeys.remaining()];
+        int size = 0;
+        while (partialKeys.hasRemaining()) {
+            long key = partialKeys.get();
+            if (!sharedBase.containsKey(key)) {
+                newKeys[size++] = key;
+            }
+        }
+        LongBuffer layer = base == null ? LongBuffer.allocate(0) : ownSortedKeys();
+        return new OriginalityIndex(spanLength, null,
+                LongBuffer.wrap(mergeSorted(layer, LongBuffer.wrap(newKeys, 0, size))), sharedBase);
+    }
+
+    /**
+     * merges two buffers of hashes in ascending order into a single array without duplicates.
+     */
+    private static long[] mergeSorted(LongBuffer left, LongBuffer right) {
+        long[] result = new long[left.remaining() + right.remaining()];
+        int size = 0;
+        while (left.hasRemaining() || right.hasRemaining()) {
+            boolean takeLeft = !right.hasRemaining()
+                    || left.hasRemaining() && left.get(left.position()) <= right.get(right.position());
+            long key = takeLeft ? left.get() : right.get();
+            if (size == 0 || result[size - 1] != key) {
+                result[size++] = key;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * adds a single hash as returned by {@link #getSortedKeys()}.
+     *
+     * @param key the hash to add
+     */
+    void addKey(long key) {
+        requireTrainable();
+        keys.add(key);
+    }
+
+    /**
+     * creates a tracker that rolls the hashes of a sentence forward token by token. A tracker is not thread-safe.
+     *
+     * @return a tracker for an empty sentence
+     */
+    Tracker newTracker() {
+        return new Tracker(this);
+    }
+
+    private boolean containsKey(long key) {
+        if (!isFrozen()) {
+            return keys.contains(key);
+        }
+        return containsSortedKey(key) || base != null && base.containsKey(key);
+    }
+
+    private boolean containsSortedKey(long key) {
+        int low = 0;
+        int high = sortedKeys.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = sortedKeys.get(middle);
+            if (current < key) {
+                low = middle + 1;
+            } else if (current > key) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void requireTrainable() {
+        if (isFrozen()) {
+            throw new IllegalStateException("Cannot change a frozen originality index.");
+        }
+    }
+
+    private static long power(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= MULTIPLIER;
+        }
+        return result;
+    }
+
+    private static long key(long hash, int length) {
+        long key = hash * 31 + length;
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Keeps the last tokens of a sentence and the hash of its current span. Adding a token rolls the hash forward in
+     * constant time.
+     */
+    static final class Tracker {
+        private final OriginalityIndex index;
+        private final long[] lastTokens;
+        private long spanHash;
+        private int size;
+
+        private Tracker(OriginalityIndex index) {
+            this.index = index;
+            this.lastTokens = new long[index.spanLength];
+        }
+
+        /**
+         * forgets all tokens so that the next sentence can be tracked.
+         */
+        void reset() {
+            spanHash = 0;
+            size = 0;
+        }
+
+        /**
+         * appends a token to the tracked sentence.
+         *
+         * @param foldedHash the {@link Vocabulary#foldedHash(int) folded hash} of the token
+         */
+        void add(int foldedHash) {
+            int slot = size % lastTokens.length;
+            // never 0, so leading empty tokens still change the hash
+            long value = (foldedHash & 0xFFFFFFFFL) + 1;
+            if (size >= lastTokens.length) {
+                spanHash -= lastTokens[slot] * index.highestPower;
+            }
+            spanHash = spanHash * MULTIPLIER + value;
+            lastTokens[slot] = value;
+            size++;
+        }
+
+        /**
+         * adds the current span to the index if the tracked sentence is long enough.
+         */
+        void recordSpan() {
+            if (size >= lastTokens.length) {
+                index.addKey(key(spanHash, lastTokens.length));
+            }
+        }
+
+        /**
+         * adds all ends of the tracked sentence that are shorter than a span to the index. This should be called once
+         * the last token of a training sentence was added.
+         */
+        void recordEnd() {
+            for (int length = 1; length <= Math.min(size, lastTokens.length - 1); length++) {
+                index.addKey(endKey(length));
+            }
+        }
+
+        /**
+         * returns true if the last tokens of the tracked sentence are a span of a training sentence.
+         *
+         * @return true if the current span was copied from a training sentence
+         */
+        boolean isSpanCopied() {
+            return size >= lastTokens.length && index.containsKey(key(spanHash, lastTokens.length));
+        }
+
+        /**
+         * returns true if the complete tracked sentence copies a training sentence: either one of its spans was copied
+         * or it is shorter than a span and equals the end of a training sentence. This only checks the current span, so
+         * it must be called after each token, or generation has to stop at the first copied span.
+         *
+         * @return true if the tracked sentence is a copy
+         */
+        boolean isSentenceCopied() {
+            if (size >= lastTokens.length) {
+                return isSpanCopied();
+            }
+            return size > 0 && index.containsKey(endKey(size));
+        }
+
+        private long endKey(int length) {
+            long hash = 0;
+            for (int i = size - length; i < size; i++) {
+                hash = hash * MULTIPLIER + lastTokens[i % lastTokens.length];
+            }
+            return key(hash, length);
+        }
+    }
+}
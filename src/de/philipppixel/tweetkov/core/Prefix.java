@@ -1,21 +1,48 @@
 package de.philipppixel.tweetkov.core;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.util.Arrays;
 
+/**
+ * A prefix is the window of tokens which leads to a suffix. Prefixes are compared ignoring the case of their tokens.
+ * <p>
+ * The hash code is computed once while tokens are appended and is rolled forward when the prefix is shifted, so
+ * looking up a prefix in a hash map neither builds nor lower-cases any string.
+ */
 class Prefix {
-    private static final String TOKEN_DELIMITER = " ";
-    private final Queue<String> tokens;
-    private final int windowSize;
+    private static final char TOKEN_DELIMITER = ' ';
+    private static final int HASH_MULTIPLIER = 31;
+    private static final int[] POWERS_OF_HASH_MULTIPLIER = createPowers(512);
+    private final Vocabulary vocabulary;
+    private final int[] tokens;
+    private int size;
+    /**
+     * the hash code of the lower case tokens joined by a single space
+     */
+    private int hash;
+    /**
+     * the length of the lower case tokens joined by a single space
+     */
+    private int foldedLength;
 
     /**
-     * Creates a prefix with the given window size
+     * Creates a prefix with the given window size and its own vocabulary. Such a prefix is still equal to prefixes of
+     * other vocabularies with the same tokens but comparing them is slower.
      *
      * @param windowSize the window size determines the number of tokens by each prefix.
      */
     Prefix(int windowSize) {
-        this.tokens = new ArrayDeque<>(windowSize);
-        this.windowSize = windowSize;
+        this(new Vocabulary(), windowSize);
+    }
+
+    /**
+     * Creates a prefix with the given window size
+     *
+     * @param vocabulary the vocabulary which encodes the tokens of this prefix
+     * @param windowSize the window size determines the number of tokens by each prefix.
+     */
+    Prefix(Vocabulary vocabulary, int windowSize) {
+        this.vocabulary = vocabulary;
+        this.tokens = new int[windowSize];
     }
 
     /**
@@ -24,28 +51,50 @@ class Prefix {
      * @param prefixToCopy the prefix to be copied.
      */
     private Prefix(Prefix prefixToCopy) {
-        this.tokens = new ArrayDeque<>(prefixToCopy.tokens);
-        this.windowSize = prefixToCopy.windowSize;
+        this.vocabulary = prefixToCopy.vocabulary;
+        this.tokens = Arrays.copyOf(prefixToCopy.tokens, prefixToCopy.tokens.length);
+        this.size = prefixToCopy.size;
+        this.hash = prefixToCopy.hash;
+        this.foldedLength = prefixToCopy.foldedLength;
     }
 
     /**
-     * Append a token to this prefix. The token will be trimmed. <code>Null</code> or empty Strings are not allowed.
+     * Append a token to this prefix. <code>Null</code> is not allowed.
      * <p>
      * An exception is thrown if the user attempts to add more tokens than the window is wide.
-     * An exception is thrown if token is empty.
      *
-     * @param token a single part of this prefix, usually a single word  but can be any non-empty string
+     * @param token a single part of this prefix, usually a single word  but can be any string
      */
     void appendToken(String token) {
-        if (tokens.size() >= windowSize) {
-            throw new IllegalStateException("Cannot append token '" + token + "'. Prefix size is too large: " + tokens);
+        appendToken(vocabulary.encode(token));
+    }
+
+    /**
+     * Append an already encoded token to this prefix.
+     * <p>
+     * An exception is thrown if the user attempts to add more tokens than the window is wide.
+     *
+     * @param token the id of a single part of this prefix
+     */
+    void appendToken(int token) {
+        if (size >= tokens.length) {
+            throw new IllegalStateException("Cannot append token '" + vocabulary.decode(token)
+                    + "'. Prefix size is too large: " + this);
         }
 
-        tokens.add(token);
+        String folded = vocabulary.decode(vocabulary.foldedId(token));
+        if (size > 0) {
+            hash = HASH_MULTIPLIER * hash + TOKEN_DELIMITER;
+            foldedLength++;
+        }
+        hash = hash * power(folded.length()) + folded.hashCode();
+        foldedLength += folded.length();
+
+        tokens[size++] = token;
     }
 
     boolean isSmallerThanWindowSize() {
-        return this.tokens.size() < this.windowSize;
+        return this.size < this.tokens.length;
     }
 
     /**
@@ -55,33 +104,131 @@ class Prefix {
      * @return a new prefix from the current prefix and the current suffix
      */
     Prefix shiftWithSuffix(String currentSuffix) {
-        Prefix copy = new Prefix(this);
-        copy.removeHeadToken();
-        copy.appendToken(currentSuffix);
+        return shiftWithSuffix(vocabulary.encode(currentSuffix));
+    }
+
+    /**
+     * creates a copy from this prefix but removes the first token and appends the given suffix. The hash code of the
+     * copy is derived from the hash code of this prefix in constant time.
+     *
+     * @param currentSuffix the id of the current suffix
+     * @return a new prefix from the current prefix and the current suffix
+     */
+    Prefix shiftWithSuffix(int currentSuffix) {
+        Prefix copy = copy();
+        copy.shift(currentSuffix);
         return copy;
     }
 
-    private void removeHeadToken() {
-        this.tokens.remove();
+    /**
+     * removes the first token of this prefix and appends the given suffix in place, without allocating. This turns a
+     * prefix into a reusable sliding window.
+     * <p>
+     * Please note that the hash code changes, so this must not be called on a prefix that is stored in a map or any
+     * other collection. Collections should store a {@link #copy()} instead.
+     *
+     * @param currentSuffix the id of the current suffix
+     */
+    void shift(int currentSuffix) {
+        removeHeadToken();
+        appendToken(currentSuffix);
+    }
+
+    /**
+     * removes all tokens so that this prefix can be filled again.
+     */
+    void clear() {
+        size = 0;
+        hash = 0;
+        foldedLength = 0;
     }
 
+    /**
+     * creates an independent copy of this prefix.
+     *
+     * @return a copy of this prefix
+     */
+    Prefix copy() {
+        return new Prefix(this);
+    }
+
+    private void removeHeadToken() {
+        String head = foldedToken(0);
+        int remainingLength = foldedLength - head.length();
+        hash -= head.hashCode() * power(remainingLength);
+        if (size > 1) {
+            remainingLength--;
+            hash -= TOKEN_DELIMITER * power(remainingLength);
+        }
+        foldedLength = remainingLength;
 
-    private String mergeToLowerCase() {
-        return merge().toLowerCase();
+        System.arraycopy(tokens, 1, tokens, 0, size - 1);
+        size--;
     }
 
-    private String merge() {
-        String result = "";
+    /**
+     * returns {@link #HASH_MULTIPLIER} to the power of the given exponent with the same overflow behaviour as
+     * {@link String#hashCode()}.
+     */
+    private static int power(int exponent) {
+        if (exponent < POWERS_OF_HASH_MULTIPLIER.length) {
+            return POWERS_OF_HASH_MULTIPLIER[exponent];
+        }
+
+        int result = 1;
+        int base = HASH_MULTIPLIER;
+        while (exponent > 0) {
+            if ((exponent & 1) == 1) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>= 1;
+        }
+        return result;
+    }
 
-        for (String token : tokens) {
-            result += token + TOKEN_DELIMITER;
+    private static int[] createPowers(int count) {
+        int[] powers = new int[count];
+        powers[0] = 1;
+        for (int i = 1; i < count; i++) {
+            powers[i] = powers[i - 1] * HASH_MULTIPLIER;
         }
-        return result.trim();
+        return powers;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * returns the token id at the given position
+     *
+     * @param index the position of the token, starting at 0
+     * @return the token id at the given position
+     */
+    int getToken(int index) {
+        return tokens[index];
+    }
+
+    Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    private String foldedToken(int index) {
+        return vocabulary.decode(vocabulary.foldedId(tokens[index]));
     }
 
     @Override
     public String toString() {
-        return merge();
+        StringBuilder result = new StringBuilder();
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                result.append(TOKEN_DELIMITER);
+            }
+            result.append(vocabulary.decode(tokens[i]));
+        }
+        return result.toString();
     }
 
     @Override
@@ -90,12 +237,29 @@ class Prefix {
         if (o == null || getClass() != o.getClass()) return false;
 
         Prefix prefix = (Prefix) o;
+        if (size != prefix.size || hash != prefix.hash) return false;
+
+        for (int i = 0; i < size; i++) {
+            if (!isSameTokenIgnoringCase(prefix, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        return mergeToLowerCase().equals(prefix.mergeToLowerCase());
+    private boolean isSameTokenIgnoringCase(Prefix other, int index) {
+        if (vocabulary == other.vocabulary) {
+            return vocabulary.foldedId(tokens[index]) == vocabulary.foldedId(other.tokens[index]);
+        }
+        return foldedToken(index).equals(other.foldedToken(index));
     }
 
+    /**
+     * returns the same value as the hash code of the lower case tokens joined by a single space but without building
+     * that string.
+     */
     @Override
     public int hashCode() {
-        return mergeToLowerCase().hashCode();
+        return hash;
     }
 }
@@ -1,7 +1,9 @@
 package de.philipppixel.tweetkov.core;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 /**
  * This class provides a way to avoid original fragments.
@@ -12,14 +14,38 @@ import java.util.List;
  * <p>
  * Currentely, after the training there is no way to know which transitions the original sentence in real life took.
  * There is still a high chance to render duplicates that are marked as alternative.
+ * <p>
+ * A sentence only keeps the ids of its tokens. The text is written straight into a {@link StringBuilder} or any other
+ * {@link Appendable} without building intermediate strings, and a sentence can be {@link #clear() cleared} and reused
+ * for the next sentence.
  */
 class Sentence {
     private static final String SENTENCE_DELIMITER = ".";
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int AVERAGE_WORD_LENGTH = 8;
+    private final Vocabulary vocabulary;
     private final String wordDelimiter;
-    private List<String> tokens = new ArrayList<>();
-    private List<Boolean> duplicateLedger = new ArrayList<>();
+    private int[] tokens = new int[INITIAL_CAPACITY];
+    private int tokenCount;
+    /**
+     * true if at least one suffix was picked among more than one distinct suffix
+     */
+    private boolean alternative;
+    private OriginalityIndex.Tracker originality;
+    private boolean copiedSpan;
+    /**
+     * true if generation stopped at the maximum number of suffixes before the sentence ended
+     */
+    private boolean truncated;
 
-    Sentence(String wordDelimiter) {
+    /**
+     * Creates an empty sentence.
+     *
+     * @param vocabulary    the vocabulary which decodes the token ids once the sentence is created
+     * @param wordDelimiter the string between two tokens
+     */
+    Sentence(Vocabulary vocabulary, String wordDelimiter) {
+        this.vocabulary = vocabulary;
         this.wordDelimiter = wordDelimiter;
     }
 
@@ -34,30 +60,166 @@ class Sentence {
      * a duplicate
      */
     boolean isDuplicate() {
-        for (boolean isAlternative : duplicateLedger) {
-            if (isAlternative) {
-                return false;
-            }
+        return !alternative;
+    }
+
+    /**
+     * checks this sentence against the given index while tokens are added. Until then {@link #isOriginal()} can only
+     * rely on {@link #isDuplicate()}.
+     *
+     * @param index the index of the training sentences
+     */
+    void trackOriginality(OriginalityIndex index) {
+        originality = index.newTracker();
+        for (int i = 0; i < tokenCount; i++) {
+            trackToken(tokens[i]);
         }
-        return true;
     }
 
-    void addBridge(String suffix, Transition transition) {
-        if (suffix.isEmpty()) {
+    /**
+     * returns true if this sentence is checked against an originality index.
+     *
+     * @return true if {@link #trackOriginality(OriginalityIndex)} was called
+     */
+    boolean isTrackingOriginality() {
+        return originality != null;
+    }
+
+    /**
+     * returns true if a span of this sentence was copied from a training sentence. Generation can stop then because
+     * the sentence will not be {@link #isOriginal() original} anyway.
+     *
+     * @return true if this sentence is tracked and contains a copied span
+     */
+    boolean hasCopiedSpan() {
+        return copiedSpan;
+    }
+
+    /**
+     * returns true if this sentence neither contains a span of a training sentence nor equals the end of one. If the
+     * originality is not {@link #trackOriginality(OriginalityIndex) tracked}, this falls back to
+     * {@link #isDuplicate()}.
+     *
+     * @return true if this sentence is not a copy of a training sentence
+     */
+    boolean isOriginal() {
+        if (originality == null) {
+            return !isDuplicate();
+        }
+        return !copiedSpan && !originality.isSentenceCopied();
+    }
+
+    /**
+     * marks that generation stopped at the maximum number of suffixes although the sentence could have gone on.
+     * {@link #clear()} removes the mark.
+     */
+    void markTruncated() {
+        truncated = true;
+    }
+
+    /**
+     * returns true if this sentence was cut at the maximum number of suffixes instead of reaching an end.
+     *
+     * @return true if {@link #markTruncated()} was called since the last {@link #clear()}
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    void addBridge(int suffix, Transition transition) {
+        if (vocabulary.isEmpty(suffix)) {
             return;
         }
+        addBridge(suffix, transition.getPrefix(), transition.getUniqueSuffixCount() > 1);
+    }
 
-        if (tokens.isEmpty()) {
-            addStartPrefix(transition.getPrefix());
+    /**
+     * adds a suffix which was picked for the given prefix, and the prefix first if this sentence is still empty.
+     *
+     * @param suffix        the id of the suffix, which may be empty
+     * @param prefix        the prefix the suffix was picked for
+     * @param isAlternative true if the suffix was picked among more than one distinct suffix
+     */
+    void addBridge(int suffix, Prefix prefix, boolean isAlternative) {
+        if (vocabulary.isEmpty(suffix)) {
+            return;
         }
-        this.tokens.add(suffix);
 
-        boolean isAlternative = transition.getUniqueSuffixCount() > 1;
-        this.duplicateLedger.add(isAlternative);
+        if (isEmpty()) {
+            addStartPrefix(prefix);
+        }
+        addSuffix(suffix, isAlternative);
     }
 
     private void addStartPrefix(Prefix prefix) {
-        this.tokens.add(prefix.toString());
+        for (int i = 0; i < prefix.size(); i++) {
+            addToken(prefix.getToken(i));
+        }
+    }
+
+    /**
+     * adds the tokens of the start prefix. This must happen before the first suffix is added.
+     *
+     * @param prefixTokens a buffer containing the token ids of the start prefix
+     * @param from         the index of the first token
+     * @param to           the index after the last token
+     */
+    void addStartPrefix(IntBuffer prefixTokens, int from, int to) {
+        for (int i = from; i < to; i++) {
+            addToken(prefixTokens.get(i));
+        }
+    }
+
+    /**
+     * adds a suffix which is not empty.
+     *
+     * @param suffix        the id of the suffix
+     * @param isAlternative true if the suffix was picked among more than one distinct suffix
+     */
+    void addSuffix(int suffix, boolean isAlternative) {
+        addToken(suffix);
+        this.alternative |= isAlternative;
+    }
+
+    /**
+     * removes all tokens so that this sentence can be generated again. The token buffer is kept.
+     */
+    void clear() {
+        tokenCount = 0;
+        alternative = false;
+        copiedSpan = false;
+        truncated = false;
+        if (originality != null) {
+            originality.reset();
+        }
+    }
+
+    boolean isEmpty() {
+        return tokenCount == 0;
+    }
+
+    /**
+     * returns the number of words, including the tokens of the start prefix.
+     *
+     * @return the number of words
+     */
+    int getWordCount() {
+        return tokenCount;
+    }
+
+    private void addToken(int token) {
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        tokens[tokenCount++] = token;
+        if (originality != null) {
+            trackToken(token);
+        }
+    }
+
+    private void trackToken(int token) {
+        originality.add(vocabulary.foldedHash(token));
+        copiedSpan |= originality.isSpanCopied();
     }
 
     /**
@@ -66,15 +228,100 @@ class Sentence {
      * @return the generated sentence, ending with {@link #SENTENCE_DELIMITER}.
      */
     String create() {
-        return toString() + SENTENCE_DELIMITER;
+        StringBuilder result = new StringBuilder(tokenCount * AVERAGE_WORD_LENGTH);
+        appendTo(result);
+        return result.toString();
+    }
+
+    /**
+     * appends the generated sentence, ending with {@link #SENTENCE_DELIMITER}, to the given builder.
+     *
+     * @param out the builder to append to
+     */
+    void appendTo(StringBuilder out) {
+        try {
+            appendTo((Appendable) out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("StringBuilder cannot fail to append", e);
+        }
+    }
+
+    /**
+     * writes the generated sentence, ending with {@link #SENTENCE_DELIMITER}, to the given output. The text is the
+     * same as {@link #create()} returns.
+     *
+     * @param out the output to write to, f. i. a {@link java.io.Writer}
+     * @throws IOException if the output cannot be written
+     */
+    void appendTo(Appendable out) throws IOException {
+        appendWords(out);
+        out.append(SENTENCE_DELIMITER);
+    }
+
+    /**
+     * writes the tokens joined by the word delimiter, without leading and trailing whitespace. The text is treated as a
+     * sequence of segments: token, delimiter, token, delimiter and so on. The trimmed range is searched first so that
+     * each segment can be written at once.
+     */
+    private void appendWords(Appendable out) throws IOException {
+        int segmentCount = tokenCount * 2;
+        int firstSegment = 0;
+        int firstChar = 0;
+        while (firstSegment < segmentCount) {
+            CharSequence segment = segment(firstSegment);
+            firstChar = skipWhitespace(segment);
+            if (firstChar < segment.length()) {
+                break;
+            }
+            firstSegment++;
+        }
+        if (firstSegment == segmentCount) {
+            return;
+        }
+
+        int lastSegment = segmentCount - 1;
+        int lastChar = skipTrailingWhitespace(segment(lastSegment));
+        while (lastChar == 0) {
+            lastSegment--;
+            lastChar = skipTrailingWhitespace(segment(lastSegment));
+        }
+
+        for (int i = firstSegment; i <= lastSegment; i++) {
+            CharSequence segment = segment(i);
+            int from = i == firstSegment ? firstChar : 0;
+            int to = i == lastSegment ? lastChar : segment.length();
+            out.append(segment, from, to);
+        }
+    }
+
+    private CharSequence segment(int index) {
+        return index % 2 == 0 ? vocabulary.decode(tokens[index / 2]) : wordDelimiter;
+    }
+
+    private static int skipWhitespace(CharSequence text) {
+        int i = 0;
+        while (i < text.length() && text.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipTrailingWhitespace(CharSequence text) {
+        int i = text.length();
+        while (i > 0 && text.charAt(i - 1) <= ' ') {
+            i--;
+        }
+        return i;
     }
 
     @Override
     public String toString() {
-        String result = "";
-        for (String token : tokens) {
-            result += token + wordDelimiter;
+        StringBuilder result = new StringBuilder();
+        try {
+            appendWords(result);
+        } catch (IOException e) {
+            throw new UncheckedIOException("StringBuilder cannot fail to append", e);
         }
-        return result.trim();
+        return result.toString();
     }
 }
@@ -0,0 +1,193 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * A chain that is trained while it serves sentences, without readers ever waiting for writers.
+ * <p>
+ * Writers train into a pending chain of their own. {@link #publish()} merges the pending sentences into a new
+ * immutable version of the model and makes it visible to readers by a single volatile write. Each generation reads that
+ * reference exactly once and works on the version it got until it returns, so it neither sees a half-trained model nor
+ * takes any lock.
+ * <p>
+ * Versions share an immutable base model: the vocabulary, the transitions, the start prefixes and the index of the
+ * training sentences. A new version keeps only the transitions, start prefixes and hashes that changed since the base
+ * in a small layer, so publishing costs time and memory proportional to the pending sentences and the layer, not to
+ * the whole model. Once the layer would hold more than an eighth of the base, publishing compacts both into a new
+ * base, which takes time proportional to the whole model but happens rarely. Only compacted versions are analysed for
+ * steering, since analysing compiles the whole model. So publishing may happen often, even after small batches.
+ * <pre>
+ * SnapshotChain chain = new SnapshotChain(2);
+ * scheduler.scheduleAtFixedRate(chain::publish, 5, 5, TimeUnit.MINUTES);
+ * // writers
+ * chain.train(newTweets);
+ * // readers
+ * String sentence = chain.generateWithoutDuplicates(random);
+ * </pre>
+ * After everything was published the model is the same as if a {@link TweetkovChain} had been trained with all
+ * sentences in the same order, so {@link #generate(RandomGenerator)} returns the same sentences for the same random
+ * source. Generating without duplicates is steered like on a {@link TweetkovChain#compile() compiled} chain once a
+ * version was analysed. A version is analysed when it is compacted after readers of a previous version generated
+ * without duplicates; until then these readers generate without steering.
+ * <p>
+ * This class is thread-safe. Writers synchronize among themselves, and publishing blocks them only while the pending
+ * chain is swapped.
+ */
+public class SnapshotChain {
+    private final int windowSize;
+    private final Object trainLock = new Object();
+    private final Object publishLock = new Object();
+    /**
+     * the sentences that were trained since the last version was published, guarded by {@link #trainLock}
+     */
+    private TweetkovChain pending;
+    private boolean hasPendingSentences;
+    private volatile TweetkovChain snapshot;
+    private volatile long version;
+
+    /**
+     * Creates an empty chain with a selectable window size. Generating fails until the first sentences were
+     * published.
+     *
+     * @param windowSize determines the number of prefix tokens in a transition to a suffix
+     */
+    public SnapshotChain(int windowSize) {
+        this.windowSize = windowSize;
+        this.pending = new TweetkovChain(windowSize);
+        this.snapshot = new TweetkovChain(windowSize).withTrainingOf(new TweetkovChain(windowSize));
+    }
+
+    /**
+     * trains the given sentences. They are not visible to readers until the next call of {@link #publish()}.
+     *
+     * @param sentences a collection or array of sentences
+     */
+    public void train(Iterable<String> sentences) {
+        synchronized (trainLock) {
+            pending.train(sentences);
+            hasPendingSentences = true;
+        }
+    }
+
+    /**
+     * trains the given sentences in parallel like {@link TweetkovChain#trainInParallel(List)}. They are not visible to
+     * readers until the next call of {@link #publish()}.
+     *
+     * @param sentences a list of sentences
+     */
+    public void trainInParallel(List<String> sentences) {
+        synchronized (trainLock) {
+            pending.trainInParallel(sentences);
+            hasPendingSentences = true;
+        }
+    }
+
+    /**
+     * returns true if sentences were trained since the last version was published.
+     *
+     * @return true if the next call of {@link #publish()} creates a new version
+     */
+    public boolean hasPendingSentences() {
+        synchronized (trainLock) {
+            return hasPendingSentences;
+        }
+    }
+
+    /**
+     * publishes all sentences that were trained so far as a new version. Generations that already started finish on
+     * the previous version, all later generations use the new one. Nothing happens if no sentences were trained since
+     * the last version was published.
+     * <p>
+     * The new version is built by the calling thread. It usually takes time proportional to the pending sentences and
+     * the changes since the last compaction, see {@link TweetkovChain#withTrainingOf(TweetkovChain)}, and neither
+     * readers nor writers wait for it.
+     *
+     * @return true if a new version was published
+     */
+    public boolean publish() {
+        synchronized (publishLock) {
+            TweetkovChain delta;
+            synchronized (trainLock) {
+                if (!hasPendingSentences) {
+                    return false;
+                }
+                delta = pending;
+                pending = new TweetkovChain(windowSize);
+                hasPendingSentences = false;
+            }
+            snapshot = snapshot.withTrainingOf(delta);
+            version++;
+            return true;
+        }
+    }
+
+    /**
+     * returns the number of published versions, not counting the empty initial version.
+     *
+     * @return the number of published versions
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * returns the current version. The returned chain is {@link TweetkovChain#isReadOnly() read-only} and never
+     * changes, so it can be used to generate several sentences from the same version or to save it.
+     *
+     * @return the current version
+     */
+    public TweetkovChain getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns a sentence of the current version like {@link TweetkovChain#generate()}.
+     *
+     * @return a sentence
+     */
+    public String generate() {
+        return snapshot.generate();
+    }
+
+    /**
+     * Returns a sentence of the current version like {@link TweetkovChain#generate(RandomGenerator)}.
+     *
+     * @param random the random source for the start prefix and all suffixes. It must not be <code>null</code>
+     * @return a sentence
+     */
+    public String generate(RandomGenerator random) {
+        return snapshot.generate(random);
+    }
+
+    /**
+     * Returns a sentence of the current version like {@link TweetkovChain#generateWithoutDuplicates()}.
+     *
+     * @return a sentence that does not copy the training data, or an empty string
+     */
+    public String generateWithoutDuplicates() {
+        return snapshot.generateWithoutDuplicates();
+    }
+
+    /**
+     * Returns a sentence of the current version like {@link TweetkovChain#generateWithoutDuplicates(RandomGenerator)}.
+     *
+     * @param random the random source for all attempts. It must not be <code>null</code>
+     * @return a sentence that does not copy the training data, or an empty string
+     */
+    public String generateWithoutDuplicates(RandomGenerator random) {
+        return snapshot.generateWithoutDuplicates(random);
+    }
+
+    /**
+     * Returns the given number of sentences of the current version like
+     * {@link TweetkovChain#generate(int, GenerationOptions)}. All sentences are generated from the same version.
+     *
+     * @param count   the number of sentences. It must not be negative; otherwise an exception is thrown
+     * @param options the options that each sentence must match. It must not be <code>null</code>
+     * @return a list of <code>count</code> sentences
+     */
+    public List<String> generate(int count, GenerationOptions options) {
+        return snapshot.generate(count, options);
+    }
+}
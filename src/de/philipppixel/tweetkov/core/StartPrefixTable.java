@@ -0,0 +1,375 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * This class counts how often each prefix started a sentence. Every distinct prefix is stored once, in the order it
+ * first started a sentence, together with its count in a {@link WeightedTable}. So memory grows with the number of
+ * distinct start prefixes, not with the number of sentences.
+ * <p>
+ * Sampling draws a single <code>random.nextInt(total)</code> like picking from a list of all occurrences did, so every
+ * prefix is picked with the same probability as before. Only the occurrences of a prefix are grouped at its first
+ * slot.
+ * <p>
+ * A table created with <code>concurrent = true</code> can be trained by several threads while other threads sample from
+ * it. Writers synchronize among themselves and publish an immutable copy of the counts through a volatile field.
+ * Readers only read that copy and never take a lock. A writer copies the counts once the table was changed as often
+ * as it has distinct prefixes, so copying costs a constant time per change on average. Changes since then become
+ * visible by {@link #publishChanges()}.
+ * <p>
+ * A table returned by {@link #layered()} shares an unchanged table as its base and only stores what was added on top
+ * of it: the counts added to prefixes of the base and the prefixes that are new. Its slots are the slots of the base
+ * followed by the new prefixes, and it samples the same prefix as a copy with the same counts would, so layering
+ * does not change which sentences are generated.
+ */
+class StartPrefixTable {
+    private final Map<Prefix, Integer> slots = new HashMap<>();
+    private final List<Prefix> prefixes;
+    private final WeightedTable counts;
+    private final boolean concurrent;
+    /**
+     * the counts that readers of a concurrent table sample from. They are replaced by writers but never changed.
+     */
+    private volatile WeightedTable published;
+    /**
+     * the number of changes since the counts were published last, guarded by this table
+     */
+    private int unpublishedChanges;
+    /**
+     * the table this table is layered on, <code>null</code> unless this table was returned by {@link #layered()}
+     */
+    private final StartPrefixTable base;
+    /**
+     * the counts that were added to prefixes of the base, by the slot of the prefix in the base
+     */
+    private final Map<Integer, Integer> addedToBase;
+    private int addedToBaseTotal;
+    /**
+     * the counts added to the base in sorted form for sampling, <code>null</code> after counts were added
+     */
+    private volatile BaseChanges baseChanges;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param concurrent true if several threads train the table while others sample from it
+     */
+    StartPrefixTable(boolean concurrent) {
+        this.concurrent = concurrent;
+        this.prefixes = concurrent ? new AppendOnlyList<>() : new ArrayList<>();
+        this.counts = new WeightedTable();
+        this.base = null;
+        this.addedToBase = null;
+        if (concurrent) {
+            publish();
+        }
+    }
+
+    /**
+     * copy constructor. The copy is not concurrent and shares the stored prefixes, which are never changed.
+     *
+     * @param tableToCopy the table to be copied
+     */
+    StartPrefixTable(StartPrefixTable tableToCopy) {
+        this.concurrent = false;
+        this.prefixes = new ArrayList<>();
+        this.counts = new WeightedTable();
+        this.base = null;
+        this.addedToBase = null;
+        int size = tableToCopy.size();
+        for (int slot = 0; slot < size; slot++) {
+            Prefix prefix = tableToCopy.getPrefix(slot);
+            prefixes.add(prefix);
+            slots.put(prefix, slot);
+            counts.add(slot, tableToCopy.getCount(slot));
+        }
+    }
+
+    private StartPrefixTable(StartPrefixTable base, StartPrefixTable layerToCopy) {
+        this.concurrent = false;
+        this.prefixes = new ArrayList<>();
+        this.base = base;
+        if (layerToCopy == null) {
+            this.counts = new WeightedTable();
+            this.addedToBase = new HashMap<>();
+        } else {
+            prefixes.addAll(layerToCopy.prefixes);
+            slots.putAll(layerToCopy.slots);
+            this.counts = new WeightedTable(layerToCopy.counts);
+            this.addedToBase = new HashMap<>(layerToCopy.addedToBase);
+            this.addedToBaseTotal = layerToCopy.addedToBaseTotal;
+        }
+    }
+
+    /**
+     * returns a table with the same prefixes and counts that can be changed without changing this table. Unlike a
+     * {@link #StartPrefixTable(StartPrefixTable) copy} it shares the unchanged counts with this table, so it takes time
+     * and memory proportional to the prefixes that were added to the layer of this table, if any, not to all
+     * prefixes. This table must not be changed anymore.
+     *
+     * @return a table layered on this table or on the base of this table
+     * @throws IllegalStateException if this table is concurrent
+     */
+    StartPrefixTable layered() {
+        if (concurrent) {
+            throw new IllegalStateException("Cannot layer a table on a concurrent table.");
+        }
+        if (base != null) {
+            return new StartPrefixTable(base, this);
+        }
+        prepareForSharing();
+        return new StartPrefixTable(this, null);
+    }
+
+    /**
+     * returns the number of entries this table stores on top of its base: the new prefixes and the prefixes of the
+     * base whose count changed. A table that is not layered has no base and returns 0 (zero).
+     *
+     * @return the number of entries on top of the base
+     */
+    int getLayerSize() {
+        return base == null ? 0 : prefixes.size() + addedToBase.size();
+    }
+
+    /**
+     * counts the given prefix as if it started <code>count</code> more sentences. The table stores a copy of a new
+     * prefix, so the caller may change the given prefix afterwards.
+     *
+     * @param prefix the prefix that started a sentence
+     * @param count  the positive number of sentences
+     */
+    void add(Prefix prefix, int count) {
+        if (!concurrent) {
+            addUnsynchronized(prefix, count);
+            return;
+        }
+        synchronized (this) {
+            addUnsynchronized(prefix, count);
+            unpublishedChanges++;
+            if (unpublishedChanges >= published.size()) {
+                publish();
+            }
+        }
+    }
+
+    /**
+     * makes all prefixes that were added so far visible to readers of a concurrent table. A thread that finished
+     * adding a batch should call this method so that readers see the whole batch. Other tables are not changed.
+     */
+    void publishChanges() {
+        if (!concurrent) {
+            return;
+        }
+        synchronized (this) {
+            if (unpublishedChanges > 0) {
+                publish();
+            }
+        }
+    }
+
+    /**
+     * copies the current counts for readers. The caller must hold the lock of this table unless it is the constructor.
+     */
+    private void publish() {
+        WeightedTable version = new WeightedTable(counts);
+        version.prepareGuide();
+        published = version;
+        unpublishedChanges = 0;
+    }
+
+    private void addUnsynchronized(Prefix prefix, int count) {
+        Integer slot = slots.get(prefix);
+        if (slot == null && base != null) {
+            Integer baseSlot = base.slots.get(prefix);
+            if (baseSlot != null) {
+                if (count < 1) {
+                    throw new IllegalArgumentException("Count must be positive. Given: " + count);
+                }
+                addedToBase.merge(baseSlot, count, Integer::sum);
+                addedToBaseTotal += count;
+                baseChanges = null;
+                return;
+            }
+        }
+        if (slot == null) {
+            Prefix key = prefix.copy();
+            slot = prefixes.size();
+            // the count is added afterwards, so readers never see a slot without its prefix
+            prefixes.add(key);
+            slots.put(key, slot);
+        }
+        counts.add(slot, count);
+    }
+
+    /**
+     * prepares this table for sampling so that readers do not change it anymore. This must be called before a table
+     * that is not concurrent is shared with other threads.
+     */
+    void prepareForSharing() {
+        counts.prepareGuide();
+        if (base != null) {
+            currentBaseChanges();
+        }
+    }
+
+    /**
+     * returns a random prefix. The probability of each prefix is its count divided by the total.
+     *
+     * @param random the random source. Exactly one <code>nextInt(total)</code> is drawn.
+     * @return a random prefix
+     * @throws IllegalStateException if the table is empty
+     */
+    Prefix sample(RandomGenerator random) {
+        int slot = base == null ? readableCounts().sample(random) : sampleLayered(random);
+        if (slot < 0) {
+            throw new IllegalStateException("Cannot return start prefix because there are no prefixes yet.");
+        }
+        return getPrefix(slot);
+    }
+
+    private int sampleLayered(RandomGenerator random) {
+        int total = getTotal();
+        if (total == 0) {
+            return -1;
+        }
+        int occurrence = random.nextInt(total);
+        int totalOfBase = base.getTotal() + addedToBaseTotal;
+        if (occurrence >= totalOfBase) {
+            return base.size() + counts.slotOf(occurrence - totalOfBase);
+        }
+
+        // the occurrences of the base slots are shifted by the counts added to the changed slots before them
+        BaseChanges changes = currentBaseChanges();
+        int previous = changes.lastChangeBefore(base.counts, occurrence);
+        int added = previous < 0 ? 0 : changes.cumulativeAddedCounts[previous];
+        if (previous == changes.slots.length - 1) {
+            return base.counts.slotOf(occurrence - added);
+        }
+        int nextChangedSlot = changes.slots[previous + 1];
+        if (occurrence - added >= base.getTotal()) {
+            return nextChangedSlot;
+        }
+        return Math.min(base.counts.slotOf(occurrence - added), nextChangedSlot);
+    }
+
+    private BaseChanges currentBaseChanges() {
+        BaseChanges result = baseChanges;
+        if (result == null) {
+            int[] changedSlots = addedToBase.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int[] cumulativeAddedCounts = new int[changedSlots.length];
+            int sum = 0;
+            for (int i = 0; i < changedSlots.length; i++) {
+                sum += addedToBase.get(changedSlots[i]);
+                cumulativeAddedCounts[i] = sum;
+            }
+            result = new BaseChanges(changedSlots, cumulativeAddedCounts);
+            baseChanges = result;
+        }
+        return result;
+    }
+
+    /**
+     * returns the number of distinct prefixes
+     *
+     * @return the number of distinct prefixes
+     */
+    int size() {
+        return base == null ? readableCounts().size() : base.size() + counts.size();
+    }
+
+    /**
+     * returns the number of sentences that were started by any prefix
+     *
+     * @return the sum of all counts
+     */
+    int getTotal() {
+        if (base == null) {
+            return readableCounts().getTotal();
+        }
+        return base.getTotal() + addedToBaseTotal + counts.getTotal();
+    }
+
+    /**
+     * returns the prefix in the given slot.
+     *
+     * @param slot a value between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return the prefix in the given slot
+     */
+    Prefix getPrefix(int slot) {
+        if (base == null) {
+            return prefixes.get(slot);
+        }
+        return slot < base.size() ? base.getPrefix(slot) : prefixes.get(slot - base.size());
+    }
+
+    /**
+     * returns how many sentences were started by the prefix in the given slot.
+     *
+     * @param slot a value between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return how many sentences were started by the prefix in the given slot
+     */
+    int getCount(int slot) {
+        if (base == null) {
+            return readableCounts().getCount(slot);
+        }
+        if (slot < base.size()) {
+            return base.getCount(slot) + addedToBase.getOrDefault(slot, 0);
+        }
+        return counts.getCount(slot - base.size());
+    }
+
+    private WeightedTable readableCounts() {
+        return concurrent ? published : counts;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        int size = size();
+        for (int slot = 0; slot < size; slot++) {
+            if (slot > 0) {
+                result.append(", ");
+            }
+            result.append(getPrefix(slot)).append('=').append(getCount(slot));
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * The slots of the base whose counts changed in ascending order, each with the sum of the counts that were added
+     * to it and to all changed slots before it.
+     */
+    private static final class BaseChanges {
+        final int[] slots;
+        final int[] cumulativeAddedCounts;
+
+        BaseChanges(int[] slots, int[] cumulativeAddedCounts) {
+            this.slots = slots;
+            this.cumulativeAddedCounts = cumulativeAddedCounts;
+        }
+
+        /**
+         * returns the index of the last changed slot whose occurrences, including the added ones, all come before the
+         * given occurrence, or -1 if there is none.
+         */
+        int lastChangeBefore(WeightedTable baseCounts, int occurrence) {
+            int low = 0;
+            int high = slots.length - 1;
+            int result = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (baseCounts.getCumulativeCount(slots[middle]) + cumulativeAddedCounts[middle] <= occurrence) {
+                    result = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -1,21 +1,43 @@
 package de.philipppixel.tweetkov.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.random.RandomGenerator;
 
 /**
  * This class maps the possible transitions of prefix to any number of suffixes. While it is possible to append any
- * number of suffixes, the prefix is fixed once the transition is created. <p>This class is not thread-safe.</p>
+ * number of suffixes, the prefix is fixed once the transition is created. Suffixes are stored as token ids of the
+ * prefix' vocabulary.
+ * <p>
+ * Each distinct suffix is stored only once together with the number of times it was mapped. Picking a random suffix
+ * takes constant time on average and picks each suffix as often as a list of all occurrences would. Because the
+ * occurrences are grouped by suffix, a given seed may pick a different suffix than such a list, though.
+ * <p>This class is not thread-safe, except for transitions of a concurrent repository: they are trained by
+ * {@link #mapSuffixShared(int, int)} under their own lock, and readers only read their immutable
+ * {@link #getPublished() published version}.</p>
  */
 class Transition {
+    private static final int INITIAL_CAPACITY = 2;
+    /**
+     * Up to this number of distinct suffixes a linear search is faster than a hash lookup.
+     */
+    static final int LINEAR_SEARCH_LIMIT = 8;
 
     private final Prefix prefix;
-    private List<String> suffixes = new ArrayList<>();
-    private Random random = new Random();
+    private int[] suffixes = new int[INITIAL_CAPACITY];
+    private final WeightedTable suffixCounts;
+    private Map<Integer, Integer> slotsBySuffix;
+    /**
+     * the immutable version that readers of a concurrent repository read, <code>null</code> for other transitions
+     */
+    private volatile Transition published;
+    private int unpublishedChanges;
+    private boolean awaitingPublication;
 
     /**
      * Creates a transition. The prefix will be fixed to this transition and cannot be changed.
@@ -27,15 +49,106 @@ class Transition {
             throw new IllegalArgumentException("Cannot create Transition. Prefix must not be null");
         }
         this.prefix = prefix;
+        this.suffixCounts = new WeightedTable();
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param transitionToCopy the transition to be copied. The copy shares its prefix.
+     * @param trainable        false if the copy is only read, so it needs no index of the slots
+     */
+    private Transition(Transition transitionToCopy, boolean trainable) {
+        this.prefix = transitionToCopy.prefix;
+        this.suffixes = Arrays.copyOf(transitionToCopy.suffixes, trainable
+                ? transitionToCopy.suffixes.length
+                : Math.max(transitionToCopy.getUniqueSuffixCount(), 1));
+        this.suffixCounts = new WeightedTable(transitionToCopy.suffixCounts);
+        if (trainable && transitionToCopy.slotsBySuffix != null) {
+            this.slotsBySuffix = new HashMap<>(transitionToCopy.slotsBySuffix);
+        }
+    }
+
+    /**
+     * creates an independent copy of this transition that can be changed without affecting this transition.
+     *
+     * @return a copy of this transition
+     */
+    Transition copy() {
+        return new Transition(this, true);
+    }
+
+    /**
+     * maps the suffix like {@link #mapSuffix(int, int)} to a transition of a concurrent repository. Writers lock only
+     * this transition, readers read its {@link #getPublished() published version} and never block.
+     * <p>
+     * The change is published right away once the number of unpublished changes reaches the number of distinct
+     * suffixes, so publishing copies the transition at most once per that many changes and costs constant time per
+     * change on average. Until then the change must be published by {@link #publishPending()}.
+     *
+     * @param suffixToken the id of the suffix in the vocabulary of the prefix
+     * @param count       the positive number of occurrences
+     * @return true if the transition has unpublished changes now and was not awaiting publication before, so the
+     * caller must remember to call {@link #publishPending()}
+     */
+    synchronized boolean mapSuffixShared(int suffixToken, int count) {
+        mapSuffix(suffixToken, count);
+        unpublishedChanges++;
+        if (unpublishedChanges >= getUniqueSuffixCount()) {
+            publish();
+            return false;
+        }
+        if (awaitingPublication) {
+            return false;
+        }
+        awaitingPublication = true;
+        return true;
+    }
+
+    /**
+     * publishes the changes that {@link #mapSuffixShared(int, int)} did not publish yet.
+     */
+    synchronized void publishPending() {
+        awaitingPublication = false;
+        if (unpublishedChanges > 0) {
+            publish();
+        }
+    }
+
+    /**
+     * makes the current suffixes visible to readers of {@link #getPublished()}.
+     */
+    synchronized void publish() {
+        Transition version = new Transition(this, false);
+        version.prepareForSharing();
+        published = version;
+        unpublishedChanges = 0;
+    }
+
+    /**
+     * returns the version of this transition that was published last. It is never changed, so any thread can read it
+     * without locking.
+     *
+     * @return the published version or <code>null</code> if this transition was never published
+     */
+    Transition getPublished() {
+        return published;
+    }
+
+    /**
+     * prepares this transition for picking suffixes so that readers do not change it anymore. This must be called
+     * before a transition is shared with other threads.
+     */
+    void prepareForSharing() {
+        suffixCounts.prepareGuide();
     }
 
     /**
      * maps the suffix to the prefix. The same suffix can be mapped several times which increases its overall
      * probability of being picked during the sentence generation.
      *
-     * @param suffixToken any string which will be trimmed. An exception will be thrown if <code>null</code>. Empty
-     *                    strings are allowed because the algorithm may have arrived at the last prefix (usually the end
-     *                    of the sentence).
+     * @param suffixToken any string. An exception will be thrown if <code>null</code>. Empty strings are allowed
+     *                    because the algorithm may have arrived at the last prefix (usually the end of the sentence).
      */
     void mapSuffix(String suffixToken) {
         if (suffixToken == null) {
@@ -43,17 +156,80 @@ class Transition {
                     + "'. Suffix must not be empty or null");
         }
 
-        suffixes.add(suffixToken);
+        mapSuffix(getVocabulary().encode(suffixToken));
+    }
+
+    /**
+     * maps the already encoded suffix to the prefix.
+     *
+     * @param suffixToken the id of the suffix in the vocabulary of the prefix
+     * @see #mapSuffix(String)
+     */
+    void mapSuffix(int suffixToken) {
+        mapSuffix(suffixToken, 1);
+    }
+
+    /**
+     * maps the already encoded suffix to the prefix as if it was mapped <code>count</code> times in a row.
+     *
+     * @param suffixToken the id of the suffix in the vocabulary of the prefix
+     * @param count       the positive number of occurrences
+     */
+    void mapSuffix(int suffixToken, int count) {
+        int slot = findSlot(suffixToken);
+        if (slot < 0) {
+            slot = addSlot(suffixToken);
+        }
+        suffixCounts.add(slot, count);
+    }
+
+    private int findSlot(int suffixToken) {
+        if (slotsBySuffix != null) {
+            return slotsBySuffix.getOrDefault(suffixToken, -1);
+        }
+
+        for (int slot = 0; slot < suffixCounts.size(); slot++) {
+            if (suffixes[slot] == suffixToken) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int addSlot(int suffixToken) {
+        int slot = suffixCounts.size();
+        if (slot == suffixes.length) {
+            suffixes = Arrays.copyOf(suffixes, suffixes.length * 2);
+        }
+        suffixes[slot] = suffixToken;
+
+        if (slotsBySuffix != null) {
+            slotsBySuffix.put(suffixToken, slot);
+        } else if (slot == LINEAR_SEARCH_LIMIT) {
+            slotsBySuffix = new HashMap<>();
+            for (int i = 0; i <= slot; i++) {
+                slotsBySuffix.put(suffixes[i], i);
+            }
+        }
+        return slot;
     }
 
     /**
      * returns the current suffixes.
      *
-     * @return the current collection of suffixes. The collection is unmodifiable. If you want to add a suffix, please
-     * use {@link #mapSuffix(String)}.
+     * @return the current collection of decoded suffixes with one entry per occurrence, grouped by suffix in the order
+     * of their first occurrence. The collection is unmodifiable. If you want to add a suffix, please use
+     * {@link #mapSuffix(String)}.
      */
     Collection<String> getSuffixes() {
-        return Collections.unmodifiableCollection(suffixes);
+        List<String> result = new ArrayList<>(getTotalSuffixCount());
+        for (int slot = 0; slot < getUniqueSuffixCount(); slot++) {
+            String suffix = getVocabulary().decode(suffixes[slot]);
+            for (int i = 0; i < suffixCounts.getCount(slot); i++) {
+                result.add(suffix);
+            }
+        }
+        return Collections.unmodifiableCollection(result);
     }
 
     /**
@@ -65,24 +241,61 @@ class Transition {
         return prefix;
     }
 
+    private Vocabulary getVocabulary() {
+        return prefix.getVocabulary();
+    }
+
     int getUniqueSuffixCount() {
-        return new HashSet<>(suffixes).size();
+        return suffixCounts.size();
     }
 
-    private int getTotalSuffixCount() {
-        return suffixes.size();
+    int getTotalSuffixCount() {
+        return suffixCounts.getTotal();
     }
 
-    String getRandomSuffix() {
-        if (getTotalSuffixCount() == 0) {
-            return "";
-        }
+    /**
+     * returns the suffix of the given slot. Slots are numbered in the order of the first occurrence of their suffix.
+     *
+     * @param slot a value between 0 (inclusive) and {@link #getUniqueSuffixCount()} (exclusive)
+     * @return the id of the suffix in the given slot
+     */
+    int getUniqueSuffix(int slot) {
+        return suffixes[slot];
+    }
 
-        int selectedSuffixIndex = this.random.nextInt(getTotalSuffixCount());
-        return suffixes.get(selectedSuffixIndex);
+    /**
+     * returns how often the suffix of the given slot was mapped.
+     *
+     * @param slot a value between 0 (inclusive) and {@link #getUniqueSuffixCount()} (exclusive)
+     * @return how often the suffix of the given slot was mapped
+     */
+    int getSuffixCount(int slot) {
+        return suffixCounts.getCount(slot);
     }
 
-    void initializeRandom(long seed) {
-        random.setSeed(seed);
+    /**
+     * returns the suffix of the given occurrence, as if all occurrences were stored in a list grouped by suffix in the
+     * order the suffixes were first mapped.
+     *
+     * @param occurrence a value between 0 (inclusive) and {@link #getTotalSuffixCount()} (exclusive)
+     * @return the id of the suffix of the given occurrence
+     */
+    int getSuffixOf(int occurrence) {
+        return suffixes[suffixCounts.slotOf(occurrence)];
+    }
+
+    /**
+     * returns a random suffix. Suffixes which were mapped more often are more likely to be returned.
+     *
+     * @param random the random source. The transition keeps no random state, so it can be shared by several threads
+     *               as long as each of them passes its own random source.
+     * @return the id of a random suffix or {@link Vocabulary#NO_TOKEN} if there is no suffix
+     */
+    int getRandomSuffix(RandomGenerator random) {
+        if (getTotalSuffixCount() == 0) {
+            return Vocabulary.NO_TOKEN;
+        }
+
+        return suffixes[suffixCounts.sample(random)];
     }
 }
@@ -1,89 +1,514 @@
 package de.philipppixel.tweetkov.core;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.random.RandomGenerator;
 
 /**
  * This class organizes the TweetkovChain dictionary and helps to decouple for the storage and retrieve part.
+ * <p>
+ * A repository created by {@link #TransitionRepository()} is not thread-safe. A repository created by
+ * {@link #createConcurrent()} can be trained by several threads while other threads read from it. Readers never block:
+ * writers change a transition under its own lock and publish an immutable version of it for readers from time to time
+ * (see {@link Transition#mapSuffixShared(int, int)}). Start prefixes are counted in a concurrent
+ * {@link StartPrefixTable} which publishes its counts the same way. Writers should call {@link #publishChanges()}
+ * after each batch so that readers see all of it.
+ * <p>
+ * Besides the map, all prefixes are kept in a list in the order they were first trained. The list is only appended
+ * to, so a random prefix is picked by its index in constant time, and transitions are iterated in training order.
+ * <p>
+ * A repository returned by {@link #mergedWith(TransitionRepository)} is an immutable version of another repository. It
+ * may be read by several threads but must not be trained. Such a version usually keeps only the transitions and start
+ * prefixes that changed in a small layer over a shared base version, see {@link #mergedWith(TransitionRepository)}.
  */
 class TransitionRepository {
-    private static final int ORIGINAL_START_PREFIX_PROBABILITY_IN_PERCENT = 67;
+    /**
+     * how likely a sentence starts with a prefix that started a trained sentence rather than with any prefix. The
+     * compiled model and its analyses pick their first state with the same probability.
+     */
+    static final int ORIGINAL_START_PREFIX_PROBABILITY_IN_PERCENT = 67;
+    /**
+     * A merged version is compacted into a new base once its layer would hold more than one entry per this many entries
+     * of the base. So lookups check at most two maps, and a base is copied only after as many changes as a fraction of
+     * its size were published.
+     */
+    private static final int BASE_ENTRIES_PER_LAYER_ENTRY = 8;
+
+    private final Map<Prefix, Transition> prefixToTransitions;
+    /**
+     * Provides efficient access to all prefixes by index. Although transitions keep their own prefixes iterating all
+     * transitions is not efficient enough to quickly pick a random prefix.
+     */
+    private final List<Prefix> prefixes;
+    private final StartPrefixTable startPrefixes;
+    private final Vocabulary vocabulary;
+    private final boolean concurrent;
+    /**
+     * the transitions of a concurrent repository with changes that readers do not see yet, <code>null</code> for other
+     * repositories
+     */
+    private final Queue<Transition> unpublished;
+    /**
+     * the version this version is layered on, <code>null</code> unless this repository is a layered version. The map
+     * and the list of prefixes of a layered version only contain the transitions that changed and the new prefixes.
+     */
+    private final TransitionRepository base;
+    /**
+     * true if this repository was returned by {@link #mergedWith(TransitionRepository)} and is never changed
+     */
+    private final boolean immutable;
+
+    TransitionRepository() {
+        this(new Vocabulary());
+    }
+
+    /**
+     * Creates a repository that encodes its tokens with the given vocabulary, so several repositories can share the
+     * same tokens and token ids.
+     *
+     * @param vocabulary the vocabulary of the new repository
+     */
+    TransitionRepository(Vocabulary vocabulary) {
+        this(new HashMap<>(), new ArrayList<>(), new StartPrefixTable(false), vocabulary, false);
+    }
+
+    private TransitionRepository(Map<Prefix, Transition> prefixToTransitions, List<Prefix> prefixes,
+                                 StartPrefixTable startPrefixes, Vocabulary vocabulary, boolean concurrent) {
+        this(prefixToTransitions, prefixes, startPrefixes, vocabulary, concurrent, null, false);
+    }
+
+    private TransitionRepository(Map<Prefix, Transition> prefixToTransitions, List<Prefix> prefixes,
+                                 StartPrefixTable startPrefixes, Vocabulary vocabulary, boolean concurrent,
+                                 TransitionRepository base, boolean immutable) {
+        this.prefixToTransitions = prefixToTransitions;
+        this.prefixes = prefixes;
+        this.startPrefixes = startPrefixes;
+        this.vocabulary = vocabulary;
+        this.concurrent = concurrent;
+        this.unpublished = concurrent ? new ConcurrentLinkedQueue<>() : null;
+        this.base = base;
+        this.immutable = immutable;
+    }
+
+    /**
+     * Creates a repository for training a part of the sentences. Like every repository it keeps its transitions in the
+     * order they were trained, so it can be {@link #merge(TransitionRepository) merged} into another repository as if
+     * it was trained there directly.
+     *
+     * @return an empty repository for partial training
+     */
+    static TransitionRepository createPartial() {
+        return new TransitionRepository();
+    }
+
+    /**
+     * Creates a thread-safe repository. Updates of different prefixes do not block each other and readers never block
+     * or see a transition that is only partially updated.
+     *
+     * @return an empty thread-safe repository
+     */
+    static TransitionRepository createConcurrent() {
+        return new TransitionRepository(new ConcurrentHashMap<>(), new AppendOnlyList<>(), new StartPrefixTable(true),
+                new Vocabulary(), true);
+    }
 
     /**
-     * Provides efficient access to all prefixes. Although transitions keep their own prefixes iterating all transitions
-     * is not efficient enough to quickly get all prefixes.
+     * returns true if this repository was created by {@link #createConcurrent()}.
+     *
+     * @return true if this repository is thread-safe
      */
-    private Map<Prefix, Transition> prefixToTransitions = new HashMap<>();
-    private final List<Prefix> startPrefixes = new ArrayList<>();
-    private Random random = new Random();
+    boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * returns the vocabulary which encodes all tokens of this repository.
+     *
+     * @return the vocabulary which encodes all tokens of this repository
+     */
+    Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * maps the given suffix to the given prefix. The repository stores a copy of the prefix, so the caller may shift the
+     * given prefix afterwards.
+     *
+     * @param prefix the prefix
+     * @param suffix the id of the suffix in the vocabulary of the prefix
+     */
+    void train(Prefix prefix, int suffix) {
+        train(prefix, suffix, 1);
+    }
+
+    /**
+     * maps the given suffix to the given prefix as if it was trained <code>count</code> times in a row.
+     *
+     * @param prefix the prefix
+     * @param suffix the id of the suffix in the vocabulary of the prefix
+     * @param count  the positive number of occurrences
+     */
+    void train(Prefix prefix, int suffix, int count) {
+        if (concurrent) {
+            Transition mapping = prefixToTransitions.get(prefix);
+            if (mapping == null) {
+                boolean[] created = new boolean[1];
+                mapping = prefixToTransitions.computeIfAbsent(prefix.copy(), key -> {
+                    created[0] = true;
+                    Transition transition = new Transition(key);
+                    transition.mapSuffix(suffix, count);
+                    transition.publish();
+                    return transition;
+                });
+                // only the thread that created the transition appends its prefix, once the transition can be read
+                if (created[0]) {
+                    prefixes.add(mapping.getPrefix());
+                    return;
+                }
+            }
+            if (mapping.mapSuffixShared(suffix, count)) {
+                unpublished.add(mapping);
+            }
+            return;
+        }
 
-    void train(Prefix prefix, String suffix) {
         Transition mapping = get(prefix);
         if (mapping == null) {
-            mapping = new Transition(prefix);
-            prefixToTransitions.put(prefix, mapping);
+            Prefix key = prefix.copy();
+            mapping = new Transition(key);
+            prefixToTransitions.put(key, mapping);
+            prefixes.add(key);
         }
-        mapping.mapSuffix(suffix);
+        mapping.mapSuffix(suffix, count);
     }
 
-    void trainAsStartPrefix(Prefix prefix, String suffix) {
+    /**
+     * makes all suffixes and start prefixes that were trained so far visible to readers of a concurrent repository.
+     * Without this, a trained suffix becomes visible once its transition was trained as often again as it has distinct
+     * suffixes, and likewise for start prefixes. A thread that finished training a batch should call this method so
+     * that readers see the whole batch. Other repositories are not changed.
+     */
+    void publishChanges() {
+        if (unpublished == null) {
+            return;
+        }
+        startPrefixes.publishChanges();
+        for (Transition transition = unpublished.poll(); transition != null; transition = unpublished.poll()) {
+            transition.publishPending();
+        }
+    }
+
+    void trainAsStartPrefix(Prefix prefix, int suffix) {
         train(prefix, suffix);
         addToStartTokens(prefix);
     }
 
-    private void addToStartTokens(Prefix prefix) {
-        startPrefixes.add(prefix);
+    /**
+     * adds the given prefix to the start prefixes without training it. The prefix should already be trained.
+     *
+     * @param prefix the prefix that started a sentence
+     */
+    void addToStartTokens(Prefix prefix) {
+        addToStartTokens(prefix, 1);
     }
 
-    Transition get(Prefix prefix) {
-        return prefixToTransitions.get(prefix);
+    /**
+     * adds the given prefix to the start prefixes as if it started <code>count</code> sentences.
+     *
+     * @param prefix the prefix that started sentences
+     * @param count  the positive number of sentences
+     */
+    void addToStartTokens(Prefix prefix, int count) {
+        startPrefixes.add(prefix, count);
     }
 
-    Collection<Transition> getAllTransitions() {
-        return prefixToTransitions.values();
+    /**
+     * adds all transitions and start prefixes of the given repository to this repository. If the given repository was
+     * created by {@link #createPartial()}, the result is the same as training this repository with the sentences of
+     * the given repository directly, including the order of tokens, transitions, suffixes and start prefixes.
+     *
+     * @param partial the repository to merge. It is not changed.
+     */
+    void merge(TransitionRepository partial) {
+        int[] tokenMapping = mapTokens(partial.vocabulary);
+        for (Transition partialTransition : partial.getAllTransitions()) {
+            trainAll(translate(partialTransition.getPrefix(), tokenMapping), partialTransition, tokenMapping);
+        }
+        mergeStartPrefixes(partial.startPrefixes, tokenMapping);
+    }
 
+    /**
+     * returns a new version of this repository with the transitions and start prefixes of the given repository merged
+     * into it like {@link #merge(TransitionRepository)} does. This repository is not changed, so other threads may
+     * keep reading it meanwhile.
+     * <p>
+     * The new version shares the vocabulary and the objects of all transitions the given repository does not change
+     * with this repository, so their suffixes are not copied. If this repository is a version returned by this method
+     * too, the new version is usually layered: it shares the map, the list of prefixes and the start prefixes of a base
+     * version and only stores the transitions and start prefixes that changed since. Then merging takes time and
+     * memory proportional to the layer, which holds at most one entry per eight entries of the base. Once the layer
+     * would grow larger, it is compacted: the new version copies the whole model and becomes the base of the
+     * following versions. Either way, the new version iterates and picks prefixes in the same order as if it had been
+     * trained directly.
+     * <p>
+     * All transitions are prepared for sharing, so the new version can be read by several threads once it was
+     * published safely, f. i. through a volatile field. It must not be trained.
+     *
+     * @param partial the repository to merge. It is not changed.
+     * @return a new version of this repository
+     */
+    TransitionRepository mergedWith(TransitionRepository partial) {
+        TransitionRepository result = isLayeredAfterMerging(partial) ? newLayer() : compacted();
+        int[] tokenMapping = result.mapTokens(partial.vocabulary);
+        for (Transition partialTransition : partial.getAllTransitions()) {
+            Prefix prefix = result.translate(partialTransition.getPrefix(), tokenMapping);
+            Transition shared = result.get(prefix);
+            if (shared != null) {
+                result.prefixToTransitions.put(shared.getPrefix(), shared.copy());
+            }
+            result.trainAll(prefix, partialTransition, tokenMapping);
+            result.get(prefix).prepareForSharing();
+        }
+        result.mergeStartPrefixes(partial.startPrefixes, tokenMapping);
+        result.startPrefixes.prepareForSharing();
+        return result;
     }
 
-    String getRandomSuffix(Prefix prefix) {
-        Transition transition = prefixToTransitions.get(prefix);
-        if (transition == null) {
-            return "";
+    private boolean isLayeredAfterMerging(TransitionRepository partial) {
+        if (!immutable) {
+            return false;
+        }
+        TransitionRepository sharedBase = getBase();
+        long baseEntries = (long) sharedBase.prefixes.size() + sharedBase.startPrefixes.size();
+        long layerEntries = (long) (base == null ? 0 : prefixToTransitions.size() + startPrefixes.getLayerSize())
+                + partial.prefixes.size() + partial.startPrefixes.size();
+        return layerEntries * BASE_ENTRIES_PER_LAYER_ENTRY <= baseEntries;
+    }
+
+    private TransitionRepository newLayer() {
+        return new TransitionRepository(base == null ? new HashMap<>() : new HashMap<>(prefixToTransitions),
+                base == null ? new ArrayList<>() : new ArrayList<>(prefixes), startPrefixes.layered(), vocabulary,
+                false, getBase(), true);
+    }
+
+    private TransitionRepository compacted() {
+        Map<Prefix, Transition> allTransitions = new HashMap<>(getBase().prefixToTransitions);
+        List<Prefix> allPrefixes = new ArrayList<>(getBase().prefixes);
+        if (base != null) {
+            allTransitions.putAll(prefixToTransitions);
+            allPrefixes.addAll(prefixes);
         }
+        return new TransitionRepository(allTransitions, allPrefixes, new StartPrefixTable(startPrefixes), vocabulary,
+                false, null, true);
+    }
 
-        return transition.getRandomSuffix();
+    /**
+     * returns the repository whose map and list of prefixes this repository shares with other versions: the base of a
+     * layered version returned by {@link #mergedWith(TransitionRepository)}, this repository otherwise.
+     *
+     * @return the base of this version or this repository
+     */
+    TransitionRepository getBase() {
+        return base == null ? this : base;
     }
 
-    void initializeRandomSeed(long seed) {
-        random.setSeed(seed);
+    /**
+     * returns a copy of this repository without the transitions whose prefix was trained less than
+     * <code>minCount</code> times and without the start prefixes of the removed transitions. The remaining transitions,
+     * suffixes and start prefixes keep their counts and their order.
+     * <p>
+     * The copy is rebuilt from scratch in compact form: it has a new vocabulary with only the tokens that are still
+     * used, and its map and lists only grow as far as the remaining entries need. A concurrent repository is copied
+     * into a concurrent one. This repository is not changed.
+     *
+     * @param minCount the minimum number of times a prefix must have been trained to be kept, at least 1 (one)
+     * @return a pruned copy of this repository
+     */
+    TransitionRepository pruned(int minCount) {
+        if (minCount < 1) {
+            throw new IllegalArgumentException("Minimum count must not be smaller than 1. Given: " + minCount);
+        }
+
+        boolean[] used = new boolean[vocabulary.size()];
+        for (Transition transition : getAllTransitions()) {
+            if (transition.getTotalSuffixCount() >= minCount) {
+                markTokens(transition.getPrefix(), used);
+                for (int slot = 0; slot < transition.getUniqueSuffixCount(); slot++) {
+                    used[transition.getUniqueSuffix(slot)] = true;
+                }
+            }
+        }
+        for (int slot = 0; slot < startPrefixes.size(); slot++) {
+            if (isKept(startPrefixes.getPrefix(slot), minCount)) {
+                markTokens(startPrefixes.getPrefix(slot), used);
+            }
+        }
 
-        for (Transition transition : prefixToTransitions.values()) {
-            transition.initializeRandom(seed);
+        TransitionRepository result = concurrent ? createConcurrent() : new TransitionRepository();
+        int[] tokenMapping = new int[used.length];
+        for (int token = 0; token < used.length; token++) {
+            tokenMapping[token] = used[token]
+                    ? result.vocabulary.encode(vocabulary.decode(token))
+                    : Vocabulary.NO_TOKEN;
         }
+        for (Transition transition : getAllTransitions()) {
+            if (transition.getTotalSuffixCount() >= minCount) {
+                result.trainAll(result.translate(transition.getPrefix(), tokenMapping), transition, tokenMapping);
+            }
+        }
+        for (int slot = 0; slot < startPrefixes.size(); slot++) {
+            if (isKept(startPrefixes.getPrefix(slot), minCount)) {
+                result.addToStartTokens(result.translate(startPrefixes.getPrefix(slot), tokenMapping),
+                        startPrefixes.getCount(slot));
+            }
+        }
+        result.publishChanges();
+        return result;
+    }
+
+    private boolean isKept(Prefix prefix, int minCount) {
+        Transition transition = get(prefix);
+        return transition != null && transition.getTotalSuffixCount() >= minCount;
     }
 
-    Prefix getRandomStartPrefix() {
-        if(startPrefixes.isEmpty()) {
-            throw new IllegalStateException("Cannot return start prefix because there are no prefixes yet.");
+    private static void markTokens(Prefix prefix, boolean[] used) {
+        for (int i = 0; i < prefix.size(); i++) {
+            used[prefix.getToken(i)] = true;
         }
-        int keyIndex = random.nextInt(startPrefixes.size());
-        return startPrefixes.get(keyIndex);
     }
 
-    Prefix getRandomPrefix() {
-        if(prefixToTransitions.isEmpty()) {
-            throw new IllegalStateException("Cannot return prefix because there are no prefixes yet.");
+    private int[] mapTokens(Vocabulary partialVocabulary) {
+        int[] tokenMapping = new int[partialVocabulary.size()];
+        for (int token = 0; token < tokenMapping.length; token++) {
+            tokenMapping[token] = vocabulary.encode(partialVocabulary.decode(token));
         }
+        return tokenMapping;
+    }
 
-        Prefix[] prefixes = prefixToTransitions.keySet().toArray(new Prefix[startPrefixes.size()]);
-        int keyIndex = random.nextInt(prefixes.length);
-        return prefixes[keyIndex];
+    private void trainAll(Prefix prefix, Transition partialTransition, int[] tokenMapping) {
+        for (int slot = 0; slot < partialTransition.getUniqueSuffixCount(); slot++) {
+            int suffix = tokenMapping[partialTransition.getUniqueSuffix(slot)];
+            train(prefix, suffix, partialTransition.getSuffixCount(slot));
+        }
     }
 
-    Prefix getFirstPrefixToken() {
+    private void mergeStartPrefixes(StartPrefixTable partialStartPrefixes, int[] tokenMapping) {
+        for (int slot = 0; slot < partialStartPrefixes.size(); slot++) {
+            addToStartTokens(translate(partialStartPrefixes.getPrefix(slot), tokenMapping),
+                    partialStartPrefixes.getCount(slot));
+        }
+    }
+
+    private Prefix translate(Prefix prefix, int[] tokenMapping) {
+        Prefix result = new Prefix(vocabulary, prefix.size());
+        for (int i = 0; i < prefix.size(); i++) {
+            result.appendToken(tokenMapping[prefix.getToken(i)]);
+        }
+        return result;
+    }
+
+    /**
+     * returns the transition of the given prefix. A concurrent repository returns the published version, which is
+     * never changed.
+     *
+     * @param prefix the prefix
+     * @return the transition of the given prefix or <code>null</code> if the prefix was not trained
+     */
+    Transition get(Prefix prefix) {
+        Transition transition = prefixToTransitions.get(prefix);
+        if (transition == null && base != null) {
+            return base.get(prefix);
+        }
+        return readable(transition);
+    }
+
+    private Transition readable(Transition transition) {
+        return concurrent && transition != null ? transition.getPublished() : transition;
+    }
+
+    /**
+     * returns a view of all transitions in the order their prefixes were first trained. While a concurrent repository
+     * is trained, the view contains at least the transitions that were trained before it was iterated, each in its
+     * published version.
+     *
+     * @return an unmodifiable view of all transitions
+     */
+    Collection<Transition> getAllTransitions() {
+        return new AbstractCollection<Transition>() {
+            @Override
+            public Iterator<Transition> iterator() {
+                Iterator<Prefix> basePrefixes = base == null ? Collections.emptyIterator() : base.prefixes.iterator();
+                Iterator<Prefix> ownPrefixes = prefixes.iterator();
+                return new Iterator<Transition>() {
+                    @Override
+                    public boolean hasNext() {
+                        return basePrefixes.hasNext() || ownPrefixes.hasNext();
+                    }
+
+                    @Override
+                    public Transition next() {
+                        return get(basePrefixes.hasNext() ? basePrefixes.next() : ownPrefixes.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return base == null ? prefixes.size() : base.prefixes.size() + prefixes.size();
+            }
+        };
+    }
+
+    /**
+     * returns all distinct start prefixes in the order they first started a sentence, each with the number of sentences
+     * it started.
+     *
+     * @return the start prefixes. Callers must not add to it.
+     */
+    StartPrefixTable getStartPrefixes() {
+        return startPrefixes;
+    }
+
+    /**
+     * returns a start prefix with the probability of the share of sentences it started.
+     *
+     * @param random the random source. Exactly one <code>nextInt</code> is drawn.
+     * @return a start prefix
+     */
+    Prefix getRandomStartPrefix(RandomGenerator random) {
+        return startPrefixes.sample(random);
+    }
+
+    /**
+     * returns any trained prefix with the same probability, in constant time and without allocation.
+     *
+     * @param random the random source
+     * @return a trained prefix
+     */
+    Prefix getRandomPrefix(RandomGenerator random) {
+        int baseSize = base == null ? 0 : base.prefixes.size();
+        int size = baseSize + prefixes.size();
+        if (size == 0) {
+            throw new IllegalStateException("Cannot return prefix because there are no prefixes yet.");
+        }
+        int index = random.nextInt(size);
+        return index < baseSize ? base.prefixes.get(index) : prefixes.get(index - baseSize);
+    }
+
+    /**
+     * returns the prefix to start a sentence with. Usually this is a prefix that started a trained sentence.
+     *
+     * @param random the random source. The repository keeps no random state, so several threads can pick prefixes
+     *               at the same time.
+     * @return the prefix to start a sentence with
+     */
+    Prefix getFirstPrefixToken(RandomGenerator random) {
         int hundredPercent = 100;
         int originalStartWord = random.nextInt(hundredPercent);
         if (originalStartWord <= ORIGINAL_START_PREFIX_PROBABILITY_IN_PERCENT) {
-            return getRandomStartPrefix();
+            return getRandomStartPrefix(random);
         }
-        return getRandomPrefix();
+        return getRandomPrefix(random);
     }
 }
@@ -1,10 +1,23 @@
 package de.philipppixel.tweetkov.core;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
+import java.util.random.RandomGenerator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * TweetkovChain - the tweet Markov-chain text generator.
@@ -48,15 +61,37 @@ import java.util.logging.Logger;
  */
 public class TweetkovChain {
     private static final int DEFAULT_WINDOW_SIZE = 2;
-    private static final int MAX_NUMBER_OF_WORDS_PER_SENTENCE = 32;
-    private static final String WORD_DELIMITER = " ";
-    private static final String EMPTY_RESULT = "";
-    private static final int DUPLICATE_TIMEOUT = 50;
+    static final int MAX_NUMBER_OF_WORDS_PER_SENTENCE = 32;
+    static final String WORD_DELIMITER = " ";
+    static final int DUPLICATE_TIMEOUT = 50;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
     private static final Logger LOG = Logger.getLogger(TweetkovChain.class.getName());
 
-    private final TransitionRepository transitionRepo = new TransitionRepository();
+    private TransitionRepository transitionRepo;
+    private Vocabulary vocabulary;
+    private CompiledModel compiledModel;
+    private OriginalityIndex originalityIndex;
+    /**
+     * the analyses that steer generation on the current model. They are only created by {@link #compile()}, by
+     * {@link #withTrainingOf(TweetkovChain) publishing} and for mapped chains, never while a trainable chain generates.
+     * <code>null</code> while there are none, then sentences are generated without steering and rejected afterwards.
+     */
+    private volatile ModelAnalysis analysis;
+    /**
+     * true if a generation on this read-only chain would have been steered but found no analyses, so the next
+     * compacted version creates them
+     */
+    private volatile boolean analysisWanted;
     private int windowSize;
     private Random random;
+    /**
+     * receives the measurements of this chain, <code>null</code> if nothing is measured
+     */
+    private volatile MetricsListener metricsListener;
+    /**
+     * true if this chain is a published version of a {@link SnapshotChain} which other threads read
+     */
+    private boolean readOnly;
 
     /**
      * Creates a {@link TweetkovChain} with the default window size
@@ -71,28 +106,60 @@ public class TweetkovChain {
      * @param windowSize determines the number of prefix tokens in a transition to a suffix
      */
     public TweetkovChain(int windowSize) {
+        this(windowSize, new TransitionRepository(), null);
+    }
+
+    private TweetkovChain(int windowSize, TransitionRepository transitionRepo, OriginalityIndex originalityIndex) {
+        this.transitionRepo = transitionRepo;
+        this.vocabulary = transitionRepo.getVocabulary();
+        setWindowSize(windowSize);
+        if (originalityIndex != null) {
+            this.originalityIndex = originalityIndex;
+        }
+        this.random = new Random();
+    }
+
+    private TweetkovChain(int windowSize, CompiledModel compiledModel, OriginalityIndex originalityIndex) {
+        this.compiledModel = compiledModel;
+        this.vocabulary = compiledModel.getVocabulary();
+        this.originalityIndex = originalityIndex;
+        this.analysis = new ModelAnalysis(compiledModel, originalityIndex.getSpanLength());
         setWindowSize(windowSize);
         this.random = new Random();
     }
 
+    /**
+     * Creates a {@link TweetkovChain} that can be trained while other threads generate sentences. Generating never
+     * blocks, no matter how many threads train at the same time. Sentences of a batch that is still being trained may
+     * be visible in part; once {@link #train(Iterable)} returns, the whole batch is visible.
+     * <p>
+     * Please note that compiling and changing the window size are not thread-safe.
+     *
+     * @param windowSize determines the number of prefix tokens in a transition to a suffix
+     * @return a thread-safe chain
+     */
+    public static TweetkovChain createConcurrent(int windowSize) {
+        return new TweetkovChain(windowSize, TransitionRepository.createConcurrent(), null);
+    }
+
     /**
      * Creates a histogram output of the trained transitions cardinals.
      *
      * @return a histogram output of the trained transitions cardinals.
      */
     public String createHistogram() {
-        Collection<Transition> transitions = transitionRepo.getAllTransitions();
         Map<Integer, Integer> histogram = new HashMap<>();
-        StringBuilder result = new StringBuilder(transitions.size());
-
-        for (Transition entry : transitions) {
-            int valueSize = entry.getUniqueSuffixCount();
+        StringBuilder result = new StringBuilder();
 
-            result.append(String.format("%s: %s\n", entry.getPrefix().toString(), valueSize));
-
-            int numberOfEntriesWithThatSize = histogram.getOrDefault(valueSize, 0);
-            numberOfEntriesWithThatSize++;
-            histogram.put(valueSize, numberOfEntriesWithThatSize);
+        if (isCompiled()) {
+            for (int state = 0; state < compiledModel.getStateCount(); state++) {
+                addToHistogram(result, histogram, compiledModel.getPrefixString(state),
+                        compiledModel.getUniqueSuffixCount(state));
+            }
+        } else {
+            for (Transition entry : transitionRepo.getAllTransitions()) {
+                addToHistogram(result, histogram, entry.getPrefix().toString(), entry.getUniqueSuffixCount());
+            }
         }
 
         for (Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
@@ -101,47 +168,204 @@ public class TweetkovChain {
         return result.toString();
     }
 
+    private void addToHistogram(StringBuilder result, Map<Integer, Integer> histogram, String prefix, int valueSize) {
+        result.append(String.format("%s: %s\n", prefix, valueSize));
+
+        int numberOfEntriesWithThatSize = histogram.getOrDefault(valueSize, 0);
+        numberOfEntriesWithThatSize++;
+        histogram.put(valueSize, numberOfEntriesWithThatSize);
+    }
+
     /**
      * Takes a collection or array of sentences and creates a mapping from prefixes to suffixes for each one for later
      * generation of sentences using the Markov property.
      *
      * @param sentences a collection or array of sentences
+     * @throws IllegalStateException if this chain was already {@link #compile() compiled} or is
+     *                               {@link #isReadOnly() read-only}
      */
     public void train(Iterable<String> sentences) {
+        requireTrainable("train");
+
+        MetricsListener listener = metricsListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        LineTokenizer tokenizer = new LineTokenizer(transitionRepo.getVocabulary());
+        Prefix window = new Prefix(transitionRepo.getVocabulary(), windowSize);
+        OriginalityIndex.Tracker originality = originalityIndex.newTracker();
+        int lines = 0;
+        long tokens = 0;
         for (String sentence : sentences) {
-            trainSingleLine(sentence);
+            tokens += trainSingleLine(sentence, transitionRepo, tokenizer, window, originality);
+            lines++;
+        }
+        transitionRepo.publishChanges();
+        if (listener != null) {
+            listener.onTraining(lines, tokens, System.nanoTime() - start);
         }
     }
 
+    /**
+     * Trains the given sentences on all cores of the common fork/join pool.
+     *
+     * @param sentences a list of sentences
+     * @see #trainInParallel(List, int)
+     */
+    public void trainInParallel(List<String> sentences) {
+        trainInParallel(sentences, ForkJoinPool.commonPool().getParallelism());
+    }
+
+    /**
+     * Trains the given sentences in parallel. The sentences are split into consecutive shards. Each shard is trained
+     * into its own partial dictionary on the common fork/join pool and the partial dictionaries are merged in the order
+     * of the shards afterwards.
+     * <p>
+     * The resulting dictionary is the same as if {@link #train(Iterable)} was called with the same sentences: the
+     * suffix counts, the start prefixes and even the order of both are identical, so the generated sentences for a
+     * given seed are identical, too.
+     *
+     * @param sentences  a list of sentences
+     * @param shardCount the number of shards, at least 1 (one); otherwise an exception is thrown
+     * @throws IllegalStateException if this chain was already {@link #compile() compiled} or is
+     *                               {@link #isReadOnly() read-only}
+     */
+    public void trainInParallel(List<String> sentences, int shardCount) {
+        requireTrainable("train");
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must not be smaller than 1. Given: " + shardCount);
+        }
+
+        MetricsListener listener = metricsListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        List<Callable<PartialTraining>> shards = new ArrayList<>(shardCount);
+        int shardSize = (sentences.size() + shardCount - 1) / shardCount;
+        for (int from = 0; from < sentences.size(); from += shardSize) {
+            List<String> shard = sentences.subList(from, Math.min(from + shardSize, sentences.size()));
+            shards.add(() -> trainPartial(shard));
+        }
+
+        long tokens = 0;
+        try {
+            for (Future<PartialTraining> future : ForkJoinPool.commonPool().invokeAll(shards)) {
+                PartialTraining partial = future.get();
+                transitionRepo.merge(partial.repository);
+                originalityIndex.merge(partial.originalityIndex);
+                tokens += partial.tokenCount;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while training in parallel", e);
+        } catch (ExecutionException e) {
+            // training a shard throws no checked exceptions, so the cause is rethrown as it is
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+        transitionRepo.publishChanges();
+        if (listener != null) {
+            listener.onTraining(sentences.size(), tokens, System.nanoTime() - start);
+        }
+    }
+
+    private void requireTrainable(String action) {
+        if (isCompiled()) {
+            throw new IllegalStateException("Cannot " + action + " a compiled chain.");
+        }
+        requireWritable(action);
+    }
+
+    private void requireWritable(String action) {
+        if (readOnly) {
+            throw new IllegalStateException("Cannot " + action + " a read-only snapshot.");
+        }
+    }
+
+    private PartialTraining trainPartial(List<String> sentences) {
+        TransitionRepository partial = TransitionRepository.createPartial();
+        OriginalityIndex partialIndex = OriginalityIndex.create(originalityIndex.getSpanLength(), false);
+        LineTokenizer tokenizer = new LineTokenizer(partial.getVocabulary());
+        Prefix window = new Prefix(partial.getVocabulary(), windowSize);
+        OriginalityIndex.Tracker originality = partialIndex.newTracker();
+        long tokens = 0;
+        for (String sentence : sentences) {
+            tokens += trainSingleLine(sentence, partial, tokenizer, window, originality);
+        }
+        return new PartialTraining(partial, partialIndex, tokens);
+    }
+
     /**
      * Takes a sentence and creates a mapping from prefix(es) to suffix using a sliding-window. While the number of
      * tokens in a single prefix is determined by the windows size, the suffix consists maximally of one token. Thus,
      * the quality of the generated sentence correlates strongly with the size of the window.
+     * <p>
+     * The window is shifted in place and only copied by the repository when it is stored, so training a line of known
+     * tokens allocates nothing but the transitions it adds.
      *
      * @param trainingLine the sentence that is subject to be tokenized into prefix(es) and suffix
+     * @param repository   the dictionary to train
+     * @param tokenizer    the tokenizer for the vocabulary of the repository
+     * @param window       a prefix for the vocabulary of the repository that is reused for each line
+     * @param originality  the tracker which adds the spans of the line to the originality index
+     * @return the number of tokens of the line
      */
-    private void trainSingleLine(String trainingLine) {
-        String[] tokens = trainingLine.split(WORD_DELIMITER);
-        Prefix currentPrefix = new Prefix(this.windowSize);
+    private int trainSingleLine(String trainingLine, TransitionRepository repository, LineTokenizer tokenizer,
+                                 Prefix window, OriginalityIndex.Tracker originality) {
+        int tokenCount = tokenizer.tokenize(trainingLine);
+        recordSpans(tokenizer, tokenCount, repository.getVocabulary(), originality);
+        trainWindows(tokenizer, tokenCount, windowSize, repository, window);
+        return tokenCount;
+    }
 
-        for (int tokenIndex = 0; tokenIndex < tokens.length; tokenIndex++) {
-            String currentToken = tokens[tokenIndex];
-            currentToken = replaceSpecialChars(currentToken);
+    /**
+     * adds the spans and the end of a tokenized line to an originality index.
+     *
+     * @param tokenizer   the tokenizer which holds the line
+     * @param tokenCount  the number of tokens of the line
+     * @param vocabulary  the vocabulary of the tokenizer
+     * @param originality the tracker which adds the spans of the line to the originality index
+     */
+    static void recordSpans(LineTokenizer tokenizer, int tokenCount, Vocabulary vocabulary,
+                            OriginalityIndex.Tracker originality) {
+        originality.reset();
+        for (int tokenIndex = 0; tokenIndex < tokenCount; tokenIndex++) {
+            originality.add(vocabulary.foldedHash(tokenizer.getToken(tokenIndex)));
+            originality.recordSpan();
+        }
+        originality.recordEnd();
+    }
 
-            if (currentPrefix.isSmallerThanWindowSize()) {
-                currentPrefix.appendToken(currentToken);
+    /**
+     * slides a window of the given size over a tokenized line and maps each token to the window before it. The first
+     * full window of the line is trained as a start prefix.
+     *
+     * @param tokenizer  the tokenizer which holds the line
+     * @param tokenCount the number of tokens of the line
+     * @param windowSize the number of tokens of the window
+     * @param repository the dictionary to train
+     * @param window     a prefix of the given size for the vocabulary of the repository. It is cleared first and holds
+     *                   the last tokens of the line afterwards.
+     */
+    static void trainWindows(LineTokenizer tokenizer, int tokenCount, int windowSize, TransitionRepository repository,
+                             Prefix window) {
+        window.clear();
+        for (int tokenIndex = 0; tokenIndex < tokenCount; tokenIndex++) {
+            int currentToken = tokenizer.getToken(tokenIndex);
+
+            if (window.isSmallerThanWindowSize()) {
+                window.appendToken(currentToken);
                 continue;
             }
 
-            String suffix = currentToken;
+            int suffix = currentToken;
 
-            if (isStartPrefix(tokenIndex)) {
-                transitionRepo.trainAsStartPrefix(currentPrefix, suffix);
+            if (isStartPrefix(tokenIndex, windowSize)) {
+                repository.trainAsStartPrefix(window, suffix);
             } else {
-                transitionRepo.train(currentPrefix, suffix);
+                repository.train(window, suffix);
             }
 
-            currentPrefix = currentPrefix.shiftWithSuffix(suffix);
+            window.shift(suffix);
         }
     }
 
@@ -153,63 +377,634 @@ public class TweetkovChain {
      * @return true if the tokenIndex indicates that the prefix at hand is a start of a sentence
      */
     boolean isStartPrefix(int tokenIndex) {
-        return tokenIndex == this.windowSize;
+        return isStartPrefix(tokenIndex, this.windowSize);
+    }
+
+    private static boolean isStartPrefix(int tokenIndex, int windowSize) {
+        return tokenIndex == windowSize;
     }
 
     String replaceSpecialChars(String currentToken) {
-        return currentToken
-                .replaceAll("&amp;", "&")
-                .replaceAll("&gt;", ">")
-                .replaceAll("&lt;", "<")
-                .replaceAll("\\.\\.\\.", "\\u2026");
+        return LineTokenizer.decode(currentToken);
+    }
+
+    /**
+     * Turns the trained dictionary into an immutable model that is optimized for generating sentences. The mutable
+     * dictionary is released afterwards, so the chain cannot be trained any further. All <code>generate</code> methods
+     * work on the compiled model and generate the same sentences for the same random source as before compiling.
+     * <p>
+     * Compiling also analyses the model once, so that {@link #generateWithoutDuplicates()} and
+     * {@link #generate(int, int)} steer away from sentences they would reject. This takes time proportional to the size
+     * of the model. Before compiling, these methods generate without steering and retry until a sentence matches, so
+     * they may return different sentences than the compiled chain.
+     *
+     * @return this chain
+     * @throws IllegalStateException if this chain is {@link #isReadOnly() read-only}
+     */
+    public TweetkovChain compile() {
+        requireWritable("compile");
+        if (!isCompiled()) {
+            compiledModel = CompiledModel.compile(transitionRepo);
+            originalityIndex = originalityIndex.freeze();
+            transitionRepo = null;
+            analysis = ModelAnalysis.analyse(compiledModel, originalityIndex.getSpanLength());
+        }
+        return this;
+    }
+
+    /**
+     * Removes all transitions whose prefix was trained less than <code>minCount</code> times, together with the start
+     * prefixes that led to them, and rebuilds the dictionary in compact form. On large corpora most prefixes are seen
+     * only once; they need most of the memory and mostly reproduce their training sentence verbatim anyway.
+     * <p>
+     * A sentence that reaches a removed prefix ends there. The index of the training sentences is kept, so
+     * {@link #generateWithoutDuplicates()} still rejects copies, and its memory is not reduced. Please note that
+     * pruning is not thread-safe, not even for a {@link #createConcurrent(int) concurrent} chain.
+     *
+     * @param minCount the minimum number of times a prefix must have been trained to be kept, at least 1 (one). With 1
+     *                 (one) nothing is removed but the dictionary is still rebuilt
+     * @return how the size of the dictionary and the estimated memory of the chain changed
+     * @throws IllegalStateException if this chain was already {@link #compile() compiled} or is
+     *                               {@link #isReadOnly() read-only}
+     */
+    public CompactionReport prune(int minCount) {
+        requireTrainable("prune");
+        if (minCount < 1) {
+            throw new IllegalArgumentException("Minimum count must not be smaller than 1. Given: " + minCount);
+        }
+
+        ModelSize before = ModelSize.of(transitionRepo, originalityIndex);
+        transitionRepo = transitionRepo.pruned(minCount);
+        vocabulary = transitionRepo.getVocabulary();
+        return new CompactionReport(minCount, before, ModelSize.of(transitionRepo, originalityIndex));
+    }
+
+    /**
+     * {@link #prune(int) Prunes} the least frequent prefixes until the estimated memory of the chain fits into the
+     * given budget. The budget covers the dictionary and the index of the training sentences, which is not pruned and
+     * so counts with its whole size. The smallest minimum count whose estimate meets the budget is chosen. The
+     * estimate assumes that only the transitions shrink, so the pruned chain usually ends up a little below the
+     * budget. A chain that fits already is only rebuilt.
+     * <p>
+     * The memory is estimated, see {@link CompactionReport}. Like {@link #prune(int)} this is not thread-safe.
+     *
+     * @param maxBytes the estimated memory that the dictionary and the index may use afterwards
+     * @return how the size of the dictionary and the estimated memory of the chain changed
+     * @throws IllegalArgumentException if even a chain without any transitions would exceed the budget
+     * @throws IllegalStateException    if this chain was already {@link #compile() compiled} or is
+     *                                  {@link #isReadOnly() read-only}
+     */
+    public CompactionReport compactToBudget(long maxBytes) {
+        requireTrainable("compact");
+        int minCount = ModelSize.minCountForBudget(transitionRepo, originalityIndex, maxBytes);
+        if (minCount < 0) {
+            throw new IllegalArgumentException("Cannot compact chain to " + maxBytes
+                    + " bytes. The start prefixes, the vocabulary and the index of the training sentences alone need"
+                    + " more.");
+        }
+        return prune(minCount);
     }
 
-    Sentence generateSentence() {
-        Prefix prefix = transitionRepo.getFirstPrefixToken();
-        Sentence sentence = new Sentence(WORD_DELIMITER);
+    /**
+     * returns true if this chain was compiled and can no longer be trained.
+     *
+     * @return true if this chain was compiled and can no longer be trained
+     */
+    public boolean isCompiled() {
+        return compiledModel != null;
+    }
+
+    /**
+     * returns true if this chain is a version that was published by a {@link SnapshotChain}. A read-only chain can
+     * be shared by any number of threads for generating, but it cannot be trained, compiled or changed otherwise.
+     *
+     * @return true if this chain is a published snapshot
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * returns a read-only chain with the dictionary of this chain and the sentences the given chain was trained with,
+     * as if they had been trained here after all sentences of this chain. Neither chain is changed, so other threads
+     * may keep generating from this chain meanwhile. If this chain is read-only too, the new chain usually keeps only
+     * what changed in a layer over the shared model and index of this chain, see {@link OriginalityIndex#union}
+     * and {@link TransitionRepository#mergedWith(TransitionRepository)}.
+     * So this takes time proportional to the given chain and the changes since the last compaction. Only a compaction
+     * copies the whole model, once changes of an eighth of its size were merged.
+     * <p>
+     * If generating on this chain had analyses or would have needed them, the new chain is analysed once its model
+     * was compacted. This compiles the whole new model, but it is done by the publishing thread, so readers never wait
+     * for it. Readers of a chain without analyses generate without steering instead.
+     *
+     * @param delta an uncompiled chain with the same window size
+     * @return a new read-only chain
+     */
+    TweetkovChain withTrainingOf(TweetkovChain delta) {
+        if (isCompiled() || delta.isCompiled()) {
+            throw new IllegalStateException("Cannot merge compiled chains.");
+        }
+        if (delta.windowSize != windowSize) {
+            throw new IllegalArgumentException("Cannot merge chain with window size " + delta.windowSize
+                    + " into chain with window size " + windowSize);
+        }
+
+        TweetkovChain result = new TweetkovChain(windowSize, transitionRepo.mergedWith(delta.transitionRepo),
+                originalityIndex.union(delta.originalityIndex));
+        result.readOnly = true;
+        if (analysis != null || analysisWanted) {
+            if (result.transitionRepo.getBase() == result.transitionRepo) {
+                result.analysis = ModelAnalysis.analyse(CompiledModel.compile(result.transitionRepo),
+                        result.originalityIndex.getSpanLength());
+            } else {
+                // compiling a layered version would copy the whole model, so the next compacted version is analysed
+                result.analysisWanted = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * returns true if this chain was {@link #createConcurrent(int) created} to be trained by several threads at once.
+     *
+     * @return true if several threads can train this chain at once
+     */
+    public boolean isConcurrent() {
+        return !isCompiled() && transitionRepo.isConcurrent();
+    }
+
+    /**
+     * Writes the trained dictionary and the window size to the given file in a compact binary format. Compiled chains
+     * can be saved, too.
+     *
+     * @param path the file to write. An existing file is overwritten.
+     * @throws IOException if the file cannot be written
+     * @see #load(Path)
+     */
+    public void save(Path path) throws IOException {
+        if (isCompiled()) {
+            ModelFile.write(path, windowSize, compiledModel, originalityIndex);
+        } else {
+            ModelFile.write(path, windowSize, transitionRepo, originalityIndex);
+        }
+    }
+
+    /**
+     * Reads a chain that was written by {@link #save(Path)}. This is much faster than training the chain again because
+     * no sentence needs to be tokenized. The loaded chain is not compiled, so it can be trained further, and it
+     * generates the same sentences as the saved chain for the same random source.
+     *
+     * @param path the file to read
+     * @return the loaded chain
+     * @throws IOException if the file cannot be read or is not a valid model file
+     */
+    public static TweetkovChain load(Path path) throws IOException {
+        ModelFile modelFile = ModelFile.read(path);
+        return new TweetkovChain(modelFile.getWindowSize(), modelFile.getRepository(), modelFile.getOriginalityIndex());
+    }
+
+    /**
+     * Writes this chain in its compiled form to the given file, so it can be {@link #map(Path) mapped} later. A chain
+     * that was not compiled yet is compiled for writing only and stays trainable.
+     *
+     * @param path the file to write. An existing file is overwritten.
+     * @throws IOException if the file cannot be written
+     */
+    public void saveCompiled(Path path) throws IOException {
+        CompiledModel model = isCompiled() ? compiledModel : CompiledModel.compile(transitionRepo);
+        MappedModelFile.write(path, windowSize, model, originalityIndex);
+    }
+
+    /**
+     * Maps a chain that was written by {@link #saveCompiled(Path)} into memory. Nothing but the header is read, so this
+     * takes nearly constant time. Generating reads the transitions and tokens straight from the file, and processes
+     * that map the same file share its pages.
+     * <p>
+     * The mapped chain is {@link #isCompiled() compiled} and generates the same sentences as the saved chain for the
+     * same random source. The file must not be changed while it is mapped.
+     *
+     * @param path the file to map
+     * @return the mapped chain
+     * @throws IOException if the file cannot be read or is not a compiled model file
+     */
+    public static TweetkovChain map(Path path) throws IOException {
+        MappedModelFile modelFile = MappedModelFile.map(path);
+        return new TweetkovChain(modelFile.getWindowSize(), modelFile.getModel(), modelFile.getOriginalityIndex());
+    }
+
+    Sentence generateSentence(RandomGenerator random) {
+        Sentence sentence = new Sentence(vocabulary, WORD_DELIMITER);
+        generateSentence(random, sentence);
+        return sentence;
+    }
+
+    /**
+     * generates a sentence into the given sentence, which is cleared first. This allows to reuse one sentence for many
+     * generations.
+     * <p>
+     * If the sentence {@link Sentence#isTrackingOriginality() tracks its originality} and the model was analysed,
+     * generation is steered away from forced paths that can only copy the training sentences, see
+     * {@link ForcedPathAnalysis}.
+     *
+     * @param random   the random source for the start prefix and all suffixes
+     * @param sentence the sentence to fill. It must use the vocabulary of this chain
+     */
+    void generateSentence(RandomGenerator random, Sentence sentence) {
+        generateSentence(random, sentence, GenerationOptions.defaults());
+    }
+
+    /**
+     * generates a sentence like {@link #generateSentence(RandomGenerator, Sentence)} and, if the given options
+     * {@link GenerationOptions#isLimitingWords() limit the number of words} and the model was analysed, steers towards
+     * that number of words in the same pass, see {@link EndDistances}. Without analyses the caller rejects sentences
+     * that do not match.
+     *
+     * @param random   the random source for the start prefix and all suffixes
+     * @param sentence the sentence to fill. It must use the vocabulary of this chain
+     * @param options  the options which limit the number of words
+     */
+    private void generateSentence(RandomGenerator random, Sentence sentence, GenerationOptions options) {
+        ModelAnalysis current = sentence.isTrackingOriginality() || options.isLimitingWords() ? getAnalysis() : null;
+        if (current != null) {
+            ForcedPathAnalysis forcedPaths = sentence.isTrackingOriginality() ? current.getForcedPaths() : null;
+            EndDistances endDistances = options.isLimitingWords() ? current.getEndDistances() : null;
+            current.model.generateSentence(random, MAX_NUMBER_OF_WORDS_PER_SENTENCE, sentence, forcedPaths,
+                    endDistances, options);
+            return;
+        }
+        if (isCompiled()) {
+            compiledModel.generateSentence(random, MAX_NUMBER_OF_WORDS_PER_SENTENCE, sentence);
+            return;
+        }
+
+        sentence.clear();
+        Prefix prefix = transitionRepo.getFirstPrefixToken(random).copy();
 
         for (int i = 0; i < MAX_NUMBER_OF_WORDS_PER_SENTENCE; i++) {
-            String suffix = transitionRepo.getRandomSuffix(prefix);
             Transition transition = transitionRepo.get(prefix);
+            int suffix = transition == null ? Vocabulary.NO_TOKEN : transition.getRandomSuffix(random);
             sentence.addBridge(suffix, transition);
 
-            if (suffix.equals(EMPTY_RESULT)) {
+            if (vocabulary.isEmpty(suffix) || sentence.hasCopiedSpan()) {
                 break;
             }
-            prefix = prefix.shiftWithSuffix(suffix);
+            prefix.shift(suffix);
+            if (i == MAX_NUMBER_OF_WORDS_PER_SENTENCE - 1 && transitionRepo.get(prefix) != null) {
+                sentence.markTruncated();
+            }
         }
-        return sentence;
     }
 
+    /**
+     * Returns a sentence that is generated with the pseudo-random generator of this chain.
+     *
+     * @return a sentence
+     * @see #generate(RandomGenerator)
+     */
     public String generate() {
-        return generateSentence().create();
+        return generate(random);
     }
 
     /**
-     * Returns a sentence that is less likely to be a duplicate (although there is a chance).
+     * Returns a sentence that is generated with the given random source. The chain keeps no random state of its own
+     * for this call, so any number of threads can generate at the same time without contention as long as each thread
+     * uses its own random source, f. i. a {@link java.util.SplittableRandom} split from a common seed. This holds for
+     * every chain that is not trained meanwhile; only a {@link #createConcurrent(int) concurrent} chain may be trained
+     * while other threads generate. The same sequence of random values always leads to the same sentence.
+     *
+     * @param random the random source for the start prefix and all suffixes. It must not be <code>null</code>
+     * @return a sentence
+     */
+    public String generate(RandomGenerator random) {
+        requireRandom(random);
+        MetricsListener listener = metricsListener;
+        if (listener == null) {
+            return generateSentence(random).create();
+        }
+
+        long start = System.nanoTime();
+        Sentence sentence = generateSentence(random);
+        String result = sentence.create();
+        listener.onGeneration(System.nanoTime() - start, 1, sentence.isTruncated() ? 1 : 0, true, false);
+        return result;
+    }
+
+    /**
+     * Returns a sentence that does not copy a training sentence or a long span of one.
      * <p>
      * This method may return an empty string (f. i. for low quality training data) when there have been
      * attempted {@link #DUPLICATE_TIMEOUT} retries without success.
      *
-     * @return a sentence that is less likely to be a duplicate
+     * @return a sentence that does not copy the training data
+     * @see #generateWithoutDuplicates(RandomGenerator)
      */
     public String generateWithoutDuplicates() {
-        Sentence sentence = generateSentence();
+        return generateWithoutDuplicates(random);
+    }
 
-        int retryCounter = 0;
-        while (sentence.isDuplicate() && retryCounter < DUPLICATE_TIMEOUT) {
-            sentence = generateSentence();
-            retryCounter++;
+    /**
+     * Returns a sentence that does not copy a training sentence or a long span of one, using the given random source
+     * like {@link #generate(RandomGenerator)}.
+     * <p>
+     * Every sentence is checked against an index of the training sentences while it is generated. An attempt stops as
+     * soon as it copies a span of <code>window size + 3</code> tokens, so a failed attempt
+     * costs only a few tokens. A sentence that is shorter than that is rejected if it equals the end of a training
+     * sentence.
+     * <p>
+     * This method may return an empty string (f. i. for low quality training data) when there have been
+     * attempted {@link #DUPLICATE_TIMEOUT} retries without success.
+     *
+     * @param random the random source for all attempts. It must not be <code>null</code>
+     * @return a sentence that does not copy the training data
+     */
+    public String generateWithoutDuplicates(RandomGenerator random) {
+        String sentence = generateMatching(requireRandom(random), GenerationOptions.defaults().withoutDuplicates());
+        if (sentence == null) {
+            LOG.warning("Could not generate sentence without duplicate. Returning empty string.");
+            return "";
         }
+        return sentence;
+    }
 
-        if (retryCounter == DUPLICATE_TIMEOUT) {
-            LOG.warning("Could not generate sentence without duplicate. Returning empty string.");
+    /**
+     * Returns a sentence with a number of words between the given limits, including the words of the start prefix.
+     * <p>
+     * On a {@link #compile() compiled} chain the sentence is generated in a single pass: when compiling, the minimum
+     * and maximum distance to a sentence end is computed once for every prefix, and only suffixes that can still end
+     * the sentence within the limits are drawn. Since these distances are bounds, an attempt may still miss the limits
+     * and is repeated then. A chain that can still be trained generates sentences without steering and repeats every
+     * attempt that misses the limits.
+     * <p>
+     * This method may return an empty string when there have been attempted {@link #DUPLICATE_TIMEOUT} retries
+     * without success, f. i. if the training sentences are all much shorter than the minimum.
+     *
+     * @param minWords the minimum number of words, at least 1 (one)
+     * @param maxWords the maximum number of words, not smaller than the minimum
+     * @return a sentence with a number of words between the given limits
+     * @see GenerationOptions#withMaxWords(int)
+     */
+    public String generate(int minWords, int maxWords) {
+        GenerationOptions options = GenerationOptions.defaults().withMaxWords(maxWords).withMinWords(minWords);
+        String sentence = generateMatching(random, options);
+        if (sentence == null) {
+            LOG.warning("Could not generate sentence with " + minWords + " to " + maxWords
+                    + " words. Returning empty string.");
             return "";
         }
+        return sentence;
+    }
+
+    /**
+     * Returns the given number of sentences like {@link #generate()}.
+     *
+     * @param count the number of sentences. It must not be negative; otherwise an exception is thrown
+     * @return a list of <code>count</code> sentences
+     * @see #generate(int, GenerationOptions)
+     */
+    public List<String> generate(int count) {
+        return generate(count, GenerationOptions.defaults());
+    }
+
+    /**
+     * Returns the given number of sentences that match the given options. The sentences are generated in parallel on
+     * all cores, each with its own random source split from a source seeded by the pseudo-random generator of this
+     * chain. So for the same seed the same list is returned, no matter how many cores there are.
+     * <p>
+     * Like {@link #generateWithoutDuplicates()} an entry may be an empty string when there have been attempted
+     * {@link #DUPLICATE_TIMEOUT} retries without finding a sentence that matches the options.
+     *
+     * @param count   the number of sentences. It must not be negative; otherwise an exception is thrown
+     * @param options the options that each sentence must match. It must not be <code>null</code>
+     * @return a list of <code>count</code> sentences in a reproducible order
+     */
+    public List<String> generate(int count, GenerationOptions options) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot generate sentences. Count must not be negative but was " + count);
+        }
+        requireOptions(options);
+
+        return splitRandoms()
+                .limit(count)
+                .parallel()
+                .map(source -> generateMatching(source, options))
+                .map(sentence -> sentence == null ? "" : sentence)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Writes the given number of sentences that match the given options to the given output, one sentence per line.
+     * The lines are the same as the entries of {@link #generate(int, GenerationOptions)} for the same seed, but the
+     * sentences are generated one after another into a single reused sentence and written without building a string
+     * for each of them. So memory does not grow with the number of sentences.
+     * <pre>
+     * try (Writer out = Files.newBufferedWriter(path)) {
+     *     chain.generate(1_000_000, GenerationOptions.defaults(), out);
+     * }
+     * </pre>
+     * Like in {@link #generate(int, GenerationOptions)} a line is empty when there have been attempted
+     * {@link #DUPLICATE_TIMEOUT} retries without finding a sentence that matches the options.
+     *
+     * @param count   the number of sentences. It must not be negative; otherwise an exception is thrown
+     * @param options the options that each sentence must match. It must not be <code>null</code>
+     * @param out     the output to write to, f. i. a {@link java.io.Writer}. It is neither flushed nor closed
+     * @throws IOException if the output cannot be written
+     */
+    public void generate(int count, GenerationOptions options, Appendable out) throws IOException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot generate sentences. Count must not be negative but was " + count);
+        }
+        requireOptions(options);
+        if (out == null) {
+            throw new IllegalArgumentException("Cannot generate sentences. Output must not be null");
+        }
+
+        Iterator<SplittableRandom> randoms = splitRandoms().iterator();
+        Sentence sentence = newSentence(options);
+        for (long index = 0; index < count; index++) {
+            if (generateMatching(randoms.next(), options, sentence)) {
+                sentence.appendTo(out);
+            }
+            out.append(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * Returns an endless stream of sentences like {@link #generate()}.
+     *
+     * @return an endless stream of sentences
+     * @see #sentences(GenerationOptions)
+     */
+    public Stream<String> sentences() {
+        return sentences(GenerationOptions.defaults());
+    }
+
+    /**
+     * Returns an endless stream of sentences that match the given options. The stream is sequential but can be turned
+     * into a parallel stream: every sentence is generated with its own random stream derived from the pseudo-random
+     * generator of this chain, so threads do not share any random state and the ordered stream is the same for the
+     * same seed.
+     * <pre>
+     * chain.sentences(GenerationOptions.defaults().withMinWords(5))
+     *         .parallel()
+     *         .limit(1_000_000)
+     *         .forEach(System.out::println);
+     * </pre>
+     * Sentences that do not match the options after {@link #DUPLICATE_TIMEOUT} attempts are left out. Please note that
+     * a limited stream does not end if the chain never generates a sentence that matches the options.
+     *
+     * @param options the options that each sentence must match. It must not be <code>null</code>
+     * @return an endless stream of sentences
+     */
+    public Stream<String> sentences(GenerationOptions options) {
+        requireOptions(options);
+
+        return splitRandoms()
+                .map(source -> generateMatching(source, options))
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * returns an endless, ordered stream of random sources that are split one after another from a single source
+     * seeded by the pseudo-random generator of this chain. Split sources do not overlap like sources with adjacent
+     * seeds may. The sources are split in order even if the stream is parallel, so the n-th source is the same for the
+     * same seed.
+     */
+    private Stream<SplittableRandom> splitRandoms() {
+        SplittableRandom root = new SplittableRandom(random.nextLong());
+        return Stream.iterate(root.split(), previous -> root.split());
+    }
+
+    /**
+     * returns a sentence that matches the given options or <code>null</code> if there have been attempted
+     * {@link #DUPLICATE_TIMEOUT} retries without success.
+     */
+    private String generateMatching(RandomGenerator random, GenerationOptions options) {
+        Sentence sentence = newSentence(options);
+        return generateMatching(random, options, sentence) ? sentence.create() : null;
+    }
+
+    /**
+     * returns an empty sentence that tracks its originality if the given options avoid duplicates.
+     */
+    private Sentence newSentence(GenerationOptions options) {
+        Sentence sentence = new Sentence(vocabulary, WORD_DELIMITER);
+        if (options.isAvoidingDuplicates()) {
+            sentence.trackOriginality(originalityIndex);
+        }
+        return sentence;
+    }
+
+    /**
+     * generates sentences into the given sentence until one matches the given options.
+     *
+     * @return false if there have been attempted {@link #DUPLICATE_TIMEOUT} retries without success
+     */
+    private boolean generateMatching(RandomGenerator random, GenerationOptions options, Sentence sentence) {
+        MetricsListener listener = metricsListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        int truncations = 0;
+        for (int attempt = 0; attempt < DUPLICATE_TIMEOUT; attempt++) {
+            generateSentence(random, sentence, options);
+            if (sentence.isTruncated()) {
+                truncations++;
+            }
+            if (options.accepts(sentence)) {
+                if (listener != null) {
+                    listener.onGeneration(System.nanoTime() - start, attempt + 1, truncations, true,
+                            options.isAvoidingDuplicates());
+                }
+                return true;
+            }
+        }
+        if (listener != null) {
+            listener.onGeneration(System.nanoTime() - start, DUPLICATE_TIMEOUT, truncations, false,
+                    options.isAvoidingDuplicates());
+        }
+        return false;
+    }
 
-        return sentence.create();
+    private static void requireOptions(GenerationOptions options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Cannot generate sentences. Options must not be null");
+        }
     }
 
+    private static RandomGenerator requireRandom(RandomGenerator random) {
+        if (random == null) {
+            throw new IllegalArgumentException("Cannot generate sentence. Random source must not be null");
+        }
+        return random;
+    }
+
+    /**
+     * returns the index of the training sentences
+     *
+     * @return the index of the training sentences
+     */
+    OriginalityIndex getOriginalityIndex() {
+        return originalityIndex;
+    }
+
+    /**
+     * returns true if generating on this chain is steered by analyses of the current model.
+     *
+     * @return true if the current model was analysed
+     */
+    boolean isAnalysed() {
+        return analysis != null;
+    }
+
+    /**
+     * returns the analyses of the current model without ever creating them. A read-only chain remembers that they
+     * were missing, so the next compacted version is analysed.
+     *
+     * @return the analyses or <code>null</code> if the model was not analysed
+     */
+    private ModelAnalysis getAnalysis() {
+        ModelAnalysis result = analysis;
+        if (result == null && readOnly) {
+            analysisWanted = true;
+        }
+        return result;
+    }
+
+    /**
+     * Sets the listener which receives the measurements of training and generation, f. i. {@link ChainMetrics}. Without
+     * a listener nothing is measured, not even the time.
+     *
+     * @param listener the listener or <code>null</code> to stop measuring
+     * @see ChainMetrics#attachTo(TweetkovChain)
+     */
+    public void setMetricsListener(MetricsListener listener) {
+        this.metricsListener = listener;
+    }
+
+    /**
+     * returns the listener which receives the measurements of this chain.
+     *
+     * @return the listener or <code>null</code> if nothing is measured
+     */
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * counts the entries of the current model. This visits every transition, so it should not be called for every
+     * sentence.
+     *
+     * @return the size of the dictionary or of the compiled model, estimated together with the index of the training
+     * sentences
+     */
+    ModelSize getModelSize() {
+        return isCompiled() ? ModelSize.of(compiledModel, originalityIndex)
+                : ModelSize.of(transitionRepo, originalityIndex);
+    }
+
+    /**
+     * returns the mutable dictionary
+     *
+     * @return the mutable dictionary or <code>null</code> if this chain was compiled
+     */
     TransitionRepository getTransitions() {
         return transitionRepo;
     }
@@ -222,7 +1017,6 @@ public class TweetkovChain {
      */
     void initializeRandom(long seed) {
         random.setSeed(seed);
-        transitionRepo.initializeRandomSeed(seed);
     }
 
     /**
@@ -231,14 +1025,79 @@ public class TweetkovChain {
      * when window size is increased, and vice versa.
      * <p>
      * Hint: For a small base of sentences (less than 10000) a window size of 1 is a good choice.
+     * <p>
+     * The length of the spans that {@link #generateWithoutDuplicates()} rejects is derived from the window size until
+     * the first sentence is trained.
      *
      * @param windowSize the window size be at least 1 (one); otherwise an exception is thrown
+     * @throws IllegalStateException if this chain is {@link #isReadOnly() read-only}
      * @see #DEFAULT_WINDOW_SIZE
      */
     public void setWindowSize(int windowSize) {
+        requireWritable("change the window size of");
         if (windowSize < 1) {
             throw new IllegalArgumentException("Window size must not be smaller than 1. Given: " + windowSize);
         }
         this.windowSize = windowSize;
+        if (!isCompiled() && (originalityIndex == null || originalityIndex.size() == 0)) {
+            originalityIndex = OriginalityIndex.forWindowSize(windowSize, transitionRepo.isConcurrent());
+        }
+    }
+
+    /**
+     * The result of training a shard in parallel.
+     */
+    private static final class PartialTraining {
+        private final TransitionRepository repository;
+        private final OriginalityIndex originalityIndex;
+        private final long tokenCount;
+
+        private PartialTraining(TransitionRepository repository, OriginalityIndex originalityIndex, long tokenCount) {
+            this.repository = repository;
+            this.originalityIndex = originalityIndex;
+            this.tokenCount = tokenCount;
+        }
+    }
+
+    /**
+     * A compiled model together with the analyses that steer generation on it, so all analyses always refer to the
+     * states of the same model. {@link #analyse(CompiledModel, int)} creates all analyses at once. A mapped model is
+     * analysed on first use instead, because mapping must not read the whole file; it never changes afterwards.
+     */
+    private static final class ModelAnalysis {
+        private final CompiledModel model;
+        private final int spanLength;
+        private volatile ForcedPathAnalysis forcedPaths;
+        private volatile EndDistances endDistances;
+
+        private ModelAnalysis(CompiledModel model, int spanLength) {
+            this.model = model;
+            this.spanLength = spanLength;
+        }
+
+        private static ModelAnalysis analyse(CompiledModel model, int spanLength) {
+            ModelAnalysis result = new ModelAnalysis(model, spanLength);
+            result.getForcedPaths();
+            result.getEndDistances();
+            return result;
+        }
+
+        private ForcedPathAnalysis getForcedPaths() {
+            ForcedPathAnalysis result = forcedPaths;
+            if (result == null) {
+                result = ForcedPathAnalysis.analyse(model, spanLength);
+                forcedPaths = result;
+            }
+            return result;
+        }
+
+        private EndDistances getEndDistances() {
+            EndDistances result = endDistances;
+            if (result == null) {
+                result = EndDistances.compute(model, MAX_NUMBER_OF_WORDS_PER_SENTENCE);
+                endDistances = result;
+            }
+            return result;
+        }
     }
 }
@@ -0,0 +1,135 @@
+package de.philipppixel.tweetkov.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class maps each distinct token to an <code>int</code> id. A token is stored only once no matter how often it
+ * appears in the training data, so prefixes, transitions and sentences can work on plain ids and decode them to
+ * strings only when the output is rendered.
+ * <p>
+ * Each token also knows the id of its lower case form. Prefixes use these folded ids to compare tokens
+ * case-insensitively without creating lower case strings.
+ * <p>
+ * This class is thread-safe. Looking up known tokens and decoding ids never blocks, only adding new tokens is
+ * synchronized.
+ */
+class Vocabulary {
+    /**
+     * Marks the absence of a token, f. i. when a prefix has no suffix.
+     */
+    static final int NO_TOKEN = -1;
+
+    private final Map<String, Integer> tokenToId = new ConcurrentHashMap<>();
+    private final AppendOnlyList<Entry> entries = new AppendOnlyList<>();
+
+    /**
+     * returns the id of the given token. Unknown tokens are added to the vocabulary.
+     *
+     * @param token any string, including the empty string. An exception is thrown if <code>null</code>.
+     * @return the id of the given token
+     */
+    int encode(String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("Cannot encode token. Token must not be null");
+        }
+
+        Integer id = tokenToId.get(token);
+        if (id != null) {
+            return id;
+        }
+        return add(token);
+    }
+
+    /**
+     * adds the token and, if necessary, its lower case form. The ids are published in the map only after their
+     * entries were appended, so every id a reader can get is decodable.
+     */
+    private synchronized int add(String token) {
+        Integer existingId = tokenToId.get(token);
+        if (existingId != null) {
+            return existingId;
+        }
+
+        int id = entries.size();
+        String folded = token.toLowerCase();
+        if (folded.equals(token)) {
+            entries.append(new Entry(token, id));
+        } else {
+            Integer foldedId = tokenToId.get(folded);
+            if (foldedId == null) {
+                entries.append(new Entry(token, id + 1));
+                entries.append(new Entry(folded, id + 1));
+                tokenToId.put(folded, id + 1);
+            } else {
+                entries.append(new Entry(token, foldedId));
+            }
+        }
+        tokenToId.put(token, id);
+        return id;
+    }
+
+    /**
+     * returns the token for the given id.
+     *
+     * @param id an id that was returned by {@link #encode(String)}
+     * @return the token for the given id
+     */
+    String decode(int id) {
+        return getEntry(id).token;
+    }
+
+    /**
+     * returns the id of the lower case form of the given token. Two tokens are equal when ignoring the case if their
+     * folded ids are equal.
+     *
+     * @param id an id that was returned by {@link #encode(String)}
+     * @return the id of the lower case form of the given token
+     */
+    int foldedId(int id) {
+        return getEntry(id).foldedId;
+    }
+
+    /**
+     * returns the hash code of the lower case form of the given token. Unlike the folded id it does not depend on the
+     * order in which tokens were added, so it is the same in every vocabulary.
+     *
+     * @param id an id that was returned by {@link #encode(String)}
+     * @return the hash code of the lower case form of the given token
+     */
+    int foldedHash(int id) {
+        return decode(foldedId(id)).hashCode();
+    }
+
+    /**
+     * returns true if the given id does not lead to any further text, either because there is no token or because the
+     * token is the empty string.
+     *
+     * @param id an id or {@link #NO_TOKEN}
+     * @return true if the given id does not lead to any further text
+     */
+    boolean isEmpty(int id) {
+        return id == NO_TOKEN || decode(id).isEmpty();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private Entry getEntry(int id) {
+        if (id < 0 || id >= entries.size()) {
+            throw new IllegalArgumentException("Unknown token id " + id + ". Vocabulary size: " + entries.size());
+        }
+        return entries.get(id);
+    }
+
+    private static final class Entry {
+        private final String token;
+        private final int foldedId;
+
+        private Entry(String token, int foldedId) {
+            this.token = token;
+            this.foldedId = foldedId;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package de.philipppixel.tweetkov.core;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * This class counts how often each slot was seen and picks slots randomly by their count.
+ * <p>
+ * Picking a slot draws a single <code>random.nextInt(total)</code> and maps it onto the slots in the order they were
+ * created, as if the occurrences had been stored in a list grouped by slot. The mapping uses a guide table (also known
+ * as cutpoint method) so it takes constant time on average. The guide table is rebuilt lazily after counts changed.
+ * <p>This class is not thread-safe while it is changed. A table that is no longer changed may be sampled by several
+ * threads at once: the guide table is filled completely before it is published through a volatile field, so threads
+ * that build it at the same time only duplicate work. {@link #prepareGuide()} builds it ahead of the first pick.</p>
+ */
+class WeightedTable {
+    private static final int INITIAL_CAPACITY = 2;
+
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size;
+    private int total;
+    /**
+     * the guide table for the current counts, <code>null</code> after the counts changed
+     */
+    private volatile Guide guide;
+
+    WeightedTable() {
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param tableToCopy the table to be copied
+     */
+    WeightedTable(WeightedTable tableToCopy) {
+        this.counts = Arrays.copyOf(tableToCopy.counts, Math.max(tableToCopy.size, INITIAL_CAPACITY));
+        this.size = tableToCopy.size;
+        this.total = tableToCopy.total;
+    }
+
+    /**
+     * increases the count of the given slot by one.
+     *
+     * @param slot an existing slot or {@link #size()} in order to create a new slot
+     */
+    void increment(int slot) {
+        add(slot, 1);
+    }
+
+    /**
+     * increases the count of the given slot by the given amount.
+     *
+     * @param slot  an existing slot or {@link #size()} in order to create a new slot
+     * @param count the positive amount to add
+     */
+    void add(int slot, int count) {
+        if (slot < 0 || slot > size) {
+            throw new IllegalArgumentException("Cannot count slot " + slot + ". Number of slots: " + size);
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive. Given: " + count);
+        }
+
+        if (slot == size) {
+            if (size == counts.length) {
+                counts = Arrays.copyOf(counts, counts.length * 2);
+            }
+            size++;
+        }
+        counts[slot] += count;
+        total += count;
+        guide = null;
+    }
+
+    /**
+     * returns the number of slots
+     *
+     * @return the number of slots
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * returns the sum of all counts
+     *
+     * @return the sum of all counts
+     */
+    int getTotal() {
+        return total;
+    }
+
+    int getCount(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * returns the sum of the counts of all slots up to and including the given slot.
+     *
+     * @param slot a value between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return the sum of the counts up to and including the given slot
+     */
+    int getCumulativeCount(int slot) {
+        return currentGuide().cumulativeCounts[slot];
+    }
+
+    /**
+     * returns a random slot. The probability of each slot is its count divided by the total.
+     *
+     * @param random the random source. Exactly one <code>nextInt(total)</code> is drawn.
+     * @return a random slot or -1 if there are no slots
+     */
+    int sample(RandomGenerator random) {
+        if (total == 0) {
+            return -1;
+        }
+        return slotOf(random.nextInt(total));
+    }
+
+    /**
+     * returns the slot of the given occurrence, as if the occurrences were stored in a list grouped by slot.
+     *
+     * @param occurrence a value between 0 (inclusive) and {@link #getTotal()} (exclusive)
+     * @return the slot of the given occurrence
+     */
+    int slotOf(int occurrence) {
+        Guide current = currentGuide();
+        return lookup(current.cumulativeCounts, current.buckets, 0, size, occurrence);
+    }
+
+    /**
+     * builds the guide table now instead of on the next pick.
+     */
+    void prepareGuide() {
+        currentGuide();
+    }
+
+    private Guide currentGuide() {
+        Guide result = guide;
+        if (result == null) {
+            int[] cumulativeCounts = new int[size];
+            int[] buckets = new int[size];
+            buildGuide(counts, cumulativeCounts, buckets, 0, size);
+            result = new Guide(cumulativeCounts, buckets);
+            guide = result;
+        }
+        return result;
+    }
+
+    /**
+     * fills the cumulative counts and the guide table for the slots <code>from</code> (inclusive) to <code>to</code>
+     * (exclusive). Both output arrays use the same indices as the counts, so several tables can be stored in flat
+     * arrays next to each other.
+     *
+     * @param counts           the count of each slot
+     * @param cumulativeCounts receives the sum of the counts from <code>from</code> up to and including each slot
+     * @param guide            receives the first slot of each bucket
+     * @param from             the first slot of the table
+     * @param to               the end of the table (exclusive)
+     */
+    static void buildGuide(int[] counts, int[] cumulativeCounts, int[] guide, int from, int to) {
+        int sum = 0;
+        for (int slot = from; slot < to; slot++) {
+            sum += counts[slot];
+            cumulativeCounts[slot] = sum;
+        }
+
+        int size = to - from;
+        int slot = from;
+        for (int bucket = 0; bucket < size; bucket++) {
+            long bucketStart = (long) bucket * sum / size;
+            while (cumulativeCounts[slot] <= bucketStart) {
+                slot++;
+            }
+            guide[from + bucket] = slot;
+        }
+    }
+
+    /**
+     * returns the slot of the given occurrence in a table built by
+     * {@link #buildGuide(int[], int[], int[], int, int)}.
+     */
+    static int lookup(int[] cumulativeCounts, int[] guide, int from, int to, int occurrence) {
+        int size = to - from;
+        int total = cumulativeCounts[to - 1];
+
+        int slot = guide[from + (int) ((long) occurrence * size / total)];
+        while (cumulativeCounts[slot] <= occurrence) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * returns the slot of the given occurrence like {@link #lookup(int[], int[], int, int, int)} but reads the table
+     * from buffers, f. i. from a memory-mapped file.
+     */
+    static int lookup(IntBuffer cumulativeCounts, IntBuffer guide, int from, int to, int occurrence) {
+        int size = to - from;
+        int total = cumulativeCounts.get(to - 1);
+
+        int slot = guide.get(from + (int) ((long) occurrence * size / total));
+        while (cumulativeCounts.get(slot) <= occurrence) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * The cumulative counts and the first slot of each bucket, see {@link #buildGuide(int[], int[], int[], int, int)}.
+     * Both arrays are filled before a guide is created and never changed afterwards.
+     */
+    private static final class Guide {
+        private final int[] cumulativeCounts;
+        private final int[] buckets;
+
+        private Guide(int[] cumulativeCounts, int[] buckets) {
+            this.cumulativeCounts = cumulativeCounts;
+            this.buckets = buckets;
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package de.philipppixel.tweetkov.util.tweetreader;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.Arrays;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class parses a given Twitter archive and returns the tweets.
@@ -17,8 +29,17 @@ import java.util.stream.Collectors;
  * .withArchive("/path/to/monthly/archive/2018_03.js")
  * .getTweetTexts();
  * </code>
+ * <p>
+ * An archive is a JavaScript assignment of a JSON array, f. i. <code>Grailbird.data.tweets_2018_03 = [...]</code>.
+ * Everything before the array is skipped. The array is read token by token from the UTF-8 bytes of the file, so only
+ * the current tweet text is kept in memory, no matter how large the archive is. The text of a tweet is either the
+ * field <code>text</code> or <code>full_text</code> of an array element, or of the object <code>tweet</code> inside an
+ * array element as in newer archives. All other fields are skipped without being parsed into objects.
  */
 public class TweetArchiveReader {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int ARRAY_START = '[';
+
     private String pathToArchive;
 
     public TweetArchiveReader withArchive(String pathToArchive) {
@@ -26,21 +47,153 @@ public class TweetArchiveReader {
         return this;
     }
 
-    private Tweet[] readArchive() {
-        ObjectMapper mapper = new ObjectMapper();
+    /**
+     * returns a lazy stream of all tweet texts in the order of the archive. The archive is read while the stream is
+     * consumed and closed when the stream is closed or the last text was read.
+     * <pre>
+     * try (Stream&lt;String&gt; texts = reader.withArchive(path).streamTweetTexts()) {
+     *     texts.forEach(...);
+     * }
+     * </pre>
+     *
+     * @return a lazy stream of all tweet texts
+     * @throws UncheckedIOException if the archive cannot be read
+     */
+    public Stream<String> streamTweetTexts() {
+        TweetTextIterator texts = new TweetTextIterator(openArchive());
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(texts, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(texts::close);
+    }
+
+    public List<String> getTweetTexts() {
+        try (Stream<String> texts = streamTweetTexts()) {
+            return texts.collect(Collectors.toList());
+        }
+    }
+
+    private JsonParser openArchive() {
+        InputStream archive = null;
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(pathToArchive));
-            reader.readLine(); // this will read the first line
+            archive = new BufferedInputStream(Files.newInputStream(Paths.get(pathToArchive)));
+            return JSON_FACTORY.createParser(skipToArray(archive));
+        } catch (IOException e) {
+            closeQuietly(archive);
+            throw new UncheckedIOException("Error while reading archive " + pathToArchive, e);
+        }
+    }
 
-            return mapper.readValue(reader, Tweet[].class);
-        } catch (Exception e) {
-            throw new RuntimeException("Error while reading archive", e);
+    /**
+     * skips the JavaScript assignment in front of the JSON array.
+     */
+    private InputStream skipToArray(InputStream archive) throws IOException {
+        int current;
+        do {
+            current = archive.read();
+        } while (current != ARRAY_START && current != -1);
+
+        if (current == -1) {
+            throw new IOException("Archive does not contain a JSON array");
         }
+        PushbackInputStream result = new PushbackInputStream(archive);
+        result.unread(current);
+        return result;
     }
 
-    public List<String> getTweetTexts() {
-        return Arrays.stream(readArchive())
-                .map(tweet -> tweet.text)
-                .collect(Collectors.toList());
+    private static void closeQuietly(InputStream archive) {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.close();
+        } catch (IOException e) {
+            // nothing left to do, the original exception is more important
+        }
+    }
+
+    /**
+     * Iterates the texts of the tweets while parsing. It reads ahead one text at most.
+     */
+    private static final class TweetTextIterator implements Iterator<String> {
+        private final JsonParser parser;
+        private String next;
+        private boolean finished;
+
+        private TweetTextIterator(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !finished) {
+                next = readNextText();
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("There are no more tweets in the archive");
+            }
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        private String readNextText() {
+            try {
+                if (parser.currentToken() == null && parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IOException("Archive does not contain a JSON array");
+                }
+
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token == JsonToken.START_OBJECT) {
+                        String text = readText();
+                        if (text != null) {
+                            return text;
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                close();
+                return null;
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Error while reading archive", e);
+            }
+        }
+
+        /**
+         * reads the current object up to its end and returns its text, or <code>null</code> if it has none.
+         */
+        private String readText() throws IOException {
+            String text = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if (text == null && value == JsonToken.VALUE_STRING
+                        && ("text".equals(field) || "full_text".equals(field))) {
+                    text = parser.getText();
+                } else if (text == null && value == JsonToken.START_OBJECT && "tweet".equals(field)) {
+                    text = readText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return text;
+        }
+
+        private void close() {
+            finished = true;
+            try {
+                parser.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error while closing archive", e);
+            }
+        }
     }
 }
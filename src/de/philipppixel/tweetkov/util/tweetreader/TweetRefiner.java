@@ -1,74 +1,175 @@
 package de.philipppixel.tweetkov.util.tweetreader;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * This class turns raw tweets into sentences for training. Foreign tweets (retweets, replies, links only) are filtered
+ * out. The remaining tweets are scanned once, character by character, which at the same time
+ * <ul>
+ * <li>removes URLs (<code>http://</code> or <code>https://</code> followed by letters, digits and
+ * <code>./#_-+%&amp;</code>),</li>
+ * <li>unescapes the HTML entities <code>&amp;amp;</code>, <code>&amp;gt;</code> and <code>&amp;lt;</code>,</li>
+ * <li>replaces mentions like <code>@someone</code> with <code>@redacted</code>,</li>
+ * <li>collapses consecutive spaces and</li>
+ * <li>splits the tweet into sentences at <code>.</code>, <code>!</code>, <code>?</code> (each with the spaces that
+ * follow), line breaks and <code>/</code> at the end of a line.</li>
+ * </ul>
+ * Sentences are trimmed and empty sentences are left out.
+ */
 public class TweetRefiner {
-    private static final String URL_PATTERN = "https?://[a-zA-Z./0-9#_\\-+%&]+";
+    private static final String REDACTED_MENTION = "@redacted";
 
     public static List<String> process(List<String> tweets) {
-        List<String> filtered = tweets.stream()
+        return process(tweets.stream()).collect(Collectors.toList());
+    }
+
+    /**
+     * turns the given tweets lazily into sentences, in the order of the tweets.
+     *
+     * @param tweets raw tweets
+     * @return the sentences of all own tweets
+     */
+    public static Stream<String> process(Stream<String> tweets) {
+        return tweets
                 .filter(TweetRefiner::filterOwn)
-                .collect(Collectors.toList());
+                .flatMap(tweet -> refine(tweet).stream());
+    }
 
+    private static List<String> refine(String tweet) {
         List<String> sentences = new ArrayList<>();
-        for (String tweet : filtered) {
-            List<String> someSentences = refine(tweet);
-            sentences.addAll(someSentences);
+        StringBuilder sentence = new StringBuilder(tweet.length());
+        int length = tweet.length();
+
+        int i = 0;
+        while (i < length) {
+            char current = tweet.charAt(i);
+            int urlEnd = current == 'h' ? urlEnd(tweet, i) : i;
+
+            if (urlEnd > i) {
+                i = urlEnd;
+            } else if (current == '\n') {
+                addSentence(sentences, sentence);
+                i++;
+            } else if (current == '/' && i + 1 < length && tweet.charAt(i + 1) == '\n') {
+                addSentence(sentences, sentence);
+                i += 2;
+            } else if (current == '.' || current == '!' || current == '?') {
+                addSentence(sentences, sentence);
+                i++;
+                while (i < length && tweet.charAt(i) == ' ') {
+                    i++;
+                }
+            } else if (current == '&') {
+                i = appendEntity(tweet, i, sentence);
+            } else if (current == '@' && i + 1 < length && isMentionChar(tweet.charAt(i + 1))) {
+                sentence.append(REDACTED_MENTION);
+                i++;
+                while (i < length && isMentionChar(tweet.charAt(i))) {
+                    i++;
+                }
+            } else if (current == ' ') {
+                if (sentence.length() == 0 || sentence.charAt(sentence.length() - 1) != ' ') {
+                    sentence.append(' ');
+                }
+                i++;
+            } else {
+                sentence.append(current);
+                i++;
+            }
         }
+        addSentence(sentences, sentence);
         return sentences;
     }
 
-    private static List<String> refine(String tweet) {
-        tweet = replaceUrls(tweet);
-        List<String> myTweetsAsSentences = convertToSentences(tweet);
-        return refineSentences(myTweetsAsSentences);
+    /**
+     * adds the trimmed sentence unless it is empty, and clears the buffer for the next sentence.
+     */
+    private static void addSentence(List<String> sentences, StringBuilder sentence) {
+        int start = 0;
+        int end = sentence.length();
+        while (start < end && sentence.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && sentence.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start < end) {
+            sentences.add(sentence.substring(start, end));
+        }
+        sentence.setLength(0);
     }
 
-    private static String replaceUrls(String tweet) {
-        return tweet.replaceAll(URL_PATTERN, "");
+    /**
+     * appends the entity at the given index, unescaped if it is known, and returns the index after it.
+     */
+    private static int appendEntity(String text, int index, StringBuilder sentence) {
+        if (text.startsWith("&amp;", index)) {
+            sentence.append('&');
+            return index + "&amp;".length();
+        }
+        if (text.startsWith("&gt;", index)) {
+            sentence.append('>');
+            return index + "&gt;".length();
+        }
+        if (text.startsWith("&lt;", index)) {
+            sentence.append('<');
+            return index + "&lt;".length();
+        }
+        sentence.append('&');
+        return index + 1;
     }
 
-    private static List<String> convertToSentences(String fullTweet) {
-        String[] split = fullTweet.split("(\n|/\n|\\. *|! *|\\? *)");
+    /**
+     * returns the index after the URL at the given index, or the given index if there is no URL.
+     */
+    private static int urlEnd(String text, int index) {
+        int i;
+        if (text.startsWith("http://", index)) {
+            i = index + "http://".length();
+        } else if (text.startsWith("https://", index)) {
+            i = index + "https://".length();
+        } else {
+            return index;
+        }
 
-        return new ArrayList<>(Arrays.asList(split));
+        int start = i;
+        while (i < text.length() && isUrlChar(text.charAt(i))) {
+            i++;
+        }
+        return i > start ? i : index;
     }
 
-    private static List<String> refineSentences(List<String> sentences) {
-        ArrayList<String> result = new ArrayList<>();
-        for (String sentence : sentences) {
-            String newSentence = refineSentence(sentence);
-
-            if (newSentence.isEmpty()) {
-                continue;
-            }
-
-            result.add(sentence);
-        }
+    private static boolean isUrlChar(char c) {
+        return isAsciiLetterOrDigit(c) || c == '.' || c == '/' || c == '#' || c == '_' || c == '-' || c == '+'
+                || c == '%' || c == '&';
+    }
 
-        return result;
+    private static boolean isMentionChar(char c) {
+        return isAsciiLetterOrDigit(c) || c == '_';
     }
 
-    private static String refineSentence(String sentence) {
-        sentence = sentence
-                .replaceAll("&amp;", "&")
-                .replaceAll("&gt;", ">")
-                .replaceAll("&lt;", "<")
-                .replaceAll("\\.\\.\\.", "\\u2026")
-                .replaceAll(" +", " ")
-                .replaceAll("@[a-zA-Z0-9_]+]", "@redacted");
-        return sentence.trim();
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
     }
 
     public static boolean filterOwn(String rawTweet) {
+        int start = 0;
+        int end = rawTweet.length();
+        while (start < end && rawTweet.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && rawTweet.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
         return !(
-                rawTweet.trim().isEmpty() ||
+                start == end ||
                         rawTweet.startsWith("RT ") ||
                         rawTweet.startsWith("@") ||
-                        rawTweet.trim().matches(URL_PATTERN)
+                        urlEnd(rawTweet, start) == end
         );
     }
 }
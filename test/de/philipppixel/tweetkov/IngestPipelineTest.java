@@ -0,0 +1,150 @@
+package de.philipppixel.tweetkov;
+
+import de.philipppixel.tweetkov.core.TweetkovChain;
+import de.philipppixel.tweetkov.util.tweetreader.TweetRefiner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IngestPipelineTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void discoverArchivesShouldReturnArchivesWithLatestMonthFirst() throws IOException {
+        Path older = archive("2017_12.js");
+        Path newer = archive("2018_01.js");
+        Files.write(directory.resolve("README.txt"), new byte[0]);
+        Files.createDirectory(directory.resolve("media.js"));
+
+        List<Path> actual = IngestPipeline.discoverArchives(directory);
+
+        assertThat(actual).containsExactly(newer, older);
+    }
+
+    @Test
+    void ingestShouldTrainLikeSequentialTraining() throws IOException {
+        // given
+        Path newer = archive("2018_01.js", "now he is gone. she said he is gone for good", "RT not mine",
+                "now he went insane");
+        Path older = archive("2017_12.js", "now is the thime! he is gone &amp; she is here");
+        TweetkovChain expected = new TweetkovChain();
+        List<String> tweets = new ArrayList<>(Arrays.asList("now he is gone. she said he is gone for good",
+                "RT not mine", "now he went insane", "now is the thime! he is gone &amp; she is here"));
+        expected.train(TweetRefiner.process(tweets));
+        TweetkovChain actual = new TweetkovChain();
+
+        // when
+        long trained = new IngestPipeline(actual)
+                .withRefiners(1)
+                .withBatchSize(2)
+                .withQueueCapacity(1)
+                .ingest(Arrays.asList(newer, older));
+
+        // then
+        assertThat(trained).isEqualTo(5L);
+        assertThat(actual.createHistogram()).isEqualTo(expected.createHistogram());
+    }
+
+    @Test
+    void ingestShouldTrainInReadingOrderWithSeveralRefiners() throws IOException {
+        // given
+        List<String> tweets = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tweets.add((i % 3 == 0 ? "RT skipped " : "now he is ") + (i % 7 == 0 ? "gone" : "here") + " tweet " + i);
+        }
+        Path archive = archive("2018_01.js", tweets.toArray(new String[0]));
+        TweetkovChain expected = new TweetkovChain();
+        expected.train(TweetRefiner.process(tweets));
+        TweetkovChain actual = new TweetkovChain();
+
+        // when
+        new IngestPipeline(actual)
+                .withRefiners(4)
+                .withBatchSize(1)
+                .withQueueCapacity(2)
+                .ingest(Collections.singletonList(archive));
+
+        // then
+        assertThat(actual.createHistogram()).isEqualTo(expected.createHistogram());
+        for (int seed = 0; seed < 20; seed++) {
+            assertThat(actual.generate(new Random(seed))).isEqualTo(expected.generate(new Random(seed)));
+        }
+    }
+
+    @Test
+    void ingestShouldTrainAllSentencesWithParallelStages() throws IOException {
+        // given
+        for (int month = 1; month <= 12; month++) {
+            String[] tweets = new String[50];
+            for (int i = 0; i < tweets.length; i++) {
+                tweets[i] = "tweet " + i + " of month " + month;
+            }
+            archive(String.format("2017_%02d.js", month), tweets);
+        }
+        TweetkovChain chain = TweetkovChain.createConcurrent(2);
+
+        // when
+        long actual = new IngestPipeline(chain)
+                .withReaders(3)
+                .withRefiners(4)
+                .withTrainers(2)
+                .withBatchSize(7)
+                .withQueueCapacity(2)
+                .ingest(directory);
+
+        // then
+        assertThat(actual).isEqualTo(12L * 50);
+        assertThat(chain.createHistogram()).contains("of month: 12");
+    }
+
+    @Test
+    void ingestShouldThrowExceptionForBrokenArchive() throws IOException {
+        archive("2018_01.js", "now he is gone");
+        Files.write(directory.resolve("2018_02.js"), "tweets = [ { \"text\" : ".getBytes(StandardCharsets.UTF_8));
+        IngestPipeline sut = new IngestPipeline(new TweetkovChain()).withQueueCapacity(1).withBatchSize(1);
+
+        assertThrows(IOException.class, () -> sut.ingest(directory));
+    }
+
+    @Test
+    void ingestShouldRejectSeveralTrainersForChainThatIsNotConcurrent() {
+        IngestPipeline sut = new IngestPipeline(new TweetkovChain()).withTrainers(2);
+
+        assertThrows(IllegalStateException.class, () -> sut.ingest(directory));
+    }
+
+    @Test
+    void withMethodsShouldRejectNonPositiveValues() {
+        IngestPipeline sut = new IngestPipeline(new TweetkovChain());
+
+        assertThrows(IllegalArgumentException.class, () -> sut.withReaders(0));
+        assertThrows(IllegalArgumentException.class, () -> sut.withRefiners(0));
+        assertThrows(IllegalArgumentException.class, () -> sut.withTrainers(0));
+        assertThrows(IllegalArgumentException.class, () -> sut.withQueueCapacity(0));
+        assertThrows(IllegalArgumentException.class, () -> sut.withBatchSize(-1));
+    }
+
+    private Path archive(String name, String... tweets) throws IOException {
+        StringBuilder content = new StringBuilder("Grailbird.data.tweets = \n[");
+        for (int i = 0; i < tweets.length; i++) {
+            content.append(i == 0 ? " " : ", ").append("{ \"text\" : \"").append(tweets[i]).append("\" }");
+        }
+        content.append(" ]");
+        Path archive = directory.resolve(name);
+        Files.write(archive, content.toString().getBytes(StandardCharsets.UTF_8));
+        return archive;
+    }
+}
@@ -0,0 +1,92 @@
+package de.philipppixel.tweetkov;
+
+import de.philipppixel.tweetkov.util.tweetreader.TweetArchiveReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TweetArchiveReaderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void getTweetTextsShouldReturnTextsOfMonthlyArchive() throws IOException {
+        Path archive = write("Grailbird.data.tweets_2018_03 = \n"
+                + "[ {\n"
+                + "  \"source\" : \"web\",\n"
+                + "  \"entities\" : { \"user_mentions\" : [ ], \"urls\" : [ { \"url\" : \"https://t.co\" } ] },\n"
+                + "  \"text\" : \"now he is gone\",\n"
+                + "  \"id\" : 1234\n"
+                + "}, {\n"
+                + "  \"text\" : \"she said \\\"he\\\" is gone for good \\u2026\"\n"
+                + "} ]");
+
+        List<String> actual = new TweetArchiveReader().withArchive(archive.toString()).getTweetTexts();
+
+        assertThat(actual).containsExactly("now he is gone", "she said \"he\" is gone for good \u2026");
+    }
+
+    @Test
+    void streamTweetTextsShouldReadNestedTweetsOfNewerArchives() throws IOException {
+        Path archive = write("window.YTD.tweets.part0 = [ {\n"
+                + "  \"tweet\" : { \"retweeted\" : false, \"full_text\" : \"Gr\u00fc\u00dfe aus K\u00f6ln\" }\n"
+                + "}, {\n"
+                + "  \"tweet\" : { \"id\" : \"42\" }\n"
+                + "}, \"no tweet\", {\n"
+                + "  \"tweet\" : { \"full_text\" : \"now he went insane\" }\n"
+                + "} ]");
+
+        List<String> actual;
+        try (Stream<String> texts = new TweetArchiveReader().withArchive(archive.toString()).streamTweetTexts()) {
+            actual = texts.collect(Collectors.toList());
+        }
+
+        assertThat(actual).containsExactly("Gr\u00fc\u00dfe aus K\u00f6ln", "now he went insane");
+    }
+
+    @Test
+    void streamTweetTextsShouldReadLazily() throws IOException {
+        Path archive = write("tweets = [ { \"text\" : \"now he is gone\" }, { \"text\" : \"now he went insane\" }, ");
+
+        try (Stream<String> texts = new TweetArchiveReader().withArchive(archive.toString()).streamTweetTexts()) {
+            Iterator<String> iterator = texts.iterator();
+
+            assertThat(iterator.next()).isEqualTo("now he is gone");
+            assertThat(iterator.next()).isEqualTo("now he went insane");
+            assertThrows(UncheckedIOException.class, iterator::hasNext);
+        }
+    }
+
+    @Test
+    void streamTweetTextsShouldThrowExceptionForMissingArchive() {
+        TweetArchiveReader sut = new TweetArchiveReader().withArchive(directory.resolve("missing.js").toString());
+
+        assertThrows(UncheckedIOException.class, sut::streamTweetTexts);
+    }
+
+    @Test
+    void streamTweetTextsShouldThrowExceptionForArchiveWithoutArray() throws IOException {
+        Path archive = write("tweets = {}");
+        TweetArchiveReader sut = new TweetArchiveReader().withArchive(archive.toString());
+
+        assertThrows(UncheckedIOException.class, sut::streamTweetTexts);
+    }
+
+    private Path write(String content) throws IOException {
+        Path archive = directory.resolve("2018_03.js");
+        Files.write(archive, content.getBytes(StandardCharsets.UTF_8));
+        return archive;
+    }
+}
@@ -7,6 +7,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -51,4 +53,43 @@ class TweetRefinerTest {
         expectedSentences.add("Maybe with help from a sugary high");
         assertThat(actual).isEqualTo(expectedSentences);
     }
-}
\ No newline at end of file
+
+    @Test
+    void filterLinksOnlyWithSurroundingWhitespace() {
+        assertThat(TweetRefiner.filterOwn("  https://t.co/somePicture \n")).isFalse();
+        assertThat(TweetRefiner.filterOwn("look https://t.co/somePicture")).isTrue();
+    }
+
+    @Test
+    void processShouldRemoveUrlsAndSplitSentences() {
+        // when
+        List<String> actual = TweetRefiner.process(Collections.singletonList(
+                "Look at this https://example.com/a.b?c=d! It is great. Really?  Yes"));
+
+        // then
+        assertThat(actual).containsExactly("Look at this", "c=d", "It is great", "Really", "Yes");
+    }
+
+    @Test
+    void processShouldUnescapeEntitiesRedactMentionsAndCollapseSpaces() {
+        // when
+        List<String> actual = TweetRefiner.process(Collections.singletonList(
+                "Me   &amp; @some_one think 3 &gt; 2 &lt;3 &copy; @"));
+
+        // then
+        assertThat(actual).containsExactly("Me & @redacted think 3 > 2 <3 &copy; @");
+    }
+
+    @Test
+    void processStreamShouldFilterAndRefineLazily() {
+        // given
+        Stream<String> tweets = Stream.of("RT not mine", "now he is gone. she said", "@you not mine either",
+                "http://t.co/link", "he is gone   for good");
+
+        // when
+        List<String> actual = TweetRefiner.process(tweets).collect(Collectors.toList());
+
+        // then
+        assertThat(actual).containsExactly("now he is gone", "she said", "he is gone for good");
+    }
+}
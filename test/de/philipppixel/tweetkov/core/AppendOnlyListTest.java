@@ -0,0 +1,79 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AppendOnlyListTest {
+
+    private AppendOnlyList<Integer> sut = new AppendOnlyList<>();
+
+    @Test
+    void appendShouldReturnIndexOfElement() {
+        assertThat(sut.append(10)).isEqualTo(0);
+        assertThat(sut.append(11)).isEqualTo(1);
+        assertThat(sut).containsExactly(10, 11);
+    }
+
+    @Test
+    void appendShouldGrowBeyondSeveralChunks() {
+        for (int i = 0; i < 5000; i++) {
+            sut.add(i);
+        }
+
+        assertThat(sut).hasSize(5000);
+        assertThat(sut.get(4999)).isEqualTo(4999);
+        assertThat(sut.get(1024)).isEqualTo(1024);
+    }
+
+    @Test
+    void getShouldRejectIndicesBeyondSize() {
+        sut.add(1);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> sut.get(1));
+    }
+
+    @Test
+    void readersShouldSeeEveryElementBelowSizeWhileWritersAppend() throws Exception {
+        // given
+        int writers = 4;
+        int elementsPerWriter = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+
+        // when
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < elementsPerWriter; i++) {
+                    sut.append(i);
+                }
+            }));
+        }
+        for (int reader = 0; reader < 2; reader++) {
+            futures.add(executor.submit(() -> {
+                while (sut.size() < writers * elementsPerWriter) {
+                    int size = sut.size();
+                    if (size > 0 && sut.get(size - 1) == null) {
+                        throw new AssertionError("element " + (size - 1) + " not visible");
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // then
+        assertThat(sut).hasSize(writers * elementsPerWriter);
+    }
+}
@@ -0,0 +1,182 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChainMetricsTest {
+    private final TweetkovChain chain = new TweetkovChain(1);
+    private final ChainMetrics sut = ChainMetrics.attachTo(chain);
+
+    @Test
+    void trainShouldReportLinesTokensAndModelSize() {
+        // when
+        chain.train(Arrays.asList("now he is gone", "she said he is gone for good"));
+
+        // then
+        assertThat(sut.getTrainedLines()).isEqualTo(2);
+        assertThat(sut.getTrainedTokens()).isEqualTo(11);
+        assertThat(sut.getTrainingLinesPerSecond()).isGreaterThan(0.0);
+        assertThat(sut.getTrainingTokensPerSecond()).isGreaterThan(sut.getTrainingLinesPerSecond());
+        // now, he, is, gone, she, said and for. Each prefix has a single distinct suffix
+        assertThat(sut.getPrefixCount()).isEqualTo(7);
+        assertThat(sut.getStartPrefixCount()).isEqualTo(2);
+        assertThat(sut.getSuffixEntryCount()).isEqualTo(7);
+        assertThat(sut.getEstimatedModelBytes()).isGreaterThan(0L);
+    }
+
+    @Test
+    void trainInParallelShouldReportTheSameCountsAsTrain() {
+        // given
+        TweetkovChain sequential = new TweetkovChain(1);
+        ChainMetrics expected = ChainMetrics.attachTo(sequential);
+        sequential.train(Arrays.asList("now he is gone", "she said he is gone for good", "he is here"));
+
+        // when
+        chain.trainInParallel(Arrays.asList("now he is gone", "she said he is gone for good", "he is here"), 2);
+
+        // then
+        assertThat(sut.getTrainedLines()).isEqualTo(expected.getTrainedLines());
+        assertThat(sut.getTrainedTokens()).isEqualTo(expected.getTrainedTokens());
+        assertThat(sut.getSuffixEntryCount()).isEqualTo(expected.getSuffixEntryCount());
+    }
+
+    @Test
+    void modelSizeShouldBeTheSameAfterCompiling() {
+        // given
+        chain.train(Arrays.asList("Now he is gone", "now he went insane", "she said he is gone for good"));
+        int prefixes = sut.getPrefixCount();
+        int startPrefixes = sut.getStartPrefixCount();
+        long suffixEntries = sut.getSuffixEntryCount();
+
+        // when
+        chain.compile();
+
+        // then
+        assertThat(sut.getPrefixCount()).isEqualTo(prefixes);
+        assertThat(sut.getStartPrefixCount()).isEqualTo(startPrefixes);
+        assertThat(sut.getSuffixEntryCount()).isEqualTo(suffixEntries);
+    }
+
+    @Test
+    void generateShouldReportOneAttemptPerSentence() {
+        // given
+        chain.train(Arrays.asList("now he is gone", "she said he is gone for good"));
+        Random random = new Random(1);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            chain.generate(random);
+        }
+
+        // then
+        assertThat(sut.getGenerations()).isEqualTo(10);
+        assertThat(sut.getAttempts()).isEqualTo(10);
+        assertThat(Arrays.stream(sut.getGenerationLatencyHistogram()).sum()).isEqualTo(10);
+        assertThat(sut.getGenerationLatencyP99Micros()).isGreaterThanOrEqualTo(sut.getGenerationLatencyP50Micros());
+        assertThat(sut.getTruncations()).isZero();
+        assertThat(sut.getEmptyResults()).isZero();
+        assertThat(Arrays.stream(sut.getDuplicateRetryHistogram()).sum()).isZero();
+    }
+
+    @Test
+    void generateWithoutDuplicatesShouldReportRetriesAndEmptyResults() {
+        // given
+        chain.train(Collections.singletonList("now he is gone"));
+
+        // when
+        String actual = chain.generateWithoutDuplicates(new Random(1));
+
+        // then
+        assertThat(actual).isEmpty();
+        long[] retries = sut.getDuplicateRetryHistogram();
+        assertThat(retries).hasSize(TweetkovChain.DUPLICATE_TIMEOUT);
+        assertThat(retries[TweetkovChain.DUPLICATE_TIMEOUT - 1]).isEqualTo(1);
+        assertThat(sut.getMeanDuplicateRetries()).isEqualTo(TweetkovChain.DUPLICATE_TIMEOUT - 1.0);
+        assertThat(sut.getAttempts()).isEqualTo(TweetkovChain.DUPLICATE_TIMEOUT);
+        assertThat(sut.getEmptyResults()).isEqualTo(1);
+        assertThat(sut.getEmptyResultRate()).isEqualTo(1.0);
+    }
+
+    @Test
+    void generateShouldReportTruncatedSentences() {
+        // given a cycle that never reaches a prefix without transitions
+        chain.train(Collections.singletonList("round and round and round"));
+
+        // when
+        chain.generate(new Random(1));
+        chain.compile().generate(new Random(1));
+
+        // then
+        assertThat(sut.getTruncations()).isEqualTo(2);
+        assertThat(sut.getTruncationRate()).isEqualTo(1.0);
+    }
+
+    @Test
+    void removedListenerShouldNotReceiveMeasurements() {
+        // given
+        chain.train(Collections.singletonList("now he is gone"));
+        chain.setMetricsListener(null);
+
+        // when
+        chain.train(Collections.singletonList("she said he is gone for good"));
+        chain.generate(new Random(1));
+
+        // then
+        assertThat(chain.getMetricsListener()).isNull();
+        assertThat(sut.getTrainedLines()).isEqualTo(1);
+        assertThat(sut.getGenerations()).isZero();
+    }
+
+    @Test
+    void resetShouldClearAllCounts() {
+        // given
+        chain.train(Collections.singletonList("now he is gone"));
+        chain.generateWithoutDuplicates(new Random(1));
+
+        // when
+        sut.reset();
+
+        // then
+        assertThat(sut.getTrainedLines()).isZero();
+        assertThat(sut.getGenerations()).isZero();
+        assertThat(sut.getEmptyResults()).isZero();
+        assertThat(Arrays.stream(sut.getDuplicateRetryHistogram()).sum()).isZero();
+        assertThat(Arrays.stream(sut.getGenerationLatencyHistogram()).sum()).isZero();
+    }
+
+    @Test
+    void registerMBeanShouldExposeMetricsThroughJmx() throws Exception {
+        // given
+        chain.train(Collections.singletonList("now he is gone"));
+        chain.generate(new Random(1));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        // when
+        ObjectName name = sut.registerMBean("ChainMetricsTest");
+
+        // then
+        try {
+            assertThat(name.getDomain()).isEqualTo(ChainMetrics.DOMAIN);
+            assertThat(server.getAttribute(name, "Generations")).isEqualTo(1L);
+            assertThat(server.getAttribute(name, "TrainedLines")).isEqualTo(1L);
+            assertThrows(IllegalStateException.class, () -> sut.registerMBean("ChainMetricsTest"));
+        } finally {
+            sut.unregisterMBean();
+        }
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+
+    @Test
+    void constructorShouldRejectMissingChain() {
+        assertThrows(IllegalArgumentException.class, () -> new ChainMetrics(null));
+    }
+}
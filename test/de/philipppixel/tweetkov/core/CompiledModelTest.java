@@ -0,0 +1,129 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompiledModelTest {
+
+    private TransitionRepository repository = new TransitionRepository();
+
+    @Test
+    void compileShouldCreateOneStatePerTransition() {
+        // given
+        trainSentence("now", "he", "is", "gone", "she", "said", "he", "is", "gone", "for", "good");
+
+        // when
+        CompiledModel sut = CompiledModel.compile(repository);
+
+        // then
+        assertThat(sut.getStateCount()).isEqualTo(repository.getAllTransitions().size());
+    }
+
+    @Test
+    void compileShouldKeepRepositoryOrder() {
+        // given
+        trainSentence("now", "he", "is", "gone", "she", "said", "he", "is", "gone", "for", "good");
+
+        // when
+        CompiledModel sut = CompiledModel.compile(repository);
+
+        // then
+        int state = 0;
+        for (Transition transition : repository.getAllTransitions()) {
+            assertThat(sut.getPrefixString(state)).isEqualTo(transition.getPrefix().toString());
+            assertThat(sut.getUniqueSuffixCount(state)).isEqualTo(transition.getUniqueSuffixCount());
+            state++;
+        }
+    }
+
+    @Test
+    void compileShouldLinkSuffixesToSuccessorStates() {
+        // given
+        trainSentence("now", "he", "is", "gone");
+
+        // when
+        CompiledModel sut = CompiledModel.compile(repository);
+
+        // then
+        int nowHe = stateOf(sut, "now he");
+        int heIs = stateOf(sut, "he is");
+        assertThat(sut.getSuccessor(nowHe, 0)).isEqualTo(heIs);
+        assertThat(sut.getSuccessor(heIs, 0)).isEqualTo(CompiledModel.DEAD_END);
+        assertThat(repository.getVocabulary().decode(sut.getUniqueSuffix(heIs, 0))).isEqualTo("gone");
+    }
+
+    @Test
+    void generateSentenceShouldOnlyFollowTrainedTransitions() {
+        // given
+        trainSentence("now", "he", "is", "gone", "she", "said", "he", "is", "gone", "for", "good");
+        CompiledModel sut = CompiledModel.compile(repository);
+        Random random = new Random(0);
+
+        // when
+        Set<String> actual = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            actual.add(sut.generateSentence(random, 32, " ").create());
+        }
+
+        // then
+        assertThat(actual).contains("now he is gone for good.");
+        for (String sentence : actual) {
+            assertThat(sentence).matches("[a-z]+( [a-z]+)*\\.");
+        }
+    }
+
+    @Test
+    void generateSentenceWithEndDistancesShouldHitWordLimitsInSinglePass() {
+        // given
+        trainSentence("now", "he", "is", "gone", "she", "said", "he", "is", "gone", "for", "good");
+        CompiledModel sut = CompiledModel.compile(repository);
+        EndDistances endDistances = EndDistances.compute(sut, 32);
+        GenerationOptions options = GenerationOptions.defaults().withMinWords(10).withMaxWords(14);
+        Sentence sentence = new Sentence(repository.getVocabulary(), " ");
+        Random random = new Random(0);
+
+        for (int i = 0; i < 50; i++) {
+            // when
+            sut.generateSentence(random, 32, sentence, null, endDistances, options);
+
+            // then
+            assertThat(sentence.getWordCount()).as(sentence.create()).isGreaterThanOrEqualTo(10);
+            assertThat(sentence.getWordCount()).as(sentence.create()).isLessThanOrEqualTo(14);
+        }
+    }
+
+    @Test
+    void generateSentenceShouldThrowExceptionForUntrainedModel() {
+        CompiledModel sut = CompiledModel.compile(repository);
+
+        assertThrows(IllegalStateException.class, () -> sut.generateSentence(new Random(0), 32, " "));
+    }
+
+    private int stateOf(CompiledModel model, String prefix) {
+        for (int state = 0; state < model.getStateCount(); state++) {
+            if (model.getPrefixString(state).equals(prefix)) {
+                return state;
+            }
+        }
+        throw new AssertionError("unknown prefix " + prefix);
+    }
+
+    private void trainSentence(String... tokens) {
+        Vocabulary vocabulary = repository.getVocabulary();
+        Prefix prefix = new Prefix(vocabulary, 2);
+        prefix.appendToken(tokens[0]);
+        prefix.appendToken(tokens[1]);
+        repository.trainAsStartPrefix(prefix, vocabulary.encode(tokens[2]));
+
+        for (int i = 3; i < tokens.length; i++) {
+            prefix = prefix.shiftWithSuffix(tokens[i - 1]);
+            repository.train(prefix, vocabulary.encode(tokens[i]));
+        }
+    }
+}
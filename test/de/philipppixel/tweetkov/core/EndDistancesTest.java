@@ -0,0 +1,106 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EndDistancesTest {
+
+    private TransitionRepository repository = new TransitionRepository();
+
+    @Test
+    void computeShouldFindDistancesToDeadEnd() {
+        // given
+        trainSentence("now", "he", "is", "gone");
+        CompiledModel model = CompiledModel.compile(repository);
+
+        // when
+        EndDistances sut = EndDistances.compute(model, 32);
+
+        // then
+        assertThat(sut.getMinDistance(stateOf(model, "now he"))).isEqualTo(2);
+        assertThat(sut.getMaxDistance(stateOf(model, "now he"))).isEqualTo(2);
+        assertThat(sut.getMinDistance(stateOf(model, "he is"))).isEqualTo(1);
+    }
+
+    @Test
+    void computeShouldFindShortestAndLongestBranch() {
+        // given
+        trainSentence("now", "he", "is", "gone", "for", "good");
+        trainSentence("she", "said", "he", "is", "here");
+        CompiledModel model = CompiledModel.compile(repository);
+
+        // when
+        EndDistances sut = EndDistances.compute(model, 32);
+
+        // then
+        assertThat(sut.getMinDistance(stateOf(model, "she said"))).isEqualTo(3);
+        assertThat(sut.getMaxDistance(stateOf(model, "she said"))).isEqualTo(5);
+        assertThat(sut.getMinDistance(stateOf(model, "he is"))).isEqualTo(1);
+        assertThat(sut.getMaxDistance(stateOf(model, "he is"))).isEqualTo(3);
+    }
+
+    @Test
+    void computeShouldCapCyclesAtMaximumNumberOfSuffixes() {
+        // given
+        trainSentence("a", "b", "a", "b", "a", "b");
+        CompiledModel model = CompiledModel.compile(repository);
+
+        // when
+        EndDistances sut = EndDistances.compute(model, 10);
+
+        // then
+        assertThat(sut.getMinDistance(stateOf(model, "a b"))).isEqualTo(10);
+        assertThat(sut.getMaxDistance(stateOf(model, "a b"))).isEqualTo(10);
+    }
+
+    @Test
+    void canEndWithinShouldCompareRangeOfReachableLengths() {
+        // given
+        trainSentence("now", "he", "is", "gone", "for", "good");
+        trainSentence("she", "said", "he", "is", "here");
+        CompiledModel model = CompiledModel.compile(repository);
+        EndDistances sut = EndDistances.compute(model, 32);
+        int sheSaid = stateOf(model, "she said");
+
+        // then
+        assertThat(sut.canEndWithin(sheSaid, 2, 32, 5, 5)).isTrue();
+        assertThat(sut.canEndWithin(sheSaid, 2, 32, 7, 9)).isTrue();
+        assertThat(sut.canEndWithin(sheSaid, 2, 32, 8, 9)).isFalse();
+        assertThat(sut.canEndWithin(sheSaid, 2, 32, 1, 4)).isFalse();
+        assertThat(sut.canEndWithin(sheSaid, 2, 1, 3, 3)).isTrue();
+        assertThat(sut.canEndWithin(CompiledModel.DEAD_END, 4, 32, 3, 4)).isTrue();
+        assertThat(sut.canEndWithin(CompiledModel.DEAD_END, 4, 32, 5, 6)).isFalse();
+    }
+
+    @Test
+    void computeShouldThrowExceptionForInvalidMaximum() {
+        CompiledModel model = CompiledModel.compile(repository);
+
+        assertThrows(IllegalArgumentException.class, () -> EndDistances.compute(model, 0));
+        assertThrows(IllegalArgumentException.class, () -> EndDistances.compute(model, 128));
+    }
+
+    private int stateOf(CompiledModel model, String prefix) {
+        for (int state = 0; state < model.getStateCount(); state++) {
+            if (model.getPrefixString(state).equals(prefix)) {
+                return state;
+            }
+        }
+        throw new AssertionError("unknown prefix " + prefix);
+    }
+
+    private void trainSentence(String... tokens) {
+        Vocabulary vocabulary = repository.getVocabulary();
+        Prefix prefix = new Prefix(vocabulary, 2);
+        prefix.appendToken(tokens[0]);
+        prefix.appendToken(tokens[1]);
+        repository.trainAsStartPrefix(prefix, vocabulary.encode(tokens[2]));
+
+        for (int i = 3; i < tokens.length; i++) {
+            prefix = prefix.shiftWithSuffix(tokens[i - 1]);
+            repository.train(prefix, vocabulary.encode(tokens[i]));
+        }
+    }
+}
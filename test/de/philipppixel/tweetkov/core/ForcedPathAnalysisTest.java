@@ -0,0 +1,151 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ForcedPathAnalysisTest {
+
+    private TransitionRepository repository = new TransitionRepository();
+
+    @Test
+    void analyseShouldCountForcedSuffixesUntilSentenceEnds() {
+        // given
+        trainSentence("now", "he", "is", "gone");
+        CompiledModel model = CompiledModel.compile(repository);
+
+        // when
+        ForcedPathAnalysis sut = ForcedPathAnalysis.analyse(model, 5);
+
+        // then
+        assertThat(sut.getForcedRun(stateOf(model, "now he"))).isEqualTo(2);
+        assertThat(sut.getForcedRun(stateOf(model, "he is"))).isEqualTo(1);
+        assertThat(sut.reachesBranch(stateOf(model, "now he"))).isFalse();
+        assertThat(sut.reachesBranch(stateOf(model, "he is"))).isFalse();
+    }
+
+    @Test
+    void analyseShouldMeasureDistanceToBranch() {
+        // given
+        trainSentence("now", "he", "is", "gone", "for", "good");
+        trainSentence("she", "said", "he", "is", "here");
+        CompiledModel model = CompiledModel.compile(repository);
+
+        // when
+        ForcedPathAnalysis sut = ForcedPathAnalysis.analyse(model, 5);
+
+        // then
+        assertThat(sut.reachesBranch(stateOf(model, "now he"))).isTrue();
+        assertThat(sut.getForcedRun(stateOf(model, "now he"))).isEqualTo(1);
+        assertThat(sut.getForcedRun(stateOf(model, "she said"))).isEqualTo(2);
+        assertThat(sut.getForcedRun(stateOf(model, "he is"))).isZero();
+        assertThat(sut.reachesBranch(stateOf(model, "is gone"))).isFalse();
+        assertThat(sut.getForcedRun(stateOf(model, "is gone"))).isEqualTo(2);
+    }
+
+    @Test
+    void isDoomedShouldDependOnSpanLength() {
+        // given
+        trainSentence("now", "he", "is", "gone", "for", "good");
+        trainSentence("she", "said", "he", "is", "here");
+        CompiledModel model = CompiledModel.compile(repository);
+        int isGone = stateOf(model, "is gone");
+
+        // when
+        ForcedPathAnalysis shortSpans = ForcedPathAnalysis.analyse(model, 4);
+        ForcedPathAnalysis longSpans = ForcedPathAnalysis.analyse(model, 5);
+
+        // then
+        assertThat(shortSpans.isDoomed(isGone)).isTrue();
+        assertThat(longSpans.isDoomed(isGone)).isFalse();
+        assertThat(shortSpans.isDoomed(stateOf(model, "now he"))).isFalse();
+        assertThat(shortSpans.isDoomed(CompiledModel.DEAD_END)).isFalse();
+    }
+
+    @Test
+    void analyseShouldTreatCyclesAsEndless() {
+        // given
+        trainSentence("a", "b", "a", "b", "a", "b");
+        CompiledModel model = CompiledModel.compile(repository);
+
+        // when
+        ForcedPathAnalysis sut = ForcedPathAnalysis.analyse(model, 100);
+
+        // then
+        assertThat(sut.getForcedRun(stateOf(model, "a b"))).isEqualTo(ForcedPathAnalysis.ENDLESS);
+        assertThat(sut.reachesBranch(stateOf(model, "a b"))).isFalse();
+        assertThat(sut.isDoomed(stateOf(model, "b a"))).isTrue();
+    }
+
+    @Test
+    void pickFirstStateShouldSkipStatesWithoutBranch() {
+        // given
+        trainSentence("now", "he", "is", "gone", "for", "good");
+        trainSentence("she", "said", "he", "is", "here");
+        trainSentence("we", "are", "done");
+        CompiledModel model = CompiledModel.compile(repository);
+        ForcedPathAnalysis sut = ForcedPathAnalysis.analyse(model, 5);
+        Random random = new Random(0);
+
+        for (int i = 0; i < 200; i++) {
+            // when
+            int actual = sut.pickFirstState(random);
+
+            // then
+            assertThat(sut.reachesBranch(actual)).as(model.getPrefixString(actual)).isTrue();
+        }
+    }
+
+    @Test
+    void pickFirstStateShouldFallBackToAllStates() {
+        // given
+        trainSentence("we", "are", "done");
+        CompiledModel model = CompiledModel.compile(repository);
+        ForcedPathAnalysis sut = ForcedPathAnalysis.analyse(model, 5);
+
+        // when
+        int actual = sut.pickFirstState(new Random(0));
+
+        // then
+        assertThat(actual).isEqualTo(stateOf(model, "we are"));
+    }
+
+    @Test
+    void pickFirstStateShouldThrowExceptionForUntrainedModel() {
+        ForcedPathAnalysis sut = ForcedPathAnalysis.analyse(CompiledModel.compile(repository), 5);
+
+        assertThrows(IllegalStateException.class, () -> sut.pickFirstState(new Random(0)));
+    }
+
+    @Test
+    void analyseShouldThrowExceptionForInvalidSpanLength() {
+        CompiledModel model = CompiledModel.compile(repository);
+
+        assertThrows(IllegalArgumentException.class, () -> ForcedPathAnalysis.analyse(model, 0));
+    }
+
+    private int stateOf(CompiledModel model, String prefix) {
+        for (int state = 0; state < model.getStateCount(); state++) {
+            if (model.getPrefixString(state).equals(prefix)) {
+                return state;
+            }
+        }
+        throw new AssertionError("unknown prefix " + prefix);
+    }
+
+    private void trainSentence(String... tokens) {
+        Vocabulary vocabulary = repository.getVocabulary();
+        Prefix prefix = new Prefix(vocabulary, 2);
+        prefix.appendToken(tokens[0]);
+        prefix.appendToken(tokens[1]);
+        repository.trainAsStartPrefix(prefix, vocabulary.encode(tokens[2]));
+
+        for (int i = 3; i < tokens.length; i++) {
+            prefix = prefix.shiftWithSuffix(tokens[i - 1]);
+            repository.train(prefix, vocabulary.encode(tokens[i]));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.IntBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GenerationOptionsTest {
+    private Vocabulary vocabulary = new Vocabulary();
+
+    @Test
+    void defaultsShouldAcceptDuplicateSentence() {
+        Sentence sentence = sentence(false, "now", "he", "is", "gone");
+
+        assertThat(GenerationOptions.defaults().accepts(sentence)).isTrue();
+    }
+
+    @Test
+    void withMinWordsShouldRejectShortSentences() {
+        GenerationOptions sut = GenerationOptions.defaults().withMinWords(4);
+
+        assertThat(sut.accepts(sentence(true, "now", "he", "is"))).isFalse();
+        assertThat(sut.accepts(sentence(true, "now", "he", "is", "gone"))).isTrue();
+    }
+
+    @Test
+    void withMaxWordsShouldRejectLongSentences() {
+        GenerationOptions sut = GenerationOptions.defaults().withMaxWords(3);
+
+        assertThat(sut.accepts(sentence(true, "now", "he", "is"))).isTrue();
+        assertThat(sut.accepts(sentence(true, "now", "he", "is", "gone"))).isFalse();
+        assertThat(sut.isLimitingWords()).isTrue();
+        assertThat(GenerationOptions.defaults().isLimitingWords()).isFalse();
+    }
+
+    @Test
+    void withMaxWordsShouldThrowExceptionForMaximumBelowMinimum() {
+        GenerationOptions sut = GenerationOptions.defaults().withMinWords(5);
+
+        assertThrows(IllegalArgumentException.class, () -> sut.withMaxWords(4));
+        assertThrows(IllegalArgumentException.class, () -> GenerationOptions.defaults().withMaxWords(0));
+        assertThrows(IllegalArgumentException.class,
+                () -> GenerationOptions.defaults().withMaxWords(4).withMinWords(5));
+    }
+
+    @Test
+    void withoutDuplicatesShouldRejectDuplicates() {
+        GenerationOptions sut = GenerationOptions.defaults().withoutDuplicates();
+
+        assertThat(sut.accepts(sentence(false, "now", "he", "is", "gone"))).isFalse();
+        assertThat(sut.accepts(sentence(true, "now", "he", "is", "gone"))).isTrue();
+    }
+
+    @Test
+    void withMethodsShouldNotChangeOriginalOptions() {
+        GenerationOptions sut = GenerationOptions.defaults();
+
+        GenerationOptions actual = sut.withMinWords(5).withoutDuplicates();
+
+        assertThat(sut.getMinWords()).isEqualTo(1);
+        assertThat(sut.isAvoidingDuplicates()).isFalse();
+        assertThat(actual.getMinWords()).isEqualTo(5);
+        assertThat(actual.isAvoidingDuplicates()).isTrue();
+    }
+
+    @Test
+    void withMinWordsShouldThrowExceptionForNonPositiveValues() {
+        assertThrows(IllegalArgumentException.class, () -> GenerationOptions.defaults().withMinWords(0));
+        assertThrows(IllegalArgumentException.class, () -> GenerationOptions.defaults().withMinWords(-1));
+    }
+
+    private Sentence sentence(boolean isAlternative, String first, String... suffixes) {
+        Sentence result = new Sentence(vocabulary, " ");
+        result.addStartPrefix(IntBuffer.wrap(new int[]{vocabulary.encode(first)}), 0, 1);
+        for (String suffix : suffixes) {
+            result.addSuffix(vocabulary.encode(suffix), isAlternative);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LatencyHistogramTest {
+
+    private final LatencyHistogram sut = new LatencyHistogram(6);
+
+    @Test
+    void recordShouldCountValuesInPowerOfTwoBuckets() {
+        // when
+        sut.record(-3);
+        sut.record(0);
+        sut.record(1);
+        sut.record(2);
+        sut.record(3);
+        sut.record(4);
+        sut.record(31);
+        sut.record(32);
+        sut.record(1000);
+
+        // then
+        assertThat(sut.getCounts()).containsExactly(2L, 1L, 2L, 1L, 0L, 3L);
+    }
+
+    @Test
+    void getPercentileShouldReturnUpperBoundOfBucket() {
+        // given
+        for (int i = 0; i < 98; i++) {
+            sut.record(5);
+        }
+        sut.record(20);
+        sut.record(20);
+
+        // then
+        assertThat(sut.getPercentile(0.5)).isEqualTo(7);
+        assertThat(sut.getPercentile(0.98)).isEqualTo(7);
+        assertThat(sut.getPercentile(0.99)).isEqualTo(31);
+        assertThat(sut.getPercentile(1)).isEqualTo(31);
+    }
+
+    @Test
+    void getPercentileShouldReturnZeroIfEmpty() {
+        assertThat(sut.getPercentile(0.5)).isZero();
+    }
+
+    @Test
+    void getPercentileShouldRejectInvalidPercentiles() {
+        assertThrows(IllegalArgumentException.class, () -> sut.getPercentile(0));
+        assertThrows(IllegalArgumentException.class, () -> sut.getPercentile(1.5));
+    }
+
+    @Test
+    void resetShouldClearAllBuckets() {
+        // given
+        sut.record(3);
+
+        // when
+        sut.reset();
+
+        // then
+        assertThat(sut.getCounts()).containsExactly(0L, 0L, 0L, 0L, 0L, 0L);
+    }
+}
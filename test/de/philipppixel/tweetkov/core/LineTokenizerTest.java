@@ -0,0 +1,89 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LineTokenizerTest {
+    private final Vocabulary vocabulary = new Vocabulary();
+    private final LineTokenizer sut = new LineTokenizer(vocabulary);
+
+    @Test
+    void tokenizeShouldSplitLikeStringSplit() {
+        String[] lines = {"", " ", "   ", "a", "a b", "a  b ", " a", "  a  b  c  ", "Hello darkness my old friend"};
+
+        for (String line : lines) {
+            List<String> actual = tokens(line);
+
+            assertThat(actual).as("tokens of '%s'", line).containsExactly(line.split(" "));
+        }
+    }
+
+    @Test
+    void tokenizeShouldDecodeEntitiesAndEllipsis() {
+        List<String> actual = tokens("fish &amp; chips &gt; &lt;3 wait...");
+
+        assertThat(actual).containsExactly("fish", "&", "chips", ">", "<3", "wait\u2026");
+    }
+
+    @Test
+    void tokenizeShouldReturnSameIdsAsVocabulary() {
+        sut.tokenize("the cat and the hat");
+
+        assertThat(sut.getToken(0)).isEqualTo(vocabulary.encode("the"));
+        assertThat(sut.getToken(1)).isEqualTo(vocabulary.encode("cat"));
+        assertThat(sut.getToken(3)).isEqualTo(sut.getToken(0));
+        assertThat(vocabulary.size()).isEqualTo(4);
+    }
+
+    @Test
+    void tokenizeShouldReuseIdsOfKnownTokensAcrossLines() {
+        sut.tokenize("known token");
+        int known = sut.getToken(0);
+
+        sut.tokenize("a known token again");
+
+        assertThat(sut.getToken(1)).isEqualTo(known);
+        assertThat(vocabulary.size()).isEqualTo(4);
+    }
+
+    @Test
+    void tokenizeShouldKeepIdsWhenCacheGrows() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            line.append("token").append(i).append(' ');
+        }
+        int count = sut.tokenize(line.toString());
+        int[] first = new int[count];
+        for (int i = 0; i < count; i++) {
+            first[i] = sut.getToken(i);
+        }
+
+        sut.tokenize(line.toString());
+
+        assertThat(count).isEqualTo(1000);
+        for (int i = 0; i < count; i++) {
+            assertThat(sut.getToken(i)).isEqualTo(first[i]);
+        }
+        assertThat(vocabulary.size()).isEqualTo(1000);
+    }
+
+    @Test
+    void decodeShouldReplaceEntitiesOneAfterAnother() {
+        String actual = LineTokenizer.decode("&amp;gt;...");
+
+        assertThat(actual).isEqualTo(">\u2026");
+    }
+
+    private List<String> tokens(String line) {
+        int count = sut.tokenize(line);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(vocabulary.decode(sut.getToken(i)));
+        }
+        return result;
+    }
+}
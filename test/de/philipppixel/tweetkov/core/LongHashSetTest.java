@@ -0,0 +1,117 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongHashSetTest {
+
+    private final LongHashSet sut = new LongHashSet(false);
+
+    @Test
+    void addShouldReturnFalseForContainedValues() {
+        assertThat(sut.add(42)).isTrue();
+        assertThat(sut.add(0)).isTrue();
+        assertThat(sut.add(-1)).isTrue();
+
+        assertThat(sut.add(42)).isFalse();
+        assertThat(sut.add(0)).isFalse();
+        assertThat(sut.size()).isEqualTo(3);
+    }
+
+    @Test
+    void containsShouldFindAddedValuesOnly() {
+        sut.add(Long.MIN_VALUE);
+        sut.add(0);
+
+        assertThat(sut.contains(Long.MIN_VALUE)).isTrue();
+        assertThat(sut.contains(0)).isTrue();
+        assertThat(sut.contains(Long.MAX_VALUE)).isFalse();
+        assertThat(new LongHashSet(false).contains(0)).isFalse();
+    }
+
+    @Test
+    void addShouldGrowTableAndKeepAllValues() {
+        for (long value = 1; value <= 10000; value++) {
+            sut.add(value * 1024);
+        }
+
+        assertThat(sut.size()).isEqualTo(10000);
+        assertThat(sut.capacity()).isEqualTo(16384);
+        for (long value = 1; value <= 10000; value++) {
+            assertThat(sut.contains(value * 1024)).isTrue();
+        }
+        assertThat(sut.contains(10001 * 1024)).isFalse();
+    }
+
+    @Test
+    void concurrentSetShouldContainSameValuesAsPlainSet() {
+        // given
+        LongHashSet concurrent = new LongHashSet(true);
+
+        // when
+        for (long value = -500; value <= 500; value++) {
+            sut.add(value * 7919);
+            concurrent.add(value * 7919);
+        }
+
+        // then
+        assertThat(concurrent.size()).isEqualTo(sut.size());
+        assertThat(concurrent.capacity()).isEqualTo(sut.capacity());
+        assertThat(concurrent.toSortedArray()).isEqualTo(sut.toSortedArray());
+        assertThat(concurrent.contains(7919 * 501L)).isFalse();
+    }
+
+    @Test
+    void toSortedArrayShouldReturnValuesInAscendingOrder() {
+        sut.add(5);
+        sut.add(-3);
+        sut.add(0);
+        sut.add(5);
+
+        assertThat(sut.toSortedArray()).containsExactly(-3, 0, 5);
+    }
+
+    @Test
+    void readersShouldFindEveryValueThatWasAddedBeforeWhileWritersAdd() throws Exception {
+        // given
+        LongHashSet concurrent = new LongHashSet(true);
+        int writers = 4;
+        int valuesPerWriter = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+
+        // when
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            long first = (long) writer * valuesPerWriter;
+            futures.add(executor.submit(() -> {
+                for (long value = first; value < first + valuesPerWriter; value++) {
+                    concurrent.add(value);
+                }
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            while (concurrent.size() < writers * valuesPerWriter) {
+                assertThat(concurrent.contains(-1)).isFalse();
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // then
+        assertThat(concurrent.size()).isEqualTo(writers * valuesPerWriter);
+        for (long value = 0; value < writers * valuesPerWriter; value++) {
+            assertThat(concurrent.contains(value)).isTrue();
+        }
+    }
+}
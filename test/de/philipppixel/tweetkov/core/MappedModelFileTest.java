@@ -0,0 +1,136 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedModelFileTest {
+    private static final OriginalityIndex INDEX = OriginalityIndex.create(5, false).freeze();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mapShouldRestoreAllStates() throws IOException {
+        // given
+        CompiledModel expected = compile("Now he is gone", "she said he is gone for good", "now he went insane");
+        Path file = directory.resolve("model.tkc");
+
+        // when
+        MappedModelFile.write(file, 2, expected, INDEX);
+        MappedModelFile mapped = MappedModelFile.map(file);
+
+        // then
+        CompiledModel actual = mapped.getModel();
+        assertThat(mapped.getWindowSize()).isEqualTo(2);
+        assertThat(actual.getStateCount()).isEqualTo(expected.getStateCount());
+        assertThat(actual.getStartStates()).isEqualTo(expected.getStartStates());
+        for (int state = 0; state < expected.getStateCount(); state++) {
+            assertThat(actual.getPrefixString(state)).isEqualTo(expected.getPrefixString(state));
+            assertThat(actual.getUniqueSuffixCount(state)).isEqualTo(expected.getUniqueSuffixCount(state));
+            for (int slot = 0; slot < expected.getUniqueSuffixCount(state); slot++) {
+                assertThat(actual.getUniqueSuffix(state, slot)).isEqualTo(expected.getUniqueSuffix(state, slot));
+                assertThat(actual.getSuffixCount(state, slot)).isEqualTo(expected.getSuffixCount(state, slot));
+                assertThat(actual.getSuccessor(state, slot)).isEqualTo(expected.getSuccessor(state, slot));
+            }
+        }
+    }
+
+    @Test
+    void mapShouldDecodeTokensFromFile() throws IOException {
+        // given
+        CompiledModel model = compile("Gr\u00fc\u00dfe aus K\u00f6ln", "now he is gone");
+        Path file = directory.resolve("model.tkc");
+        MappedModelFile.write(file, 2, model, INDEX);
+
+        // when
+        Vocabulary actual = MappedModelFile.map(file).getModel().getVocabulary();
+
+        // then
+        Vocabulary expected = model.getVocabulary();
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (int id = 0; id < expected.size(); id++) {
+            assertThat(actual.decode(id)).isEqualTo(expected.decode(id));
+            assertThat(actual.foldedId(id)).isEqualTo(expected.foldedId(id));
+            assertThat(actual.foldedHash(id)).isEqualTo(expected.foldedHash(id));
+            assertThat(actual.isEmpty(id)).isEqualTo(expected.isEmpty(id));
+        }
+        assertThat(actual.isEmpty(Vocabulary.NO_TOKEN)).isTrue();
+        assertThrows(IllegalArgumentException.class, () -> actual.decode(expected.size()));
+        assertThrows(IllegalStateException.class, () -> actual.encode("new"));
+    }
+
+    @Test
+    void mappedModelShouldGenerateSameSentences() throws IOException {
+        // given
+        CompiledModel expected = compile("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here");
+        Path file = directory.resolve("model.tkc");
+        MappedModelFile.write(file, 2, expected, INDEX);
+
+        // when
+        CompiledModel actual = MappedModelFile.map(file).getModel();
+
+        // then
+        Random expectedRandom = new Random(4);
+        Random actualRandom = new Random(4);
+        for (int i = 0; i < 50; i++) {
+            assertThat(actual.generateSentence(actualRandom, 32, " ").create())
+                    .isEqualTo(expected.generateSentence(expectedRandom, 32, " ").create());
+        }
+    }
+
+    @Test
+    void mapShouldThrowExceptionForOtherFiles() throws IOException {
+        Path file = directory.resolve("other.tkv");
+        TweetkovChain chain = new TweetkovChain();
+        chain.train(Arrays.asList("now he is gone"));
+        chain.save(file);
+
+        assertThrows(IOException.class, () -> MappedModelFile.map(file));
+    }
+
+    @Test
+    void mapShouldRestoreOriginalityIndex() throws IOException {
+        // given
+        TweetkovChain chain = new TweetkovChain(2);
+        chain.train(Arrays.asList("now he is gone", "she said he is gone for good"));
+        OriginalityIndex expected = chain.getOriginalityIndex();
+        Path file = directory.resolve("model.tkc");
+
+        // when
+        MappedModelFile.write(file, 2, CompiledModel.compile(chain.getTransitions()), expected);
+        OriginalityIndex actual = MappedModelFile.map(file).getOriginalityIndex();
+
+        // then
+        assertThat(actual.getSpanLength()).isEqualTo(expected.getSpanLength());
+        assertThat(actual.getSortedKeys()).isEqualTo(expected.getSortedKeys());
+        assertThat(actual.isFrozen()).isTrue();
+    }
+
+    @Test
+    void mapShouldThrowExceptionForTruncatedFile() throws IOException {
+        // given
+        Path file = directory.resolve("model.tkc");
+        MappedModelFile.write(file, 2, compile("now he is gone", "she said he is gone for good"), INDEX);
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 1));
+
+        // when & then
+        assertThrows(IOException.class, () -> MappedModelFile.map(file));
+    }
+
+    private static CompiledModel compile(String... sentences) {
+        TweetkovChain chain = new TweetkovChain(2);
+        chain.train(Arrays.asList(sentences));
+        return CompiledModel.compile(chain.getTransitions());
+    }
+}
@@ -0,0 +1,137 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModelFileTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readShouldRestoreVocabularyTransitionsAndStartPrefixes() throws IOException {
+        // given
+        TweetkovChain chain = new TweetkovChain(2);
+        chain.train(Arrays.asList("Now he is gone", "now he went insane", "she said he is gone for good"));
+        TransitionRepository expected = chain.getTransitions();
+        Path file = directory.resolve("model.tkv");
+
+        // when
+        ModelFile.write(file, 2, expected, chain.getOriginalityIndex());
+        ModelFile actual = ModelFile.read(file);
+
+        // then
+        assertThat(actual.getWindowSize()).isEqualTo(2);
+        TransitionRepository repository = actual.getRepository();
+        assertThat(repository.getVocabulary().size()).isEqualTo(expected.getVocabulary().size());
+        for (int id = 0; id < expected.getVocabulary().size(); id++) {
+            assertThat(repository.getVocabulary().decode(id)).isEqualTo(expected.getVocabulary().decode(id));
+        }
+        assertThat(prefixes(repository)).isEqualTo(prefixes(expected));
+        for (Transition transition : expected.getAllTransitions()) {
+            assertThat(repository.get(transition.getPrefix()).getSuffixes())
+                    .containsExactlyElementsOf(transition.getSuffixes());
+        }
+        // start prefixes that only differ in case are restored as the prefix of their transition
+        StartPrefixTable startPrefixes = repository.getStartPrefixes();
+        assertThat(startPrefixes.size()).isEqualTo(expected.getStartPrefixes().size());
+        for (int slot = 0; slot < startPrefixes.size(); slot++) {
+            assertThat(startPrefixes.getPrefix(slot)).isEqualTo(expected.getStartPrefixes().getPrefix(slot));
+            assertThat(startPrefixes.getCount(slot)).isEqualTo(expected.getStartPrefixes().getCount(slot));
+        }
+    }
+
+    @Test
+    void writeCompiledModelShouldCreateSameFileAsRepository() throws IOException {
+        // given
+        TweetkovChain chain = new TweetkovChain(1);
+        chain.train(Arrays.asList("now he is gone", "she said he is gone for good"));
+        Path fromRepository = directory.resolve("repository.tkv");
+        Path fromModel = directory.resolve("compiled.tkv");
+
+        // when
+        ModelFile.write(fromRepository, 1, chain.getTransitions(), chain.getOriginalityIndex());
+        ModelFile.write(fromModel, 1, CompiledModel.compile(chain.getTransitions()),
+                chain.getOriginalityIndex().freeze());
+
+        // then
+        assertThat(Files.mismatch(fromModel, fromRepository)).isEqualTo(-1L);
+    }
+
+    @Test
+    void readShouldRestoreOriginalityIndex() throws IOException {
+        // given
+        TweetkovChain chain = new TweetkovChain(1);
+        chain.train(Arrays.asList("now he is gone", "she said he is gone for good"));
+        OriginalityIndex expected = chain.getOriginalityIndex();
+        Path file = directory.resolve("model.tkv");
+
+        // when
+        ModelFile.write(file, 1, chain.getTransitions(), expected);
+        OriginalityIndex actual = ModelFile.read(file).getOriginalityIndex();
+
+        // then
+        assertThat(actual.getSpanLength()).isEqualTo(expected.getSpanLength());
+        assertThat(actual.getSortedKeys()).isEqualTo(expected.getSortedKeys());
+        assertThat(actual.isFrozen()).isFalse();
+    }
+
+    @Test
+    void readShouldThrowExceptionForOtherFiles() throws IOException {
+        Path file = directory.resolve("other.txt");
+        Files.write(file, "now he is gone".getBytes());
+
+        assertThrows(IOException.class, () -> ModelFile.read(file));
+    }
+
+    @Test
+    void readShouldThrowExceptionForTruncatedFile() throws IOException {
+        // given
+        TweetkovChain chain = new TweetkovChain(1);
+        chain.train(Arrays.asList("now he is gone", "she said he is gone for good"));
+        Path file = directory.resolve("model.tkv");
+        ModelFile.write(file, 1, chain.getTransitions(), chain.getOriginalityIndex());
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 3));
+
+        // when & then
+        assertThrows(IOException.class, () -> ModelFile.read(file));
+    }
+
+    @Test
+    void varIntShouldRoundTrip() throws IOException {
+        int[] values = {0, 1, 127, 128, 16_383, 16_384, 1 << 21, Integer.MAX_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : values) {
+            ModelFile.writeVarInt(out, value);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int value : values) {
+            assertThat(ModelFile.readVarInt(in)).isEqualTo(value);
+        }
+        assertThat(bytes.size()).isEqualTo(1 + 1 + 1 + 2 + 2 + 3 + 4 + 5);
+    }
+
+    private static List<String> prefixes(TransitionRepository repository) {
+        List<String> result = new ArrayList<>();
+        for (Transition transition : repository.getAllTransitions()) {
+            result.add(transition.getPrefix().toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,205 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MultiOrderChainTest {
+    private static final List<String> SENTENCES = Arrays.asList("now he is gone", "she said he is gone for good",
+            "now he went insane", "now is the thime", "he is gone and she is here", "she said now he is back");
+    private static final List<String> RUN_ON = Arrays.asList("i like tea", "tea is hot");
+
+    private final MultiOrderChain sut = new MultiOrderChain(3);
+
+    @Test
+    void generateWithoutBackOffAtHighestOrderShouldEqualChainOfSameWindowSize() {
+        // given
+        sut.train(SENTENCES);
+        TweetkovChain expected = new TweetkovChain(3);
+        expected.train(SENTENCES);
+
+        // then
+        for (int seed = 0; seed < 20; seed++) {
+            assertThat(sut.generate(3, false, new Random(seed))).isEqualTo(expected.generate(new Random(seed)));
+        }
+    }
+
+    @Test
+    void randomSuffixShouldMapEachOccurrenceToSuffixOfChainOfSameWindowSize() {
+        // given
+        sut.train(SENTENCES);
+
+        for (int order = 1; order <= 3; order++) {
+            TweetkovChain expected = new TweetkovChain(order);
+            expected.train(SENTENCES);
+
+            for (Transition transition : expected.getTransitions().getAllTransitions()) {
+                // when
+                Map<String, Integer> actual = new HashMap<>();
+                for (int occurrence = 0; occurrence < transition.getTotalSuffixCount(); occurrence++) {
+                    int suffix = sut.getRandomSuffix(transition.getPrefix(), fixedRandom(occurrence));
+                    actual.merge(transition.getPrefix().getVocabulary().decode(suffix), 1, Integer::sum);
+                }
+
+                // then
+                assertThat(actual).isEqualTo(suffixCounts(transition));
+            }
+        }
+    }
+
+    @Test
+    void trainShouldTrainAllOrdersWithOneVocabulary() {
+        // when
+        sut.train(SENTENCES);
+
+        // then
+        for (int order = 1; order <= 3; order++) {
+            TweetkovChain expected = new TweetkovChain(order);
+            expected.train(SENTENCES);
+            TransitionRepository actual = sut.getTransitions(order);
+
+            assertThat(actual.getAllTransitions()).hasSize(expected.getTransitions().getAllTransitions().size());
+            assertThat(sut.getPrefixCount(order)).isEqualTo(expected.getTransitions().getAllTransitions().size());
+            assertThat(actual.getStartPrefixes().toString())
+                    .isEqualTo(expected.getTransitions().getStartPrefixes().toString());
+            assertThat(actual.getVocabulary()).isSameAs(sut.getTransitions(1).getVocabulary());
+            for (Transition transition : expected.getTransitions().getAllTransitions()) {
+                assertThat(suffixCounts(actual.get(transition.getPrefix()))).isEqualTo(suffixCounts(transition));
+            }
+        }
+        assertThat(sut.getEndCount(prefix("gone"))).isEqualTo(1);
+        assertThat(sut.getEndCount(prefix("is", "gone"))).isEqualTo(1);
+        assertThat(sut.getEndCount(prefix("he", "is", "back"))).isEqualTo(1);
+        assertThat(sut.getEndCount(prefix("he", "is"))).isZero();
+    }
+
+    @Test
+    void sharedTransitionsShouldNeedLessMemoryThanSeparateChains() {
+        // given
+        List<String> sentences = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sentence = new StringBuilder("word" + random.nextInt(2000));
+            for (int length = 5 + random.nextInt(14); length > 0; length--) {
+                sentence.append(" word").append((int) (Math.pow(random.nextDouble(), 3) * 2000));
+            }
+            sentences.add(sentence.toString());
+        }
+
+        // when
+        sut.train(sentences);
+        long[] separateBytes = new long[3];
+        for (int order = 1; order <= 3; order++) {
+            TweetkovChain chain = new TweetkovChain(order);
+            chain.train(sentences);
+            separateBytes[order - 1] = chain.getModelSize().getEstimatedBytes();
+        }
+
+        // then
+        long actual = ModelSize.of(sut).getEstimatedBytes();
+        assertThat(actual).isLessThan((separateBytes[0] + separateBytes[1] + separateBytes[2]) * 2 / 3);
+        assertThat(actual).isLessThan(separateBytes[2] * 3 / 2);
+    }
+
+    @Test
+    void trainShouldCountEachEndOfSentence() {
+        // when
+        sut.train(Arrays.asList("i like tea", "you like tea", "i like coffee"));
+        sut.train(Arrays.asList("we all like tea", "i like tea"));
+
+        // then
+        assertThat(sut.getEndCount(prefix("tea"))).isEqualTo(4);
+        assertThat(sut.getEndCount(prefix("like", "tea"))).isEqualTo(4);
+        assertThat(sut.getEndCount(prefix("i", "like", "tea"))).isEqualTo(2);
+        assertThat(sut.getEndCount(prefix("coffee"))).isEqualTo(1);
+    }
+
+    @Test
+    void generateWithBackOffShouldContinueWhereLowerOrderKnowsMore() {
+        // given
+        MultiOrderChain chain = new MultiOrderChain(2);
+        chain.train(RUN_ON);
+        Random random = new Random(1);
+
+        // when
+        List<String> withBackOff = new ArrayList<>();
+        List<String> withoutBackOff = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            withBackOff.add(chain.generate(2, true, random));
+            withoutBackOff.add(chain.generate(2, false, random));
+        }
+
+        // then
+        assertThat(withBackOff).contains("i like tea is hot.", "i like tea.", "tea is hot.");
+        assertThat(withoutBackOff).doesNotContain("i like tea is hot.");
+    }
+
+    @Test
+    void generateWithBackOffShouldFindOriginalSentences() {
+        // given
+        MultiOrderChain chain = new MultiOrderChain(2);
+        chain.train(RUN_ON);
+        GenerationOptions options = GenerationOptions.defaults().withoutDuplicates();
+
+        // when
+        String withBackOff = chain.generate(2, true, options, new Random(1));
+        String withoutBackOff = chain.generate(2, false, options, new Random(1));
+
+        // then
+        assertThat(withBackOff).isEqualTo("i like tea is hot.");
+        assertThat(withoutBackOff).isEmpty();
+    }
+
+    @Test
+    void shouldRejectInvalidOrders() {
+        // given
+        sut.train(SENTENCES);
+
+        // then
+        assertThrows(IllegalArgumentException.class, () -> new MultiOrderChain(0));
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(0, false));
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(4, true));
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(2, true, null, new Random(1)));
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(2, true, (Random) null));
+    }
+
+    private static RandomGenerator fixedRandom(int value) {
+        return new RandomGenerator() {
+            @Override
+            public long nextLong() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int nextInt(int bound) {
+                return value;
+            }
+        };
+    }
+
+    private static Map<String, Integer> suffixCounts(Transition transition) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int slot = 0; slot < transition.getUniqueSuffixCount(); slot++) {
+            result.put(transition.getPrefix().getVocabulary().decode(transition.getUniqueSuffix(slot)),
+                    transition.getSuffixCount(slot));
+        }
+        return result;
+    }
+
+    private Prefix prefix(String... tokens) {
+        Prefix result = new Prefix(sut.getTransitions(1).getVocabulary(), tokens.length);
+        for (String token : tokens) {
+            result.appendToken(token);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OriginalityIndexTest {
+    private final OriginalityIndex sut = OriginalityIndex.create(3, false);
+
+    @Test
+    void trackerShouldDetectCopiedSpan() {
+        train("she said he is gone for good");
+
+        assertThat(isSpanCopiedAfter("now", "he", "is", "gone")).isTrue();
+        assertThat(isSpanCopiedAfter("now", "he", "is", "back")).isFalse();
+    }
+
+    @Test
+    void trackerShouldIgnoreCase() {
+        train("she said he is gone");
+
+        assertThat(isSpanCopiedAfter("He", "IS", "Gone")).isTrue();
+    }
+
+    @Test
+    void trackerShouldDetectCopiedShortSentencesOnlyAtTheEnd() {
+        train("now he is gone");
+
+        assertThat(isSentenceCopied("is", "gone")).isTrue();
+        assertThat(isSentenceCopied("gone")).isTrue();
+        assertThat(isSentenceCopied("now", "he")).isFalse();
+    }
+
+    @Test
+    void trackerShouldDetectCopiedShortTrainingSentence() {
+        train("hello");
+
+        assertThat(isSentenceCopied("Hello")).isTrue();
+        assertThat(isSentenceCopied("hello", "hello")).isFalse();
+    }
+
+    @Test
+    void trackerShouldDistinguishLeadingEmptyTokens() {
+        train("a b");
+
+        assertThat(isSentenceCopied("", "a", "b")).isFalse();
+    }
+
+    @Test
+    void frozenIndexShouldContainSameSpans() {
+        train("she said he is gone for good");
+
+        OriginalityIndex frozen = sut.freeze();
+
+        assertThat(frozen.isFrozen()).isTrue();
+        assertThat(frozen.size()).isEqualTo(sut.size());
+        OriginalityIndex.Tracker tracker = frozen.newTracker();
+        for (String token : new String[]{"he", "is", "gone"}) {
+            tracker.add(token.hashCode());
+        }
+        assertThat(tracker.isSpanCopied()).isTrue();
+        assertThrows(IllegalStateException.class, () -> frozen.addKey(1));
+    }
+
+    @Test
+    void mergeShouldAddAllHashes() {
+        OriginalityIndex partial = OriginalityIndex.create(3, false);
+        OriginalityIndex.Tracker tracker = partial.newTracker();
+        for (String token : new String[]{"now", "he", "is", "gone"}) {
+            tracker.add(token.hashCode());
+            tracker.recordSpan();
+        }
+        tracker.recordEnd();
+
+        sut.merge(partial);
+
+        assertThat(isSpanCopiedAfter("now", "he", "is")).isTrue();
+        assertThat(isSentenceCopied("is", "gone")).isTrue();
+        assertThrows(IllegalArgumentException.class, () -> sut.merge(OriginalityIndex.create(4, false)));
+    }
+
+    @Test
+    void unionShouldContainHashesOfBothIndexesWithoutChangingThem() {
+        train("now he is gone");
+        OriginalityIndex partial = OriginalityIndex.create(3, false);
+        OriginalityIndex.Tracker tracker = partial.newTracker();
+        for (String token : new String[]{"she", "said", "he", "is", "gone"}) {
+            tracker.add(token.hashCode());
+            tracker.recordSpan();
+        }
+        tracker.recordEnd();
+        int size = sut.size();
+        OriginalityIndex expected = OriginalityIndex.create(3, false);
+        expected.merge(sut);
+        expected.merge(partial);
+
+        OriginalityIndex union = sut.union(partial);
+
+        assertThat(union.isFrozen()).isTrue();
+        assertThat(union.size()).isEqualTo(expected.size()).isLessThan(size + partial.size());
+        assertThat(union.getSortedKeys()).isEqualTo(expected.getSortedKeys());
+        assertThat(union.getSortedKeys().limit()).isEqualTo(union.size());
+        assertThat(sut.size()).isEqualTo(size);
+        assertThat(union.union(OriginalityIndex.create(3, false)).size()).isEqualTo(union.size());
+        assertThrows(IllegalArgumentException.class, () -> sut.union(OriginalityIndex.create(4, false)));
+    }
+
+    @Test
+    void unionShouldLayerSmallIndexOverFrozenIndexUntilLayerGrowsTooLarge() {
+        for (int i = 0; i < 40; i++) {
+            train("sentence number " + i + " is long enough");
+        }
+        OriginalityIndex frozen = sut.freeze();
+        OriginalityIndex partial = OriginalityIndex.create(3, false);
+        partial.addKey(frozen.getSortedKeys().get(0));
+        partial.addKey(42);
+        OriginalityIndex large = OriginalityIndex.create(3, false);
+        for (int key = 0; key < frozen.size(); key++) {
+            large.addKey(key);
+        }
+        OriginalityIndex expected = OriginalityIndex.create(3, false);
+        expected.merge(frozen);
+        expected.merge(partial);
+
+        OriginalityIndex union = frozen.union(partial);
+        OriginalityIndex compacted = union.union(large);
+
+        assertThat(union.getBase()).isSameAs(frozen);
+        assertThat(union.size()).isEqualTo(expected.size()).isEqualTo(frozen.size() + 1);
+        assertThat(union.getSortedKeys()).isEqualTo(expected.getSortedKeys());
+        assertThat(union.union(OriginalityIndex.create(3, false)).getBase()).isSameAs(frozen);
+        assertThat(isSpanCopied(union, "number", "7", "is")).isTrue();
+        assertThat(isSpanCopied(union, "number", "is", "7")).isFalse();
+        assertThat(compacted.getBase()).isSameAs(compacted);
+        assertThat(compacted.size()).isEqualTo(union.size() + large.size() - 1);
+    }
+
+    private void train(String sentence) {
+        OriginalityIndex.Tracker tracker = sut.newTracker();
+        for (String token : sentence.split(" ")) {
+            tracker.add(token.toLowerCase().hashCode());
+            tracker.recordSpan();
+        }
+        tracker.recordEnd();
+    }
+
+    private boolean isSpanCopiedAfter(String... tokens) {
+        OriginalityIndex.Tracker tracker = track(tokens);
+        return tracker.isSpanCopied();
+    }
+
+    private static boolean isSpanCopied(OriginalityIndex index, String... tokens) {
+        OriginalityIndex.Tracker tracker = index.newTracker();
+        for (String token : tokens) {
+            tracker.add(token.hashCode());
+        }
+        return tracker.isSpanCopied();
+    }
+
+    private boolean isSentenceCopied(String... tokens) {
+        return track(tokens).isSentenceCopied();
+    }
+
+    private OriginalityIndex.Tracker track(String... tokens) {
+        OriginalityIndex.Tracker tracker = sut.newTracker();
+        for (String token : tokens) {
+            tracker.add(token.toLowerCase().hashCode());
+        }
+        return tracker;
+    }
+}
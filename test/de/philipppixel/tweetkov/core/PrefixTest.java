@@ -78,6 +78,31 @@ class PrefixTest {
         assertThat(actual).as("Prefixes should be equal: %s <=> %s", sut, prefix2).isTrue();
     }
 
+    @Test
+    void equalsShouldReturnTrueForEqualPrefixes_sharedVocabulary() {
+        Vocabulary vocabulary = new Vocabulary();
+        Prefix sut = new Prefix(vocabulary, 2);
+        sut.appendToken("Uppercase");
+        sut.appendToken("lowercase");
+
+        Prefix prefix2 = new Prefix(vocabulary, 2);
+        prefix2.appendToken("UPPERCASE");
+        prefix2.appendToken("LOWERCASE");
+
+        boolean actual = sut.equals(prefix2) && sut.hashCode() == prefix2.hashCode();
+
+        assertThat(actual).as("Prefixes should be equal: %s <=> %s", sut, prefix2).isTrue();
+    }
+
+    @Test
+    void hashcodeShouldMatchLowerCaseMergedString() {
+        Prefix sut = new Prefix(2);
+        sut.appendToken("Hello");
+        sut.appendToken("WORLD");
+
+        assertThat(sut.hashCode()).isEqualTo("hello world".hashCode());
+    }
+
     @Test
     void hashcodeShouldBeDifferentForNonEqualPrefixes() {
         Prefix sut = new Prefix(2);
@@ -153,6 +178,30 @@ class PrefixTest {
         assertThat(actual).isEqualTo(expected);
     }
 
+    @Test
+    void shiftWithSuffixShouldRollHashCodeForward() {
+        Prefix sut = new Prefix(3);
+        sut.appendToken("Hello");
+        sut.appendToken("Darkness,");
+        sut.appendToken("my");
+
+        Prefix actual = sut.shiftWithSuffix("OLD").shiftWithSuffix("friend.");
+
+        assertThat(actual.hashCode()).isEqualTo("my old friend.".hashCode());
+    }
+
+    @Test
+    void shiftWithSuffixShouldRollHashCodeForwardForLongTokens() {
+        String longToken = new String(new char[600]).replace('\0', 'x');
+        Prefix sut = new Prefix(2);
+        sut.appendToken(longToken);
+        sut.appendToken(longToken);
+
+        Prefix actual = sut.shiftWithSuffix("y");
+
+        assertThat(actual.hashCode()).isEqualTo((longToken + " y").hashCode());
+    }
+
     @Test
     void shiftedPrefixShouldNotBeTheSameAsOriginalPrefix() {
         Prefix sut = new Prefix(2);
@@ -163,4 +212,51 @@ class PrefixTest {
 
         assertThat(actual).isNotSameAs(sut);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shiftShouldChangePrefixInPlace() {
+        Vocabulary vocabulary = new Vocabulary();
+        Prefix sut = new Prefix(vocabulary, 2);
+        sut.appendToken("1");
+        sut.appendToken("2");
+
+        sut.shift(vocabulary.encode("3"));
+
+        Prefix expected = new Prefix(2);
+        expected.appendToken("2");
+        expected.appendToken("3");
+        assertThat(sut).isEqualTo(expected);
+        assertThat(sut.hashCode()).isEqualTo("2 3".hashCode());
+    }
+
+    @Test
+    void copyShouldNotChangeWhenOriginalIsShifted() {
+        Vocabulary vocabulary = new Vocabulary();
+        Prefix sut = new Prefix(vocabulary, 2);
+        sut.appendToken("1");
+        sut.appendToken("2");
+
+        Prefix actual = sut.copy();
+        sut.shift(vocabulary.encode("3"));
+
+        assertThat(actual.toString()).isEqualTo("1 2");
+        assertThat(actual.hashCode()).isEqualTo("1 2".hashCode());
+    }
+
+    @Test
+    void clearShouldAllowToFillPrefixAgain() {
+        Prefix sut = new Prefix(2);
+        sut.appendToken("1");
+        sut.appendToken("2");
+
+        sut.clear();
+        sut.appendToken("a");
+        sut.appendToken("b");
+
+        Prefix expected = new Prefix(2);
+        expected.appendToken("a");
+        expected.appendToken("b");
+        assertThat(sut).isEqualTo(expected);
+        assertThat(sut.hashCode()).isEqualTo(expected.hashCode());
+    }
+}
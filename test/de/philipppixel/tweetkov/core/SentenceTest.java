@@ -2,12 +2,16 @@ package de.philipppixel.tweetkov.core;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.StringWriter;
+import java.nio.IntBuffer;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class SentenceTest {
 
     private static final String WORD_DELIMITER = " ";
-    private Sentence sut = new Sentence(WORD_DELIMITER);
+    private Vocabulary vocabulary = new Vocabulary();
+    private Sentence sut = new Sentence(vocabulary, WORD_DELIMITER);
 
     @Test
     void addPrefixShouldResultInDuplicate() {
@@ -17,7 +21,7 @@ class SentenceTest {
         Transition transition = new Transition(prefix);
         transition.mapSuffix("so");
 
-        sut.addBridge("so", transition);
+        sut.addBridge(vocabulary.encode("so"), transition);
 
         // when
         boolean actual = sut.isDuplicate();
@@ -37,7 +41,7 @@ class SentenceTest {
         transition.mapSuffix("so");
         transition.mapSuffix("not");
 
-        sut.addBridge("so", transition);
+        sut.addBridge(vocabulary.encode("so"), transition);
 
         // when
         boolean actual = sut.isDuplicate();
@@ -47,8 +51,71 @@ class SentenceTest {
                 .isFalse();
     }
 
+    @Test
+    void addSuffixShouldStayAlternativeOnceAnAlternativeWasAdded() {
+        sut.addStartPrefix(IntBuffer.wrap(new int[]{vocabulary.encode("you")}), 0, 1);
+        sut.addSuffix(vocabulary.encode("are"), true);
+        sut.addSuffix(vocabulary.encode("so"), false);
+
+        assertThat(sut.isDuplicate()).isFalse();
+    }
+
+    @Test
+    void createShouldJoinTokensAndEndWithDelimiter() {
+        sut.addBridge(vocabulary.encode("so"), transition("so", "you", "are"));
+
+        assertThat(sut.toString()).isEqualTo("you are so");
+        assertThat(sut.create()).isEqualTo("you are so.");
+    }
+
+    @Test
+    void createShouldTrimLeadingAndTrailingWhitespace() {
+        sut.addBridge(vocabulary.encode("so "), transition("so ", "", "are"));
+
+        assertThat(sut.create()).isEqualTo("are so.");
+    }
+
+    @Test
+    void createShouldReturnDelimiterForBlankSentence() {
+        sut.addBridge(vocabulary.encode(" "), transition(" ", "", ""));
+
+        assertThat(sut.create()).isEqualTo(".");
+    }
+
+    @Test
+    void appendToShouldWriteSameTextAsCreate() throws Exception {
+        sut.addBridge(vocabulary.encode("so"), transition("so", "you", "are"));
+        StringWriter actual = new StringWriter();
+        StringBuilder builder = new StringBuilder("> ");
+
+        sut.appendTo(actual);
+        sut.appendTo(builder);
+
+        assertThat(actual.toString()).isEqualTo(sut.create());
+        assertThat(builder.toString()).isEqualTo("> " + sut.create());
+    }
+
+    @Test
+    void clearShouldResetTokensAndDuplicateState() {
+        Transition transition = transition("so", "you", "are");
+        transition.mapSuffix("not");
+        sut.addBridge(vocabulary.encode("so"), transition);
+
+        sut.clear();
+
+        assertThat(sut.isEmpty()).isTrue();
+        assertThat(sut.isDuplicate()).isTrue();
+        assertThat(sut.create()).isEqualTo(".");
+    }
+
+    private Transition transition(String suffix, String... prefixTokens) {
+        Transition transition = new Transition(prefix(prefixTokens));
+        transition.mapSuffix(suffix);
+        return transition;
+    }
+
     private Prefix prefix(String... tokens) {
-        Prefix prefix = new Prefix(tokens.length);
+        Prefix prefix = new Prefix(vocabulary, tokens.length);
         for (String token : tokens) {
             prefix.appendToken(token);
         }
@@ -0,0 +1,227 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnapshotChainTest {
+    private static final List<String> FIRST_BATCH = Arrays.asList("now he is gone", "she said he is gone for good",
+            "now he went insane");
+    private static final List<String> SECOND_BATCH = Arrays.asList("now is the thime", "he is gone and she is here",
+            "she said now he is back");
+
+    private final SnapshotChain sut = new SnapshotChain(2);
+
+    @Test
+    void trainedSentencesShouldNotBeVisibleBeforePublishing() {
+        // when
+        sut.train(FIRST_BATCH);
+
+        // then
+        assertThat(sut.hasPendingSentences()).isTrue();
+        assertThat(sut.getVersion()).isZero();
+        assertThrows(IllegalStateException.class, () -> sut.generate(new Random(1)));
+    }
+
+    @Test
+    void publishShouldMakeTrainedSentencesVisible() {
+        // given
+        sut.train(FIRST_BATCH);
+
+        // when
+        boolean actual = sut.publish();
+
+        // then
+        assertThat(actual).isTrue();
+        assertThat(sut.hasPendingSentences()).isFalse();
+        assertThat(sut.getVersion()).isEqualTo(1);
+        assertThat(sut.generate(new Random(1))).matches("[a-zA-Z]+( [a-zA-Z]+)+\\.");
+    }
+
+    @Test
+    void publishShouldDoNothingWithoutPendingSentences() {
+        // given
+        sut.train(FIRST_BATCH);
+        sut.publish();
+        TweetkovChain snapshot = sut.getSnapshot();
+
+        // when
+        boolean actual = sut.publish();
+
+        // then
+        assertThat(actual).isFalse();
+        assertThat(sut.getVersion()).isEqualTo(1);
+        assertThat(sut.getSnapshot()).isSameAs(snapshot);
+    }
+
+    @Test
+    void publishedVersionsShouldGenerateTheSameSentencesAsSequentialTraining() {
+        // given
+        TweetkovChain expected = new TweetkovChain(2);
+        expected.train(FIRST_BATCH);
+        expected.train(SECOND_BATCH);
+
+        // when
+        sut.train(FIRST_BATCH);
+        sut.publish();
+        sut.trainInParallel(SECOND_BATCH);
+        sut.publish();
+
+        // then
+        for (int seed = 0; seed < 20; seed++) {
+            assertThat(sut.generate(new Random(seed))).isEqualTo(expected.generate(new Random(seed)));
+            assertThat(sut.generateWithoutDuplicates(new Random(seed)))
+                    .isEqualTo(expected.generateWithoutDuplicates(new Random(seed)));
+        }
+    }
+
+    @Test
+    void publishShouldAnalyseVersionOnlyAfterReadersGeneratedWithoutDuplicates() {
+        // given
+        sut.train(FIRST_BATCH);
+        sut.publish();
+        sut.generate(new Random(1));
+        sut.train(SECOND_BATCH);
+        sut.publish();
+        boolean analysedBeforeReading = sut.getSnapshot().isAnalysed();
+
+        // when
+        sut.generateWithoutDuplicates(new Random(1));
+        sut.train(FIRST_BATCH);
+        sut.publish();
+
+        // then
+        assertThat(analysedBeforeReading).isFalse();
+        assertThat(sut.getSnapshot().isAnalysed()).isTrue();
+    }
+
+    @Test
+    void publishShouldNotChangePinnedSnapshot() {
+        // given
+        sut.train(FIRST_BATCH);
+        sut.publish();
+        TweetkovChain pinned = sut.getSnapshot();
+        TransitionRepository pinnedTransitions = pinned.getTransitions();
+        Transition changed = pinnedTransitions.get(prefix(pinned, "now", "he"));
+        Transition unchanged = pinnedTransitions.get(prefix(pinned, "he", "went"));
+        List<String> suffixes = new ArrayList<>(changed.getSuffixes());
+
+        // when
+        sut.train(SECOND_BATCH);
+        sut.publish();
+
+        // then
+        TransitionRepository current = sut.getSnapshot().getTransitions();
+        assertThat(changed.getSuffixes()).containsExactlyElementsOf(suffixes);
+        assertThat(current.get(prefix(pinned, "now", "he")).getSuffixes()).hasSize(suffixes.size() + 1);
+        assertThat(current.get(prefix(pinned, "he", "went"))).isSameAs(unchanged);
+        assertThat(pinnedTransitions.get(prefix(pinned, "is", "the"))).isNull();
+        assertThat(current.getVocabulary()).isSameAs(pinnedTransitions.getVocabulary());
+    }
+
+    @Test
+    void publishShouldShareUnchangedModelOfPreviousVersionUntilCompacting() {
+        // given
+        List<String> sentences = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            StringBuilder sentence = new StringBuilder("word" + random.nextInt(20));
+            for (int length = random.nextInt(8); length >= 0; length--) {
+                sentence.append(" word").append(random.nextInt(40));
+            }
+            sentences.add(sentence.toString());
+        }
+        TweetkovChain expected = new TweetkovChain(2);
+        expected.train(sentences);
+        sut.train(sentences);
+        sut.publish();
+        TweetkovChain base = sut.getSnapshot();
+
+        // when
+        for (String sentence : SECOND_BATCH) {
+            expected.train(Collections.singletonList(sentence));
+            sut.train(Collections.singletonList(sentence));
+            sut.publish();
+        }
+        TweetkovChain layered = sut.getSnapshot();
+        for (int i = 0; i < 100; i++) {
+            sut.train(Collections.singletonList("new sentence number " + i + " grows the layer"));
+            sut.publish();
+        }
+
+        // then
+        assertThat(layered.getTransitions().getBase()).isSameAs(base.getTransitions());
+        assertThat(layered.getTransitions().getAllTransitions())
+                .hasSameSizeAs(expected.getTransitions().getAllTransitions());
+        for (int seed = 0; seed < 50; seed++) {
+            assertThat(layered.generate(new Random(seed))).isEqualTo(expected.generate(new Random(seed)));
+            assertThat(layered.generateWithoutDuplicates(new Random(seed)))
+                    .isEqualTo(expected.generateWithoutDuplicates(new Random(seed)));
+        }
+        assertThat(sut.getSnapshot().getTransitions().getBase()).isNotSameAs(base.getTransitions());
+    }
+
+    @Test
+    void snapshotShouldBeReadOnly() {
+        // given
+        sut.train(FIRST_BATCH);
+        sut.publish();
+        TweetkovChain snapshot = sut.getSnapshot();
+
+        // then
+        assertThat(snapshot.isReadOnly()).isTrue();
+        assertThrows(IllegalStateException.class, () -> snapshot.train(SECOND_BATCH));
+        assertThrows(IllegalStateException.class, () -> snapshot.trainInParallel(SECOND_BATCH));
+        assertThrows(IllegalStateException.class, snapshot::compile);
+        assertThrows(IllegalStateException.class, () -> snapshot.setWindowSize(3));
+    }
+
+    @Test
+    void generateShouldNotFailWhilePublishing() throws Exception {
+        // given
+        sut.train(FIRST_BATCH);
+        sut.publish();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                sut.train(SECOND_BATCH);
+                sut.publish();
+            }
+        });
+
+        // when
+        writer.start();
+        List<String> actual = new ArrayList<>();
+        Random random = new Random(1);
+        while (writer.isAlive()) {
+            actual.add(sut.generate(random));
+            sut.generateWithoutDuplicates(random);
+        }
+        writer.join();
+
+        // then
+        assertThat(actual).allMatch(sentence -> sentence.matches("[a-zA-Z]+( [a-zA-Z]+)+\\."));
+        assertThat(sut.getVersion()).isEqualTo(201);
+        assertThat(sut.getSnapshot().getTransitions().get(prefix(sut.getSnapshot(), "is", "the"))
+                .getTotalSuffixCount()).isEqualTo(200);
+    }
+
+    @Test
+    void constructorShouldRejectInvalidWindowSize() {
+        assertThrows(IllegalArgumentException.class, () -> new SnapshotChain(0));
+    }
+
+    private static Prefix prefix(TweetkovChain chain, String... tokens) {
+        Prefix result = new Prefix(chain.getTransitions().getVocabulary(), tokens.length);
+        for (String token : tokens) {
+            result.appendToken(token);
+        }
+        return result;
+    }
+}
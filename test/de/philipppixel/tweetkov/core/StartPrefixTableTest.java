@@ -0,0 +1,198 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StartPrefixTableTest {
+
+    private final Vocabulary vocabulary = new Vocabulary();
+    private final StartPrefixTable sut = new StartPrefixTable(false);
+
+    @Test
+    void addShouldStoreEachPrefixOnceWithItsCount() {
+        // when
+        sut.add(prefix("I", "think"), 1);
+        sut.add(prefix("you", "know"), 1);
+        sut.add(prefix("i", "THINK"), 1);
+        sut.add(prefix("I", "think"), 2);
+
+        // then
+        assertThat(sut.size()).isEqualTo(2);
+        assertThat(sut.getTotal()).isEqualTo(5);
+        assertThat(sut.getPrefix(0).toString()).isEqualTo("I think");
+        assertThat(sut.getCount(0)).isEqualTo(4);
+        assertThat(sut.getPrefix(1).toString()).isEqualTo("you know");
+        assertThat(sut.getCount(1)).isEqualTo(1);
+        assertThat(sut.toString()).isEqualTo("[I think=4, you know=1]");
+    }
+
+    @Test
+    void addShouldStoreACopyOfNewPrefixes() {
+        // given
+        Prefix prefix = prefix("I", "think");
+
+        // when
+        sut.add(prefix, 1);
+        prefix.shift(vocabulary.encode("so"));
+
+        // then
+        assertThat(sut.getPrefix(0).toString()).isEqualTo("I think");
+    }
+
+    @Test
+    void addShouldRejectCountsSmallerThanOne() {
+        assertThrows(IllegalArgumentException.class, () -> sut.add(prefix("I", "think"), 0));
+    }
+
+    @Test
+    void copyShouldKeepOrderAndCountsWithoutChangingTheOriginal() {
+        // given
+        sut.add(prefix("I", "think"), 3);
+        sut.add(prefix("you", "know"), 1);
+
+        // when
+        StartPrefixTable copy = new StartPrefixTable(sut);
+        copy.add(prefix("you", "know"), 2);
+        copy.add(prefix("so", "what"), 1);
+
+        // then
+        assertThat(copy.toString()).isEqualTo("[I think=3, you know=3, so what=1]");
+        assertThat(copy.getPrefix(0)).isSameAs(sut.getPrefix(0));
+        assertThat(sut.toString()).isEqualTo("[I think=3, you know=1]");
+    }
+
+    @Test
+    void layeredTableShouldSampleLikeCopyWithSameCounts() {
+        // given
+        String[] words = {"a", "b", "c", "d", "e", "f", "g", "h"};
+        Random counts = new Random(3);
+        for (int i = 0; i < 40; i++) {
+            sut.add(prefix(words[i % 8], words[i / 8]), 1 + counts.nextInt(5));
+        }
+        StartPrefixTable expected = new StartPrefixTable(sut);
+
+        // when
+        StartPrefixTable layered = sut.layered();
+        for (int i = 0; i < 64; i += 7) {
+            int count = 1 + counts.nextInt(5);
+            layered.add(prefix(words[i % 8], words[i / 8]), count);
+            expected.add(prefix(words[i % 8], words[i / 8]), count);
+        }
+        layered.prepareForSharing();
+        StartPrefixTable layeredAgain = layered.layered();
+        layeredAgain.add(prefix("a", "a"), 2);
+        layeredAgain.add(prefix("x", "y"), 1);
+
+        // then
+        assertThat(layered.toString()).isEqualTo(expected.toString());
+        assertThat(layered.getTotal()).isEqualTo(expected.getTotal());
+        assertThat(layered.getPrefix(0)).isSameAs(sut.getPrefix(0));
+        assertThat(sut.size()).isEqualTo(40);
+        assertThat(layeredAgain.getLayerSize()).isEqualTo(layered.getLayerSize() + 1);
+        StartPrefixTable expectedAgain = new StartPrefixTable(layeredAgain);
+        for (int seed = 0; seed < 1000; seed++) {
+            assertThat(layered.sample(new Random(seed))).isEqualTo(expected.sample(new Random(seed)));
+            assertThat(layeredAgain.sample(new Random(seed))).isEqualTo(expectedAgain.sample(new Random(seed)));
+        }
+    }
+
+    @Test
+    void sampleShouldPickPrefixesByTheirCount() {
+        // given
+        sut.add(prefix("I", "think"), 3);
+        sut.add(prefix("you", "know"), 1);
+        Random random = new Random(7);
+
+        // when
+        int[] picks = new int[2];
+        for (int i = 0; i < 4000; i++) {
+            picks[sut.sample(random).toString().equals("I think") ? 0 : 1]++;
+        }
+
+        // then
+        assertThat(picks[0]).isBetween(2850, 3150);
+        assertThat(picks[1]).isBetween(850, 1150);
+    }
+
+    @Test
+    void sampleShouldThrowIfEmpty() {
+        assertThrows(IllegalStateException.class, () -> sut.sample(new Random(1)));
+    }
+
+    @Test
+    void concurrentTableShouldCountAllPrefixesWhileBeingSampled() throws Exception {
+        // given
+        StartPrefixTable concurrent = new StartPrefixTable(true);
+        int writers = 4;
+        int prefixesPerWriter = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+
+        // when
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < prefixesPerWriter; i++) {
+                    concurrent.add(prefix("prefix" + (i % 10), "start"), 1);
+                }
+                concurrent.publishChanges();
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            Random random = new Random(1);
+            while (concurrent.getTotal() < writers * prefixesPerWriter) {
+                if (concurrent.getTotal() == 0) {
+                    continue;
+                }
+                assertThat(concurrent.sample(random).toString()).startsWith("prefix");
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // then
+        assertThat(concurrent.size()).isEqualTo(10);
+        for (int slot = 0; slot < concurrent.size(); slot++) {
+            assertThat(concurrent.getCount(slot)).isEqualTo(writers * prefixesPerWriter / 10);
+        }
+    }
+
+    @Test
+    void concurrentTableShouldShowChangesOnceTheyArePublished() {
+        // given
+        StartPrefixTable concurrent = new StartPrefixTable(true);
+        concurrent.add(prefix("a", "b"), 1);
+        concurrent.add(prefix("b", "c"), 1);
+        concurrent.add(prefix("c", "d"), 1);
+        concurrent.publishChanges();
+
+        // when
+        concurrent.add(prefix("a", "b"), 1);
+        int totalBeforePublishing = concurrent.getTotal();
+        concurrent.publishChanges();
+
+        // then
+        assertThat(totalBeforePublishing).isEqualTo(3);
+        assertThat(concurrent.getTotal()).isEqualTo(4);
+        assertThat(concurrent.getCount(0)).isEqualTo(2);
+    }
+
+    private Prefix prefix(String first, String second) {
+        Prefix prefix = new Prefix(vocabulary, 2);
+        prefix.appendToken(first);
+        prefix.appendToken(second);
+        return prefix;
+    }
+}
@@ -3,7 +3,14 @@ package de.philipppixel.tweetkov.core;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -15,12 +22,12 @@ class TransitionRepositoryTest {
     @Test
     void trainShouldAddMappingsToRepository() {
         // given
-        Prefix prefix = new Prefix(2);
+        Prefix prefix = new Prefix(sut.getVocabulary(), 2);
         prefix.appendToken("My");
         prefix.appendToken("Little");
 
         // when
-        sut.train(prefix, "Pony");
+        sut.train(prefix, token("Pony"));
 
         // then
         Prefix prefixToSearch = prefix("My", "Little");
@@ -30,22 +37,22 @@ class TransitionRepositoryTest {
     @Test
     void getRandomStartPrefixShouldReturnRandomPrefixesWithoutError() {
         // given
-        Prefix prefix = new Prefix(2);
+        Prefix prefix = new Prefix(sut.getVocabulary(), 2);
         prefix.appendToken("Hello");
         prefix.appendToken("World");
-        sut.trainAsStartPrefix(prefix, "Something");
+        sut.trainAsStartPrefix(prefix, token("Something"));
 
-        Prefix prefix2 = new Prefix(2);
+        Prefix prefix2 = new Prefix(sut.getVocabulary(), 2);
         prefix2.appendToken("Hello");
         prefix2.appendToken("Pluto");
-        sut.trainAsStartPrefix(prefix2, "SomethingElse");
+        sut.trainAsStartPrefix(prefix2, token("SomethingElse"));
 
-        sut.initializeRandomSeed(6); // pretty random, eh?
+        Random random = new Random(6); // pretty random, eh?
 
         // when
         List<Prefix> actual = new ArrayList<>();
         for (int i = 0; i < 11; i++) {
-            Prefix actualPrefix = sut.getRandomStartPrefix();
+            Prefix actualPrefix = sut.getRandomStartPrefix(random);
             actual.add(actualPrefix);
         }
 
@@ -61,46 +68,46 @@ class TransitionRepositoryTest {
     @Test
     void getRandomStartPrefixShouldThrowExceptionForUntrainedPrefixes() {
         // when & then
-        assertThrows(IllegalStateException.class, () -> sut.getRandomStartPrefix());
+        assertThrows(IllegalStateException.class, () -> sut.getRandomStartPrefix(new Random()));
     }
 
     @Test
     void getRandomPrefixShouldThrowExceptionForUntrainedPrefixes() {
         // when & then
-        assertThrows(IllegalStateException.class, () -> sut.getRandomPrefix());
+        assertThrows(IllegalStateException.class, () -> sut.getRandomPrefix(new Random()));
     }
 
     @Test
     void getRandomPrefixShouldReturnPrefixesFromBothStartListAndDeeperPrefixes() {
         // given
-        Prefix startPrefix1 = new Prefix(2);
+        Prefix startPrefix1 = new Prefix(sut.getVocabulary(), 2);
         startPrefix1.appendToken("Hello");
         startPrefix1.appendToken("World");
-        sut.trainAsStartPrefix(startPrefix1, "Europe");
+        sut.trainAsStartPrefix(startPrefix1, token("Europe"));
 
-        Prefix deeper1 = startPrefix1.shiftWithSuffix("Europe");
-        sut.train(deeper1, "Germany"); // World Europe -> Germany
+        Prefix deeper1 = startPrefix1.shiftWithSuffix(token("Europe"));
+        sut.train(deeper1, token("Germany")); // World Europe -> Germany
 
-        Prefix deeper2 = deeper1.shiftWithSuffix("Germany");
-        sut.train(deeper2, "Berlin"); // Europe Germany -> Berlin
+        Prefix deeper2 = deeper1.shiftWithSuffix(token("Germany"));
+        sut.train(deeper2, token("Berlin")); // Europe Germany -> Berlin
 
-        Prefix startPrefix2 = new Prefix(2);
+        Prefix startPrefix2 = new Prefix(sut.getVocabulary(), 2);
         startPrefix2.appendToken("Hello");
         startPrefix2.appendToken("Pluto");
-        sut.trainAsStartPrefix(startPrefix2, "Tombaugh");
+        sut.trainAsStartPrefix(startPrefix2, token("Tombaugh"));
 
-        Prefix deeper3 = startPrefix2.shiftWithSuffix("Tombaugh");
-        sut.train(deeper3, "SputnikPlanum");  // Pluto Tombaugh -> Sputnik
+        Prefix deeper3 = startPrefix2.shiftWithSuffix(token("Tombaugh"));
+        sut.train(deeper3, token("SputnikPlanum"));  // Pluto Tombaugh -> Sputnik
 
-        Prefix deeper4 = deeper3.shiftWithSuffix("SputnikPlanum");
-        sut.train(deeper4, "AstridColles"); // Tombaugh Sputnik -> Astrid
+        Prefix deeper4 = deeper3.shiftWithSuffix(token("SputnikPlanum"));
+        sut.train(deeper4, token("AstridColles")); // Tombaugh Sputnik -> Astrid
 
-        sut.initializeRandomSeed(8); // pretty random, eh?
+        Random random = new Random(8); // pretty random, eh?
 
         // when
         List<Prefix> actual = new ArrayList<>();
         for (int i = 0; i < 11; i++) {
-            Prefix actualPrefix = sut.getRandomPrefix();
+            Prefix actualPrefix = sut.getRandomPrefix(random);
             actual.add(actualPrefix);
         }
 
@@ -112,7 +119,7 @@ class TransitionRepositoryTest {
         Prefix pluto = prefix("Pluto", "Tombaugh");
         Prefix tombaugh = prefix("Tombaugh", "SputnikPlanum");
 
-        Prefix[] oracleOfEleven = {world, world, world, europe, pluto, tombaugh, hellow, hellop, hellop, pluto, pluto};
+        Prefix[] oracleOfEleven = {pluto, pluto, pluto, world, hellow, europe, hellop, tombaugh, tombaugh, hellow, hellow};
 
         assertThat(actual).containsExactly(oracleOfEleven);
     }
@@ -120,34 +127,34 @@ class TransitionRepositoryTest {
     @Test
     void test_getStartPrefixToken() {
         // given
-        Prefix startPrefix1 = new Prefix(2);
+        Prefix startPrefix1 = new Prefix(sut.getVocabulary(), 2);
         startPrefix1.appendToken("Hello");
         startPrefix1.appendToken("World");
-        sut.trainAsStartPrefix(startPrefix1, "Europe");
+        sut.trainAsStartPrefix(startPrefix1, token("Europe"));
 
-        Prefix inner1 = startPrefix1.shiftWithSuffix("Europe");
-        sut.train(inner1, "Germany"); // World Europe -> Germany
+        Prefix inner1 = startPrefix1.shiftWithSuffix(token("Europe"));
+        sut.train(inner1, token("Germany")); // World Europe -> Germany
 
-        Prefix inner2 = inner1.shiftWithSuffix("Germany");
-        sut.train(inner2, "Berlin"); // Europe Germany -> Berlin
+        Prefix inner2 = inner1.shiftWithSuffix(token("Germany"));
+        sut.train(inner2, token("Berlin")); // Europe Germany -> Berlin
 
-        Prefix startPrefix2 = new Prefix(2);
+        Prefix startPrefix2 = new Prefix(sut.getVocabulary(), 2);
         startPrefix2.appendToken("Hello");
         startPrefix2.appendToken("Pluto");
-        sut.trainAsStartPrefix(startPrefix2, "Tombaugh");
+        sut.trainAsStartPrefix(startPrefix2, token("Tombaugh"));
 
-        Prefix inner3 = startPrefix2.shiftWithSuffix("Tombaugh");
-        sut.train(inner3, "SputnikPlanum");  // Pluto Tombaugh -> Sputnik
+        Prefix inner3 = startPrefix2.shiftWithSuffix(token("Tombaugh"));
+        sut.train(inner3, token("SputnikPlanum"));  // Pluto Tombaugh -> Sputnik
 
-        Prefix inner4 = inner3.shiftWithSuffix("SputnikPlanum");
-        sut.train(inner4, "AstridColles"); // Tombaugh Sputnik -> Astrid
+        Prefix inner4 = inner3.shiftWithSuffix(token("SputnikPlanum"));
+        sut.train(inner4, token("AstridColles")); // Tombaugh Sputnik -> Astrid
 
-        sut.initializeRandomSeed(5); // pretty random, eh?
+        Random random = new Random(5); // pretty random, eh?
 
         // when
         List<Prefix> actual = new ArrayList<>();
         for (int i = 0; i < 11; i++) {
-            Prefix actualPrefix = sut.getFirstPrefixToken();
+            Prefix actualPrefix = sut.getFirstPrefixToken(random);
             actual.add(actualPrefix);
         }
 
@@ -156,16 +163,205 @@ class TransitionRepositoryTest {
         Prefix world = prefix("World", "Europe");
         Prefix europe = prefix("Europe", "Germany");
         Prefix hellop = prefix("Hello", "Pluto");
-        Prefix tombaugh = prefix("Tombaugh", "SputnikPlanum");
+        Prefix pluto = prefix("Pluto", "Tombaugh");
 
         // expect a 1/3 + 2/3 distribution of start prefix and inner prefix
-        Prefix[] oracleOfEleven = {world, tombaugh, hellop, hellop, hellow, hellop, hellow, hellop, europe, hellop, hellow};
+        Prefix[] oracleOfEleven = {pluto, europe, hellop, hellop, hellow, hellop, hellow, hellop, world, hellop, hellow};
 
         assertThat(actual).containsExactly(oracleOfEleven);
     }
 
+    @Test
+    void mergeShouldAddSuffixCountsAndStartPrefixes() {
+        // given
+        TransitionRepository partial = TransitionRepository.createPartial();
+        Prefix partialPrefix = new Prefix(partial.getVocabulary(), 2);
+        partialPrefix.appendToken("My");
+        partialPrefix.appendToken("Little");
+        partial.trainAsStartPrefix(partialPrefix, partial.getVocabulary().encode("Pony"));
+        partial.train(partialPrefix, partial.getVocabulary().encode("Kitty"));
+
+        sut.train(prefix("my", "little"), token("Pony"));
+
+        // when
+        sut.merge(partial);
+
+        // then
+        assertThat(sut.get(prefix("My", "Little")).getSuffixes()).containsExactly("Pony", "Pony", "Kitty");
+        assertThat(sut.getStartPrefixes().size()).isEqualTo(1);
+        assertThat(sut.getStartPrefixes().getPrefix(0)).isEqualTo(prefix("My", "Little"));
+        assertThat(sut.getStartPrefixes().getCount(0)).isEqualTo(1);
+        assertThat(sut.getStartPrefixes().getPrefix(0).getVocabulary()).isSameAs(sut.getVocabulary());
+    }
+
+    @Test
+    void mergedWithShouldShareUnchangedTransitionsAndKeepThisRepository() {
+        // given
+        sut.trainAsStartPrefix(prefix("my", "little"), token("pony"));
+        sut.train(prefix("little", "pony"), token("is"));
+        TransitionRepository partial = TransitionRepository.createPartial();
+        Prefix partialPrefix = new Prefix(partial.getVocabulary(), 2);
+        partialPrefix.appendToken("My");
+        partialPrefix.appendToken("Little");
+        partial.trainAsStartPrefix(partialPrefix, partial.getVocabulary().encode("Kitty"));
+        partialPrefix.shift(partial.getVocabulary().encode("Kitty"));
+        partial.train(partialPrefix, partial.getVocabulary().encode("is"));
+
+        // when
+        TransitionRepository actual = sut.mergedWith(partial);
+
+        // then
+        assertThat(actual.getVocabulary()).isSameAs(sut.getVocabulary());
+        assertThat(actual.get(prefix("little", "pony"))).isSameAs(sut.get(prefix("little", "pony")));
+        assertThat(actual.get(prefix("my", "little")).getSuffixes()).containsExactly("pony", "Kitty");
+        assertThat(actual.get(prefix("little", "kitty")).getSuffixes()).containsExactly("is");
+        assertThat(actual.getAllTransitions()).hasSize(3);
+        assertThat(actual.getStartPrefixes().getTotal()).isEqualTo(2);
+
+        assertThat(sut.get(prefix("my", "little")).getSuffixes()).containsExactly("pony");
+        assertThat(sut.get(prefix("little", "kitty"))).isNull();
+        assertThat(sut.getAllTransitions()).hasSize(2);
+        assertThat(sut.getStartPrefixes().getTotal()).isEqualTo(1);
+    }
+
+    @Test
+    void prunedShouldRemoveRareTransitionsAndTheirStartPrefixes() {
+        // given
+        sut.trainAsStartPrefix(prefix("Your", "Big"), token("Dog"));
+        sut.trainAsStartPrefix(prefix("my", "little"), token("pony"));
+        sut.train(prefix("little", "pony"), token("is"));
+        sut.trainAsStartPrefix(prefix("My", "Little"), token("pony"));
+
+        // when
+        TransitionRepository actual = sut.pruned(2);
+
+        // then
+        assertThat(actual.getAllTransitions()).hasSize(1);
+        assertThat(actual.get(prefix("my", "little")).getSuffixes()).containsExactly("pony", "pony");
+        assertThat(actual.getStartPrefixes().toString()).isEqualTo("[my little=2]");
+        assertThat(actual.getVocabulary().size()).isEqualTo(3);
+        assertThat(actual.isConcurrent()).isFalse();
+        assertThat(sut.getAllTransitions()).hasSize(3);
+        assertThat(sut.getStartPrefixes().size()).isEqualTo(2);
+        assertThrows(IllegalArgumentException.class, () -> sut.pruned(0));
+    }
+
+    @Test
+    void concurrentRepositoryShouldCountAllSuffixesWhileBeingRead() throws Exception {
+        // given
+        TransitionRepository concurrent = TransitionRepository.createConcurrent();
+        Vocabulary vocabulary = concurrent.getVocabulary();
+        int writers = 4;
+        int suffixesPerWriter = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+
+        // when
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < suffixesPerWriter; i++) {
+                    Prefix prefix = new Prefix(vocabulary, 1);
+                    prefix.appendToken("prefix" + (i % 10));
+                    concurrent.trainAsStartPrefix(prefix, vocabulary.encode("suffix" + (i % 7)));
+                }
+                concurrent.publishChanges();
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            Random random = new Random(1);
+            while (concurrent.getStartPrefixes().getTotal() < writers * suffixesPerWriter) {
+                if (concurrent.getStartPrefixes().getTotal() == 0) {
+                    continue;
+                }
+                Transition transition = concurrent.get(concurrent.getRandomStartPrefix(random));
+                int suffix = transition.getRandomSuffix(random);
+                assertThat(vocabulary.decode(suffix)).startsWith("suffix");
+                assertThat(transition.getSuffixes()).hasSize(transition.getTotalSuffixCount());
+                assertThat(concurrent.get(concurrent.getRandomPrefix(random))).isNotNull();
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // then
+        int total = 0;
+        for (Transition transition : concurrent.getAllTransitions()) {
+            total += transition.getTotalSuffixCount();
+            assertThat(transition.getUniqueSuffixCount()).isEqualTo(7);
+        }
+        assertThat(concurrent.getAllTransitions()).hasSize(10);
+        assertThat(total).isEqualTo(writers * suffixesPerWriter);
+    }
+
+    @Test
+    void concurrentRepositoryShouldPublishChangesWithoutCopyingPerSuffix() {
+        // given
+        TransitionRepository concurrent = TransitionRepository.createConcurrent();
+        Vocabulary vocabulary = concurrent.getVocabulary();
+        Prefix prefix = new Prefix(vocabulary, 1);
+        prefix.appendToken("now");
+        concurrent.train(prefix, vocabulary.encode("he"));
+        concurrent.train(prefix, vocabulary.encode("is"));
+        Transition published = concurrent.get(prefix);
+
+        // when
+        concurrent.train(prefix, vocabulary.encode("she"));
+        Transition beforePublishing = concurrent.get(prefix);
+        concurrent.publishChanges();
+
+        // then
+        assertThat(beforePublishing).isSameAs(published);
+        assertThat(published.getSuffixes()).containsExactly("he");
+        assertThat(concurrent.get(prefix).getSuffixes()).containsExactly("he", "is", "she");
+        assertThat(concurrent.getAllTransitions()).containsExactly(concurrent.get(prefix));
+    }
+
+    @Test
+    void getAllTransitionsShouldKeepTrainingOrder() {
+        // given
+        sut.train(prefix("she", "said"), token("he"));
+        sut.train(prefix("now", "he"), token("is"));
+        sut.train(prefix("she", "said"), token("now"));
+        sut.train(prefix("he", "is"), token("gone"));
+
+        // when
+        List<String> actual = new ArrayList<>();
+        for (Transition transition : sut.getAllTransitions()) {
+            actual.add(transition.getPrefix().toString());
+        }
+
+        // then
+        assertThat(actual).containsExactly("she said", "now he", "he is");
+        assertThat(sut.getAllTransitions()).hasSize(3);
+    }
+
+    @Test
+    void getRandomPrefixShouldPickEveryPrefix() {
+        // given
+        sut.train(prefix("she", "said"), token("he"));
+        sut.train(prefix("now", "he"), token("is"));
+        sut.train(prefix("he", "is"), token("gone"));
+        Random random = new Random(0);
+
+        // when
+        Set<Prefix> actual = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            actual.add(sut.getRandomPrefix(random));
+        }
+
+        // then
+        assertThat(actual).containsOnly(prefix("she", "said"), prefix("now", "he"), prefix("he", "is"));
+    }
+
+    private int token(String token) {
+        return sut.getVocabulary().encode(token);
+    }
+
     private Prefix prefix(String... tokens) {
-        Prefix p = new Prefix(tokens.length);
+        Prefix p = new Prefix(sut.getVocabulary(), tokens.length);
         for (String token : tokens) {
             p.appendToken(token);
         }
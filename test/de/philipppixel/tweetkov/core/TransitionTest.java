@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -97,6 +98,38 @@ class TransitionTest {
         assertThat(actual).isEqualTo(3);
     }
 
+    @Test
+    void mappingShouldKeepCountsUpToDateForManyDifferentSuffixes() {
+        Prefix prefix = new Prefix(1);
+        prefix.appendToken("Hello");
+        Transition sut = new Transition(prefix);
+
+        // when
+        for (int i = 0; i < 20; i++) {
+            sut.mapSuffix("suffix" + (i % 10));
+        }
+
+        // then
+        assertThat(sut.getUniqueSuffixCount()).isEqualTo(10);
+        assertThat(sut.getTotalSuffixCount()).isEqualTo(20);
+        assertThat(sut.getSuffixes()).hasSize(20);
+    }
+
+    @Test
+    void getSuffixesShouldGroupOccurrencesBySuffix() {
+        Prefix prefix = new Prefix(1);
+        prefix.appendToken("Hello");
+        Transition sut = new Transition(prefix);
+
+        // when
+        sut.mapSuffix("world");
+        sut.mapSuffix("kitty");
+        sut.mapSuffix("world");
+
+        // then
+        assertThat(sut.getSuffixes()).containsExactly("world", "world", "kitty");
+    }
+
     @Test
     void getRandomSuffixShouldReturnEmptyStringForNoSuffix() {
         Prefix prefix = new Prefix(1);
@@ -104,9 +137,9 @@ class TransitionTest {
         Transition sut = new Transition(prefix);
 
         // then
-        String actual = sut.getRandomSuffix();
+        int actual = sut.getRandomSuffix(new Random());
 
-        assertThat(actual).isEmpty();
+        assertThat(actual).isEqualTo(Vocabulary.NO_TOKEN);
     }
 
     @Test
@@ -117,7 +150,7 @@ class TransitionTest {
         sut.mapSuffix("Zoo");
 
         // then
-        String actual = sut.getRandomSuffix();
+        String actual = prefix.getVocabulary().decode(sut.getRandomSuffix(new Random()));
 
         assertThat(actual).isEqualTo("Zoo");
     }
@@ -140,7 +173,7 @@ class TransitionTest {
         Prefix prefix = new Prefix(1);
         prefix.appendToken("Xylophone");
         Transition sut = new Transition(prefix);
-        sut.initializeRandom(1);
+        Random random = new Random(1);
 
         sut.mapSuffix("Wolperdinger");
         sut.mapSuffix("Xantylope");
@@ -150,7 +183,7 @@ class TransitionTest {
         // then
         List<String> actual = new ArrayList<>();
         for (int i = 0; i < 10; i++) {
-            String suffix = sut.getRandomSuffix();
+            String suffix = prefix.getVocabulary().decode(sut.getRandomSuffix(random));
             actual.add(suffix);
         }
 
@@ -2,8 +2,12 @@ package de.philipppixel.tweetkov.core;
 
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -119,16 +123,16 @@ class TweetkovChainTest {
         }
 
         // then
-        String expected = "now he is gone for good.\n" +
+        String expected = "now he is gone she said he is gone she said he is gone for good.\n" +
+                "for good.\n" +
                 "now he is gone for good.\n" +
-                "now he is gone she said he is gone for good.\n" +
+                "is gone for good.\n" +
+                "now he is gone she said he is gone she said he is gone for good.\n" +
+                "now he is gone for good.\n" +
+                "now he is gone she said he is gone she said he is gone for good.\n" +
                 "now he is gone for good.\n" +
                 "now he is gone she said he is gone for good.\n" +
-                "for good.\n" +
-                "for good.\n" +
-                "she said he is gone she said he is gone for good.\n" +
-                "she said he is gone for good.\n" +
-                "now he is gone she said he is gone she said he is gone she said he is gone for good.\n";
+                "is gone she said he is gone she said he is gone for good.\n";
         assertThat(actual).isEqualTo(expected);
     }
 
@@ -148,16 +152,16 @@ class TweetkovChainTest {
         }
 
         // then
-        String expected = "now he is gone she said he is gone for good.\n" +
+        String expected = "now he is gone she said he is gone she said he is gone she said he is gone for good.\n" +
+                "now he is gone she said he is gone for good.\n" +
                 "now he is gone for good.\n" +
-                "now he is gone she said he is gone she said he is gone she said he is gone for good.\n" +
-                "gone for good.\n" +
-                "now he is gone she said he is gone she said he is gone she said he is gone for good.\n" +
-                "now he is gone she said he is gone she said he is gone for good.\n" +
-                "now he is gone she said he is gone she said he is gone for good.\n" +
+                "now he is gone she said he is gone she said he is gone she said he is gone she said he is gone for good.\n" +
+                "is gone for good.\n" +
                 "now he is gone she said he is gone she said he is gone for good.\n" +
-                "he is gone for good.\n" +
-                "now he is gone for good.\n";
+                "he is gone she said he is gone she said he is gone she said he is gone she said he is gone for good.\n" +
+                "now he is gone she said he is gone for good.\n" +
+                "is gone she said he is gone she said he is gone she said he is gone for good.\n" +
+                "now he is gone she said he is gone she said he is gone for good.\n";
         assertThat(actual).isEqualTo(expected);
     }
 
@@ -188,10 +192,9 @@ class TweetkovChainTest {
         // given
         List<String> input = Collections.singletonList("now he is gone");
         sut.train(input);
-        sut.initializeRandom(0);
 
         // when
-        Sentence actual = sut.generateSentence();
+        Sentence actual = sut.generateSentence(new Random(0));
 
         // then
         assertThat(actual.isDuplicate())
@@ -204,10 +207,9 @@ class TweetkovChainTest {
         // given
         List<String> input = Arrays.asList("now he is gone", "now he went insane");
         sut.train(input);
-        sut.initializeRandom(0);
 
         // when
-        Sentence actual = sut.generateSentence();
+        Sentence actual = sut.generateSentence(new Random(0));
 
         // then
         assertThat(actual.isDuplicate())
@@ -229,10 +231,101 @@ class TweetkovChainTest {
         assertThat(actual).isEmpty();
     }
 
+    @Test
+    void generateWithoutDuplicatesShouldNotCopyTrainingSentences() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "She said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back", "he is the best");
+        sut.train(input);
+        SplittableRandom random = new SplittableRandom(21);
+
+        for (int i = 0; i < 200; i++) {
+            // when
+            String actual = sut.generateWithoutDuplicates(random);
+
+            // then
+            if (actual.isEmpty()) {
+                continue;
+            }
+            String words = actual.substring(0, actual.length() - 1).toLowerCase();
+            for (String sentence : input) {
+                assertThat(" " + sentence.toLowerCase()).as("copied '%s'", words).doesNotEndWith(" " + words);
+            }
+            List<String> tokens = Arrays.asList(words.split(" "));
+            for (int from = 0; from + 5 <= tokens.size(); from++) {
+                String span = String.join(" ", tokens.subList(from, from + 5));
+                assertThat(input).as("copied span '%s'", span)
+                        .noneMatch(sentence -> sentence.toLowerCase().contains(span));
+            }
+        }
+    }
+
+    @Test
+    void compiledChainShouldGenerateSameSentencesAndSteerWithoutDuplicates() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back", "he is the best");
+        sut.train(input);
+        List<String> expected = new ArrayList<>();
+        List<String> unsteered = new ArrayList<>();
+        for (int seed = 0; seed < 50; seed++) {
+            expected.add(sut.generate(new SplittableRandom(seed)));
+            unsteered.add(sut.generateWithoutDuplicates(new SplittableRandom(seed)));
+        }
+
+        // when
+        sut.compile();
+        List<String> actual = new ArrayList<>();
+        List<String> steered = new ArrayList<>();
+        for (int seed = 0; seed < 50; seed++) {
+            actual.add(sut.generate(new SplittableRandom(seed)));
+            steered.add(sut.generateWithoutDuplicates(new SplittableRandom(seed)));
+        }
+
+        // then
+        assertThat(actual).isEqualTo(expected);
+        assertThat(steered.stream().filter(String::isEmpty).count())
+                .isLessThanOrEqualTo(unsteered.stream().filter(String::isEmpty).count());
+        assertThat(sut.getOriginalityIndex().isFrozen()).isTrue();
+    }
+
+    @Test
+    void onlyCompileShouldAnalyseChain() {
+        // given
+        sut.train(Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane"));
+
+        // when
+        sut.generateWithoutDuplicates(new SplittableRandom(1));
+        sut.generate(1, 10);
+        boolean analysedBeforeCompiling = sut.isAnalysed();
+        sut.compile();
+
+        // then
+        assertThat(analysedBeforeCompiling).isFalse();
+        assertThat(sut.isAnalysed()).isTrue();
+    }
+
+    @Test
+    void trainInParallelShouldCreateSameOriginalityIndex() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back");
+        TweetkovChain parallel = new TweetkovChain();
+
+        // when
+        sut.train(input);
+        parallel.trainInParallel(input, 3);
+
+        // then
+        assertThat(parallel.getOriginalityIndex().getSortedKeys())
+                .isEqualTo(sut.getOriginalityIndex().getSortedKeys());
+    }
+
     @Test
     void generateWithoutDuplicatesShouldCreateSentence() {
         // given
-        List<String> input = Arrays.asList("now he is gone", "now he went insane", "now is the thime");
+        List<String> input = Arrays.asList("now he is gone", "now he went insane", "now is the thime",
+                "he is the best");
         sut.train(input);
 
         // when
@@ -242,6 +335,67 @@ class TweetkovChainTest {
         assertThat(actual).isNotEmpty();
     }
 
+    @Test
+    void generateWithoutDuplicatesShouldSkipForcedPaths() {
+        // given
+        List<String> input = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            input.add("a" + i + " b" + i + " c" + i + " d" + i + " e" + i);
+        }
+        input.add("now he is gone");
+        input.add("she said he is here");
+        sut.train(input);
+        sut.compile();
+
+        for (int seed = 0; seed < 20; seed++) {
+            // when
+            String actual = sut.generateWithoutDuplicates(new SplittableRandom(seed));
+
+            // then
+            assertThat(actual).isIn("now he is here.", "she said he is gone.", "said he is gone.");
+        }
+    }
+
+    @Test
+    void generateWithWordLimitsShouldReturnSentencesWithinLimits() {
+        // given
+        sut.setWindowSize(3);
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back",
+                "he is gone and she said he is gone for good now");
+        sut.train(input);
+        sut.initializeRandom(7);
+
+        for (int i = 0; i < 100; i++) {
+            // when
+            String actual = sut.generate(6, 7);
+
+            // then
+            assertThat(actual.split(" ").length).as(actual).isGreaterThanOrEqualTo(6);
+            assertThat(actual.split(" ").length).as(actual).isLessThanOrEqualTo(7);
+        }
+    }
+
+    @Test
+    void generateWithWordLimitsShouldReturnEmptyStringForUnreachableLimits() {
+        // given
+        sut.train(Collections.singletonList("now he is gone"));
+
+        // when
+        String actual = sut.generate(5, 10);
+
+        // then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void generateWithWordLimitsShouldThrowExceptionForInvalidLimits() {
+        sut.train(Collections.singletonList("now he is gone"));
+
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(0, 5));
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(5, 4));
+    }
+
     @Test
     void replaceStringShouldReplaceAllOccurrences() {
         String actual = sut.replaceSpecialChars("&amp;&amp;&gt;");
@@ -297,11 +451,480 @@ class TweetkovChainTest {
         String actual = sut.createHistogram();
 
         // then
-        String expected = "Lady: 1\n"
-                + "First: 2\n"
+        String expected = "First: 2\n"
                 + "Second: 2\n"
+                + "Lady: 1\n"
                 + "Entries with 1 prefixes: 1\n"
                 + "Entries with 2 prefixes: 2\n";
         assertThat(actual).isEqualTo(expected);
     }
+
+    @Test
+    void compileShouldKeepHistogram() {
+        // given
+        sut.setWindowSize(1);
+        String[] input = {"First Second Third", "First Lady Second That"};
+        sut.train(Arrays.asList(input));
+        String expected = sut.createHistogram();
+
+        // when
+        sut.compile();
+
+        // then
+        assertThat(sut.isCompiled()).isTrue();
+        assertThat(sut.createHistogram()).isEqualTo(expected);
+    }
+
+    @Test
+    void compiledChainShouldGenerateSentences() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "now he went insane", "now is the thime",
+                "he is the best");
+        sut.train(input);
+        sut.compile();
+        sut.initializeRandom(0);
+
+        // when
+        String actual = sut.generate();
+        String actualWithoutDuplicates = sut.generateWithoutDuplicates();
+
+        // then
+        assertThat(actual).matches("[a-zA-Z]+( [a-zA-Z]+)+ ?\\.");
+        assertThat(actualWithoutDuplicates).isNotEmpty();
+    }
+
+    @Test
+    void compiledChainShouldRejectTraining() {
+        // given
+        sut.train(Collections.singletonList("now he is gone"));
+        sut.compile();
+
+        // when & then
+        assertThrows(IllegalStateException.class, () -> sut.train(Collections.singletonList("now he went insane")));
+    }
+
+    @Test
+    void trainInParallelShouldResultInSameDictionaryAsTrain() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "Now he went insane",
+                "now is the thime", "he is gone &amp; she is here", "she said Now he is back", "good for you",
+                "Now He Is Gone", "is it gone for good");
+        sut.train(input);
+
+        for (int shardCount = 1; shardCount <= input.size() + 1; shardCount++) {
+            TweetkovChain parallel = new TweetkovChain();
+
+            // when
+            parallel.trainInParallel(input, shardCount);
+
+            // then
+            TransitionRepository expected = sut.getTransitions();
+            TransitionRepository actual = parallel.getTransitions();
+            assertThat(parallel.createHistogram()).isEqualTo(sut.createHistogram());
+            assertThat(actual.getStartPrefixes().toString()).isEqualTo(expected.getStartPrefixes().toString());
+            for (Transition transition : expected.getAllTransitions()) {
+                assertThat(actual.get(transition.getPrefix()).getSuffixes())
+                        .containsExactlyElementsOf(transition.getSuffixes());
+            }
+        }
+    }
+
+    @Test
+    void trainInParallelShouldGenerateSameSentencesAsTrain() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back");
+        TweetkovChain parallel = new TweetkovChain();
+        sut.train(input);
+        parallel.trainInParallel(input, 3);
+        sut.initializeRandom(42);
+        parallel.initializeRandom(42);
+
+        // when & then
+        for (int i = 0; i < 20; i++) {
+            assertThat(parallel.generate()).isEqualTo(sut.generate());
+        }
+    }
+
+    @Test
+    void trainInParallelShouldRejectInvalidShardCount() {
+        assertThrows(IllegalArgumentException.class, () -> sut.trainInParallel(Collections.emptyList(), 0));
+    }
+
+    @Test
+    void trainInParallelShouldRethrowExceptionOfShard() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", null, "now he went insane");
+
+        // then
+        assertThrows(NullPointerException.class, () -> sut.trainInParallel(input, 3));
+    }
+
+    @Test
+    void concurrentChainShouldGenerateWhileTraining() throws Exception {
+        // given
+        TweetkovChain concurrent = TweetkovChain.createConcurrent(2);
+        concurrent.train(Collections.singletonList("now he is gone"));
+        List<String> input = Arrays.asList("now he went insane", "she said he is gone for good", "now is the thime");
+        Thread trainer = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                concurrent.train(input);
+            }
+        });
+
+        // when
+        trainer.start();
+        List<String> actual = new ArrayList<>();
+        while (trainer.isAlive()) {
+            actual.add(concurrent.generate());
+        }
+        trainer.join();
+
+        // then
+        assertThat(actual).allMatch(sentence -> sentence.matches("[a-zA-Z]+( [a-zA-Z]+)+\\."));
+        assertThat(concurrent.getTransitions().get(createPrefix_WS2("now", "he")).getTotalSuffixCount())
+                .isEqualTo(1 + 2000 * 1);
+    }
+
+    @Test
+    void generateShouldCreateSameSentencesForSameRandomStream() throws Exception {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back");
+        sut.train(input);
+        int streams = 4;
+        List<List<String>> expected = new ArrayList<>();
+        SplittableRandom master = new SplittableRandom(42);
+        for (int stream = 0; stream < streams; stream++) {
+            expected.add(generateSentences(sut, master.split(), 20));
+        }
+
+        // when
+        List<List<String>> actual = Collections.synchronizedList(new ArrayList<>(Collections.nCopies(streams, null)));
+        List<Thread> threads = new ArrayList<>();
+        SplittableRandom sameMaster = new SplittableRandom(42);
+        for (int stream = 0; stream < streams; stream++) {
+            int index = stream;
+            SplittableRandom random = sameMaster.split();
+            threads.add(new Thread(() -> actual.set(index, generateSentences(sut, random, 20))));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void compiledChainShouldGenerateSameSentencesAsUncompiledChain() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back");
+        sut.train(input);
+        List<String> expected = generateSentences(sut, new SplittableRandom(7), 20);
+
+        // when
+        sut.compile();
+        List<String> actual = generateSentences(sut, new SplittableRandom(7), 20);
+
+        // then
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void generateShouldThrowExceptionForNullRandom() {
+        sut.train(Collections.singletonList("now he is gone"));
+
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(null));
+        assertThrows(IllegalArgumentException.class, () -> sut.generateWithoutDuplicates(null));
+    }
+
+    @Test
+    void generateCountShouldReturnReproducibleSentences() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back");
+        sut.train(input);
+        GenerationOptions options = GenerationOptions.defaults().withMinWords(5);
+
+        // when
+        sut.initializeRandom(3);
+        List<String> actual = sut.generate(500, options);
+        sut.initializeRandom(3);
+        List<String> again = sut.generate(500, options);
+
+        // then
+        assertThat(actual).hasSize(500);
+        assertThat(actual).allMatch(sentence -> sentence.split(" ").length >= 5);
+        assertThat(again).isEqualTo(actual);
+    }
+
+    @Test
+    void generateCountShouldReturnEmptySentencesForUnmatchableOptions() {
+        // given
+        sut.train(Collections.singletonList("now he is gone"));
+
+        // when
+        List<String> actual = sut.generate(3, GenerationOptions.defaults().withoutDuplicates());
+
+        // then
+        assertThat(actual).containsExactly("", "", "");
+    }
+
+    @Test
+    void generateCountShouldThrowExceptionForInvalidArguments() {
+        sut.train(Collections.singletonList("now he is gone"));
+
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(-1));
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(1, null));
+        assertThrows(IllegalArgumentException.class, () -> sut.sentences(null));
+    }
+
+    @Test
+    void generateCountToOutputShouldWriteSameSentencesAsList() throws Exception {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back");
+        sut.train(input);
+        GenerationOptions options = GenerationOptions.defaults().withMinWords(5);
+        sut.initializeRandom(3);
+        List<String> expected = sut.generate(100, options);
+
+        // when
+        sut.initializeRandom(3);
+        StringBuilder actual = new StringBuilder();
+        sut.generate(100, options, actual);
+
+        // then
+        StringBuilder expectedOutput = new StringBuilder();
+        for (String sentence : expected) {
+            expectedOutput.append(sentence).append(System.lineSeparator());
+        }
+        assertThat(actual.toString()).isEqualTo(expectedOutput.toString());
+    }
+
+    @Test
+    void generateCountToOutputShouldThrowExceptionForMissingOutput() {
+        sut.train(Collections.singletonList("now he is gone"));
+
+        assertThrows(IllegalArgumentException.class, () -> sut.generate(1, GenerationOptions.defaults(), null));
+    }
+
+    @Test
+    void parallelSentencesShouldMatchSequentialSentences() {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back");
+        sut.train(input);
+        GenerationOptions options = GenerationOptions.defaults().withMinWords(4).withoutDuplicates();
+
+        // when
+        sut.initializeRandom(11);
+        List<String> sequential = sut.sentences(options).limit(300).collect(Collectors.toList());
+        sut.initializeRandom(11);
+        List<String> parallel = sut.sentences(options).parallel().limit(300).collect(Collectors.toList());
+
+        // then
+        assertThat(parallel).isEqualTo(sequential);
+        assertThat(sequential).allMatch(sentence -> sentence.split(" ").length >= 4);
+    }
+
+    @Test
+    void generateCountShouldWorkOnPlainChainWithSeveralThreads() throws Exception {
+        // given
+        Random words = new Random(8);
+        List<String> input = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sentence = new StringBuilder("w" + words.nextInt(50));
+            for (int word = 0; word < 8; word++) {
+                sentence.append(" w").append(words.nextInt(50));
+            }
+            input.add(sentence.toString());
+        }
+        sut.setWindowSize(1);
+        sut.train(input);
+        ForkJoinPool pool = new ForkJoinPool(8);
+
+        // when
+        sut.initializeRandom(5);
+        List<String> actual = pool.submit(() -> sut.generate(20000)).get();
+        pool.shutdown();
+        sut.initializeRandom(5);
+        StringBuilder expected = new StringBuilder();
+        sut.generate(20000, GenerationOptions.defaults(), expected);
+
+        // then
+        assertThat(String.join(System.lineSeparator(), actual) + System.lineSeparator())
+                .isEqualTo(expected.toString());
+    }
+
+    @Test
+    void loadShouldGenerateSameSentencesAsSavedChain(@TempDir Path directory) throws Exception {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "She said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said Now he is back");
+        sut.train(input);
+        Path file = directory.resolve("chain.tkv");
+
+        // when
+        sut.save(file);
+        TweetkovChain actual = TweetkovChain.load(file);
+
+        // then
+        assertThat(actual.isCompiled()).isFalse();
+        assertThat(actual.createHistogram()).isEqualTo(sut.createHistogram());
+        assertThat(generateSentences(actual, new SplittableRandom(5), 50))
+                .isEqualTo(generateSentences(sut, new SplittableRandom(5), 50));
+    }
+
+    @Test
+    void loadShouldRestoreCompiledChain(@TempDir Path directory) throws Exception {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane");
+        sut.setWindowSize(1);
+        sut.train(input);
+        List<String> expected = generateSentences(sut, new SplittableRandom(9), 30);
+        sut.compile();
+        Path file = directory.resolve("chain.tkv");
+
+        // when
+        sut.save(file);
+        TweetkovChain actual = TweetkovChain.load(file);
+
+        // then
+        assertThat(generateSentences(actual, new SplittableRandom(9), 30)).isEqualTo(expected);
+        actual.train(Collections.singletonList("he is back"));
+        assertThat(actual.getTransitions().get(prefix_WS1("is")).getSuffixes()).contains("back");
+    }
+
+    @Test
+    void mapShouldGenerateSameSentencesAsSavedChain(@TempDir Path directory) throws Exception {
+        // given
+        List<String> input = Arrays.asList("now he is gone", "She said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said Now he is back");
+        sut.train(input);
+        Path file = directory.resolve("chain.tkc");
+
+        // when
+        sut.saveCompiled(file);
+        TweetkovChain actual = TweetkovChain.map(file);
+
+        // then
+        assertThat(sut.isCompiled()).isFalse();
+        assertThat(actual.isCompiled()).isTrue();
+        assertThat(actual.createHistogram()).isEqualTo(sut.createHistogram());
+        assertThat(generateSentences(actual, new SplittableRandom(5), 50))
+                .isEqualTo(generateSentences(sut, new SplittableRandom(5), 50));
+        assertThrows(IllegalStateException.class, () -> actual.train(Collections.singletonList("he is back")));
+    }
+
+    @Test
+    void pruneShouldRemoveRarePrefixesAndReportSizes() {
+        // given
+        sut.setWindowSize(1);
+        sut.train(Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane"));
+
+        // when
+        CompactionReport actual = sut.prune(2);
+
+        // then only now (2), he (3) and is (2) are kept, and "she" no longer starts a sentence
+        assertThat(sut.getTransitions().getAllTransitions()).hasSize(3);
+        assertThat(sut.getTransitions().get(prefix_WS1("she"))).isNull();
+        assertThat(sut.getTransitions().get(prefix_WS1("he")).getSuffixes()).containsExactly("is", "is", "went");
+        assertThat(actual.getMinCount()).isEqualTo(2);
+        assertThat(actual.getPrefixCountBefore()).isEqualTo(8);
+        assertThat(actual.getPrefixCountAfter()).isEqualTo(3);
+        assertThat(actual.getStartPrefixCountBefore()).isEqualTo(2);
+        assertThat(actual.getStartPrefixCountAfter()).isEqualTo(1);
+        assertThat(actual.getSuffixEntryCountBefore()).isEqualTo(9);
+        assertThat(actual.getSuffixEntryCountAfter()).isEqualTo(4);
+        assertThat(actual.getTokenCountBefore()).isEqualTo(10);
+        // now, he, is, gone and went
+        assertThat(actual.getTokenCountAfter()).isEqualTo(5);
+        assertThat(actual.getReclaimedBytes()).isGreaterThan(0L)
+                .isEqualTo(actual.getEstimatedBytesBefore() - actual.getEstimatedBytesAfter());
+        assertThat(actual.toString()).startsWith("Removed prefixes trained less than 2 times: prefixes 8 -> 3");
+        for (int i = 0; i < 20; i++) {
+            assertThat(sut.generate()).matches("[Nn]ow he( [a-z]+)*\\.|[a-z]+( [a-z]+)*\\.");
+        }
+    }
+
+    @Test
+    void pruneWithMinCountOneShouldKeepGeneratedSentences() {
+        // given
+        sut.train(Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane",
+                "now is the thime", "he is gone and she is here", "she said now he is back"));
+        List<String> expected = generateSentences(sut, new SplittableRandom(3), 30);
+        String expectedHistogram = sut.createHistogram();
+
+        // when
+        CompactionReport actual = sut.prune(1);
+
+        // then
+        assertThat(actual.getPrefixCountAfter()).isEqualTo(actual.getPrefixCountBefore());
+        assertThat(actual.getTokenCountAfter()).isEqualTo(actual.getTokenCountBefore());
+        assertThat(sut.createHistogram()).isEqualTo(expectedHistogram);
+        assertThat(generateSentences(sut, new SplittableRandom(3), 30)).isEqualTo(expected);
+    }
+
+    @Test
+    void compactToBudgetShouldRemoveNoMoreThanNecessary() {
+        // given
+        sut.setWindowSize(1);
+        sut.train(Arrays.asList("now he is gone", "she said he is gone for good", "now he went insane"));
+        long budget = sut.getModelSize().getEstimatedBytes() - 1;
+
+        // when
+        CompactionReport actual = sut.compactToBudget(budget);
+
+        // then
+        assertThat(actual.getMinCount()).isEqualTo(2);
+        assertThat(actual.getEstimatedBytesAfter()).isLessThanOrEqualTo(budget);
+        assertThat(sut.compactToBudget(actual.getEstimatedBytesAfter()).getMinCount()).isEqualTo(1);
+        assertThrows(IllegalArgumentException.class, () -> sut.compactToBudget(100));
+    }
+
+    @Test
+    void modelSizeShouldIncludeIndexOfTrainingSentences() {
+        // given
+        List<String> input = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            input.add("a" + i + " b" + i + " c" + i + " d" + i + " e" + i + " f" + i);
+        }
+        sut.train(input);
+        OriginalityIndex index = sut.getOriginalityIndex();
+        OriginalityIndex emptyIndex = OriginalityIndex.create(index.getSpanLength(), false);
+
+        // when
+        long withoutIndex = ModelSize.of(sut.getTransitions(), emptyIndex).getEstimatedBytes();
+
+        // then
+        assertThat(index.capacity()).isGreaterThan(emptyIndex.capacity());
+        assertThat(sut.getModelSize().getEstimatedBytes() - withoutIndex)
+                .isEqualTo(8L * (index.capacity() - emptyIndex.capacity()));
+    }
+
+    @Test
+    void pruneShouldRejectCompiledChainAndInvalidMinCount() {
+        // given
+        sut.train(Collections.singletonList("now he is gone"));
+
+        // then
+        assertThrows(IllegalArgumentException.class, () -> sut.prune(0));
+        sut.compile();
+        assertThrows(IllegalStateException.class, () -> sut.prune(2));
+        assertThrows(IllegalStateException.class, () -> sut.compactToBudget(Long.MAX_VALUE));
+    }
+
+    private static List<String> generateSentences(TweetkovChain chain, SplittableRandom random, int count) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(chain.generate(random));
+        }
+        return result;
+    }
 }
@@ -0,0 +1,86 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VocabularyTest {
+
+    private Vocabulary sut = new Vocabulary();
+
+    @Test
+    void encodeShouldReturnSameIdForSameToken() {
+        int first = sut.encode("pony");
+        int second = sut.encode("pony");
+
+        assertThat(first).isEqualTo(second);
+    }
+
+    @Test
+    void encodeShouldReturnDifferentIdsForDifferentTokens() {
+        int pony = sut.encode("pony");
+        int unicorn = sut.encode("unicorn");
+
+        assertThat(pony).isNotEqualTo(unicorn);
+    }
+
+    @Test
+    void decodeShouldReturnOriginalToken() {
+        int id = sut.encode("Roxaaaannnneee!");
+
+        assertThat(sut.decode(id)).isEqualTo("Roxaaaannnneee!");
+    }
+
+    @Test
+    void foldedIdShouldBeEqualForDifferentCase() {
+        int upper = sut.encode("PONY");
+        int mixed = sut.encode("Pony");
+        int lower = sut.encode("pony");
+
+        assertThat(sut.foldedId(upper)).isEqualTo(lower);
+        assertThat(sut.foldedId(mixed)).isEqualTo(lower);
+        assertThat(sut.foldedId(lower)).isEqualTo(lower);
+    }
+
+    @Test
+    void isEmptyShouldHandleNoTokenAndEmptyString() {
+        int empty = sut.encode("");
+        int word = sut.encode("word");
+
+        assertThat(sut.isEmpty(Vocabulary.NO_TOKEN)).isTrue();
+        assertThat(sut.isEmpty(empty)).isTrue();
+        assertThat(sut.isEmpty(word)).isFalse();
+    }
+
+    @Test
+    void encodeShouldRejectNull() {
+        assertThrows(IllegalArgumentException.class, () -> sut.encode(null));
+    }
+
+    @Test
+    void decodeShouldRejectUnknownIds() {
+        assertThrows(IllegalArgumentException.class, () -> sut.decode(42));
+    }
+
+    @Test
+    void vocabularyShouldGrowBeyondInitialCapacity() {
+        for (int i = 0; i < 1000; i++) {
+            sut.encode("token" + i);
+        }
+
+        assertThat(sut.size()).isEqualTo(1000);
+        assertThat(sut.decode(sut.encode("token999"))).isEqualTo("token999");
+    }
+
+    @Test
+    void foldedHashShouldNotDependOnVocabulary() {
+        Vocabulary other = new Vocabulary();
+        other.encode("unicorn");
+
+        int actual = sut.foldedHash(sut.encode("Pony"));
+
+        assertThat(actual).isEqualTo(other.foldedHash(other.encode("PONY")));
+        assertThat(actual).isEqualTo("pony".hashCode());
+    }
+}
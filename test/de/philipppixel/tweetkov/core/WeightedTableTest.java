@@ -0,0 +1,129 @@
+package de.philipppixel.tweetkov.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WeightedTableTest {
+
+    private WeightedTable sut = new WeightedTable();
+
+    @Test
+    void incrementShouldKeepCountsUpToDate() {
+        // when
+        sut.increment(0);
+        sut.increment(1);
+        sut.increment(0);
+
+        // then
+        assertThat(sut.size()).isEqualTo(2);
+        assertThat(sut.getTotal()).isEqualTo(3);
+        assertThat(sut.getCount(0)).isEqualTo(2);
+        assertThat(sut.getCount(1)).isEqualTo(1);
+    }
+
+    @Test
+    void incrementShouldRejectSlotsBeyondNextSlot() {
+        assertThrows(IllegalArgumentException.class, () -> sut.increment(1));
+    }
+
+    @Test
+    void slotOfShouldMapOccurrencesInSlotOrder() {
+        // given
+        sut.add(0, 3);
+        sut.add(1, 1);
+        sut.add(2, 5);
+        sut.add(3, 1);
+
+        // when
+        int[] actual = new int[sut.getTotal()];
+        for (int occurrence = 0; occurrence < actual.length; occurrence++) {
+            actual[occurrence] = sut.slotOf(occurrence);
+        }
+
+        // then
+        assertThat(actual).containsExactly(0, 0, 0, 1, 2, 2, 2, 2, 2, 3);
+    }
+
+    @Test
+    void slotOfShouldBeUpdatedAfterIncrement() {
+        // given
+        sut.add(0, 1);
+        sut.add(1, 1);
+        sut.slotOf(0);
+
+        // when
+        sut.add(0, 2);
+
+        // then
+        assertThat(sut.slotOf(2)).isEqualTo(0);
+        assertThat(sut.slotOf(3)).isEqualTo(1);
+    }
+
+    @Test
+    void sampleShouldDrawLikeAListOfAllOccurrences() {
+        // given
+        int[] occurrences = {0, 0, 1, 2, 2, 2, 3};
+        for (int slot : occurrences) {
+            sut.increment(slot);
+        }
+        Random expectedRandom = new Random(42);
+        Random actualRandom = new Random(42);
+
+        // when & then
+        for (int i = 0; i < 100; i++) {
+            int expected = occurrences[expectedRandom.nextInt(occurrences.length)];
+            assertThat(sut.sample(actualRandom)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void sampleShouldReturnMinusOneForEmptyTable() {
+        assertThat(sut.sample(new Random(1))).isEqualTo(-1);
+    }
+
+    @Test
+    void slotOfShouldBuildGuideSafelyWhileSeveralThreadsSample() throws Exception {
+        // given
+        int tableCount = 2000;
+        int slots = 64;
+        List<WeightedTable> tables = new ArrayList<>();
+        for (int i = 0; i < tableCount; i++) {
+            WeightedTable table = new WeightedTable();
+            for (int slot = 0; slot < slots; slot++) {
+                table.add(slot, slot + 1);
+            }
+            tables.add(table);
+        }
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            futures.add(executor.submit(() -> {
+                for (WeightedTable table : tables) {
+                    // the last occurrence belongs to the last slot
+                    assertThat(table.slotOf(table.getTotal() - 1)).isEqualTo(slots - 1);
+                    assertThat(table.slotOf(0)).isZero();
+                }
+            }));
+        }
+        executor.shutdown();
+
+        // then
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+}